@@ -36,6 +36,8 @@ import org.jclouds.Fallbacks.EmptyPagedIterableOnNotFoundOr404;
 import org.jclouds.Fallbacks.FalseOnNotFoundOr404;
 import org.jclouds.Fallbacks.NullOnNotFoundOr404;
 import org.jclouds.collect.PagedIterable;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.options.GetOptions;
 import org.jclouds.io.Payload;
 import org.jclouds.javax.annotation.Nullable;
 import org.jclouds.openstack.glance.v1_0.domain.Image;
@@ -131,6 +133,21 @@ public interface ImageApi {
    @Nullable
    InputStream getAsStream(@PathParam("id") String id);
 
+   /**
+    * Return the response carrying image data for image with id, subject to the
+    * options, such as a {@link GetOptions#startAt byte range}
+    * <p/>
+    * Check the status code before reading the payload: a range is only
+    * honoured when it is 206 Partial Content.
+    * 
+    * @return the response, or null if not found
+    */
+   @GET
+   @Path("/images/{id}")
+   @Fallback(NullOnNotFoundOr404.class)
+   @Nullable
+   HttpResponse getAsResponse(@PathParam("id") String id, GetOptions options);
+
    /**
     * Create a new image
     * 
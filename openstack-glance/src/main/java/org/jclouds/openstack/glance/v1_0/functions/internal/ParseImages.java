@@ -88,7 +88,7 @@ public class ParseImages extends ParseJson<Images> {
                Collection<String> markers = paginationOptions.buildQueryParameters().get("marker");
 
                if (!markers.isEmpty()) {
-                  return IterableWithMarker.class.cast(imageApi.listInDetail(marker(Iterables.get(markers, 0))));
+                  return IterableWithMarker.class.cast(imageApi.list(marker(Iterables.get(markers, 0))));
                }
                else {
                   return IterableWithMarkers.EMPTY;
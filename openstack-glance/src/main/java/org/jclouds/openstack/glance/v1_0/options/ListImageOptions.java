@@ -16,6 +16,7 @@
  */
 package org.jclouds.openstack.glance.v1_0.options;
 
+import static com.google.common.base.Preconditions.checkNotNull;
 import static org.jclouds.openstack.glance.v1_0.options.ImageField.CONTAINER_FORMAT;
 import static org.jclouds.openstack.glance.v1_0.options.ImageField.DISK_FORMAT;
 import static org.jclouds.openstack.glance.v1_0.options.ImageField.IS_PUBLIC;
@@ -29,11 +30,16 @@ import static org.jclouds.openstack.glance.v1_0.options.ImageField.STATUS;
 
 import java.util.Date;
 
+import org.jclouds.date.DateService;
+import org.jclouds.date.internal.SimpleDateFormatDateService;
+import org.jclouds.javax.annotation.Nullable;
 import org.jclouds.openstack.glance.v1_0.domain.ContainerFormat;
 import org.jclouds.openstack.glance.v1_0.domain.DiskFormat;
 import org.jclouds.openstack.glance.v1_0.domain.Image.Status;
 import org.jclouds.openstack.v2_0.options.PaginationOptions;
 
+import com.google.common.collect.ImmutableSet;
+
 /**
  * <h2></h2>Usage</h2> The recommended way to instantiate a ListImageOptions object is to statically import
  * ListImageOptions.Builder.* and invoke a static creation method for each option as needed:
@@ -50,8 +56,13 @@ import org.jclouds.openstack.v2_0.options.PaginationOptions;
  * @see <a href="http://glance.openstack.org/glanceapi.html"/>
  */
 public class ListImageOptions extends PaginationOptions {
+
    public static final ListImageOptions NONE = new ListImageOptions();
 
+   static final String CHANGES_SINCE = "changes-since";
+
+   private static final DateService DATES = new SimpleDateFormatDateService();
+
    /**
     * Return only those images having a matching name attribute
     */
@@ -150,6 +161,21 @@ public class ListImageOptions extends PaginationOptions {
       return this;
    }
 
+   /**
+    * @return a copy of these options for the page of at most {@code limit}
+    *         images after {@code marker}, or for the first page when null.
+    */
+   public ListImageOptions page(@Nullable String marker, int limit) {
+      ListImageOptions page = new ListImageOptions();
+      page.queryParameters.putAll(queryParameters);
+      page.queryParameters.removeAll("marker");
+      page.queryParameters.removeAll("limit");
+      if (marker != null) {
+         page.marker(marker);
+      }
+      return page.limit(limit);
+   }
+
    public static class Builder {
       /**
        * @see ListImageOptions#name
@@ -249,11 +275,25 @@ public class ListImageOptions extends PaginationOptions {
       public static ListImageOptions marker(String marker) {
          return new ListImageOptions().marker(marker);
       }
+
+      /**
+       * @see ListImageOptions#changesSince
+       */
+      public static ListImageOptions changesSince(Date ifModifiedSince) {
+         return new ListImageOptions().changesSince(ifModifiedSince);
+      }
    }
 
+   /**
+    * Return only images changed, including deleted, at or after this second.
+    * Unlike other OpenStack services, glance parses {@code changes-since} as an
+    * ISO 8601 timestamp, such as {@code 2013-10-01T12:00:00Z}.
+    */
    @Override
    public ListImageOptions changesSince(Date ifModifiedSince) {
-      return ListImageOptions.class.cast(super.changesSince(ifModifiedSince));
+      queryParameters.replaceValues(CHANGES_SINCE,
+            ImmutableSet.of(DATES.iso8601SecondsDateFormat(checkNotNull(ifModifiedSince, "ifModifiedSince"))));
+      return this;
    }
 
    @Override
@@ -0,0 +1,486 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.openstack.glance.v1_0.options.ImageField.UPDATED_AT;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import org.jclouds.date.DateService;
+import org.jclouds.date.internal.SimpleDateFormatDateService;
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.glance.v1_0.domain.Image;
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.features.ImageApi;
+import org.jclouds.openstack.glance.v1_0.options.ImageField;
+import org.jclouds.openstack.glance.v1_0.options.ListImageOptions;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Ordering;
+
+/**
+ * An in-memory copy of the images of a zone, which answers
+ * {@link ListImageOptions} queries without a request.
+ * <p/>
+ * The first {@link #refresh() refresh} lists every image in detail. Later ones
+ * list only the images changed since the latest {@code updated_at} seen,
+ * {@link ImageField#UPDATED_AT oldest change first}, and drop the images that
+ * come back deleted. An image changing during such a listing moves to its end,
+ * where the listing still reaches it. {@code changes-since} is inclusive and
+ * counts whole seconds, so the changes of the last second are listed again,
+ * which is harmless.
+ * <p/>
+ * Queries run against an immutable snapshot, indexed by each filter glance
+ * matches exactly, by owner and by size. A refresh that finds changes replaces
+ * the snapshot, so queries never wait for a refresh nor see half of one. The
+ * catalogue is as fresh as its last refresh, and callers schedule refreshes as
+ * often as their answers need.
+ */
+public class ImageCatalog {
+
+   public static Builder builder(ImageApi api, ExecutorService executor) {
+      return new Builder(api, executor);
+   }
+
+   public static class Builder {
+      private final ImageLister.Builder lister;
+
+      Builder(ImageApi api, ExecutorService executor) {
+         this.lister = ImageLister.builder(api, executor);
+      }
+
+      /**
+       * @see ImageLister.Builder#pageSize(int)
+       */
+      public Builder pageSize(int pageSize) {
+         lister.pageSize(pageSize);
+         return this;
+      }
+
+      public ImageCatalog build() {
+         return new ImageCatalog(lister.build());
+      }
+   }
+
+   /** Filters matched exactly, by the index key of an image for each. */
+   private static final Map<String, Function<ImageDetails, String>> EXACT = ImmutableMap
+         .<String, Function<ImageDetails, String>> builder() //
+         .put("name", new Function<ImageDetails, String>() {
+            @Override
+            public String apply(ImageDetails input) {
+               return input.getName();
+            }
+         }).put("status", new Function<ImageDetails, String>() {
+            @Override
+            public String apply(ImageDetails input) {
+               return input.getStatus().value().toLowerCase();
+            }
+         }).put("container_format", new Function<ImageDetails, String>() {
+            @Override
+            public String apply(ImageDetails input) {
+               return input.getContainerFormat().isPresent() ? input.getContainerFormat().get().value() : null;
+            }
+         }).put("disk_format", new Function<ImageDetails, String>() {
+            @Override
+            public String apply(ImageDetails input) {
+               return input.getDiskFormat().isPresent() ? input.getDiskFormat().get().value() : null;
+            }
+         }).put("min_ram", new Function<ImageDetails, String>() {
+            @Override
+            public String apply(ImageDetails input) {
+               return Long.toString(input.getMinRam());
+            }
+         }).put("min_disk", new Function<ImageDetails, String>() {
+            @Override
+            public String apply(ImageDetails input) {
+               return Long.toString(input.getMinDisk());
+            }
+         }).put("is_public", new Function<ImageDetails, String>() {
+            @Override
+            public String apply(ImageDetails input) {
+               return Boolean.toString(input.isPublic());
+            }
+         }).put("owner", new Function<ImageDetails, String>() {
+            @Override
+            public String apply(ImageDetails input) {
+               return input.getOwner().orNull();
+            }
+         }).build();
+
+   private static final Set<String> SUPPORTED = ImmutableSet.<String> builder().addAll(EXACT.keySet())
+         .add("size_min", "size_max", "changes-since", "sort_key", "sort_dir", "marker", "limit").build();
+
+   private static final DateService DATES = new SimpleDateFormatDateService();
+
+   private final ImageLister lister;
+   private volatile Snapshot snapshot;
+   private Date lastUpdated;
+
+   private ImageCatalog(ImageLister lister) {
+      this.lister = lister;
+   }
+
+   /**
+    * Brings the catalogue up to date, loading every image the first time.
+    * 
+    * @return the number of images added, changed or removed.
+    */
+   public synchronized int refresh() {
+      Snapshot current = snapshot;
+      if (current == null || lastUpdated == null) {
+         // nothing to list changes since
+         ImmutableList<ImageDetails> images = lister.listInDetail(new ListImageOptions()).toList();
+         snapshot = new Snapshot(images);
+         lastUpdated = latestUpdate(images, null);
+         return images.size();
+      }
+      ImmutableList<ImageDetails> changed = lister.listInDetail(
+            new ListImageOptions().changesSince(lastUpdated).sortBy(UPDATED_AT).sortAscending()).toList();
+      Map<String, ImageDetails> images = Maps.newLinkedHashMap(current.byId);
+      int changes = 0;
+      for (ImageDetails image : changed) {
+         if (isDeleted(image)) {
+            if (images.remove(image.getId()) != null) {
+               changes++;
+            }
+         } else if (!image.equals(images.put(image.getId(), image))) {
+            changes++;
+         }
+      }
+      if (changes > 0) {
+         snapshot = new Snapshot(images.values());
+      }
+      lastUpdated = latestUpdate(changed, lastUpdated);
+      return changes;
+   }
+
+   private static boolean isDeleted(ImageDetails image) {
+      return image.getDeletedAt().isPresent() || image.getStatus() == Image.Status.DELETED
+            || image.getStatus() == Image.Status.PENDING_DELETE;
+   }
+
+   private static Date latestUpdate(Iterable<ImageDetails> images, @Nullable Date latest) {
+      for (ImageDetails image : images) {
+         if (latest == null || image.getUpdatedAt().after(latest)) {
+            latest = image.getUpdatedAt();
+         }
+      }
+      return latest;
+   }
+
+   /**
+    * @return the image with this id, or null if the catalogue has none.
+    */
+   @Nullable
+   public ImageDetails get(String id) {
+      return loaded().byId.get(checkNotNull(id, "id"));
+   }
+
+   /**
+    * @return the number of images in the catalogue.
+    */
+   public int size() {
+      return loaded().byId.size();
+   }
+
+   /**
+    * Answers a query as {@link ImageApi#listInDetail(ListImageOptions)} would,
+    * except that without a {@link ListImageOptions#limit limit} every match is
+    * returned.
+    * <p/>
+    * Names, statuses, formats, minimum ram and disk and visibility match
+    * exactly, sizes fall within the inclusive range asked for, and
+    * {@link ListImageOptions#changesSince changes-since} compares with
+    * {@code updated_at}. Results are sorted as glance sorts them, by creation,
+    * newest first, unless asked otherwise, then by id.
+    * 
+    * @throws IllegalArgumentException
+    *            if the options hold a filter the catalogue cannot answer, such
+    *            as {@link ListImageOptions#isProtected protected}, which
+    *            {@link ImageDetails} does not carry, or a marker it does not
+    *            hold.
+    */
+   public ImmutableList<ImageDetails> list(ListImageOptions options) {
+      return query(checkNotNull(options, "options").buildQueryParameters(), null);
+   }
+
+   /**
+    * Like {@link #list(ListImageOptions)}, keeping only images owned by
+    * {@code owner}, a filter glance does not offer.
+    */
+   public ImmutableList<ImageDetails> listOwnedBy(String owner, ListImageOptions options) {
+      return query(checkNotNull(options, "options").buildQueryParameters(), checkNotNull(owner, "owner"));
+   }
+
+   private Snapshot loaded() {
+      Snapshot current = snapshot;
+      if (current == null) {
+         synchronized (this) {
+            if (snapshot == null) {
+               refresh();
+            }
+            current = snapshot;
+         }
+      }
+      return current;
+   }
+
+   private ImmutableList<ImageDetails> query(Multimap<String, String> query, @Nullable String owner) {
+      for (String param : query.keySet()) {
+         checkArgument(SUPPORTED.contains(param), "%s cannot be answered from the catalogue", param);
+      }
+      checkArgument(!query.containsKey("owner"), "use listOwnedBy to filter by owner");
+      Map<String, String> filters = Maps.newLinkedHashMap();
+      for (String param : EXACT.keySet()) {
+         String value = param.equals("owner") ? owner : last(query, param);
+         if (value != null) {
+            filters.put(param, normalize(param, value));
+         }
+      }
+      Long sizeMin = query.containsKey("size_min") ? Long.valueOf(last(query, "size_min")) : null;
+      Long sizeMax = query.containsKey("size_max") ? Long.valueOf(last(query, "size_max")) : null;
+      // ISO 8601, as ListImageOptions sends it to glance
+      Long changesSince = query.containsKey("changes-since") ? DATES.iso8601SecondsDateParse(
+            last(query, "changes-since")).getTime() / 1000 : null;
+
+      Snapshot current = loaded();
+      // start from the smallest index that applies, then check every filter
+      Collection<ImageDetails> candidates = current.byId.values();
+      for (Map.Entry<String, String> filter : filters.entrySet()) {
+         List<ImageDetails> indexed = current.exact.get(filter.getKey()).get(filter.getValue());
+         if (indexed.size() < candidates.size()) {
+            candidates = indexed;
+         }
+      }
+      if (sizeMin != null || sizeMax != null) {
+         List<ImageDetails> indexed = current.bySize(sizeMin, sizeMax);
+         if (indexed.size() < candidates.size()) {
+            candidates = indexed;
+         }
+      }
+      List<ImageDetails> matching = Lists.newArrayList();
+      for (ImageDetails image : candidates) {
+         if (matches(image, filters, sizeMin, sizeMax, changesSince)) {
+            matching.add(image);
+         }
+      }
+      Ordering<ImageDetails> order = order(last(query, "sort_key"), "asc".equals(last(query, "sort_dir")));
+      Collections.sort(matching, order);
+
+      String marker = last(query, "marker");
+      if (marker != null) {
+         int index = Iterables.indexOf(matching, new HasId(marker));
+         if (index == -1) {
+            ImageDetails image = current.byId.get(marker);
+            checkArgument(image != null, "marker %s is not in the catalogue", marker);
+            // a marker outside the filters still places the page
+            index = -Collections.binarySearch(matching, image, order) - 2;
+         }
+         matching = matching.subList(index + 1, matching.size());
+      }
+      String limit = last(query, "limit");
+      if (limit != null) {
+         matching = matching.subList(0, Math.min(Integer.parseInt(limit), matching.size()));
+      }
+      return ImmutableList.copyOf(matching);
+   }
+
+   private static boolean matches(ImageDetails image, Map<String, String> filters, @Nullable Long sizeMin,
+         @Nullable Long sizeMax, @Nullable Long changesSince) {
+      for (Map.Entry<String, String> filter : filters.entrySet()) {
+         if (!filter.getValue().equals(EXACT.get(filter.getKey()).apply(image))) {
+            return false;
+         }
+      }
+      if (sizeMin != null || sizeMax != null) {
+         if (!image.getSize().isPresent()) {
+            return false;
+         }
+         long size = image.getSize().get();
+         if ((sizeMin != null && size < sizeMin) || (sizeMax != null && size > sizeMax)) {
+            return false;
+         }
+      }
+      return changesSince == null || image.getUpdatedAt().getTime() / 1000 >= changesSince;
+   }
+
+   /**
+    * Glance takes the last value of a repeated parameter.
+    */
+   @Nullable
+   private static String last(Multimap<String, String> query, String param) {
+      return Iterables.getLast(query.get(param), null);
+   }
+
+   private static String normalize(String param, String value) {
+      if (param.equals("status") || param.endsWith("_format")) {
+         return value.toLowerCase();
+      } else if (param.startsWith("min_")) {
+         return Long.toString(Long.parseLong(value));
+      } else if (param.equals("is_public")) {
+         return Boolean.toString(Boolean.parseBoolean(value));
+      }
+      return value;
+   }
+
+   @SuppressWarnings({ "rawtypes", "unchecked" })
+   private static Ordering<ImageDetails> order(@Nullable String sortKey, boolean ascending) {
+      final ImageField field = sortKey == null ? ImageField.CREATED_AT : ImageField.valueOf(sortKey.toUpperCase());
+      Ordering<ImageDetails> order = ((Ordering<Comparable>) Ordering.natural().nullsFirst()).onResultOf(
+            new Function<ImageDetails, Comparable>() {
+               @Override
+               public Comparable apply(ImageDetails input) {
+                  switch (field) {
+                  case ID:
+                     return input.getId();
+                  case NAME:
+                     return input.getName();
+                  case CHECKSUM:
+                     return input.getChecksum().orNull();
+                  case SIZE:
+                     return input.getSize().orNull();
+                  case MIN_DISK:
+                     return input.getMinDisk();
+                  case MIN_RAM:
+                     return input.getMinRam();
+                  case IS_PUBLIC:
+                     return input.isPublic();
+                  case CREATED_AT:
+                     return input.getCreatedAt();
+                  case UPDATED_AT:
+                     return input.getUpdatedAt();
+                  case OWNER:
+                     return input.getOwner().orNull();
+                  case LOCATION:
+                     return input.getLocation().orNull();
+                  case STATUS:
+                     return input.getStatus().value().toLowerCase();
+                  case DISK_FORMAT:
+                     return EXACT.get("disk_format").apply(input);
+                  case CONTAINER_FORMAT:
+                     return EXACT.get("container_format").apply(input);
+                  default:
+                     throw new IllegalArgumentException("cannot sort by " + field);
+                  }
+               }
+            }).compound(Ordering.natural().onResultOf(new Function<ImageDetails, String>() {
+         @Override
+         public String apply(ImageDetails input) {
+            return input.getId();
+         }
+      }));
+      return ascending ? order : order.reverse();
+   }
+
+   private static final class HasId implements Predicate<ImageDetails> {
+      private final String id;
+
+      private HasId(String id) {
+         this.id = id;
+      }
+
+      @Override
+      public boolean apply(ImageDetails input) {
+         return input.getId().equals(id);
+      }
+   }
+
+   /**
+    * The images of the catalogue at one point in time, with their indexes.
+    */
+   private static final class Snapshot {
+      private final Map<String, ImageDetails> byId;
+      private final Map<String, ImmutableListMultimap<String, ImageDetails>> exact;
+      /** images with a size, smallest first, and their sizes. */
+      private final ImageDetails[] bySize;
+      private final long[] sizes;
+
+      private Snapshot(Iterable<ImageDetails> images) {
+         ImmutableMap.Builder<String, ImageDetails> byId = ImmutableMap.builder();
+         for (ImageDetails image : images) {
+            byId.put(image.getId(), image);
+         }
+         this.byId = byId.build();
+         ImmutableMap.Builder<String, ImmutableListMultimap<String, ImageDetails>> exact = ImmutableMap.builder();
+         for (Map.Entry<String, Function<ImageDetails, String>> key : EXACT.entrySet()) {
+            ImmutableListMultimap.Builder<String, ImageDetails> index = ImmutableListMultimap.builder();
+            for (ImageDetails image : this.byId.values()) {
+               String value = key.getValue().apply(image);
+               if (value != null) {
+                  index.put(value, image);
+               }
+            }
+            exact.put(key.getKey(), index.build());
+         }
+         this.exact = exact.build();
+         List<ImageDetails> sized = Lists.newArrayList();
+         for (ImageDetails image : this.byId.values()) {
+            if (image.getSize().isPresent()) {
+               sized.add(image);
+            }
+         }
+         this.bySize = Ordering.natural().onResultOf(new Function<ImageDetails, Long>() {
+            @Override
+            public Long apply(ImageDetails input) {
+               return input.getSize().get();
+            }
+         }).sortedCopy(sized).toArray(new ImageDetails[sized.size()]);
+         this.sizes = new long[bySize.length];
+         for (int i = 0; i < bySize.length; i++) {
+            sizes[i] = bySize[i].getSize().get();
+         }
+      }
+
+      private List<ImageDetails> bySize(@Nullable Long min, @Nullable Long max) {
+         int from = min == null ? 0 : firstAtLeast(min);
+         int to = max == null || max == Long.MAX_VALUE ? sizes.length : firstAtLeast(max + 1);
+         return from < to ? Arrays.asList(bySize).subList(from, to) : ImmutableList.<ImageDetails> of();
+      }
+
+      private int firstAtLeast(long size) {
+         int low = 0;
+         int high = sizes.length;
+         while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sizes[mid] < size) {
+               low = mid + 1;
+            } else {
+               high = mid;
+            }
+         }
+         return low;
+      }
+   }
+}
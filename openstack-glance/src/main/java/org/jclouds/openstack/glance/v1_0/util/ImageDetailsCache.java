@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0.util;
+
+import static com.google.common.base.Objects.equal;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.propagate;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.glance.v1_0.GlanceApi;
+import org.jclouds.openstack.glance.v1_0.domain.Image;
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.features.ImageApi;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Caches the {@link ImageApi#get(String) details} of images by zone and id, so
+ * that many lookups of the same image share one {@code HEAD}.
+ * <p/>
+ * A lookup of an image not cached, or cached longer than
+ * {@link Builder#expireAfter expireAfter}, waits for a {@code HEAD}, which
+ * concurrent lookups of the same image share. A lookup of an image cached
+ * longer than {@link Builder#revalidateAfter revalidateAfter} starts a
+ * {@code HEAD} that replaces it, while other lookups keep getting the cached
+ * details. Images glance does not hold are cached as such.
+ * <p/>
+ * The checksum, size and formats of an active image never change, so
+ * {@link #getActive(String, String)} answers from the last details seen
+ * active, without ever revalidating them.
+ */
+public class ImageDetailsCache {
+
+   public static Builder builder(GlanceApi api) {
+      return new Builder(api);
+   }
+
+   public static class Builder {
+      private final GlanceApi api;
+      private long maximumSize = 1000;
+      private long revalidateAfterNanos = TimeUnit.SECONDS.toNanos(30);
+      private long expireAfterNanos = TimeUnit.MINUTES.toNanos(10);
+      private Executor executor;
+      private Ticker ticker = Ticker.systemTicker();
+
+      Builder(GlanceApi api) {
+         this.api = checkNotNull(api, "api");
+      }
+
+      /**
+       * Images cached, and separately active images. Defaults to 1000.
+       */
+      public Builder maximumSize(long maximumSize) {
+         checkArgument(maximumSize > 0, "maximumSize must be positive");
+         this.maximumSize = maximumSize;
+         return this;
+      }
+
+      /**
+       * How long details are returned before a lookup sends a {@code HEAD} to
+       * revalidate them. Defaults to 30 seconds.
+       */
+      public Builder revalidateAfter(long duration, TimeUnit unit) {
+         checkArgument(duration > 0, "duration must be positive");
+         this.revalidateAfterNanos = unit.toNanos(duration);
+         return this;
+      }
+
+      /**
+       * How old details may get, when not looked up often enough to be
+       * revalidated, before lookups wait for new ones. Defaults to 10
+       * minutes.
+       */
+      public Builder expireAfter(long duration, TimeUnit unit) {
+         checkArgument(duration > 0, "duration must be positive");
+         this.expireAfterNanos = unit.toNanos(duration);
+         return this;
+      }
+
+      /**
+       * Where revalidations run. By default, the lookup that starts one runs
+       * it.
+       */
+      public Builder revalidateIn(Executor executor) {
+         this.executor = checkNotNull(executor, "executor");
+         return this;
+      }
+
+      public Builder ticker(Ticker ticker) {
+         this.ticker = checkNotNull(ticker, "ticker");
+         return this;
+      }
+
+      public ImageDetailsCache build() {
+         checkArgument(revalidateAfterNanos < expireAfterNanos, "details must be revalidated before they expire");
+         return new ImageDetailsCache(this);
+      }
+   }
+
+   private final GlanceApi api;
+   private final Executor executor;
+   private final LoadingCache<Key, Optional<ImageDetails>> details;
+   private final Cache<Key, ImageDetails> active;
+   private final AtomicLong lookupCount = new AtomicLong();
+   private final AtomicLong missCount = new AtomicLong();
+   private final AtomicLong revalidationCount = new AtomicLong();
+
+   private ImageDetailsCache(Builder builder) {
+      this.api = builder.api;
+      this.executor = builder.executor;
+      this.details = CacheBuilder.newBuilder().maximumSize(builder.maximumSize)
+            .refreshAfterWrite(builder.revalidateAfterNanos, TimeUnit.NANOSECONDS)
+            .expireAfterWrite(builder.expireAfterNanos, TimeUnit.NANOSECONDS).ticker(builder.ticker)
+            .build(new Loader());
+      this.active = CacheBuilder.newBuilder().maximumSize(builder.maximumSize).build();
+   }
+
+   /**
+    * @return the details of the image, or null if glance does not hold it.
+    */
+   @Nullable
+   public ImageDetails get(String zone, String id) {
+      lookupCount.incrementAndGet();
+      try {
+         return details.getUnchecked(new Key(zone, id)).orNull();
+      } catch (UncheckedExecutionException e) {
+         throw propagate(e.getCause());
+      }
+   }
+
+   /**
+    * Looks up an image to read its checksum, size or formats, which are
+    * fixed once it is active. An image seen active is never looked up again,
+    * so its other details are as of the first lookup, and it may since have
+    * been deleted.
+    * 
+    * @return the details of the image, or null if glance does not hold it or
+    *         it is not active.
+    */
+   @Nullable
+   public ImageDetails getActive(String zone, String id) {
+      ImageDetails image = active.getIfPresent(new Key(zone, id));
+      if (image != null) {
+         lookupCount.incrementAndGet();
+         return image;
+      }
+      image = get(zone, id);
+      return image != null && image.getStatus() == Image.Status.ACTIVE ? image : null;
+   }
+
+   /**
+    * Forgets an image, to call after changing or deleting it.
+    */
+   public void invalidate(String zone, String id) {
+      Key key = new Key(zone, id);
+      details.invalidate(key);
+      active.invalidate(key);
+   }
+
+   /**
+    * Lookups answered from the cache, including those that started a
+    * revalidation.
+    */
+   public long hitCount() {
+      return lookupCount.get() - missCount.get();
+   }
+
+   /**
+    * Lookups that waited for a {@code HEAD}.
+    */
+   public long missCount() {
+      return missCount.get();
+   }
+
+   /**
+    * {@code HEAD} requests sent to revalidate cached details.
+    */
+   public long revalidationCount() {
+      return revalidationCount.get();
+   }
+
+   private class Loader extends CacheLoader<Key, Optional<ImageDetails>> {
+
+      @Override
+      public Optional<ImageDetails> load(Key key) {
+         missCount.incrementAndGet();
+         return head(key);
+      }
+
+      @Override
+      public ListenableFuture<Optional<ImageDetails>> reload(final Key key, Optional<ImageDetails> oldValue) {
+         revalidationCount.incrementAndGet();
+         if (executor == null) {
+            return Futures.immediateFuture(head(key));
+         }
+         ListenableFutureTask<Optional<ImageDetails>> task = ListenableFutureTask
+               .create(new Callable<Optional<ImageDetails>>() {
+                  @Override
+                  public Optional<ImageDetails> call() {
+                     return head(key);
+                  }
+               });
+         executor.execute(task);
+         return task;
+      }
+   }
+
+   private Optional<ImageDetails> head(Key key) {
+      ImageDetails image = api.getImageApiForZone(key.zone).get(key.id);
+      if (image != null && image.getStatus() == Image.Status.ACTIVE) {
+         active.put(key, image);
+      } else {
+         active.invalidate(key);
+      }
+      return Optional.fromNullable(image);
+   }
+
+   private static final class Key {
+      private final String zone;
+      private final String id;
+
+      private Key(String zone, String id) {
+         this.zone = checkNotNull(zone, "zone");
+         this.id = checkNotNull(id, "id");
+      }
+
+      @Override
+      public boolean equals(Object object) {
+         if (this == object) {
+            return true;
+         }
+         if (!(object instanceof Key)) {
+            return false;
+         }
+         Key that = (Key) object;
+         return equal(zone, that.zone) && equal(id, that.id);
+      }
+
+      @Override
+      public int hashCode() {
+         return Objects.hashCode(zone, id);
+      }
+
+      @Override
+      public String toString() {
+         return zone + "/" + id;
+      }
+   }
+}
@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.io.BaseEncoding.base16;
+import static org.jclouds.http.options.GetOptions.Builder.startAt;
+import static org.jclouds.util.Closeables2.closeQuietly;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.options.GetOptions;
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.glance.v1_0.domain.Image;
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.features.ImageApi;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Writes image data straight into a file, verifying it while it streams.
+ * <p/>
+ * Data is read from the connection into a single buffer, hashed from that
+ * buffer and written from it to the channel, so it is never copied elsewhere.
+ * When the connection breaks, the download resumes where it stopped with a
+ * {@link GetOptions#startAt byte range}, continuing the same hash, so nothing is
+ * fetched twice. {@link #resume(String, File)} picks up a file left by an
+ * earlier process the same way, after hashing what it already holds.
+ * <p/>
+ * Once all {@link Image#getSize() bytes} are written, their md5 is compared
+ * with {@link Image#getChecksum() the checksum} of the image. On mismatch, an
+ * {@link IllegalStateException} is thrown, and the file is left for the caller
+ * to delete.
+ * 
+ * @see ImageApi#getAsResponse
+ */
+public class ImageDownloader {
+
+   /**
+    * Receives the progress of a download, from the thread running it.
+    */
+   public static interface ProgressListener {
+      /**
+       * @param bytesWritten
+       *           bytes of the image in the file so far.
+       * @param totalBytes
+       *           length of the image, or null if unknown.
+       */
+      void progress(long bytesWritten, @Nullable Long totalBytes);
+   }
+
+   public static Builder builder(ImageApi api) {
+      return new Builder(api);
+   }
+
+   public static class Builder {
+      private final ImageApi api;
+      private int bufferSize = 256 * 1024;
+      private int maxAttempts = 5;
+      private ProgressListener listener;
+
+      Builder(ImageApi api) {
+         this.api = checkNotNull(api, "api");
+      }
+
+      /**
+       * Size of the buffer data passes through. Defaults to 256KB.
+       */
+      public Builder bufferSize(int bufferSize) {
+         checkArgument(bufferSize > 0, "bufferSize must be positive");
+         this.bufferSize = bufferSize;
+         return this;
+      }
+
+      /**
+       * Most attempts in a row that make no progress before giving up.
+       * Defaults to 5.
+       */
+      public Builder maxAttempts(int maxAttempts) {
+         checkArgument(maxAttempts > 0, "maxAttempts must be positive");
+         this.maxAttempts = maxAttempts;
+         return this;
+      }
+
+      /**
+       * Receives progress each time the buffer is written.
+       */
+      public Builder progressListener(ProgressListener listener) {
+         this.listener = checkNotNull(listener, "listener");
+         return this;
+      }
+
+      public ImageDownloader build() {
+         return new ImageDownloader(this);
+      }
+   }
+
+   private final ImageApi api;
+   private final int bufferSize;
+   private final int maxAttempts;
+   private final ProgressListener listener;
+
+   private ImageDownloader(Builder builder) {
+      this.api = builder.api;
+      this.bufferSize = builder.bufferSize;
+      this.maxAttempts = builder.maxAttempts;
+      this.listener = builder.listener;
+   }
+
+   /**
+    * Downloads the image into {@code file}, replacing its content.
+    * 
+    * @return the image downloaded, or null if not found.
+    */
+   @Nullable
+   public ImageDetails download(String id, File file) throws IOException {
+      RandomAccessFile out = new RandomAccessFile(checkNotNull(file, "file"), "rw");
+      try {
+         return download(id, out.getChannel());
+      } finally {
+         closeQuietly(out);
+      }
+   }
+
+   /**
+    * Downloads the image into {@code channel}, from its start, replacing its
+    * content.
+    * 
+    * @return the image downloaded, or null if not found.
+    */
+   @Nullable
+   public ImageDetails download(String id, FileChannel channel) throws IOException {
+      checkNotNull(channel, "channel").truncate(0);
+      return transfer(id, channel, Hashing.md5().newHasher(), 0);
+   }
+
+   /**
+    * Continues downloading the image into {@code file}, keeping the bytes it
+    * already holds, which are hashed again to verify the whole image.
+    * 
+    * @return the image downloaded, or null if not found.
+    */
+   @Nullable
+   public ImageDetails resume(String id, File file) throws IOException {
+      RandomAccessFile out = new RandomAccessFile(checkNotNull(file, "file"), "rw");
+      try {
+         FileChannel channel = out.getChannel();
+         Hasher hasher = Hashing.md5().newHasher();
+         long position = hash(channel, hasher);
+         return transfer(id, channel, hasher, position);
+      } finally {
+         closeQuietly(out);
+      }
+   }
+
+   private ImageDetails transfer(String id, FileChannel channel, Hasher hasher, long position) throws IOException {
+      checkNotNull(id, "id");
+      ImageDetails image = api.get(id);
+      if (image == null) {
+         return null;
+      }
+      Transfer transfer = new Transfer(channel, hasher, position, image.getSize().orNull());
+      if (transfer.size != null && position > transfer.size) {
+         throw new IllegalStateException(String.format("file holds %s bytes, more than the %s of image %s",
+               position, transfer.size, id));
+      }
+      int failures = 0;
+      while (!transfer.complete()) {
+         HttpResponse response = api.getAsResponse(id, transfer.position > 0 ? startAt(transfer.position)
+               : GetOptions.NONE);
+         if (response == null) {
+            return null;
+         }
+         long before = transfer.position;
+         try {
+            transfer.copy(response);
+         } catch (IOException e) {
+            failures = transfer.position > before ? 1 : failures + 1;
+            if (failures >= maxAttempts) {
+               throw e;
+            }
+         }
+      }
+      String md5 = base16().lowerCase().encode(hasher.hash().asBytes());
+      if (image.getChecksum().isPresent() && !md5.equalsIgnoreCase(image.getChecksum().get())) {
+         throw new IllegalStateException(String.format("image %s has checksum %s, but %s was downloaded", id,
+               image.getChecksum().get(), md5));
+      }
+      channel.force(false);
+      return image;
+   }
+
+   private long hash(FileChannel channel, Hasher hasher) throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+      long position = 0;
+      for (int read = channel.read(buffer, position); read != -1; read = channel.read(buffer, position)) {
+         hasher.putBytes(buffer.array(), 0, read);
+         position += read;
+         buffer.clear();
+      }
+      return position;
+   }
+
+   /**
+    * The state of a download across its attempts.
+    */
+   private class Transfer {
+      private final FileChannel channel;
+      private final Hasher hasher;
+      private final Long size;
+      private final ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+      private long position;
+      private boolean ended;
+
+      private Transfer(FileChannel channel, Hasher hasher, long position, Long size) {
+         this.channel = channel;
+         this.hasher = hasher;
+         this.position = position;
+         this.size = size;
+      }
+
+      private boolean complete() {
+         return size != null ? position == size : ended;
+      }
+
+      /**
+       * Appends the payload of {@code response}. When this throws, the bytes
+       * received before the failure are kept, and {@link #position} is where
+       * to resume.
+       */
+      private void copy(HttpResponse response) throws IOException {
+         InputStream in = response.getPayload().getInput();
+         try {
+            if (position > 0 && response.getStatusCode() != 206) {
+               // the range was ignored, so skip what we already have
+               ByteStreams.skipFully(in, position);
+            }
+            ReadableByteChannel source = Channels.newChannel(in);
+            while (source.read(buffer) != -1) {
+               buffer.flip();
+               hasher.putBytes(buffer.array(), 0, buffer.limit());
+               while (buffer.hasRemaining()) {
+                  position += channel.write(buffer, position);
+               }
+               buffer.clear();
+               if (listener != null) {
+                  listener.progress(position, size);
+               }
+               if (size != null && position > size) {
+                  throw new IllegalStateException(String.format("received more than the %s bytes of the image",
+                        size));
+               }
+            }
+            if (size != null && position < size) {
+               throw new IOException(String.format("connection closed after %s of %s bytes", position, size));
+            }
+            ended = true;
+         } finally {
+            closeQuietly(in);
+         }
+      }
+   }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.propagate;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.jclouds.openstack.glance.v1_0.domain.Image;
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.features.ImageApi;
+import org.jclouds.openstack.glance.v1_0.options.ListImageOptions;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Lists images page by page, fetching each page in the background while the
+ * previous one is consumed.
+ * <p/>
+ * Each page is requested with the filters of the options passed, a
+ * {@link ListImageOptions#limit limit} of {@link Builder#pageSize} and the id
+ * of the last image of the previous page as {@link ListImageOptions#marker
+ * marker}. As soon as a page arrives, the next one is requested, so a consumer
+ * slower than the round trip never waits for the network after the first page.
+ * <p/>
+ * A page shorter than {@link Builder#pageSize} ends the listing, as does an
+ * empty one, so the page size must not exceed the server's
+ * {@code api_limit_max}.
+ * <p/>
+ * Summary listings stay summaries on every page. Each iteration of the
+ * returned iterables starts a new listing. An iterator abandoned before its end
+ * leaves at most one page request running, which completes on the executor
+ * and is discarded.
+ */
+public class ImageLister {
+
+   public static Builder builder(ImageApi api, ExecutorService executor) {
+      return new Builder(api, executor);
+   }
+
+   public static class Builder {
+      private final ImageApi api;
+      private final ExecutorService executor;
+      private int pageSize = 1000;
+
+      Builder(ImageApi api, ExecutorService executor) {
+         this.api = checkNotNull(api, "api");
+         this.executor = checkNotNull(executor, "executor");
+      }
+
+      /**
+       * Images requested per page. Defaults to 1000, which is glance's default
+       * {@code api_limit_max}. Servers return at most that many, whatever is
+       * asked, so larger sizes would end listings after the first page.
+       */
+      public Builder pageSize(int pageSize) {
+         checkArgument(pageSize > 0, "pageSize must be positive");
+         this.pageSize = pageSize;
+         return this;
+      }
+
+      public ImageLister build() {
+         return new ImageLister(this);
+      }
+   }
+
+   private final ImageApi api;
+   private final ExecutorService executor;
+   private final int pageSize;
+
+   private ImageLister(Builder builder) {
+      this.api = builder.api;
+      this.executor = builder.executor;
+      this.pageSize = builder.pageSize;
+   }
+
+   /**
+    * @see ImageApi#list(ListImageOptions)
+    */
+   public FluentIterable<Image> list(final ListImageOptions filters) {
+      checkNotNull(filters, "filters");
+      return new FluentIterable<Image>() {
+         @Override
+         public Iterator<Image> iterator() {
+            return new PrefetchingIterator<Image>(filters) {
+               @Override
+               protected List<Image> fetch(ListImageOptions page) {
+                  return ImmutableList.<Image> copyOf(api.list(page));
+               }
+            };
+         }
+      };
+   }
+
+   /**
+    * @see ImageApi#listInDetail(ListImageOptions)
+    */
+   public FluentIterable<ImageDetails> listInDetail(final ListImageOptions filters) {
+      checkNotNull(filters, "filters");
+      return new FluentIterable<ImageDetails>() {
+         @Override
+         public Iterator<ImageDetails> iterator() {
+            return new PrefetchingIterator<ImageDetails>(filters) {
+               @Override
+               protected List<ImageDetails> fetch(ListImageOptions page) {
+                  return ImmutableList.<ImageDetails> copyOf(api.listInDetail(page));
+               }
+            };
+         }
+      };
+   }
+
+   private abstract class PrefetchingIterator<T extends Image> extends AbstractIterator<T> {
+      private final ListImageOptions filters;
+      private Future<List<T>> next;
+      private Iterator<T> current;
+
+      private PrefetchingIterator(ListImageOptions filters) {
+         this.filters = filters;
+      }
+
+      protected abstract List<T> fetch(ListImageOptions page);
+
+      @Override
+      protected T computeNext() {
+         if (current == null) {
+            next = request(null);
+         }
+         while (current == null || !current.hasNext()) {
+            if (next == null) {
+               return endOfData();
+            }
+            List<T> page = get(next);
+            next = null;
+            // a short page is the last, so no request follows it
+            if (page.size() >= pageSize) {
+               next = request(page.get(page.size() - 1).getId());
+            }
+            current = page.iterator();
+         }
+         return current.next();
+      }
+
+      private Future<List<T>> request(final String marker) {
+         return executor.submit(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+               return fetch(filters.page(marker, pageSize));
+            }
+
+            @Override
+            public String toString() {
+               return "fetch(" + marker + ")";
+            }
+         });
+      }
+
+      private List<T> get(Future<List<T>> future) {
+         try {
+            return future.get();
+         } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw propagate(e);
+         } catch (ExecutionException e) {
+            throw propagate(e.getCause());
+         }
+      }
+   }
+}
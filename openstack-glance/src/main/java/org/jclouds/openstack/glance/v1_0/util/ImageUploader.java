@@ -0,0 +1,380 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Throwables.propagate;
+import static com.google.common.base.Throwables.propagateIfInstanceOf;
+import static com.google.common.io.BaseEncoding.base16;
+import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM;
+import static org.jclouds.util.Closeables2.closeQuietly;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.glance.v1_0.domain.Image;
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.features.ImageApi;
+import org.jclouds.openstack.glance.v1_0.options.CreateImageOptions;
+import org.jclouds.openstack.glance.v1_0.options.UpdateImageOptions;
+
+import com.google.common.base.Function;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Sends image data to glance while computing its md5, reading the source only
+ * once.
+ * <p/>
+ * The source is read into a bounded number of chunks on the executor, and each
+ * chunk is hashed as soon as it is read. The request body is streamed from the
+ * chunks, so reading and hashing the next chunks overlaps with sending the
+ * previous ones, and memory stays at {@link Builder#chunks} times
+ * {@link Builder#chunkSize}, whatever the size of the image.
+ * <p/>
+ * When glance responds, the md5 of the data sent is compared with
+ * {@link Image#getChecksum() the checksum} glance computed. On mismatch, an
+ * {@link IllegalStateException} is thrown, and the image is left for the
+ * caller to delete.
+ * 
+ * @see ImageApi#create
+ * @see ImageApi#upload
+ */
+public class ImageUploader {
+
+   /**
+    * Receives the progress of an upload, from the thread sending it.
+    */
+   public static interface ProgressListener {
+      /**
+       * @param bytesSent
+       *           bytes glance has read so far.
+       * @param totalBytes
+       *           length of the image, or null if unknown.
+       */
+      void progress(long bytesSent, @Nullable Long totalBytes);
+   }
+
+   public static Builder builder(ImageApi api, ExecutorService executor) {
+      return new Builder(api, executor);
+   }
+
+   public static class Builder {
+      private final ImageApi api;
+      private final ExecutorService executor;
+      private int chunkSize = 1024 * 1024;
+      private int chunks = 8;
+      private ProgressListener listener;
+
+      Builder(ImageApi api, ExecutorService executor) {
+         this.api = checkNotNull(api, "api");
+         this.executor = checkNotNull(executor, "executor");
+      }
+
+      /**
+       * Size of the chunks the source is read into. Defaults to 1MB.
+       */
+      public Builder chunkSize(int chunkSize) {
+         checkArgument(chunkSize > 0, "chunkSize must be positive");
+         this.chunkSize = chunkSize;
+         return this;
+      }
+
+      /**
+       * Most chunks held at once, read ahead of the one being sent. Defaults to
+       * 8.
+       */
+      public Builder chunks(int chunks) {
+         checkArgument(chunks > 1, "chunks must be at least 2 to overlap reading and sending");
+         this.chunks = chunks;
+         return this;
+      }
+
+      /**
+       * Receives progress each time a chunk is sent.
+       */
+      public Builder progressListener(ProgressListener listener) {
+         this.listener = checkNotNull(listener, "listener");
+         return this;
+      }
+
+      public ImageUploader build() {
+         return new ImageUploader(this);
+      }
+   }
+
+   private final ImageApi api;
+   private final ExecutorService executor;
+   private final int chunkSize;
+   private final int chunks;
+   private final ProgressListener listener;
+
+   private ImageUploader(Builder builder) {
+      this.api = builder.api;
+      this.executor = builder.executor;
+      this.chunkSize = builder.chunkSize;
+      this.chunks = builder.chunks;
+      this.listener = builder.listener;
+   }
+
+   /**
+    * Creates an image from the content of {@code file}.
+    * 
+    * @see ImageApi#create
+    */
+   public ImageDetails create(final String name, File file, final CreateImageOptions... options) {
+      checkNotNull(name, "name");
+      return send(open(file), file.length(), new Function<Payload, ImageDetails>() {
+         @Override
+         public ImageDetails apply(Payload payload) {
+            return api.create(name, payload, options);
+         }
+      });
+   }
+
+   /**
+    * Creates an image from {@code in}, which is closed when this method
+    * returns.
+    * 
+    * @param length
+    *           length of the image, or null if unknown, in which case the
+    *           request body is chunked.
+    * @see ImageApi#create
+    */
+   public ImageDetails create(final String name, InputStream in, @Nullable Long length,
+         final CreateImageOptions... options) {
+      checkNotNull(name, "name");
+      return send(in, length, new Function<Payload, ImageDetails>() {
+         @Override
+         public ImageDetails apply(Payload payload) {
+            return api.create(name, payload, options);
+         }
+      });
+   }
+
+   /**
+    * Uploads the content of {@code file} into a {@link ImageApi#reserve
+    * reserved} image.
+    * 
+    * @see ImageApi#upload
+    */
+   public ImageDetails upload(final String id, File file, final UpdateImageOptions... options) {
+      checkNotNull(id, "id");
+      return send(open(file), file.length(), new Function<Payload, ImageDetails>() {
+         @Override
+         public ImageDetails apply(Payload payload) {
+            return api.upload(id, payload, options);
+         }
+      });
+   }
+
+   /**
+    * Uploads {@code in} into a {@link ImageApi#reserve reserved} image. It is
+    * closed when this method returns.
+    * 
+    * @param length
+    *           length of the image, or null if unknown, in which case the
+    *           request body is chunked.
+    * @see ImageApi#upload
+    */
+   public ImageDetails upload(final String id, InputStream in, @Nullable Long length,
+         final UpdateImageOptions... options) {
+      checkNotNull(id, "id");
+      return send(in, length, new Function<Payload, ImageDetails>() {
+         @Override
+         public ImageDetails apply(Payload payload) {
+            return api.upload(id, payload, options);
+         }
+      });
+   }
+
+   private ImageDetails send(InputStream in, @Nullable Long length, Function<Payload, ImageDetails> request) {
+      checkNotNull(in, "in");
+      checkArgument(length == null || length >= 0, "length must be >= 0");
+      ChunkedStream body = new ChunkedStream(length);
+      Future<?> reader = null;
+      try {
+         reader = executor.submit(body.readerOf(in));
+         Payload payload = Payloads.newInputStreamPayload(body);
+         payload.getContentMetadata().setContentType(APPLICATION_OCTET_STREAM);
+         if (length != null) {
+            payload.getContentMetadata().setContentLength(length);
+         }
+         ImageDetails details = request.apply(payload);
+         String md5 = body.md5;
+         checkState(md5 != null, "glance responded before image %s was sent", details.getId());
+         if (details.getChecksum().isPresent() && !md5.equalsIgnoreCase(details.getChecksum().get())) {
+            throw new IllegalStateException(String.format("glance stored image %s with checksum %s, but %s was sent",
+                  details.getId(), details.getChecksum().get(), md5));
+         }
+         return details;
+      } finally {
+         if (reader != null) {
+            // stops reading when the request failed early
+            reader.cancel(true);
+         }
+         closeQuietly(in);
+      }
+   }
+
+   private static InputStream open(File file) {
+      try {
+         return new FileInputStream(checkNotNull(file, "file"));
+      } catch (FileNotFoundException e) {
+         throw propagate(e);
+      }
+   }
+
+   private static final class Chunk {
+      private static final Chunk END = new Chunk(null, 0, null);
+
+      private final byte[] data;
+      private final int length;
+      private final IOException failure;
+
+      private Chunk(byte[] data, int length, IOException failure) {
+         this.data = data;
+         this.length = length;
+         this.failure = failure;
+      }
+   }
+
+   /**
+    * The request body: chunks read and hashed on the executor, in order.
+    */
+   private class ChunkedStream extends InputStream {
+      private final Long length;
+      private final BlockingQueue<byte[]> free = new LinkedBlockingQueue<byte[]>();
+      private final BlockingQueue<Chunk> filled = new LinkedBlockingQueue<Chunk>();
+      private Chunk current;
+      private int position;
+      private long sent;
+      /** set once the whole source was hashed, before the end is queued. */
+      private volatile String md5;
+
+      private ChunkedStream(Long length) {
+         this.length = length;
+         for (int i = 0; i < chunks; i++) {
+            free.add(new byte[chunkSize]);
+         }
+      }
+
+      private Runnable readerOf(final InputStream in) {
+         return new Runnable() {
+            @Override
+            public void run() {
+               Hasher hasher = Hashing.md5().newHasher();
+               long read = 0;
+               try {
+                  while (true) {
+                     byte[] buffer = free.take();
+                     int count = ByteStreams.read(in, buffer, 0, buffer.length);
+                     if (count > 0) {
+                        hasher.putBytes(buffer, 0, count);
+                        read += count;
+                        filled.put(new Chunk(buffer, count, null));
+                     }
+                     if (count < buffer.length) {
+                        break;
+                     }
+                  }
+                  if (length != null && read != length) {
+                     throw new IOException(String.format("expected %s bytes, but the source had %s", length, read));
+                  }
+                  md5 = base16().lowerCase().encode(hasher.hash().asBytes());
+                  filled.put(Chunk.END);
+               } catch (IOException e) {
+                  filled.add(new Chunk(null, 0, e));
+               } catch (InterruptedException e) {
+                  // the request completed or failed without reading the rest
+                  Thread.currentThread().interrupt();
+               } catch (Throwable e) {
+                  // the request thread waits for a chunk, so it must see this too
+                  filled.add(new Chunk(null, 0, new IOException(e)));
+                  propagateIfInstanceOf(e, Error.class);
+               }
+            }
+         };
+      }
+
+      @Override
+      public int read() throws IOException {
+         byte[] single = new byte[1];
+         return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         if (len == 0) {
+            return 0;
+         }
+         if (current == null || position == current.length) {
+            if (current != null && current != Chunk.END) {
+               release();
+            }
+            if (current != Chunk.END) {
+               current = take();
+               position = 0;
+            }
+            if (current == Chunk.END) {
+               return -1;
+            }
+         }
+         int count = Math.min(len, current.length - position);
+         System.arraycopy(current.data, position, b, off, count);
+         position += count;
+         return count;
+      }
+
+      private Chunk take() throws IOException {
+         Chunk chunk;
+         try {
+            chunk = filled.take();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for image data");
+         }
+         if (chunk.failure != null) {
+            throw new IOException("could not read image data", chunk.failure);
+         }
+         return chunk;
+      }
+
+      private void release() {
+         sent += current.length;
+         free.add(current.data);
+         current = null;
+         if (listener != null) {
+            listener.progress(sent, length);
+         }
+      }
+   }
+}
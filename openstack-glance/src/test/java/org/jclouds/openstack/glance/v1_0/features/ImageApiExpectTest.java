@@ -16,11 +16,15 @@
  */
 package org.jclouds.openstack.glance.v1_0.features;
 
+import static org.jclouds.http.options.GetOptions.Builder.startAt;
+import static org.jclouds.openstack.glance.v1_0.options.ListImageOptions.Builder.changesSince;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
+import java.util.Date;
+
 import javax.ws.rs.core.MediaType;
 
 import org.jclouds.http.HttpRequest;
@@ -39,6 +43,7 @@ import org.jclouds.rest.ResourceNotFoundException;
 import org.jclouds.util.Strings2;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 
@@ -68,6 +73,32 @@ public class ImageApiExpectTest extends BaseGlanceApiExpectTest {
             new ParseImagesTest().expected().toString());
    }
 
+   public void testListFollowsNextLinkWithoutDetails() throws Exception {
+      HttpRequest list = HttpRequest.builder().method("GET")
+            .endpoint("https://glance.jclouds.org:9292/v1.0/images")
+            .addHeader("Accept", "application/json")
+            .addHeader("X-Auth-Token", authToken).build();
+
+      HttpResponse listResponse = HttpResponse.builder().statusCode(200)
+            .payload(payloadFromStringWithContentType("{\"images\":[{\"id\":\"1\",\"name\":\"debian\"}],"
+                  + "\"images_links\":[{\"rel\":\"next\",\"href\":"
+                  + "\"https://glance.jclouds.org:9292/v1.0/images?marker=1\"}]}", "application/json")).build();
+
+      HttpRequest listPage2 = HttpRequest.builder().method("GET")
+            .endpoint("https://glance.jclouds.org:9292/v1.0/images?marker=1")
+            .addHeader("Accept", "application/json")
+            .addHeader("X-Auth-Token", authToken).build();
+
+      HttpResponse listPage2Response = HttpResponse.builder().statusCode(200)
+            .payload(payloadFromStringWithContentType("{\"images\":[{\"id\":\"2\",\"name\":\"ubuntu\"}]}",
+                  "application/json")).build();
+
+      GlanceApi apiWhenExist = requestsSendResponses(ImmutableMap.of(keystoneAuthWithUsernameAndPassword,
+            responseWithKeystoneAccess, list, listResponse, listPage2, listPage2Response));
+
+      assertEquals(apiWhenExist.getImageApiForZone("az-1.region-a.geo-1").list().concat().size(), 2);
+   }
+
    public void testListWhenReponseIs404IsEmpty() throws Exception {
       HttpRequest list = HttpRequest.builder().method("GET")
             .endpoint("https://glance.jclouds.org:9292/v1.0/images")
@@ -101,6 +132,25 @@ public class ImageApiExpectTest extends BaseGlanceApiExpectTest {
             new ParseImagesInDetailTest().expected().toString());
    }
 
+   public void testListInDetailChangesSinceSendsIso8601() throws Exception {
+      // glance v1 parses changes-since with iso8601.parse_date, not as epoch seconds
+      HttpRequest listInDetail = HttpRequest.builder().method("GET")
+            .endpoint("https://glance.jclouds.org:9292/v1.0/images/detail")
+            .addQueryParam("changes-since", "2013-10-01T12:00:00Z")
+            .addHeader("Accept", "application/json")
+            .addHeader("X-Auth-Token", authToken).build();
+
+      HttpResponse listInDetailResponse = HttpResponse.builder().statusCode(200)
+            .payload(payloadFromResource("/images_detail.json")).build();
+
+      GlanceApi apiWhenExistInDetail = requestsSendResponses(keystoneAuthWithUsernameAndPassword,
+            responseWithKeystoneAccess, listInDetail, listInDetailResponse);
+
+      assertEquals(ImmutableSet.copyOf(apiWhenExistInDetail.getImageApiForZone("az-1.region-a.geo-1")
+            .listInDetail(changesSince(new Date(1380628800000l)))).toString(),
+            new ParseImagesInDetailTest().expected().toString());
+   }
+
    public void testListInDetailWhenReponseIs404IsEmpty() throws Exception {
       HttpRequest listInDetail = HttpRequest.builder().method("GET")
             .endpoint("https://glance.jclouds.org:9292/v1.0/images/detail")
@@ -181,6 +231,25 @@ public class ImageApiExpectTest extends BaseGlanceApiExpectTest {
       assertNull(apiWhenNoExist.getImageApiForZone("az-1.region-a.geo-1").getAsStream("fcc451d0-f6e4-4824-ad8f-70ec12326d07"));
    }
 
+   public void testGetAsResponseWithRangeWhenResponseIs206() throws Exception {
+      HttpRequest get = HttpRequest.builder().method("GET")
+            .endpoint("https://glance.jclouds.org:9292/v1.0/images/fcc451d0-f6e4-4824-ad8f-70ec12326d07")
+            .addHeader("Range", "bytes=1-")
+            .addHeader("X-Auth-Token", authToken).build();
+
+
+      HttpResponse getResponse = HttpResponse.builder().statusCode(206).addHeader("Content-Range", "bytes 1-2/3")
+            .payload(Payloads.newStringPayload("oo")).build();
+
+      GlanceApi apiWhenExist = requestsSendResponses(keystoneAuthWithUsernameAndPassword,
+            responseWithKeystoneAccess, get, getResponse);
+
+      HttpResponse response = apiWhenExist.getImageApiForZone("az-1.region-a.geo-1").getAsResponse(
+            "fcc451d0-f6e4-4824-ad8f-70ec12326d07", startAt(1));
+      assertEquals(response.getStatusCode(), 206);
+      assertEquals(Strings2.toStringAndClose(response.getPayload().getInput()), "oo");
+   }
+
    public void testCreateWhenResponseIs2xx() throws Exception {
       HttpRequest get = HttpRequest.builder().method("POST")
             .endpoint("https://glance.jclouds.org:9292/v1.0/images")
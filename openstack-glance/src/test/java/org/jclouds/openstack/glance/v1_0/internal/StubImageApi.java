@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0.internal;
+
+import static com.google.common.io.BaseEncoding.base16;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.collect.PagedIterable;
+import org.jclouds.date.DateService;
+import org.jclouds.date.internal.SimpleDateFormatDateService;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.options.GetOptions;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+import org.jclouds.openstack.glance.v1_0.domain.Image;
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.features.ImageApi;
+import org.jclouds.openstack.glance.v1_0.options.CreateImageOptions;
+import org.jclouds.openstack.glance.v1_0.options.ListImageOptions;
+import org.jclouds.openstack.glance.v1_0.options.UpdateImageOptions;
+import org.jclouds.openstack.v2_0.domain.Link;
+import org.jclouds.openstack.v2_0.domain.PaginatedCollection;
+
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * An {@link ImageApi} holding images in memory, for testing utilities built on
+ * top of it without a glance server.
+ */
+public class StubImageApi implements ImageApi {
+
+   private static final DateService DATES = new SimpleDateFormatDateService();
+
+   public final Map<String, ImageDetails> images = Maps.newConcurrentMap();
+   public final Map<String, byte[]> data = Maps.newConcurrentMap();
+   /** deleted images, which only listings with changes-since return. */
+   public final Map<String, ImageDetails> deleted = Maps.newConcurrentMap();
+   public final AtomicInteger requestCount = new AtomicInteger();
+
+   /** the checksum to store instead of the one of the data, to simulate corruption. */
+   public volatile String checksumOverride;
+
+   /** the next this many responses break after {@link #breakAfterBytes}. */
+   public final AtomicInteger brokenResponses = new AtomicInteger();
+   public volatile int breakAfterBytes;
+
+   /** the most images a listing returns, as glance's {@code api_limit_max}. */
+   public volatile int maxPageSize = 1000;
+
+   /** answer range requests with the whole image, as some servers do. */
+   public volatile boolean ignoreRanges;
+
+   public ImageDetails put(String name, byte[] content) {
+      return store(details(UUID.randomUUID().toString(), name, Image.Status.ACTIVE), content);
+   }
+
+   @Override
+   public PagedIterable<? extends Image> list() {
+      throw new UnsupportedOperationException();
+   }
+
+   @Override
+   public PaginatedCollection<? extends Image> list(ListImageOptions options) {
+      requestCount.incrementAndGet();
+      List<Image> page = Lists.newArrayList();
+      for (ImageDetails image : page(options)) {
+         page.add(Image.builder().fromImage(image).build());
+      }
+      return new PaginatedCollection<Image>(page, ImmutableSet.<Link> of()) {
+      };
+   }
+
+   @Override
+   public PagedIterable<? extends ImageDetails> listInDetail() {
+      throw new UnsupportedOperationException();
+   }
+
+   @Override
+   public PaginatedCollection<? extends ImageDetails> listInDetail(ListImageOptions options) {
+      requestCount.incrementAndGet();
+      return new PaginatedCollection<ImageDetails>(page(options), ImmutableSet.<Link> of()) {
+      };
+   }
+
+   /**
+    * Filters by name, status and changes-since, including deleted images in
+    * listings with changes-since, sorts by id unless sort_key
+    * is updated_at, and pages by marker and limit, capped at
+    * {@link #maxPageSize}.
+    */
+   private List<ImageDetails> page(ListImageOptions options) {
+      Multimap<String, String> query = options.buildQueryParameters();
+      String name = Iterables.getFirst(query.get("name"), null);
+      String status = Iterables.getFirst(query.get("status"), null);
+      String changesSince = Iterables.getFirst(query.get("changes-since"), null);
+      // glance parses changes-since as ISO 8601, failing on epoch seconds
+      Long since = changesSince != null ? DATES.iso8601SecondsDateParse(changesSince).getTime() / 1000 : null;
+      List<ImageDetails> matching = Lists.newArrayList();
+      Iterable<ImageDetails> candidates = images.values();
+      if (since != null) {
+         candidates = Iterables.concat(candidates, deleted.values());
+      }
+      for (ImageDetails image : candidates) {
+         if ((name == null || name.equals(image.getName()))
+               && (status == null || status.equalsIgnoreCase(image.getStatus().toString()))
+               && (since == null || image.getUpdatedAt().getTime() / 1000 >= since)) {
+            matching.add(image);
+         }
+      }
+      Ordering<ImageDetails> byId = Ordering.natural().onResultOf(new Function<ImageDetails, String>() {
+         @Override
+         public String apply(ImageDetails input) {
+            return input.getId();
+         }
+      });
+      Ordering<ImageDetails> order = byId;
+      if ("updated_at".equals(Iterables.getFirst(query.get("sort_key"), null))) {
+         order = Ordering.natural().onResultOf(new Function<ImageDetails, Date>() {
+            @Override
+            public Date apply(ImageDetails input) {
+               return input.getUpdatedAt();
+            }
+         }).compound(byId);
+      }
+      if (!"asc".equals(Iterables.getFirst(query.get("sort_dir"), null))) {
+         order = order.reverse();
+      }
+      Collections.sort(matching, order);
+      String marker = Iterables.getFirst(query.get("marker"), null);
+      if (marker != null) {
+         int index = 0;
+         while (index < matching.size() && !matching.get(index).getId().equals(marker)) {
+            index++;
+         }
+         matching = matching.subList(Math.min(index + 1, matching.size()), matching.size());
+      }
+      int limit = Math.min(maxPageSize, Integer.parseInt(Iterables.getFirst(query.get("limit"), "25")));
+      return ImmutableList.copyOf(Iterables.limit(matching, limit));
+   }
+
+   @Override
+   public ImageDetails get(String id) {
+      requestCount.incrementAndGet();
+      return images.get(id);
+   }
+
+   @Override
+   public InputStream getAsStream(String id) {
+      requestCount.incrementAndGet();
+      byte[] content = data.get(id);
+      return content != null ? new ByteArrayInputStream(content) : null;
+   }
+
+   @Override
+   public HttpResponse getAsResponse(String id, GetOptions options) {
+      requestCount.incrementAndGet();
+      byte[] content = data.get(id);
+      if (content == null) {
+         return null;
+      }
+      int start = 0;
+      String range = Iterables.getFirst(options.buildRequestHeaders().get("Range"), null);
+      if (range != null && !ignoreRanges) {
+         start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+      }
+      InputStream in = new ByteArrayInputStream(content, start, content.length - start);
+      if (brokenResponses.getAndDecrement() > 0) {
+         in = new SequenceInputStream(ByteStreams.limit(in, breakAfterBytes), new InputStream() {
+            @Override
+            public int read() throws IOException {
+               throw new IOException("connection reset");
+            }
+         });
+      }
+      return HttpResponse.builder().statusCode(start > 0 ? 206 : 200).payload(Payloads.newInputStreamPayload(in))
+            .build();
+   }
+
+   @Override
+   public ImageDetails create(String name, Payload payload, CreateImageOptions... options) {
+      requestCount.incrementAndGet();
+      return store(details(UUID.randomUUID().toString(), name, Image.Status.ACTIVE), read(payload));
+   }
+
+   @Override
+   public ImageDetails reserve(String name, CreateImageOptions... options) {
+      requestCount.incrementAndGet();
+      ImageDetails image = details(UUID.randomUUID().toString(), name, Image.Status.QUEUED);
+      images.put(image.getId(), image);
+      return image;
+   }
+
+   @Override
+   public ImageDetails upload(String id, Payload imageData, UpdateImageOptions... options) {
+      requestCount.incrementAndGet();
+      ImageDetails image = images.get(id);
+      if (image == null || image.getStatus() != Image.Status.QUEUED) {
+         throw new IllegalStateException("image " + id + " is not queued");
+      }
+      return store(image, read(imageData));
+   }
+
+   @Override
+   public ImageDetails update(String id, UpdateImageOptions... options) {
+      throw new UnsupportedOperationException();
+   }
+
+   @Override
+   public boolean delete(String id) {
+      requestCount.incrementAndGet();
+      data.remove(id);
+      ImageDetails image = images.remove(id);
+      if (image == null) {
+         return false;
+      }
+      Date now = new Date();
+      deleted.put(id, image.toBuilder().status(Image.Status.DELETED).updatedAt(now).deletedAt(now).build());
+      return true;
+   }
+
+   private ImageDetails store(ImageDetails image, byte[] content) {
+      String checksum = checksumOverride != null ? checksumOverride : base16().lowerCase().encode(
+            Hashing.md5().hashBytes(content).asBytes());
+      ImageDetails stored = image.toBuilder().status(Image.Status.ACTIVE).size((long) content.length)
+            .checksum(checksum).updatedAt(new Date()).build();
+      images.put(stored.getId(), stored);
+      data.put(stored.getId(), content);
+      return stored;
+   }
+
+   private static ImageDetails details(String id, String name, Image.Status status) {
+      Date now = new Date();
+      return ImageDetails.builder().id(id).name(name).status(status).createdAt(now).updatedAt(now).build();
+   }
+
+   private static byte[] read(Payload payload) {
+      InputStream in = payload.getInput();
+      try {
+         return ByteStreams.toByteArray(in);
+      } catch (IOException e) {
+         throw Throwables.propagate(e);
+      } finally {
+         try {
+            in.close();
+         } catch (IOException ignored) {
+         }
+      }
+   }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0.util;
+
+import static org.jclouds.openstack.glance.v1_0.options.ListImageOptions.Builder.changesSince;
+import static org.jclouds.openstack.glance.v1_0.options.ListImageOptions.Builder.diskFormat;
+import static org.jclouds.openstack.glance.v1_0.options.ListImageOptions.Builder.isProtected;
+import static org.jclouds.openstack.glance.v1_0.options.ListImageOptions.Builder.minSize;
+import static org.jclouds.openstack.glance.v1_0.options.ListImageOptions.Builder.name;
+import static org.jclouds.openstack.glance.v1_0.options.ListImageOptions.Builder.sortBy;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jclouds.openstack.glance.v1_0.domain.DiskFormat;
+import org.jclouds.openstack.glance.v1_0.domain.Image;
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.internal.StubImageApi;
+import org.jclouds.openstack.glance.v1_0.options.ImageField;
+import org.jclouds.openstack.glance.v1_0.options.ListImageOptions;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+@Test(groups = "unit", testName = "ImageCatalogTest", singleThreaded = true)
+public class ImageCatalogTest {
+
+   private StubImageApi api;
+   private ExecutorService executor;
+   private ImageCatalog catalog;
+
+   @BeforeMethod
+   public void setUp() {
+      api = new StubImageApi();
+      // sizes 1 to 25, qcow2 when a multiple of 5, owned by the parity
+      for (int i = 1; i <= 25; i++) {
+         ImageDetails image = api.put(i % 2 == 0 ? "even" : "odd", new byte[i]);
+         api.images.put(image.getId(), image.toBuilder().owner(i % 2 == 0 ? "alice" : "bob")
+               .diskFormat(i % 5 == 0 ? DiskFormat.QCOW2 : DiskFormat.RAW).build());
+      }
+      executor = Executors.newSingleThreadExecutor();
+      catalog = ImageCatalog.builder(api, executor).pageSize(10).build();
+   }
+
+   @AfterMethod(alwaysRun = true)
+   public void tearDown() {
+      executor.shutdownNow();
+   }
+
+   public void testAnswersLikeTheServerWithoutRequests() {
+      assertEquals(catalog.refresh(), 25);
+      int requests = api.requestCount.get();
+
+      ListImageOptions odd = name("odd").status(Image.Status.ACTIVE).sortBy(ImageField.ID).limit(100);
+      assertEquals(catalog.list(odd), api.listInDetail(odd).toList());
+      ListImageOptions page = sortBy(ImageField.ID).sortAscending().marker(catalog.list(odd).get(3).getId())
+            .limit(5);
+      assertEquals(catalog.list(page), api.listInDetail(page).toList());
+
+      // only the two listings made here
+      assertEquals(api.requestCount.get(), requests + 2);
+   }
+
+   public void testIndexesFormatsSizesAndOwners() {
+      assertEquals(catalog.list(diskFormat(DiskFormat.QCOW2)).size(), 5);
+      assertEquals(sizes(catalog.list(minSize(20).maxSize(22).sortBy(ImageField.SIZE).sortAscending())),
+            ImmutableList.of(20L, 21L, 22L));
+      assertEquals(sizes(catalog.list(minSize(24).sortBy(ImageField.SIZE))), ImmutableList.of(25L, 24L));
+      assertEquals(catalog.list(minSize(26)).size(), 0);
+      assertEquals(catalog.listOwnedBy("alice", diskFormat(DiskFormat.QCOW2)).size(), 2);
+      assertEquals(catalog.listOwnedBy("carol", new ListImageOptions()).size(), 0);
+   }
+
+   public void testAnswersChangesSinceAsSent() {
+      assertEquals(catalog.list(changesSince(new Date(0))).size(), 25);
+      assertEquals(catalog.list(changesSince(new Date(System.currentTimeMillis() + 3600000))).size(), 0);
+   }
+
+   public void testRefreshAppliesChangesAndDeletions() {
+      catalog.refresh();
+      List<ImageDetails> odd = catalog.list(name("odd").sortBy(ImageField.ID));
+      ImageDetails renamed = odd.get(0);
+      ImageDetails deleted = odd.get(1);
+      api.images.put(renamed.getId(), renamed.toBuilder().name("renamed").updatedAt(new Date()).build());
+      api.delete(deleted.getId());
+      ImageDetails added = api.put("new", new byte[] { 1 });
+
+      assertEquals(catalog.refresh(), 3);
+      assertEquals(catalog.list(name("renamed")), ImmutableList.of(api.images.get(renamed.getId())));
+      assertNull(catalog.get(deleted.getId()));
+      assertEquals(catalog.get(added.getId()), added);
+      assertEquals(catalog.size(), 25);
+      assertEquals(catalog.list(name("odd")).size(), 11);
+
+      // the last second is listed again, but changes nothing
+      assertEquals(catalog.refresh(), 0);
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void testRejectsFiltersItCannotAnswer() {
+      catalog.list(isProtected(true));
+   }
+
+   private static List<Long> sizes(List<ImageDetails> images) {
+      ImmutableList.Builder<Long> sizes = ImmutableList.builder();
+      for (ImageDetails image : images) {
+         sizes.add(image.getSize().get());
+      }
+      return sizes.build();
+   }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.openstack.glance.v1_0.GlanceApi;
+import org.jclouds.openstack.glance.v1_0.domain.Image;
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.features.ImageApi;
+import org.jclouds.openstack.glance.v1_0.internal.StubImageApi;
+import org.jclouds.openstack.v2_0.features.ExtensionApi;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSet;
+
+@Test(groups = "unit", testName = "ImageDetailsCacheTest", singleThreaded = true)
+public class ImageDetailsCacheTest {
+
+   private StubImageApi zone1;
+   private StubImageApi zone2;
+   private final AtomicLong nanos = new AtomicLong();
+   private ImageDetailsCache cache;
+
+   @BeforeMethod
+   public void setUp() {
+      zone1 = new StubImageApi();
+      zone2 = new StubImageApi();
+      nanos.set(0);
+      cache = ImageDetailsCache.builder(new GlanceApi() {
+         @Override
+         public Set<String> getConfiguredZones() {
+            return ImmutableSet.of("zone1", "zone2");
+         }
+
+         @Override
+         public ExtensionApi getExtensionApiForZone(String zone) {
+            throw new UnsupportedOperationException();
+         }
+
+         @Override
+         public ImageApi getImageApiForZone(String zone) {
+            return zone.equals("zone1") ? zone1 : zone2;
+         }
+
+         @Override
+         public void close() {
+         }
+      }).revalidateAfter(30, TimeUnit.SECONDS).expireAfter(10, TimeUnit.MINUTES).ticker(new Ticker() {
+         @Override
+         public long read() {
+            return nanos.get();
+         }
+      }).build();
+   }
+
+   public void testLookupsShareOneHead() {
+      ImageDetails image = zone1.put("image", new byte[] { 1 });
+
+      for (int i = 0; i < 1000; i++) {
+         assertEquals(cache.get("zone1", image.getId()), image);
+      }
+      assertEquals(zone1.requestCount.get(), 1);
+      assertEquals(cache.missCount(), 1);
+      assertEquals(cache.hitCount(), 999);
+   }
+
+   public void testKeysByZone() {
+      ImageDetails image = zone1.put("image", new byte[] { 1 });
+
+      assertNull(cache.get("zone2", image.getId()));
+      assertEquals(cache.get("zone1", image.getId()), image);
+      assertNull(cache.get("zone2", image.getId()));
+      assertEquals(zone2.requestCount.get(), 1);
+   }
+
+   public void testRevalidatesMutableDetails() {
+      ImageDetails image = zone1.put("image", new byte[] { 1 });
+      cache.get("zone1", image.getId());
+      ImageDetails renamed = image.toBuilder().name("renamed").build();
+      zone1.images.put(image.getId(), renamed);
+
+      nanos.addAndGet(TimeUnit.SECONDS.toNanos(29));
+      assertEquals(cache.get("zone1", image.getId()), image);
+      nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+      assertEquals(cache.get("zone1", image.getId()), renamed);
+      assertEquals(cache.revalidationCount(), 1);
+      assertEquals(cache.missCount(), 1);
+
+      zone1.delete(image.getId());
+      nanos.addAndGet(TimeUnit.MINUTES.toNanos(11));
+      assertNull(cache.get("zone1", image.getId()));
+      assertEquals(cache.missCount(), 2);
+   }
+
+   public void testActiveImagesAreNeverRevalidated() {
+      ImageDetails image = zone1.put("image", new byte[] { 1 });
+      ImageDetails queued = zone1.reserve("queued");
+      assertEquals(cache.getActive("zone1", image.getId()), image);
+      assertNull(cache.getActive("zone1", queued.getId()));
+      int requests = zone1.requestCount.get();
+
+      nanos.addAndGet(TimeUnit.HOURS.toNanos(1));
+      for (int i = 0; i < 10; i++) {
+         assertEquals(cache.getActive("zone1", image.getId()).getChecksum(), image.getChecksum());
+      }
+      assertEquals(zone1.requestCount.get(), requests);
+
+      cache.invalidate("zone1", image.getId());
+      zone1.images.put(image.getId(), image.toBuilder().status(Image.Status.KILLED).build());
+      assertNull(cache.getActive("zone1", image.getId()));
+   }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.internal.StubImageApi;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.io.Files;
+
+@Test(groups = "unit", testName = "ImageDownloaderTest", singleThreaded = true)
+public class ImageDownloaderTest {
+
+   private static final byte[] CONTENT = new byte[10000];
+   static {
+      new Random(1).nextBytes(CONTENT);
+   }
+
+   private StubImageApi api;
+   private ImageDetails image;
+   private File file;
+
+   @BeforeMethod
+   public void setUp() throws IOException {
+      api = new StubImageApi();
+      image = api.put("test", CONTENT);
+      file = File.createTempFile("image", ".raw");
+   }
+
+   @AfterMethod(alwaysRun = true)
+   public void tearDown() {
+      file.delete();
+   }
+
+   public void testDownloadReplacesFile() throws IOException {
+      Files.write(new byte[20000], file);
+
+      assertEquals(ImageDownloader.builder(api).bufferSize(4096).build().download(image.getId(), file), image);
+
+      assertEquals(Files.toByteArray(file), CONTENT);
+   }
+
+   public void testResumesAfterBrokenConnection() throws IOException {
+      api.brokenResponses.set(2);
+      api.breakAfterBytes = 3000;
+
+      ImageDownloader.builder(api).bufferSize(1000).build().download(image.getId(), file);
+
+      assertEquals(Files.toByteArray(file), CONTENT);
+      // head, then three gets: 3000 bytes, 3000 more, and the rest
+      assertEquals(api.requestCount.get(), 4);
+   }
+
+   public void testResumesWhenRangesAreIgnored() throws IOException {
+      api.brokenResponses.set(1);
+      api.breakAfterBytes = 3000;
+      api.ignoreRanges = true;
+
+      ImageDownloader.builder(api).bufferSize(1000).build().download(image.getId(), file);
+
+      assertEquals(Files.toByteArray(file), CONTENT);
+   }
+
+   public void testResumesPartialFile() throws IOException {
+      Files.write(Arrays.copyOf(CONTENT, 6000), file);
+
+      ImageDownloader.builder(api).build().resume(image.getId(), file);
+
+      assertEquals(Files.toByteArray(file), CONTENT);
+   }
+
+   public void testGivesUpWithoutProgress() throws IOException {
+      api.brokenResponses.set(3);
+      api.breakAfterBytes = 0;
+      try {
+         ImageDownloader.builder(api).maxAttempts(3).build().download(image.getId(), file);
+         fail("expected the download to fail");
+      } catch (IOException expected) {
+      }
+   }
+
+   public void testChecksumMismatchFails() throws IOException {
+      Files.write(new byte[6000], file);
+      try {
+         ImageDownloader.builder(api).build().resume(image.getId(), file);
+         fail("expected the checksum to mismatch");
+      } catch (IllegalStateException expected) {
+      }
+   }
+
+   public void testNotFoundIsNull() throws IOException {
+      assertNull(ImageDownloader.builder(api).build().download("missing", file));
+   }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0.util;
+
+import static org.jclouds.openstack.glance.v1_0.options.ListImageOptions.Builder.name;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jclouds.openstack.glance.v1_0.domain.Image;
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.internal.StubImageApi;
+import org.jclouds.openstack.glance.v1_0.options.ListImageOptions;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+@Test(groups = "unit", testName = "ImageListerTest", singleThreaded = true)
+public class ImageListerTest {
+
+   private StubImageApi api;
+   private ExecutorService executor;
+
+   @BeforeMethod
+   public void setUp() {
+      api = new StubImageApi();
+      for (int i = 0; i < 25; i++) {
+         api.put(i % 2 == 0 ? "even" : "odd", new byte[] { (byte) i });
+      }
+      executor = Executors.newSingleThreadExecutor();
+   }
+
+   @AfterMethod(alwaysRun = true)
+   public void tearDown() {
+      executor.shutdownNow();
+   }
+
+   public void testListKeepsSummariesAcrossPages() {
+      List<Image> images = ImageLister.builder(api, executor).pageSize(10).build().list(new ListImageOptions())
+            .toList();
+
+      // 10, 10, then a short page
+      assertEquals(api.requestCount.get(), 3);
+      assertEquals(images.size(), 25);
+      assertEquals(ImmutableList.copyOf(images), api.list(new ListImageOptions().limit(100)).toList());
+      for (Image image : images) {
+         assertFalse(image instanceof ImageDetails, image.toString());
+      }
+   }
+
+   public void testListInDetailKeepsFilters() {
+      List<ImageDetails> images = ImageLister.builder(api, executor).pageSize(5).build().listInDetail(name("odd"))
+            .toList();
+
+      assertEquals(images.size(), 12);
+      for (ImageDetails image : images) {
+         assertEquals(image.getName(), "odd");
+      }
+   }
+
+   public void testFollowsPagesUpToServerCap() {
+      api.maxPageSize = 4;
+
+      assertEquals(ImageLister.builder(api, executor).pageSize(4).build().listInDetail(new ListImageOptions())
+            .size(), 25);
+      assertEquals(api.requestCount.get(), 7);
+   }
+
+   public void testShortFirstPageIsLast() {
+      assertEquals(ImageLister.builder(api, executor).pageSize(100).build().list(new ListImageOptions()).size(),
+            25);
+      assertEquals(api.requestCount.get(), 1);
+   }
+
+   public void testPrefetchesNextPage() throws InterruptedException {
+      Iterator<Image> images = ImageLister.builder(api, executor).pageSize(10).build().list(new ListImageOptions())
+            .iterator();
+      images.next();
+
+      for (int i = 0; i < 100 && api.requestCount.get() < 2; i++) {
+         Thread.sleep(10);
+      }
+      assertEquals(api.requestCount.get(), 2);
+   }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.glance.v1_0.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jclouds.openstack.glance.v1_0.domain.ImageDetails;
+import org.jclouds.openstack.glance.v1_0.internal.StubImageApi;
+import org.jclouds.openstack.glance.v1_0.util.ImageUploader.ProgressListener;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+@Test(groups = "unit", testName = "ImageUploaderTest", singleThreaded = true)
+public class ImageUploaderTest {
+
+   private static final byte[] CONTENT = new byte[10000];
+   static {
+      new Random(1).nextBytes(CONTENT);
+   }
+
+   private StubImageApi api;
+   private ExecutorService executor;
+
+   @BeforeMethod
+   public void setUp() {
+      api = new StubImageApi();
+      executor = Executors.newSingleThreadExecutor();
+   }
+
+   @AfterMethod(alwaysRun = true)
+   public void tearDown() {
+      executor.shutdownNow();
+   }
+
+   public void testCreateFromFileReportsProgress() throws IOException {
+      File file = File.createTempFile("image", ".raw");
+      try {
+         Files.write(CONTENT, file);
+         final List<Long> progress = Lists.newArrayList();
+         ImageUploader uploader = ImageUploader.builder(api, executor).chunkSize(4096).chunks(2)
+               .progressListener(new ProgressListener() {
+                  @Override
+                  public void progress(long bytesSent, Long totalBytes) {
+                     assertEquals(totalBytes, Long.valueOf(CONTENT.length));
+                     progress.add(bytesSent);
+                  }
+               }).build();
+
+         ImageDetails image = uploader.create("test", file);
+
+         assertEquals(api.data.get(image.getId()), CONTENT);
+         assertEquals(progress, ImmutableList.of(4096l, 8192l, 10000l));
+      } finally {
+         file.delete();
+      }
+   }
+
+   public void testUploadOfUnknownLengthClosesStream() {
+      ImageDetails reserved = api.reserve("test");
+      final AtomicBoolean closed = new AtomicBoolean();
+      InputStream in = new ByteArrayInputStream(CONTENT) {
+         @Override
+         public void close() {
+            closed.set(true);
+         }
+      };
+
+      ImageDetails image = ImageUploader.builder(api, executor).chunkSize(1000).build().upload(reserved.getId(), in,
+            null);
+
+      assertEquals(image.getSize().get(), Long.valueOf(CONTENT.length));
+      assertEquals(api.data.get(reserved.getId()), CONTENT);
+      assertTrue(closed.get());
+   }
+
+   public void testChecksumMismatchFails() {
+      api.checksumOverride = "00000000000000000000000000000000";
+      try {
+         ImageUploader.builder(api, executor).build().create("test", new ByteArrayInputStream(CONTENT),
+               (long) CONTENT.length);
+         fail("expected the checksum to mismatch");
+      } catch (IllegalStateException expected) {
+         assertTrue(expected.getMessage().contains("00000000000000000000000000000000"), expected.getMessage());
+      }
+   }
+
+   public void testShortSourceFailsRequest() {
+      try {
+         ImageUploader.builder(api, executor).build().create("test", new ByteArrayInputStream(CONTENT),
+               CONTENT.length + 1l);
+         fail("expected the upload to fail");
+      } catch (RuntimeException expected) {
+         assertFalse(expected instanceof IllegalStateException, expected.toString());
+      }
+      assertTrue(api.images.isEmpty());
+   }
+
+   public void testSourceRuntimeExceptionFailsRequest() {
+      InputStream in = new InputStream() {
+         @Override
+         public int read() {
+            throw new IllegalArgumentException("broken source");
+         }
+      };
+      try {
+         ImageUploader.builder(api, executor).build().create("test", in, null);
+         fail("expected the upload to fail");
+      } catch (RuntimeException expected) {
+         assertFalse(expected instanceof IllegalStateException, expected.toString());
+      }
+      assertTrue(api.images.isEmpty());
+   }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.benchmark;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Random;
+
+/**
+ * Chooses which of {@code keys} objects an operation targets.
+ */
+public abstract class KeyDistribution {
+
+   protected final int keys;
+
+   protected KeyDistribution(int keys) {
+      checkArgument(keys > 0, "keys must be positive");
+      this.keys = keys;
+   }
+
+   /** @return a key in {@code [0, keys)}. */
+   public abstract int next(Random random);
+
+   public static KeyDistribution uniform(int keys) {
+      return new KeyDistribution(keys) {
+         @Override
+         public int next(Random random) {
+            return random.nextInt(this.keys);
+         }
+
+         @Override
+         public String toString() {
+            return "uniform(" + this.keys + ")";
+         }
+      };
+   }
+
+   /**
+    * Zipfian, so that key 0 is the most popular; {@code theta} of 0.99 matches
+    * the skew commonly used by cloud serving benchmarks.
+    */
+   public static KeyDistribution zipfian(int keys, double theta) {
+      return new Zipfian(keys, theta);
+   }
+
+   /**
+    * Gray et al., "Quickly Generating Billion-Record Synthetic Databases",
+    * which draws in constant time after computing zeta once.
+    */
+   private static class Zipfian extends KeyDistribution {
+      private final double theta;
+      private final double alpha;
+      private final double zetan;
+      private final double eta;
+
+      Zipfian(int keys, double theta) {
+         super(keys);
+         checkArgument(theta > 0 && theta < 1, "theta must be between 0 and 1 exclusive");
+         this.theta = theta;
+         this.alpha = 1 / (1 - theta);
+         this.zetan = zeta(keys, theta);
+         this.eta = (1 - Math.pow(2.0 / keys, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+      }
+
+      private static double zeta(int n, double theta) {
+         double sum = 0;
+         for (int i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+         }
+         return sum;
+      }
+
+      @Override
+      public int next(Random random) {
+         double u = random.nextDouble();
+         double uz = u * zetan;
+         if (uz < 1) {
+            return 0;
+         }
+         if (uz < 1 + Math.pow(0.5, theta)) {
+            return Math.min(1, keys - 1);
+         }
+         return Math.min(keys - 1, (int) (keys * Math.pow(eta * u - eta + 1, alpha)));
+      }
+
+      @Override
+      public String toString() {
+         return "zipfian(" + keys + ", " + theta + ")";
+      }
+   }
+}
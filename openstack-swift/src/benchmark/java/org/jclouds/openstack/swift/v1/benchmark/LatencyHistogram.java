@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.benchmark;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Log-linear histogram of latencies in nanoseconds: each power of two is split
+ * into 32 linear buckets, so recorded values are accurate to about 3%.
+ * Recording does not allocate. Not thread-safe; keep one per thread and
+ * {@link #add} them together.
+ */
+public final class LatencyHistogram {
+
+   private static final int SUB_BUCKET_BITS = 6;
+   private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+   private static final int HALF = SUB_BUCKETS / 2;
+
+   private final long[] counts = new long[SUB_BUCKETS + (63 - SUB_BUCKET_BITS + 1) * HALF];
+   private long count;
+   private long max;
+   private double sum;
+
+   public void record(long nanos) {
+      checkArgument(nanos >= 0, "nanos must not be negative");
+      counts[index(nanos)]++;
+      count++;
+      sum += nanos;
+      max = Math.max(max, nanos);
+   }
+
+   public void add(LatencyHistogram other) {
+      for (int i = 0; i < counts.length; i++) {
+         counts[i] += other.counts[i];
+      }
+      count += other.count;
+      sum += other.sum;
+      max = Math.max(max, other.max);
+   }
+
+   public long count() {
+      return count;
+   }
+
+   public long maxNanos() {
+      return max;
+   }
+
+   public double meanNanos() {
+      return count == 0 ? 0 : sum / count;
+   }
+
+   /**
+    * @param quantile
+    *           such as {@code 0.999}
+    * @return the upper bound of the bucket holding that quantile.
+    */
+   public long percentileNanos(double quantile) {
+      checkArgument(quantile >= 0 && quantile <= 1, "quantile must be between 0 and 1");
+      if (count == 0) {
+         return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(quantile * count));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+         seen += counts[i];
+         if (seen >= rank) {
+            return Math.min(max, upperBound(i));
+         }
+      }
+      return max;
+   }
+
+   static int index(long value) {
+      if (value < SUB_BUCKETS) {
+         return (int) value;
+      }
+      // value >>> shift keeps its top SUB_BUCKET_BITS bits, of which the first is always set
+      int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+      return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+   }
+
+   static long upperBound(int index) {
+      if (index < SUB_BUCKETS) {
+         return index;
+      }
+      int shift = (index - SUB_BUCKETS) / HALF + 1;
+      long subBucket = (index - SUB_BUCKETS) % HALF + HALF;
+      return ((subBucket + 1) << shift) - 1;
+   }
+}
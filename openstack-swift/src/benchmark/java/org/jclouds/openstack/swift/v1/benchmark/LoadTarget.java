@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.benchmark;
+
+import static org.jclouds.blobstore.options.ListContainerOptions.Builder.maxResults;
+import static org.jclouds.openstack.swift.v1.options.ListContainerOptions.Builder.limit;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.http.options.GetOptions;
+import org.jclouds.io.Payload;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.io.BufferPool;
+import org.jclouds.util.Closeables2;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * The client layer under test.
+ */
+public abstract class LoadTarget {
+
+   public abstract void put(String name, byte[] buffer, int length);
+
+   /**
+    * reads the object fully into {@code scratch}, overwriting as it goes.
+    *
+    * @return bytes read, or -1 if the object was not found.
+    */
+   public abstract long get(String name, byte[] scratch) throws IOException;
+
+   /** @return false if the object was not found. */
+   public abstract boolean head(String name);
+
+   /** @return entries listed. */
+   public abstract int list(int limit);
+
+   public abstract void delete(String name);
+
+   static LoadTarget forApi(final ObjectApi objectApi) {
+      return new LoadTarget() {
+         @Override
+         public void put(String name, byte[] buffer, int length) {
+            objectApi.replace(name, BufferPool.newPayload(buffer, length), ImmutableMap.<String, String> of());
+         }
+
+         @Override
+         public long get(String name, byte[] scratch) throws IOException {
+            SwiftObject object = objectApi.get(name, GetOptions.NONE);
+            return object == null ? -1 : drain(object.payload(), scratch);
+         }
+
+         @Override
+         public boolean head(String name) {
+            return objectApi.head(name) != null;
+         }
+
+         @Override
+         public int list(int limit) {
+            return objectApi.list(limit(limit)).size();
+         }
+
+         @Override
+         public void delete(String name) {
+            objectApi.delete(name);
+         }
+
+         @Override
+         public String toString() {
+            return "api";
+         }
+      };
+   }
+
+   static LoadTarget forBlobStore(final BlobStore blobStore, final String container) {
+      return new LoadTarget() {
+         @Override
+         public void put(String name, byte[] buffer, int length) {
+            blobStore.putBlob(container, blobStore.blobBuilder(name).payload(BufferPool.newPayload(buffer, length))
+                  .build());
+         }
+
+         @Override
+         public long get(String name, byte[] scratch) throws IOException {
+            Blob blob = blobStore.getBlob(container, name);
+            return blob == null ? -1 : drain(blob.getPayload(), scratch);
+         }
+
+         @Override
+         public boolean head(String name) {
+            return blobStore.blobMetadata(container, name) != null;
+         }
+
+         @Override
+         public int list(int limit) {
+            return blobStore.list(container, maxResults(limit)).size();
+         }
+
+         @Override
+         public void delete(String name) {
+            blobStore.removeBlob(container, name);
+         }
+
+         @Override
+         public String toString() {
+            return "blobstore";
+         }
+      };
+   }
+
+   static long drain(Payload payload, byte[] scratch) throws IOException {
+      InputStream in = payload.getInput();
+      try {
+         long total = 0;
+         for (int read = in.read(scratch); read != -1; read = in.read(scratch)) {
+            total += read;
+         }
+         return total;
+      } finally {
+         Closeables2.closeQuietly(in);
+      }
+   }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.benchmark;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+
+/**
+ * Sizes, in bytes, of objects written by the workload.
+ */
+public abstract class SizeDistribution {
+
+   /** @return a size no larger than {@link #max()}. */
+   public abstract int next(Random random);
+
+   public abstract int max();
+
+   public static SizeDistribution fixed(final int size) {
+      checkArgument(size >= 0, "size must not be negative");
+      return new SizeDistribution() {
+         @Override
+         public int next(Random random) {
+            return size;
+         }
+
+         @Override
+         public int max() {
+            return size;
+         }
+
+         @Override
+         public String toString() {
+            return "fixed:" + size;
+         }
+      };
+   }
+
+   public static SizeDistribution uniform(final int min, final int max) {
+      checkArgument(min >= 0 && max >= min, "expected 0 <= min <= max, was %s, %s", min, max);
+      return new SizeDistribution() {
+         @Override
+         public int next(Random random) {
+            return min + random.nextInt(max - min + 1);
+         }
+
+         @Override
+         public int max() {
+            return max;
+         }
+
+         @Override
+         public String toString() {
+            return "uniform:" + min + "-" + max;
+         }
+      };
+   }
+
+   /** picks one of {@code sizes} with equal probability. */
+   public static SizeDistribution choice(final List<Integer> sizes) {
+      checkArgument(!sizes.isEmpty(), "sizes must not be empty");
+      final int[] choices = Ints.toArray(sizes);
+      return new SizeDistribution() {
+         @Override
+         public int next(Random random) {
+            return choices[random.nextInt(choices.length)];
+         }
+
+         @Override
+         public int max() {
+            return Ints.max(choices);
+         }
+
+         @Override
+         public String toString() {
+            return "choice:" + sizes;
+         }
+      };
+   }
+
+   /**
+    * @param spec
+    *           {@code fixed:4096}, {@code uniform:1024-1048576} or
+    *           {@code choice:1024,65536,1048576}
+    */
+   public static SizeDistribution parse(String spec) {
+      List<String> parts = Splitter.on(':').trimResults().limit(2).splitToList(spec);
+      checkArgument(parts.size() == 2, "expected kind:values, was %s", spec);
+      if (parts.get(0).equals("fixed")) {
+         return fixed(Integer.parseInt(parts.get(1)));
+      } else if (parts.get(0).equals("uniform")) {
+         List<String> range = Splitter.on('-').trimResults().splitToList(parts.get(1));
+         return uniform(Integer.parseInt(range.get(0)), Integer.parseInt(range.get(1)));
+      } else if (parts.get(0).equals("choice")) {
+         ImmutableList.Builder<Integer> sizes = ImmutableList.builder();
+         for (String size : Splitter.on(',').trimResults().split(parts.get(1))) {
+            sizes.add(Integer.parseInt(size));
+         }
+         return choice(sizes.build());
+      }
+      throw new IllegalArgumentException("unknown size distribution " + spec);
+   }
+}
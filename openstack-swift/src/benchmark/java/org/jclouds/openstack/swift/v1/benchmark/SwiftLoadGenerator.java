@@ -0,0 +1,341 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.benchmark;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.benchmark.Workload.Operation;
+import org.jclouds.openstack.swift.v1.blobstore.RegionScopedBlobStoreContext;
+import org.jclouds.openstack.swift.v1.internal.SwiftStandInServer;
+import org.jclouds.openstack.swift.v1.options.CreateContainerOptions;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+/**
+ * Drives a {@link Workload} through {@link SwiftApi} or
+ * {@link org.jclouds.openstack.swift.v1.blobstore.RegionScopedSwiftBlobStore}
+ * and reports throughput, latency percentiles and the allocation rate of the
+ * client threads.
+ *
+ * <p/>
+ * Without {@code benchmark.endpoint}, it runs against an in-process
+ * {@link SwiftStandInServer}, whose latency can be set with
+ * {@code benchmark.server-latency-ms} and {@code benchmark.server-jitter-ms}.
+ * Otherwise {@code benchmark.identity} and {@code benchmark.credential} are
+ * used against the given keystone endpoint. Other {@code jclouds.*} system
+ * properties are passed to the context.
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:java -Dbenchmark.mix=GET:90,PUT:10 -Dbenchmark.concurrency=32
+ * </pre>
+ */
+public class SwiftLoadGenerator {
+
+   public static void main(String[] args) throws Exception {
+      Properties properties = System.getProperties();
+      Workload workload = Workload.fromProperties(properties);
+      String endpoint = properties.getProperty("benchmark.endpoint");
+      SwiftStandInServer server = null;
+      if (endpoint == null) {
+         server = SwiftStandInServer.builder() //
+               .latency(Long.getLong("benchmark.server-latency-ms", 0), Long.getLong("benchmark.server-jitter-ms", 0),
+                     MILLISECONDS).build();
+         endpoint = server.url();
+      }
+      Properties overrides = new Properties();
+      for (String name : properties.stringPropertyNames()) {
+         if (name.startsWith("jclouds.")) {
+            overrides.setProperty(name, properties.getProperty(name));
+         }
+      }
+      RegionScopedBlobStoreContext context = ContextBuilder.newBuilder("openstack-swift") //
+            .endpoint(endpoint) //
+            .credentials(properties.getProperty("benchmark.identity", SwiftStandInServer.TENANT + ":user"),
+                  properties.getProperty("benchmark.credential", "password")) //
+            .overrides(overrides) //
+            .buildView(RegionScopedBlobStoreContext.class);
+      try {
+         System.out.println(new SwiftLoadGenerator(context, workload).run());
+      } finally {
+         context.close();
+         if (server != null) {
+            server.close();
+         }
+      }
+   }
+
+   private final Workload workload;
+   private final String region;
+   private final LoadTarget target;
+   private final byte[] content;
+
+   public SwiftLoadGenerator(RegionScopedBlobStoreContext context, Workload workload) {
+      this.workload = workload;
+      SwiftApi api = context.unwrapApi(SwiftApi.class);
+      this.region = workload.region() != null ? workload.region() : Iterables.get(api.configuredRegions(), 0);
+      api.containerApiInRegion(region).createIfAbsent(workload.container(), new CreateContainerOptions());
+      this.target = workload.target() == Workload.Target.API ? LoadTarget.forApi(api.objectApiInRegionForContainer(
+            region, workload.container())) : LoadTarget.forBlobStore(context.blobStoreInRegion(region),
+            workload.container());
+      this.content = new byte[workload.sizes().max()];
+      new Random(0).nextBytes(content);
+   }
+
+   /**
+    * Writes every key once, so that reads find objects, then runs the warmup
+    * and measurement phases.
+    */
+   public Report run() throws Exception {
+      preload();
+      ExecutorService workers = Executors.newFixedThreadPool(workload.concurrency());
+      try {
+         long start = System.nanoTime();
+         long measureFrom = start + SECONDS.toNanos(workload.warmupSeconds());
+         long measureUntil = measureFrom + SECONDS.toNanos(workload.durationSeconds());
+         List<Future<Worker>> futures = Lists.newArrayList();
+         for (int i = 0; i < workload.concurrency(); i++) {
+            futures.add(workers.submit(new Worker(i, measureFrom, measureUntil)));
+         }
+         Report report = new Report(workload, target, NANOSECONDS.toMillis(measureUntil - measureFrom));
+         for (Future<Worker> future : futures) {
+            report.add(future.get());
+         }
+         return report;
+      } finally {
+         workers.shutdownNow();
+      }
+   }
+
+   private void preload() throws Exception {
+      ExecutorService workers = Executors.newFixedThreadPool(workload.concurrency());
+      try {
+         final AtomicInteger next = new AtomicInteger();
+         List<Future<Void>> futures = Lists.newArrayList();
+         for (int i = 0; i < workload.concurrency(); i++) {
+            futures.add(workers.submit(new Callable<Void>() {
+               @Override
+               public Void call() {
+                  Random random = new Random();
+                  for (int key = next.getAndIncrement(); key < workload.keys(); key = next.getAndIncrement()) {
+                     target.put(Workload.keyName(key), content, workload.sizes().next(random));
+                  }
+                  return null;
+               }
+            }));
+         }
+         for (Future<Void> future : futures) {
+            future.get();
+         }
+      } finally {
+         workers.shutdownNow();
+      }
+   }
+
+   class Worker implements Callable<Worker> {
+      private final Random random;
+      private final long measureFrom;
+      private final long measureUntil;
+      private final Map<Operation, LatencyHistogram> latencies = new EnumMap<Operation, LatencyHistogram>(
+            Operation.class);
+      private final byte[] scratch = new byte[64 * 1024];
+      private long errors;
+      private long misses;
+      private long bytes;
+      private long allocatedBytes = -1;
+
+      Worker(int seed, long measureFrom, long measureUntil) {
+         this.random = new Random(seed);
+         this.measureFrom = measureFrom;
+         this.measureUntil = measureUntil;
+         for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+         }
+      }
+
+      @Override
+      public Worker call() {
+         long allocatedAtStart = -1;
+         for (long now = System.nanoTime(); now < measureUntil; now = System.nanoTime()) {
+            boolean measuring = now >= measureFrom;
+            if (measuring && allocatedAtStart == -1) {
+               allocatedAtStart = allocatedBytes();
+            }
+            Operation operation = workload.nextOperation(random);
+            String name = Workload.keyName(workload.keyDistribution().next(random));
+            long start = System.nanoTime();
+            long transferred = 0;
+            boolean found = true;
+            try {
+               switch (operation) {
+                  case PUT:
+                     int length = workload.sizes().next(random);
+                     target.put(name, content, length);
+                     transferred = length;
+                     break;
+                  case GET:
+                     transferred = target.get(name, scratch);
+                     found = transferred != -1;
+                     break;
+                  case HEAD:
+                     found = target.head(name);
+                     break;
+                  case LIST:
+                     target.list(workload.listLimit());
+                     break;
+                  case DELETE:
+                     target.delete(name);
+                     break;
+               }
+            } catch (Exception e) {
+               if (measuring) {
+                  errors++;
+               }
+               continue;
+            }
+            if (measuring) {
+               latencies.get(operation).record(System.nanoTime() - start);
+               bytes += Math.max(0, transferred);
+               misses += found ? 0 : 1;
+            }
+         }
+         if (allocatedAtStart != -1) {
+            allocatedBytes = allocatedBytes() - allocatedAtStart;
+         }
+         return this;
+      }
+   }
+
+   /**
+    * @return bytes allocated so far by the current thread, or -1 if the JVM
+    *         cannot tell.
+    */
+   private static long allocatedBytes() {
+      ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      if (threads instanceof com.sun.management.ThreadMXBean) {
+         return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+      return -1;
+   }
+
+   /**
+    * Results of the measurement phase, aggregated across workers.
+    */
+   public static class Report {
+      private final Workload workload;
+      private final LoadTarget target;
+      private final long elapsedMillis;
+      private final Map<Operation, LatencyHistogram> latencies = new EnumMap<Operation, LatencyHistogram>(
+            Operation.class);
+      private long errors;
+      private long misses;
+      private long bytes;
+      private long allocatedBytes;
+
+      Report(Workload workload, LoadTarget target, long elapsedMillis) {
+         this.workload = workload;
+         this.target = target;
+         this.elapsedMillis = elapsedMillis;
+         for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+         }
+      }
+
+      void add(Worker worker) {
+         for (Entry<Operation, LatencyHistogram> entry : worker.latencies.entrySet()) {
+            latencies.get(entry.getKey()).add(entry.getValue());
+         }
+         errors += worker.errors;
+         misses += worker.misses;
+         bytes += worker.bytes;
+         allocatedBytes = allocatedBytes == -1 || worker.allocatedBytes == -1 ? -1 : allocatedBytes
+               + worker.allocatedBytes;
+      }
+
+      public long operations() {
+         long operations = 0;
+         for (LatencyHistogram histogram : latencies.values()) {
+            operations += histogram.count();
+         }
+         return operations;
+      }
+
+      public double throughput() {
+         return operations() * 1000.0 / elapsedMillis;
+      }
+
+      public LatencyHistogram latency(Operation operation) {
+         return latencies.get(operation);
+      }
+
+      public long errors() {
+         return errors;
+      }
+
+      /** @return client allocation in bytes per second, or -1 if unknown. */
+      public double allocationRate() {
+         return allocatedBytes == -1 ? -1 : allocatedBytes * 1000.0 / elapsedMillis;
+      }
+
+      @Override
+      public String toString() {
+         StringBuilder out = new StringBuilder();
+         out.append(String.format("%s against %s for %.1fs%n", workload, target, elapsedMillis / 1000.0));
+         out.append(String.format("%-8s %10s %10s %10s %10s %10s %10s%n", "op", "count", "ops/s", "p50 ms",
+               "p99 ms", "p999 ms", "max ms"));
+         for (Entry<Operation, LatencyHistogram> entry : latencies.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            if (histogram.count() == 0) {
+               continue;
+            }
+            out.append(String.format("%-8s %10d %10.1f %10.3f %10.3f %10.3f %10.3f%n", entry.getKey(),
+                  histogram.count(), histogram.count() * 1000.0 / elapsedMillis, millis(histogram.percentileNanos(0.5)),
+                  millis(histogram.percentileNanos(0.99)), millis(histogram.percentileNanos(0.999)),
+                  millis(histogram.maxNanos())));
+         }
+         out.append(String.format("total    %10d %10.1f ops/s, %.1f MB/s, %d errors, %d not found%n", operations(),
+               throughput(), bytes / 1048576.0 / (elapsedMillis / 1000.0), errors, misses));
+         if (allocatedBytes != -1) {
+            out.append(String.format("client allocation %.1f MB/s, %.0f bytes/op%n", allocationRate() / 1048576,
+                  operations() == 0 ? 0.0 : (double) allocatedBytes / operations()));
+         }
+         return out.toString();
+      }
+
+      private static double millis(long nanos) {
+         return nanos / 1e6;
+      }
+   }
+}
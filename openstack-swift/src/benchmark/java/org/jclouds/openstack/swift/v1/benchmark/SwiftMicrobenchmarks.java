@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.benchmark;
+
+import org.jclouds.openstack.swift.v1.binders.MetadataBindingBenchmark;
+import org.jclouds.openstack.swift.v1.functions.ParseResponseBenchmark;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH microbenchmarks of the response parsing and binding hot paths,
+ * reporting ops/sec and, through the GC profiler, bytes allocated per op
+ * ({@code gc.alloc.rate.norm}). Arguments are regular JMH options, such as
+ * {@code -f 1 -wi 3 -i 5}.
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:java -Dbenchmark.main=org.jclouds.openstack.swift.v1.benchmark.SwiftMicrobenchmarks
+ * </pre>
+ */
+public class SwiftMicrobenchmarks {
+
+   public static void main(String[] args) throws Exception {
+      Options options = new OptionsBuilder() //
+            .parent(new CommandLineOptions(args)) //
+            .include(ParseResponseBenchmark.class.getSimpleName()) //
+            .include(MetadataBindingBenchmark.class.getSimpleName()) //
+            .addProfiler(GCProfiler.class) //
+            .forks(1).build();
+      new Runner(options).run();
+   }
+}
@@ -0,0 +1,304 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.benchmark;
+
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Random;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * What the load generator does: the operation mix, object sizes, keys,
+ * concurrency and duration. Configured from system properties prefixed with
+ * {@code benchmark.}, for example
+ * {@code -Dbenchmark.mix=GET:80,PUT:10,HEAD:5,LIST:4,DELETE:1}.
+ */
+public final class Workload {
+
+   public static enum Operation {
+      PUT, GET, HEAD, LIST, DELETE;
+   }
+
+   public static enum Target {
+      /** {@link org.jclouds.openstack.swift.v1.features.ObjectApi} */
+      API,
+      /** {@link org.jclouds.openstack.swift.v1.blobstore.RegionScopedSwiftBlobStore} */
+      BLOBSTORE;
+   }
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static final class Builder {
+      private final Map<Operation, Integer> mix = new EnumMap<Operation, Integer>(Operation.class);
+      private SizeDistribution sizes = SizeDistribution.fixed(4096);
+      private int keys = 1000;
+      private String keyDistribution = "uniform";
+      private int concurrency = 16;
+      private int warmupSeconds = 5;
+      private int durationSeconds = 30;
+      private Target target = Target.API;
+      private String region;
+      private String container = "benchmark";
+      private int listLimit = 100;
+
+      /** relative weight of {@code operation}; operations not given are not run. */
+      public Builder weight(Operation operation, int weight) {
+         checkArgument(weight >= 0, "weight must not be negative");
+         mix.put(checkNotNull(operation, "operation"), weight);
+         return this;
+      }
+
+      public Builder sizes(SizeDistribution sizes) {
+         this.sizes = checkNotNull(sizes, "sizes");
+         return this;
+      }
+
+      public Builder keys(int keys) {
+         checkArgument(keys > 0, "keys must be positive");
+         this.keys = keys;
+         return this;
+      }
+
+      /** {@code uniform} or {@code zipfian}, optionally with theta, such as {@code zipfian:0.99}. */
+      public Builder keyDistribution(String keyDistribution) {
+         this.keyDistribution = checkNotNull(keyDistribution, "keyDistribution");
+         return this;
+      }
+
+      public Builder concurrency(int concurrency) {
+         checkArgument(concurrency > 0, "concurrency must be positive");
+         this.concurrency = concurrency;
+         return this;
+      }
+
+      public Builder warmupSeconds(int warmupSeconds) {
+         this.warmupSeconds = warmupSeconds;
+         return this;
+      }
+
+      public Builder durationSeconds(int durationSeconds) {
+         checkArgument(durationSeconds > 0, "durationSeconds must be positive");
+         this.durationSeconds = durationSeconds;
+         return this;
+      }
+
+      public Builder target(Target target) {
+         this.target = checkNotNull(target, "target");
+         return this;
+      }
+
+      /** region to load; defaults to the first configured region. */
+      public Builder region(String region) {
+         this.region = region;
+         return this;
+      }
+
+      public Builder container(String container) {
+         this.container = checkNotNull(container, "container");
+         return this;
+      }
+
+      public Builder listLimit(int listLimit) {
+         this.listLimit = listLimit;
+         return this;
+      }
+
+      public Workload build() {
+         if (mix.isEmpty()) {
+            weight(Operation.GET, 80).weight(Operation.PUT, 10).weight(Operation.HEAD, 5)
+                  .weight(Operation.LIST, 4).weight(Operation.DELETE, 1);
+         }
+         return new Workload(this);
+      }
+   }
+
+   /**
+    * Reads {@code benchmark.mix}, {@code sizes}, {@code keys},
+    * {@code key-distribution}, {@code concurrency}, {@code warmup},
+    * {@code duration}, {@code target}, {@code region}, {@code container} and
+    * {@code list-limit}, each prefixed with {@code benchmark.}.
+    */
+   public static Workload fromProperties(Properties properties) {
+      Builder builder = builder();
+      String mix = properties.getProperty("benchmark.mix");
+      if (mix != null) {
+         for (Entry<String, String> weight : Splitter.on(',').trimResults().withKeyValueSeparator(':').split(mix)
+               .entrySet()) {
+            builder.weight(Operation.valueOf(weight.getKey().toUpperCase()), Integer.parseInt(weight.getValue()));
+         }
+      }
+      if (properties.containsKey("benchmark.sizes")) {
+         builder.sizes(SizeDistribution.parse(properties.getProperty("benchmark.sizes")));
+      }
+      if (properties.containsKey("benchmark.keys")) {
+         builder.keys(Integer.parseInt(properties.getProperty("benchmark.keys")));
+      }
+      if (properties.containsKey("benchmark.key-distribution")) {
+         builder.keyDistribution(properties.getProperty("benchmark.key-distribution"));
+      }
+      if (properties.containsKey("benchmark.concurrency")) {
+         builder.concurrency(Integer.parseInt(properties.getProperty("benchmark.concurrency")));
+      }
+      if (properties.containsKey("benchmark.warmup")) {
+         builder.warmupSeconds(Integer.parseInt(properties.getProperty("benchmark.warmup")));
+      }
+      if (properties.containsKey("benchmark.duration")) {
+         builder.durationSeconds(Integer.parseInt(properties.getProperty("benchmark.duration")));
+      }
+      if (properties.containsKey("benchmark.target")) {
+         builder.target(Target.valueOf(properties.getProperty("benchmark.target").toUpperCase()));
+      }
+      if (properties.containsKey("benchmark.region")) {
+         builder.region(properties.getProperty("benchmark.region"));
+      }
+      if (properties.containsKey("benchmark.container")) {
+         builder.container(properties.getProperty("benchmark.container"));
+      }
+      if (properties.containsKey("benchmark.list-limit")) {
+         builder.listLimit(Integer.parseInt(properties.getProperty("benchmark.list-limit")));
+      }
+      return builder.build();
+   }
+
+   private final Map<Operation, Integer> mix;
+   private final Operation[] table;
+   private final SizeDistribution sizes;
+   private final int keys;
+   private final KeyDistribution keyDistribution;
+   private final int concurrency;
+   private final int warmupSeconds;
+   private final int durationSeconds;
+   private final Target target;
+   private final String region;
+   private final String container;
+   private final int listLimit;
+
+   private Workload(Builder builder) {
+      this.mix = ImmutableMap.copyOf(Maps.filterValues(builder.mix, new Predicate<Integer>() {
+         @Override
+         public boolean apply(Integer weight) {
+            return weight > 0;
+         }
+      }));
+      checkArgument(!mix.isEmpty(), "at least one operation needs a positive weight");
+      int total = 0;
+      for (int weight : mix.values()) {
+         total += weight;
+      }
+      this.table = new Operation[total];
+      int i = 0;
+      for (Entry<Operation, Integer> weight : mix.entrySet()) {
+         for (int j = 0; j < weight.getValue(); j++) {
+            table[i++] = weight.getKey();
+         }
+      }
+      this.sizes = builder.sizes;
+      this.keys = builder.keys;
+      this.keyDistribution = parseKeyDistribution(builder.keyDistribution, builder.keys);
+      this.concurrency = builder.concurrency;
+      this.warmupSeconds = builder.warmupSeconds;
+      this.durationSeconds = builder.durationSeconds;
+      this.target = builder.target;
+      this.region = builder.region;
+      this.container = builder.container;
+      this.listLimit = builder.listLimit;
+   }
+
+   private static KeyDistribution parseKeyDistribution(String spec, int keys) {
+      if (spec.equals("uniform")) {
+         return KeyDistribution.uniform(keys);
+      } else if (spec.startsWith("zipfian")) {
+         int colon = spec.indexOf(':');
+         return KeyDistribution.zipfian(keys, colon != -1 ? Double.parseDouble(spec.substring(colon + 1)) : 0.99);
+      }
+      throw new IllegalArgumentException("unknown key distribution " + spec);
+   }
+
+   /** @return an operation drawn according to the mix. */
+   public Operation nextOperation(Random random) {
+      return table[random.nextInt(table.length)];
+   }
+
+   /** @return the object name of {@code key}. */
+   public static String keyName(int key) {
+      return String.format("key-%08d", key);
+   }
+
+   public Map<Operation, Integer> mix() {
+      return mix;
+   }
+
+   public SizeDistribution sizes() {
+      return sizes;
+   }
+
+   public int keys() {
+      return keys;
+   }
+
+   public KeyDistribution keyDistribution() {
+      return keyDistribution;
+   }
+
+   public int concurrency() {
+      return concurrency;
+   }
+
+   public int warmupSeconds() {
+      return warmupSeconds;
+   }
+
+   public int durationSeconds() {
+      return durationSeconds;
+   }
+
+   public Target target() {
+      return target;
+   }
+
+   public String region() {
+      return region;
+   }
+
+   public String container() {
+      return container;
+   }
+
+   public int listLimit() {
+      return listLimit;
+   }
+
+   @Override
+   public String toString() {
+      return toStringHelper(this).add("target", target).add("mix", mix).add("sizes", sizes).add("keys", keys)
+            .add("keyDistribution", keyDistribution).add("concurrency", concurrency)
+            .add("warmupSeconds", warmupSeconds).add("durationSeconds", durationSeconds).add("region", region)
+            .add("container", container).toString();
+   }
+}
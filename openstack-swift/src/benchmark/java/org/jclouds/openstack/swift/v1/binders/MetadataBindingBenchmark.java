@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.binders;
+
+import java.net.URI;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.blobstore.domain.MutableBlobMetadata;
+import org.jclouds.http.HttpRequest;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+import org.jclouds.openstack.swift.v1.binders.BindMetadataToHeaders.BindObjectMetadataToHeaders;
+import org.jclouds.openstack.swift.v1.blobstore.functions.ToBlobMetadata;
+import org.jclouds.openstack.swift.v1.domain.Container;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Converting user metadata to request headers, and Swift objects to blob
+ * metadata, with a user metadata map of about 1KB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MetadataBindingBenchmark {
+
+   private final BindObjectMetadataToHeaders bindObjectMetadata = new BindObjectMetadataToHeaders();
+   private HttpRequest request;
+   private Map<String, String> metadata;
+   private ToBlobMetadata toBlobMetadata;
+   private SwiftObject object;
+
+   @Setup
+   public void setup() {
+      ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+      // 20 entries of ~50 bytes each
+      for (int i = 0; i < 20; i++) {
+         builder.put(String.format("Application-Key-%02d", i), String.format("value-%02d-0123456789abcdefghij", i));
+      }
+      metadata = builder.build();
+      request = HttpRequest.builder().method("PUT")
+            .endpoint("https://storage.example.com/v1/AUTH_tenant/myContainer/myObject").build();
+
+      toBlobMetadata = new ToBlobMetadata(Container.builder().name("myContainer").bytesUsed(4096)
+            .objectCount(1).anybodyRead(true).build());
+      Payload payload = Payloads.newByteArrayPayload(new byte[0]);
+      payload.getContentMetadata().setContentLength(4096l);
+      payload.getContentMetadata().setContentType("image/jpeg");
+      object = SwiftObject.builder() //
+            .uri(URI.create("https://storage.example.com/v1/AUTH_tenant/myContainer/myObject")) //
+            .name("myObject") //
+            .etag("8a964ee2a5e88be344f36c22562a6486") //
+            .lastModified(new Date()) //
+            .payload(payload) //
+            .metadata(metadata).build();
+   }
+
+   @Benchmark
+   public HttpRequest bindMetadataToHeaders() {
+      return bindObjectMetadata.bindToRequest(request, metadata);
+   }
+
+   /** the payload's metadata is mutated by each call, as it is in the blobstore. */
+   @Benchmark
+   public MutableBlobMetadata toBlobMetadata() {
+      return toBlobMetadata.apply(object);
+   }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.functions;
+
+import static org.jclouds.reflect.Reflection2.method;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.options.GetOptions;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.domain.Container;
+import org.jclouds.openstack.swift.v1.domain.ObjectList;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.features.ContainerApi;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.options.ListContainerOptions;
+import org.jclouds.reflect.Invocation;
+import org.jclouds.rest.internal.GeneratedHttpRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.inject.Injector;
+
+/**
+ * Parsers every Swift response passes through, with fixtures shaped like
+ * production traffic: a 10,000 entry listing and header sets carrying 50
+ * metadata keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParseResponseBenchmark {
+
+   static final int LISTING_SIZE = 10000;
+   static final int METADATA_HEADERS = 50;
+
+   private ParseObjectListFromResponse parseObjectList;
+   private ParseObjectFromResponse parseObject;
+   private ParseContainerFromHeaders parseContainer;
+   private HttpResponse listResponse;
+   private HttpResponse objectResponse;
+   private HttpResponse containerResponse;
+   private ImmutableMultimap<String, String> objectHeaders;
+
+   @Setup
+   public void setup() {
+      Injector injector = ContextBuilder.newBuilder("openstack-swift") //
+            .endpoint("http://localhost:5000/v2.0") //
+            .credentials("tenant:user", "password") //
+            .buildInjector();
+
+      String containerUri = "https://storage.example.com/v1/AUTH_tenant/myContainer/";
+      Invocation caller = Invocation.create(
+            method(SwiftApi.class, "objectApiInRegionForContainer", String.class, String.class),
+            ImmutableList.<Object> of("DFW", "myContainer"));
+
+      GeneratedHttpRequest listRequest = GeneratedHttpRequest.builder().method("GET")
+            .endpoint(containerUri + "?format=json") //
+            .invocation(Invocation.create(method(ObjectApi.class, "list", ListContainerOptions.class),
+                  ImmutableList.<Object> of(ListContainerOptions.NONE))) //
+            .caller(caller).build();
+      parseObjectList = injector.getInstance(ParseObjectListFromResponse.class).setContext(listRequest);
+
+      GeneratedHttpRequest getRequest = GeneratedHttpRequest.builder().method("GET")
+            .endpoint(containerUri + "myObject") //
+            .invocation(Invocation.create(method(ObjectApi.class, "get", String.class, GetOptions.class),
+                  ImmutableList.<Object> of("myObject", GetOptions.NONE))) //
+            .caller(caller).build();
+      parseObject = injector.getInstance(ParseObjectFromResponse.class).setContext(getRequest);
+
+      GeneratedHttpRequest headContainerRequest = GeneratedHttpRequest.builder().method("HEAD")
+            .endpoint(containerUri) //
+            .invocation(Invocation.create(method(ContainerApi.class, "get", String.class),
+                  ImmutableList.<Object> of("myContainer"))).build();
+      parseContainer = new ParseContainerFromHeaders().setContext(headContainerRequest);
+
+      ImmutableMultimap<String, String> containerHeaders = ImmutableMultimap.<String, String> builder()
+            .put("X-Container-Object-Count", String.valueOf(LISTING_SIZE)) //
+            .put("X-Container-Bytes-Used", String.valueOf(LISTING_SIZE * 4096l)) //
+            .put("X-Container-Read", ".r:*,.rlistings") //
+            .putAll(metadataHeaders("X-Container-Meta-")).build();
+      containerResponse = HttpResponse.builder().statusCode(204).headers(containerHeaders).build();
+      listResponse = HttpResponse.builder().statusCode(200).headers(containerHeaders)
+            .payload(jsonPayload(listing())).build();
+
+      objectHeaders = ImmutableMultimap.<String, String> builder() //
+            .put("ETag", "8a964ee2a5e88be344f36c22562a6486") //
+            .put("Last-Modified", "Fri, 12 Jun 2010 13:40:18 GMT") //
+            .put("X-Timestamp", "1276350018.83962") //
+            .put("X-Trans-Id", "tx6f6ba4b5f0cb4e6e9e0ad-0052af7e1e") //
+            .put("Accept-Ranges", "bytes") //
+            .putAll(metadataHeaders("X-Object-Meta-")).build();
+      objectResponse = HttpResponse.builder().statusCode(200).headers(objectHeaders)
+            .payload(Payloads.newByteArrayPayload(new byte[0])).build();
+   }
+
+   static ImmutableMultimap<String, String> metadataHeaders(String prefix) {
+      ImmutableMultimap.Builder<String, String> headers = ImmutableMultimap.builder();
+      for (int i = 0; i < METADATA_HEADERS; i++) {
+         headers.put(prefix + "Key-" + i, "value-" + i + "-0123456789abcdef");
+      }
+      return headers.build();
+   }
+
+   static String listing() {
+      StringBuilder json = new StringBuilder("[");
+      for (int i = 0; i < LISTING_SIZE; i++) {
+         if (i > 0) {
+            json.append(',');
+         }
+         json.append(String.format("{\"name\":\"photos/2013/12/%08d.jpg\",\"hash\":\"%032x\",\"bytes\":%d,"
+               + "\"content_type\":\"image/jpeg\",\"last_modified\":\"2013-12-16T21:33:16.421440\"}", i, i,
+               4096 + i));
+      }
+      return json.append(']').toString();
+   }
+
+   static Payload jsonPayload(String json) {
+      Payload payload = Payloads.newByteArrayPayload(json.getBytes(Charsets.UTF_8));
+      payload.getContentMetadata().setContentType("application/json");
+      return payload;
+   }
+
+   /** consumes every entry, as the list is transformed lazily. */
+   @Benchmark
+   public void parseObjectList(Blackhole blackhole) {
+      ObjectList objects = parseObjectList.apply(listResponse);
+      for (SwiftObject object : objects) {
+         blackhole.consume(object);
+      }
+   }
+
+   @Benchmark
+   public SwiftObject parseObject() {
+      return parseObject.apply(objectResponse);
+   }
+
+   @Benchmark
+   public Container parseContainer() {
+      return parseContainer.apply(containerResponse);
+   }
+
+   @Benchmark
+   public Map<String, String> entriesWithoutMetaPrefix() {
+      return EntriesWithoutMetaPrefix.INSTANCE.apply(objectHeaders);
+   }
+}
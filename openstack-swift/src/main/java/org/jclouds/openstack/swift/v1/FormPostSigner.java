@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1;
+
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.io.BaseEncoding.base16;
+import static java.lang.String.format;
+
+import java.net.URI;
+import java.util.Map;
+
+import org.jclouds.openstack.swift.v1.features.AccountApi;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Use this utility to create FormPost policies, which let a browser upload
+ * one or more files straight into swift with a single
+ * {@code multipart/form-data} POST.
+ *
+ * <p/>
+ * Signatures use the same account key as {@link TemporaryUrlSigner}. Build
+ * this from an existing temporary url signer to share its cached key.
+ *
+ * @see <a
+ *      href="http://docs.openstack.org/trunk/config-reference/content/object-storage-form-post.html">Form
+ *      POST Documentation</a>
+ */
+public class FormPostSigner {
+
+   public static FormPostSigner checkApiEvery(AccountApi api, long seconds) {
+      return new FormPostSigner(TemporaryUrlSigner.checkApiEvery(api, seconds));
+   }
+
+   public static FormPostSigner usingKeyOf(TemporaryUrlSigner signer) {
+      return new FormPostSigner(signer);
+   }
+
+   private final TemporaryUrlSigner signer;
+
+   FormPostSigner(TemporaryUrlSigner signer) {
+      this.signer = checkNotNull(signer, "temporaryUrlSigner");
+   }
+
+   /**
+    * @param path
+    *           path of the url the form posts to, such as
+    *           {@code /v1/AUTH_account/container/prefix}. Uploaded files are
+    *           named by appending their filename to this path.
+    * @param redirect
+    *           where swift redirects the browser after the upload, or empty
+    *           string to receive the status in the response body.
+    */
+   public String sign(String path, String redirect, long maxFileSize, int maxFileCount,
+         long expirationTimestampSeconds) {
+      checkNotNull(path, "path");
+      checkNotNull(redirect, "redirect");
+      checkArgument(maxFileSize > 0, "maxFileSize must be positive");
+      checkArgument(maxFileCount > 0, "maxFileCount must be positive");
+      checkArgument(expirationTimestampSeconds > 0, "expirationTimestamp must be a unix epoch timestamp");
+      String hmacBody = format("%s\n%s\n%s\n%s\n%s", path, redirect, maxFileSize, maxFileCount,
+            expirationTimestampSeconds);
+      return base16().lowerCase().encode(signer.hmacSHA1(hmacBody));
+   }
+
+   /**
+    * Signs a policy for uploads under {@code url} and returns it with the
+    * form fields that must accompany the files.
+    */
+   public Policy sign(URI url, String redirect, long maxFileSize, int maxFileCount, long expirationTimestampSeconds) {
+      checkNotNull(url, "url");
+      String signature = sign(url.getPath(), redirect, maxFileSize, maxFileCount, expirationTimestampSeconds);
+      return new Policy(url, ImmutableMap.<String, String> builder() //
+            .put("redirect", redirect) //
+            .put("max_file_size", String.valueOf(maxFileSize)) //
+            .put("max_file_count", String.valueOf(maxFileCount)) //
+            .put("expires", String.valueOf(expirationTimestampSeconds)) //
+            .put("signature", signature).build());
+   }
+
+   /**
+    * A signed FormPost policy: the url the form posts to and the hidden
+    * fields it must include, in the order swift expects them ahead of the
+    * file fields.
+    */
+   public static final class Policy {
+      private final URI url;
+      private final Map<String, String> fields;
+
+      Policy(URI url, Map<String, String> fields) {
+         this.url = url;
+         this.fields = fields;
+      }
+
+      public URI url() {
+         return url;
+      }
+
+      public Map<String, String> fields() {
+         return fields;
+      }
+
+      public String signature() {
+         return fields.get("signature");
+      }
+
+      public long expires() {
+         return Long.parseLong(fields.get("expires"));
+      }
+
+      @Override
+      public String toString() {
+         return toStringHelper("").add("url", url).add("fields", fields).toString();
+      }
+   }
+}
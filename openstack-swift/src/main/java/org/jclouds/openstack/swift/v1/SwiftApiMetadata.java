@@ -18,6 +18,19 @@ package org.jclouds.openstack.swift.v1;
 
 import static org.jclouds.openstack.keystone.v2_0.config.KeystoneProperties.CREDENTIAL_TYPE;
 import static org.jclouds.openstack.keystone.v2_0.config.KeystoneProperties.SERVICE_TYPE;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.BULKHEAD_LIMITS;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.BULKHEAD_QUEUE_TIMEOUT;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.BULKHEAD_TARGET_LATENCY;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.CIRCUIT_BREAKER_FAILURE_THRESHOLD;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.CIRCUIT_BREAKER_OPEN_DURATION;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.COMPRESSION_BLOCK_SIZE;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.COMPRESSION_THREADS;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.DEDUP_INDEX_SIZE;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.LARGE_OBJECT_SEGMENT_SIZE;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.LARGE_OBJECT_UPLOAD_THREADS;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.LISTING_CACHE_SIZE;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.LISTING_CACHE_TTL;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.RETRY_MAX_ATTEMPTS;
 import static org.jclouds.reflect.Reflection2.typeToken;
 
 import java.net.URI;
@@ -64,6 +77,19 @@ public class SwiftApiMetadata extends BaseHttpApiMetadata<SwiftApi> {
       Properties properties = BaseHttpApiMetadata.defaultProperties();
       properties.setProperty(SERVICE_TYPE, ServiceType.OBJECT_STORE);
       properties.setProperty(CREDENTIAL_TYPE, CredentialTypes.PASSWORD_CREDENTIALS);
+      properties.setProperty(LARGE_OBJECT_SEGMENT_SIZE, String.valueOf(32 * 1024 * 1024));
+      properties.setProperty(LARGE_OBJECT_UPLOAD_THREADS, "4");
+      properties.setProperty(BULKHEAD_LIMITS, "");
+      properties.setProperty(BULKHEAD_QUEUE_TIMEOUT, "30000");
+      properties.setProperty(BULKHEAD_TARGET_LATENCY, "0");
+      properties.setProperty(RETRY_MAX_ATTEMPTS, "0");
+      properties.setProperty(CIRCUIT_BREAKER_FAILURE_THRESHOLD, "5");
+      properties.setProperty(CIRCUIT_BREAKER_OPEN_DURATION, "30000");
+      properties.setProperty(COMPRESSION_BLOCK_SIZE, String.valueOf(1024 * 1024));
+      properties.setProperty(COMPRESSION_THREADS, "4");
+      properties.setProperty(DEDUP_INDEX_SIZE, "100000");
+      properties.setProperty(LISTING_CACHE_TTL, "0");
+      properties.setProperty(LISTING_CACHE_SIZE, "10000");
       return properties;
    }
 
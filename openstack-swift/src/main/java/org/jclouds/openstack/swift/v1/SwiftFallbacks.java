@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1;
+
+import static com.google.common.base.Throwables.propagate;
+import static com.google.common.net.HttpHeaders.ETAG;
+import static com.google.common.net.HttpHeaders.LAST_MODIFIED;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static org.jclouds.util.Throwables2.getFirstThrowableOfType;
+
+import javax.inject.Inject;
+
+import org.jclouds.Fallback;
+import org.jclouds.date.DateService;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.openstack.swift.v1.domain.ConditionalObject;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+public final class SwiftFallbacks {
+   private SwiftFallbacks() {
+      throw new AssertionError("intentionally unimplemented");
+   }
+
+   /**
+    * Turns the statuses of a conditional request into a
+    * {@link ConditionalObject}, propagating any other error.
+    */
+   public static final class ConditionalObjectOnNotModifiedOrPreconditionFailed implements
+         Fallback<ConditionalObject> {
+      private final DateService dates;
+
+      @Inject
+      ConditionalObjectOnNotModifiedOrPreconditionFailed(DateService dates) {
+         this.dates = dates;
+      }
+
+      @Override
+      public ListenableFuture<ConditionalObject> create(Throwable t) throws Exception {
+         return immediateFuture(createOrPropagate(t));
+      }
+
+      @Override
+      public ConditionalObject createOrPropagate(Throwable t) throws Exception {
+         HttpResponseException exception = getFirstThrowableOfType(t, HttpResponseException.class);
+         if (exception != null && exception.getResponse() != null) {
+            HttpResponse response = exception.getResponse();
+            switch (response.getStatusCode()) {
+               case 304:
+                  String lastModified = response.getFirstHeaderOrNull(LAST_MODIFIED);
+                  return ConditionalObject.notModified(response.getFirstHeaderOrNull(ETAG),
+                        lastModified != null ? dates.rfc822DateParse(lastModified) : null);
+               case 404:
+                  return ConditionalObject.notFound();
+               case 412:
+                  return ConditionalObject.preconditionFailed();
+            }
+         }
+         throw propagate(t);
+      }
+   }
+}
@@ -20,6 +20,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.jclouds.Constants.PROPERTY_USER_THREADS;
 
+import java.util.List;
 import java.util.Set;
 
 import javax.inject.Inject;
@@ -33,6 +34,7 @@ import org.jclouds.blobstore.attr.ConsistencyModel;
 import org.jclouds.internal.BaseView;
 import org.jclouds.location.Provider;
 import org.jclouds.location.Region;
+import org.jclouds.openstack.swift.v1.resilience.SwiftResilience;
 import org.jclouds.rest.Utils;
 
 import com.google.common.base.Function;
@@ -65,6 +67,15 @@ public class RegionScopedBlobStoreContext extends BaseView implements BlobStoreC
       return regionIds.get();
    }
 
+   /**
+    * @return configured regions, in order, whose circuit breaker is not open.
+    *         Breakers only open while retries are enabled.
+    * @see org.jclouds.openstack.swift.v1.config.SwiftProperties#RETRY_MAX_ATTEMPTS
+    */
+   public List<String> availableRegions() {
+      return resilience.availableRegions(configuredRegions());
+   }
+
    /**
     * @param regionId
     *           valid region id from {@link #configuredRegions()}
@@ -114,12 +125,13 @@ public class RegionScopedBlobStoreContext extends BaseView implements BlobStoreC
    private final Function<String, BlobRequestSigner> blobRequestSigner;
    private final Utils utils;
    private final ListeningExecutorService executor;
+   private final SwiftResilience resilience;
 
    @Inject
    public RegionScopedBlobStoreContext(@Provider Context backend, @Provider TypeToken<? extends Context> backendType,
          @Region Supplier<Set<String>> regionIds, @Region Supplier<String> implicitRegionId,
          Function<String, BlobStore> blobStore, Function<String, BlobRequestSigner> blobRequestSigner, Utils utils,
-         @Named(PROPERTY_USER_THREADS) ListeningExecutorService executor) {
+         @Named(PROPERTY_USER_THREADS) ListeningExecutorService executor, SwiftResilience resilience) {
       super(backend, backendType);
       this.regionIds = checkNotNull(regionIds, "regionIds");
       this.implicitRegionId = checkNotNull(implicitRegionId, "implicitRegionId");
@@ -127,6 +139,7 @@ public class RegionScopedBlobStoreContext extends BaseView implements BlobStoreC
       this.blobRequestSigner = checkNotNull(blobRequestSigner, "blobRequestSigner");
       this.utils = checkNotNull(utils, "utils");
       this.executor = checkNotNull(executor, "executor");
+      this.resilience = checkNotNull(resilience, "resilience");
    }
 
    @Override
@@ -18,15 +18,31 @@ package org.jclouds.openstack.swift.v1.blobstore;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.propagate;
 import static com.google.common.collect.Iterables.tryFind;
 import static com.google.common.collect.Lists.transform;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.jclouds.Constants.PROPERTY_USER_THREADS;
 import static org.jclouds.blobstore.options.ListContainerOptions.Builder.recursive;
 import static org.jclouds.location.predicates.LocationPredicates.idEquals;
-
+import static org.jclouds.openstack.swift.v1.blobstore.options.SwiftPutOptions.expiryOf;
+import static org.jclouds.openstack.swift.v1.blobstore.strategy.ContentAddressedUploader.canDeduplicate;
+import static org.jclouds.openstack.swift.v1.blobstore.strategy.GzipObjectCodec.decompress;
+import static org.jclouds.openstack.swift.v1.blobstore.strategy.GzipObjectCodec.isCompressed;
+import static org.jclouds.openstack.swift.v1.blobstore.strategy.GzipObjectCodec.shouldCompress;
+import static org.jclouds.openstack.swift.v1.blobstore.strategy.GzipObjectCodec.tag;
+import static org.jclouds.openstack.swift.v1.blobstore.strategy.GzipObjectCodec.untag;
+import static org.jclouds.openstack.swift.v1.blobstore.strategy.StaticLargeObjectUploader.MAX_OBJECT_SIZE;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.DEDUP_INDEX_SIZE;
+import static org.jclouds.util.Closeables2.closeQuietly;
+
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 
 import org.jclouds.blobstore.BlobStore;
 import org.jclouds.blobstore.BlobStoreContext;
@@ -54,10 +70,19 @@ import org.jclouds.openstack.swift.v1.SwiftApi;
 import org.jclouds.openstack.swift.v1.blobstore.functions.ToBlobMetadata;
 import org.jclouds.openstack.swift.v1.blobstore.functions.ToListContainerOptions;
 import org.jclouds.openstack.swift.v1.blobstore.functions.ToResourceMetadata;
+import org.jclouds.openstack.swift.v1.blobstore.strategy.ContentAddressedUploader;
+import org.jclouds.openstack.swift.v1.blobstore.strategy.GzipObjectCodec;
+import org.jclouds.openstack.swift.v1.blobstore.strategy.StaticLargeObjectUploader;
 import org.jclouds.openstack.swift.v1.domain.Container;
 import org.jclouds.openstack.swift.v1.domain.ObjectList;
 import org.jclouds.openstack.swift.v1.domain.SwiftObject;
 import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.io.BufferPool;
+import org.jclouds.openstack.swift.v1.io.SizeClassedBufferPool;
+import org.jclouds.openstack.swift.v1.options.ExpiryOptions;
+import org.jclouds.openstack.swift.v1.resilience.SwiftBulkhead;
+import org.jclouds.openstack.swift.v1.resilience.SwiftResilience;
+import org.jclouds.openstack.swift.v1.util.ObjectListingCache;
 
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
@@ -69,6 +94,7 @@ import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.inject.AbstractModule;
 import com.google.inject.Injector;
 import com.google.inject.assistedinject.Assisted;
@@ -77,14 +103,24 @@ public class RegionScopedSwiftBlobStore implements BlobStore {
 
    @Inject
    protected RegionScopedSwiftBlobStore(Injector baseGraph, BlobStoreContext context, SwiftApi api,
-         @Memoized Supplier<Set<? extends Location>> locations, @Assisted String regionId) {
+         @Memoized Supplier<Set<? extends Location>> locations,
+         @Named(PROPERTY_USER_THREADS) ListeningExecutorService userExecutor, BufferPool largeObjectSegmentBuffers,
+         SwiftBulkhead bulkhead, SwiftResilience resilience, ObjectListingCache listingCache, GzipObjectCodec codec,
+         SizeClassedBufferPool copyBuffers, @Named(DEDUP_INDEX_SIZE) long dedupIndexSize,
+         @Assisted String regionId) {
       checkNotNull(regionId, "regionId");
       Optional<? extends Location> found = tryFind(locations.get(), idEquals(regionId));
       checkArgument(found.isPresent(), "region %s not in %s", regionId, locations.get());
       this.region = found.get();
       this.toResourceMetadata = new ToResourceMetadata(found.get());
       this.context = context;
-      this.api = api;
+      // cache hits need no permits, and retries give theirs up while backing off
+      this.api = listingCache.wrap(resilience.wrap(bulkhead.wrap(api)));
+      this.largeObjectUploader = new StaticLargeObjectUploader(this.api, regionId, userExecutor,
+            largeObjectSegmentBuffers);
+      this.codec = codec;
+      this.deduplicator = new ContentAddressedUploader(this.api, regionId, dedupIndexSize, copyBuffers,
+            userExecutor);
       // until we parameterize ClearListStrategy with a factory
       this.clearList = baseGraph.createChildInjector(new AbstractModule() {
          @Override
@@ -98,6 +134,9 @@ public class RegionScopedSwiftBlobStore implements BlobStore {
    private final ClearListStrategy clearList;
    private final SwiftApi api;
    private final Location region;
+   private final StaticLargeObjectUploader largeObjectUploader;
+   private final GzipObjectCodec codec;
+   private final ContentAddressedUploader deduplicator;
    private final BlobToHttpGetOptions toGetOptions = new BlobToHttpGetOptions();
    private final ToListContainerOptions toListContainerOptions = new ToListContainerOptions();
    private final ToResourceMetadata toResourceMetadata;
@@ -130,6 +169,8 @@ public class RegionScopedSwiftBlobStore implements BlobStore {
    @Override
    public boolean createContainerInLocation(Location location, String container, CreateContainerOptions options) {
       checkArgument(location == null || location.equals(region), "location must be null or %s", region);
+      // a container cached as absent may now exist
+      containerCache.invalidate(container);
       if (options.isPublicRead()) {
          return api.containerApiInRegion(region.getId()).createIfAbsent(container, ANYBODY_READ);
       }
@@ -185,11 +226,31 @@ public class RegionScopedSwiftBlobStore implements BlobStore {
 
    @Override
    public String putBlob(String container, Blob blob, PutOptions options) {
-      if (options.isMultipart()) {
-         throw new UnsupportedOperationException();
+      Payload payload = blob.getPayload();
+      Map<String, String> metadata = blob.getMetadata().getUserMetadata();
+      ExpiryOptions expiry = expiryOf(options);
+      if (isCompressionEnabled(container) && shouldCompress(payload, metadata)) {
+         // the compressed length is unknown, so this only segments when large
+         return largeObjectUploader.upload(container, blob.getMetadata().getName(), codec.compress(payload),
+               tag(metadata), expiry);
+      }
+      Long contentLength = payload.getContentMetadata().getContentLength();
+      // unknown lengths are buffered, so that they can switch to segments
+      // before passing the single object limit.
+      if (options.isMultipart() || contentLength == null || contentLength > MAX_OBJECT_SIZE) {
+         return largeObjectUploader.upload(container, blob.getMetadata().getName(), payload, metadata, expiry);
+      }
+      boolean deduplicate = isDeduplicationEnabled(container);
+      if (deduplicate && canDeduplicate(payload)) {
+         return deduplicator.upload(container, blob.getMetadata().getName(), payload, metadata, expiry);
       }
       ObjectApi objectApi = api.objectApiInRegionForContainer(region.getId(), container);
-      return objectApi.replace(blob.getMetadata().getName(), blob.getPayload(), blob.getMetadata().getUserMetadata());
+      String etag = objectApi.replace(blob.getMetadata().getName(), payload, metadata, expiry);
+      if (deduplicate) {
+         // later puts of the same content can copy this one
+         deduplicator.record(container, blob.getMetadata().getName(), etag, contentLength);
+      }
+      return etag;
    }
 
    @Override
@@ -209,12 +270,33 @@ public class RegionScopedSwiftBlobStore implements BlobStore {
    @Override
    public Blob getBlob(String container, String name, GetOptions options) {
       ObjectApi objectApi = api.objectApiInRegionForContainer(region.getId(), container);
+      if (!options.getRanges().isEmpty() && isCompressionEnabled(container)) {
+         // ranges of the compressed bytes mean nothing to the caller
+         SwiftObject head = objectApi.head(name);
+         if (head == null) {
+            return null;
+         }
+         checkArgument(!isCompressed(head.metadata()), "%s is compressed; ranges are not supported", name);
+      }
       SwiftObject object = objectApi.get(name, toGetOptions.apply(options));
       if (object == null) {
          return null;
       }
       Blob blob = new BlobImpl(toBlobMetadata(container).apply(object));
-      blob.setPayload(object.payload());
+      if (isCompressed(object.metadata())) {
+         if (!options.getRanges().isEmpty()) {
+            // compressed outside this client, or since the head
+            closeQuietly(object.payload());
+            throw new IllegalArgumentException(String.format("%s is compressed; ranges are not supported", name));
+         }
+         try {
+            blob.setPayload(decompress(object.payload()));
+         } catch (IOException e) {
+            throw propagate(e);
+         }
+      } else {
+         blob.setPayload(object.payload());
+      }
       blob.setAllHeaders(object.headers());
       return blob;
    }
@@ -282,15 +364,55 @@ public class RegionScopedSwiftBlobStore implements BlobStore {
       containerCache.invalidate(container);
    }
 
-   protected final LoadingCache<String, Optional<Container>> containerCache = CacheBuilder.newBuilder().build(
-         new CacheLoader<String, Optional<Container>>() {
+   /**
+    * Containers as last seen, so that changes made elsewhere, such as opting
+    * into compression or deduplication, are noticed after a minute.
+    */
+   protected final LoadingCache<String, Optional<Container>> containerCache = CacheBuilder.newBuilder()
+         .expireAfterWrite(1, MINUTES).build(new CacheLoader<String, Optional<Container>>() {
             public Optional<Container> load(String container) {
                return Optional.fromNullable(api.containerApiInRegion(region.getId()).get(container));
             }
          });
 
+   private boolean isCompressionEnabled(String container) {
+      Optional<Container> found = containerCache.getUnchecked(container);
+      return found.isPresent() && GzipObjectCodec.isEnabled(found.get());
+   }
+
+   private boolean isDeduplicationEnabled(String container) {
+      Optional<Container> found = containerCache.getUnchecked(container);
+      return found.isPresent() && ContentAddressedUploader.isEnabled(found.get());
+   }
+
+   /**
+    * Puts written as copies of existing content in this region.
+    * 
+    * @see ContentAddressedUploader
+    */
+   public ContentAddressedUploader deduplicator() {
+      return deduplicator;
+   }
+
+   /**
+    * @return metadata describing blobs as read: compressed objects lose their
+    *         codec tag, and their stored length and digest, which are those of
+    *         the compressed bytes.
+    */
    protected Function<SwiftObject, MutableBlobMetadata> toBlobMetadata(String container) {
-      return new ToBlobMetadata(containerCache.getUnchecked(container).get());
+      final ToBlobMetadata toBlobMetadata = new ToBlobMetadata(containerCache.getUnchecked(container).get());
+      return new Function<SwiftObject, MutableBlobMetadata>() {
+         @Override
+         public MutableBlobMetadata apply(SwiftObject from) {
+            MutableBlobMetadata to = toBlobMetadata.apply(from);
+            if (to != null && isCompressed(from.metadata())) {
+               to.setUserMetadata(untag(from.metadata()));
+               to.getContentMetadata().setContentLength(null);
+               to.getContentMetadata().setContentMD5(null);
+            }
+            return to;
+         }
+      };
    }
 
    @Override
@@ -33,6 +33,8 @@ import org.jclouds.http.HttpRequest;
 import org.jclouds.http.Uris;
 import org.jclouds.http.options.GetOptions;
 import org.jclouds.location.Region;
+import org.jclouds.openstack.swift.v1.FormPostSigner;
+import org.jclouds.openstack.swift.v1.FormPostSigner.Policy;
 import org.jclouds.openstack.swift.v1.SwiftApi;
 import org.jclouds.openstack.swift.v1.TemporaryUrlSigner;
 
@@ -44,6 +46,9 @@ import com.google.inject.name.Named;
 /**
  * Uses {@link TemporaryUrlSigner} to sign requests for access to blobs. If no
  * interval is supplied, it defaults to a year.
+ * 
+ * <p/>
+ * Also signs {@link FormPostSigner FormPost} policies with the same cached key.
  */
 public class RegionScopedTemporaryUrlBlobSigner implements BlobRequestSigner {
 
@@ -54,6 +59,7 @@ public class RegionScopedTemporaryUrlBlobSigner implements BlobRequestSigner {
       checkNotNull(regionId, "regionId");
       this.timestamp = timestamp;
       this.signer = TemporaryUrlSigner.checkApiEvery(api.accountApiInRegion(regionId), seconds);
+      this.formPostSigner = FormPostSigner.usingKeyOf(signer);
       this.storageUrl = regionToUris.get().get(regionId).get();
    }
 
@@ -61,6 +67,7 @@ public class RegionScopedTemporaryUrlBlobSigner implements BlobRequestSigner {
    private final BlobToHttpGetOptions toGetOptions = new BlobToHttpGetOptions();
    private final Provider<Long> timestamp;
    private final TemporaryUrlSigner signer;
+   private final FormPostSigner formPostSigner;
    private final URI storageUrl;
 
    @Override
@@ -93,6 +100,23 @@ public class RegionScopedTemporaryUrlBlobSigner implements BlobRequestSigner {
       return sign("DELETE", container, name, GetOptions.NONE, timestamp.get() + YEAR);
    }
 
+   /**
+    * Signs a policy that lets a browser upload up to {@code maxFileCount}
+    * files, each at most {@code maxFileSize} bytes, into {@code container}.
+    * Uploaded objects are named {@code prefix} followed by their filename.
+    * 
+    * @param redirect
+    *           where swift sends the browser afterwards, or empty string for
+    *           none.
+    */
+   public Policy signFormPost(String container, String prefix, String redirect, long maxFileSize,
+         int maxFileCount, long timeInSeconds) {
+      checkNotNull(container, "container");
+      checkNotNull(prefix, "prefix");
+      URI url = Uris.uriBuilder(storageUrl).appendPath(container).appendPath(prefix).build();
+      return formPostSigner.sign(url, redirect, maxFileSize, maxFileCount, timestamp.get() + timeInSeconds);
+   }
+
    private HttpRequest sign(String method, String container, String name, GetOptions options, long expires) {
       checkNotNull(container, "container");
       checkNotNull(name, "name");
@@ -16,15 +16,39 @@
  */
 package org.jclouds.openstack.swift.v1.blobstore.config;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.jclouds.Constants.PROPERTY_USER_THREADS;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.BULKHEAD_LIMITS;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.BULKHEAD_QUEUE_TIMEOUT;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.BULKHEAD_TARGET_LATENCY;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.CIRCUIT_BREAKER_FAILURE_THRESHOLD;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.CIRCUIT_BREAKER_OPEN_DURATION;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.COMPRESSION_BLOCK_SIZE;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.COMPRESSION_THREADS;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.LARGE_OBJECT_SEGMENT_SIZE;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.LARGE_OBJECT_UPLOAD_THREADS;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.LISTING_CACHE_SIZE;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.LISTING_CACHE_TTL;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.RETRY_MAX_ATTEMPTS;
+
 import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
 
 import org.jclouds.blobstore.BlobStore;
 import org.jclouds.blobstore.BlobStoreContext;
 import org.jclouds.openstack.swift.v1.blobstore.RegionScopedBlobStoreContext;
 import org.jclouds.openstack.swift.v1.blobstore.RegionScopedSwiftBlobStore;
+import org.jclouds.openstack.swift.v1.blobstore.strategy.GzipObjectCodec;
+import org.jclouds.openstack.swift.v1.io.BufferPool;
+import org.jclouds.openstack.swift.v1.io.SizeClassedBufferPool;
+import org.jclouds.openstack.swift.v1.resilience.SwiftBulkhead;
+import org.jclouds.openstack.swift.v1.resilience.SwiftResilience;
+import org.jclouds.openstack.swift.v1.util.ObjectListingCache;
 
 import com.google.common.base.Function;
 import com.google.common.collect.ForwardingObject;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.assistedinject.FactoryModuleBuilder;
@@ -60,4 +84,73 @@ public class SwiftBlobStoreContextModule extends AbstractModule {
          return delegate.create(in);
       }
    }
+
+   /**
+    * Shared by all regions, so that memory used by concurrent large object
+    * uploads is bounded per context.
+    */
+   @Provides
+   @Singleton
+   BufferPool largeObjectSegmentBuffers(@Named(LARGE_OBJECT_SEGMENT_SIZE) int segmentSize,
+         @Named(LARGE_OBJECT_UPLOAD_THREADS) int uploadThreads) {
+      // one more than the upload threads, so that reading overlaps uploading,
+      // and at least the two buffers each upload reserves
+      return new BufferPool(segmentSize, Math.max(2, uploadThreads + 1));
+   }
+
+   /**
+    * Shared by all regions; permits are still kept per region.
+    */
+   @Provides
+   @Singleton
+   SwiftBulkhead bulkhead(@Named(BULKHEAD_LIMITS) String limits, @Named(BULKHEAD_QUEUE_TIMEOUT) long queueTimeout,
+         @Named(BULKHEAD_TARGET_LATENCY) long targetLatency) {
+      return SwiftBulkhead.builder() //
+            .limits(limits) //
+            .queueTimeout(queueTimeout, MILLISECONDS) //
+            .targetLatency(targetLatency, MILLISECONDS).build();
+   }
+
+   /**
+    * Shared by all regions; circuit breakers are still kept per region.
+    */
+   @Provides
+   @Singleton
+   SwiftResilience resilience(@Named(RETRY_MAX_ATTEMPTS) int maxAttempts,
+         @Named(CIRCUIT_BREAKER_FAILURE_THRESHOLD) int failureThreshold,
+         @Named(CIRCUIT_BREAKER_OPEN_DURATION) long openDuration) {
+      return SwiftResilience.builder() //
+            .maxAttempts(maxAttempts) //
+            .failureThreshold(failureThreshold) //
+            .openDuration(openDuration, MILLISECONDS).build();
+   }
+
+   /**
+    * Shared by all regions, so that writes through any of them evict the
+    * listings they affect.
+    */
+   @Provides
+   @Singleton
+   ObjectListingCache listingCache(@Named(LISTING_CACHE_TTL) long ttl, @Named(LISTING_CACHE_SIZE) long size) {
+      return ObjectListingCache.builder().ttl(ttl, MILLISECONDS).maximumSize(size).build();
+   }
+
+   /**
+    * Shared by all regions for the short-lived buffers of hashing and
+    * compression, which keeps at most 16 free arrays of each size from 4KB to
+    * 4MB.
+    */
+   @Provides
+   @Singleton
+   SizeClassedBufferPool copyBuffers() {
+      return new SizeClassedBufferPool(4 * 1024, 4 * 1024 * 1024, 16);
+   }
+
+   @Provides
+   @Singleton
+   GzipObjectCodec gzipObjectCodec(@Named(PROPERTY_USER_THREADS) ListeningExecutorService userExecutor,
+         @Named(COMPRESSION_BLOCK_SIZE) int blockSize, @Named(COMPRESSION_THREADS) int threads,
+         SizeClassedBufferPool copyBuffers) {
+      return new GzipObjectCodec(userExecutor, blockSize, threads, copyBuffers);
+   }
 }
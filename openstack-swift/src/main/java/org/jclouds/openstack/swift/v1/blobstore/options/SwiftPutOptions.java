@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.blobstore.options;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.util.Date;
+
+import org.jclouds.blobstore.options.PutOptions;
+import org.jclouds.openstack.swift.v1.options.ExpiryOptions;
+
+/**
+ * Put options that swift adds to the portable ones.
+ * 
+ * <pre>
+ * blobStore.putBlob(&quot;logs&quot;, blob, SwiftPutOptions.Builder.expireAfter(86400));
+ * </pre>
+ */
+public class SwiftPutOptions extends PutOptions {
+
+   private ExpiryOptions expiry = new ExpiryOptions();
+
+   /**
+    * Swift deletes the blob at {@code expiration}, rounded down to the second.
+    */
+   public SwiftPutOptions expireAt(Date expiration) {
+      expiry = new ExpiryOptions().deleteAt(expiration.getTime() / 1000);
+      return this;
+   }
+
+   /**
+    * Swift deletes the blob this many seconds after it is written. Large blobs
+    * count from when their upload starts.
+    */
+   public SwiftPutOptions expireAfter(long seconds) {
+      expiry = new ExpiryOptions().deleteAfter(seconds);
+      return this;
+   }
+
+   @Override
+   public SwiftPutOptions multipart() {
+      super.multipart();
+      return this;
+   }
+
+   /**
+    * @return when the blob expires; no options if it never does.
+    */
+   public ExpiryOptions getExpiry() {
+      return expiry;
+   }
+
+   /**
+    * @return the expiry in {@code options}, or none if they are portable.
+    */
+   public static ExpiryOptions expiryOf(PutOptions options) {
+      return options instanceof SwiftPutOptions ? SwiftPutOptions.class.cast(options).getExpiry()
+            : new ExpiryOptions();
+   }
+
+   @Override
+   public String toString() {
+      return toStringHelper("").omitNullValues().add("multipart", isMultipart())
+            .add("deleteAt", expiry.getDeleteAt()).add("deleteAfter", expiry.getDeleteAfter()).toString();
+   }
+
+   public static class Builder {
+
+      /** @see SwiftPutOptions#expireAt */
+      public static SwiftPutOptions expireAt(Date expiration) {
+         SwiftPutOptions options = new SwiftPutOptions();
+         return options.expireAt(expiration);
+      }
+
+      /** @see SwiftPutOptions#expireAfter */
+      public static SwiftPutOptions expireAfter(long seconds) {
+         SwiftPutOptions options = new SwiftPutOptions();
+         return options.expireAfter(seconds);
+      }
+
+      /** @see PutOptions#multipart */
+      public static SwiftPutOptions multipart() {
+         SwiftPutOptions options = new SwiftPutOptions();
+         return options.multipart();
+      }
+   }
+}
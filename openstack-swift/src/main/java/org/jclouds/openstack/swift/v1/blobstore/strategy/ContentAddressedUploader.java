@@ -0,0 +1,333 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.blobstore.strategy;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.propagate;
+import static com.google.common.io.BaseEncoding.base16;
+import static org.jclouds.openstack.swift.v1.blobstore.strategy.StaticLargeObjectUploader.MAX_OBJECT_SIZE;
+import static org.jclouds.openstack.swift.v1.functions.ParseObjectListFromResponse.SUBDIR_CONTENT_TYPE;
+import static org.jclouds.openstack.swift.v1.options.ListContainerOptions.Builder.marker;
+import static org.jclouds.util.Closeables2.closeQuietly;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.io.Payload;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.domain.Container;
+import org.jclouds.openstack.swift.v1.domain.ObjectList;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.io.SizeClassedBufferPool;
+import org.jclouds.openstack.swift.v1.options.ExpiryOptions;
+import org.jclouds.openstack.swift.v1.options.ListContainerOptions;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Opt-in deduplication of the objects put into a container.
+ *
+ * A container opts in when its metadata maps {@link #DEDUP} to {@link #MD5}.
+ * Before a payload is sent, it is hashed by streaming it once locally, and the
+ * hash is looked up in an index of the objects this region already holds. On
+ * a hit, the object is written with a server-side {@link ObjectApi#copy copy}
+ * of the existing one, so its bytes are never sent. On a miss, it is put as
+ * usual, with the hash as its {@code ETag} so that swift verifies it.
+ *
+ * The index maps the md5 of each object to one object holding that content,
+ * and is bounded in size. It is seeded from every put, and from the listing of
+ * each opted-in container, started in the background the first time it is put
+ * into. Puts do not wait for the listing, and a listing that fails is started
+ * again by the next put.
+ * Entries can go stale as objects are replaced or deleted elsewhere, so the
+ * existing object is {@link ObjectApi#head checked} before it is copied, and
+ * the copy's etag before it is trusted. Either check failing falls back to a
+ * normal put.
+ *
+ * Only payloads that can be read twice and fit a single put are deduplicated.
+ */
+public class ContentAddressedUploader {
+
+   /** Metadata key of containers that opt in. */
+   public static final String DEDUP = "jclouds-dedup";
+
+   public static final String MD5 = "md5";
+
+   private final SwiftApi api;
+   private final String regionId;
+   private final SizeClassedBufferPool buffers;
+   private final Cache<String, Location> index;
+   private final Executor executor;
+   private final ConcurrentMap<String, ListenableFuture<Void>> seeds = Maps.newConcurrentMap();
+   private final AtomicLong deduplicatedCount = new AtomicLong();
+   private final AtomicLong deduplicatedBytes = new AtomicLong();
+   private final AtomicLong uploadedCount = new AtomicLong();
+   private final AtomicLong staleCount = new AtomicLong();
+   private final AtomicLong seedFailureCount = new AtomicLong();
+
+   /**
+    * @param maxEntries
+    *           most hashes remembered, each costing around 200 bytes.
+    * @param executor
+    *           runs the listings seeding the index.
+    */
+   public ContentAddressedUploader(SwiftApi api, String regionId, long maxEntries, SizeClassedBufferPool buffers,
+         Executor executor) {
+      checkArgument(maxEntries > 0, "maxEntries must be positive");
+      this.api = checkNotNull(api, "api");
+      this.regionId = checkNotNull(regionId, "regionId");
+      this.buffers = checkNotNull(buffers, "buffers");
+      this.executor = checkNotNull(executor, "executor");
+      this.index = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
+   }
+
+   /**
+    * @return true if objects put into {@code container} should be
+    *         deduplicated.
+    */
+   public static boolean isEnabled(Container container) {
+      return MD5.equals(container.metadata().get(DEDUP));
+   }
+
+   /**
+    * @return true if {@code payload} can be hashed before it is sent, and is
+    *         small enough for a single put.
+    */
+   public static boolean canDeduplicate(Payload payload) {
+      Long length = payload.getContentMetadata().getContentLength();
+      return payload.isRepeatable() && length != null && length > 0 && length <= MAX_OBJECT_SIZE;
+   }
+
+   /**
+    * @param payload
+    *           content of the object, which must satisfy
+    *           {@link #canDeduplicate(Payload)}.
+    *
+    * @return the etag of the object.
+    */
+   public String upload(String container, String objectName, Payload payload, Map<String, String> metadata) {
+      return upload(container, objectName, payload, metadata, new ExpiryOptions());
+   }
+
+   /**
+    * Uploads an object that swift deletes when it expires. Copies get the
+    * expiry too, never the one of their source.
+    * 
+    * @see #upload(String, String, Payload, Map)
+    */
+   public String upload(String container, String objectName, Payload payload, Map<String, String> metadata,
+         ExpiryOptions expiry) {
+      checkNotNull(container, "container");
+      checkNotNull(objectName, "objectName");
+      checkNotNull(metadata, "metadata");
+      checkNotNull(expiry, "expiry");
+      checkArgument(canDeduplicate(checkNotNull(payload, "payload")), "%s cannot be deduplicated", payload);
+      seed(container);
+      byte[] md5 = md5(payload);
+      String hash = base16().lowerCase().encode(md5);
+      long length = payload.getContentMetadata().getContentLength();
+      String contentType = payload.getContentMetadata().getContentType();
+
+      Location existing = index.getIfPresent(hash);
+      if (existing != null) {
+         if (copy(existing, container, objectName, hash, length, contentType, metadata, expiry)) {
+            deduplicatedCount.incrementAndGet();
+            deduplicatedBytes.addAndGet(length);
+            return hash;
+         }
+         staleCount.incrementAndGet();
+         index.asMap().remove(hash, existing);
+      }
+      payload.getContentMetadata().setContentMD5(md5);
+      String etag = api.objectApiInRegionForContainer(regionId, container).replace(objectName, payload, metadata,
+            expiry);
+      uploadedCount.incrementAndGet();
+      record(container, objectName, etag, length);
+      return etag;
+   }
+
+   /**
+    * Adds an object written some other way to the index, unless its etag is
+    * not the md5 of its content, as for large objects.
+    */
+   public void record(String container, String objectName, String etag, long length) {
+      if (etag == null || length <= 0) {
+         return;
+      }
+      String hash = etag.replace("\"", "").toLowerCase();
+      if (hash.length() == 32 && base16().lowerCase().canDecode(hash)) {
+         index.put(hash, new Location(container, objectName, length));
+      }
+   }
+
+   private boolean copy(Location existing, String container, String objectName, String hash, long length,
+         String contentType, Map<String, String> metadata, ExpiryOptions expiry) {
+      if (existing.length != length) {
+         return false;
+      }
+      SwiftObject source = api.objectApiInRegionForContainer(regionId, existing.container).head(existing.name);
+      if (source == null || !hash.equalsIgnoreCase(source.etag().replace("\"", ""))) {
+         return false;
+      }
+      // a copy keeps the content type of its source
+      if (contentType != null && !contentType.equals(source.payload().getContentMetadata().getContentType())) {
+         return false;
+      }
+      String etag = api.objectApiInRegionForContainer(regionId, container).copy(objectName, existing.container,
+            existing.name, metadata, expiry);
+      // the source may have changed between the head and the copy, in which
+      // case the put that follows overwrites the copy
+      return etag != null && hash.equalsIgnoreCase(etag.replace("\"", ""));
+   }
+
+   /**
+    * Lists {@code container} into the index in the background, unless it was
+    * listed already or is being listed.
+    * 
+    * @return completes when the listing is indexed, or fails with it.
+    */
+   public ListenableFuture<Void> seed(final String container) {
+      checkNotNull(container, "container");
+      ListenableFuture<Void> seed = seeds.get(container);
+      if (seed != null) {
+         return seed;
+      }
+      final SettableFuture<Void> started = SettableFuture.create();
+      seed = seeds.putIfAbsent(container, started);
+      if (seed != null) {
+         return seed;
+      }
+      try {
+         executor.execute(new Runnable() {
+            @Override
+            public void run() {
+               try {
+                  list(container);
+                  started.set(null);
+               } catch (RuntimeException e) {
+                  failed(container, started, e);
+               }
+            }
+         });
+      } catch (RejectedExecutionException e) {
+         failed(container, started, e);
+      }
+      return started;
+   }
+
+   /** lets the next put list {@code container} again. */
+   private void failed(String container, SettableFuture<Void> seed, Exception cause) {
+      seedFailureCount.incrementAndGet();
+      seeds.remove(container, seed);
+      seed.setException(cause);
+   }
+
+   private void list(String container) {
+      ObjectApi objectApi = api.objectApiInRegionForContainer(regionId, container);
+      ListContainerOptions options = new ListContainerOptions();
+      while (true) {
+         ObjectList page = objectApi.list(options);
+         if (page == null || page.isEmpty()) {
+            return;
+         }
+         for (SwiftObject object : page) {
+            Long length = object.payload().getContentMetadata().getContentLength();
+            if (length != null && !SUBDIR_CONTENT_TYPE.equals(object.payload().getContentMetadata().getContentType())) {
+               record(container, object.name(), object.etag(), length);
+            }
+         }
+         options = marker(page.get(page.size() - 1).name());
+      }
+   }
+
+   private byte[] md5(Payload payload) {
+      Hasher hasher = Hashing.md5().newHasher();
+      InputStream in = payload.getInput();
+      byte[] buffer = buffers.acquire(64 * 1024);
+      try {
+         for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+            hasher.putBytes(buffer, 0, read);
+         }
+      } catch (IOException e) {
+         throw propagate(e);
+      } finally {
+         buffers.release(buffer);
+         closeQuietly(in);
+      }
+      return hasher.hash().asBytes();
+   }
+
+   /**
+    * Objects written with a copy instead of a put.
+    */
+   public long deduplicatedCount() {
+      return deduplicatedCount.get();
+   }
+
+   /**
+    * Bytes not sent thanks to copies.
+    */
+   public long deduplicatedBytes() {
+      return deduplicatedBytes.get();
+   }
+
+   /**
+    * Objects put with their content.
+    */
+   public long uploadedCount() {
+      return uploadedCount.get();
+   }
+
+   /**
+    * Index hits that no longer held the content, and were put instead.
+    */
+   public long staleCount() {
+      return staleCount.get();
+   }
+
+   /**
+    * Container listings that failed to seed the index.
+    */
+   public long seedFailureCount() {
+      return seedFailureCount.get();
+   }
+
+   private static final class Location {
+      private final String container;
+      private final String name;
+      private final long length;
+
+      private Location(String container, String name, long length) {
+         this.container = container;
+         this.name = name;
+         this.length = length;
+      }
+   }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.blobstore.strategy;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Predicates.equalTo;
+import static com.google.common.base.Predicates.not;
+import static org.jclouds.util.Closeables2.closeQuietly;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.jclouds.io.MutableContentMetadata;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+import org.jclouds.openstack.swift.v1.binders.BindMetadataToHeaders.BindObjectMetadataToHeaders;
+import org.jclouds.openstack.swift.v1.domain.Container;
+import org.jclouds.openstack.swift.v1.io.ParallelGzipInputStream;
+import org.jclouds.openstack.swift.v1.io.SizeClassedBufferPool;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Opt-in gzip compression of the objects in a container.
+ * 
+ * A container opts in when its metadata maps {@link #CODEC} to {@link #GZIP},
+ * for example after
+ * {@code containerApi.updateMetadata(name, ImmutableMap.of(CODEC, GZIP))}.
+ * Objects put into it are compressed as they are uploaded, and tagged with the
+ * same entry in their metadata, which {@link BindObjectMetadataToHeaders}
+ * sends as {@code X-Object-Meta-Jclouds-Codec}. Objects carrying the tag are
+ * decompressed as they are read, wherever they are stored.
+ * 
+ * Neither direction holds more than a few blocks of an object in memory.
+ */
+public class GzipObjectCodec {
+
+   /** Metadata key of the codec, on both containers and objects. */
+   public static final String CODEC = "jclouds-codec";
+
+   public static final String GZIP = "gzip";
+
+   private final ListeningExecutorService executor;
+   private final int blockSize;
+   private final int parallelism;
+   private final SizeClassedBufferPool buffers;
+
+   /**
+    * @param blockSize
+    *           bytes compressed as one unit of work.
+    * @param parallelism
+    *           number of blocks compressed concurrently per object.
+    */
+   public GzipObjectCodec(ListeningExecutorService executor, int blockSize, int parallelism,
+         SizeClassedBufferPool buffers) {
+      checkArgument(blockSize > 0, "blockSize must be positive");
+      checkArgument(parallelism > 0, "parallelism must be positive");
+      this.executor = checkNotNull(executor, "executor");
+      this.blockSize = blockSize;
+      this.parallelism = parallelism;
+      this.buffers = checkNotNull(buffers, "buffers");
+   }
+
+   /**
+    * @return true if objects put into {@code container} should be compressed.
+    */
+   public static boolean isEnabled(Container container) {
+      return GZIP.equals(container.metadata().get(CODEC));
+   }
+
+   /**
+    * @return true if an object with this metadata was stored compressed.
+    */
+   public static boolean isCompressed(Map<String, String> objectMetadata) {
+      String codec = objectMetadata.get(CODEC);
+      if (codec == null) {
+         return false;
+      }
+      checkArgument(GZIP.equals(codec), "unsupported codec %s", codec);
+      return true;
+   }
+
+   /**
+    * @return true unless the payload is already encoded, or tagged.
+    */
+   public static boolean shouldCompress(Payload payload, Map<String, String> objectMetadata) {
+      return payload.getContentMetadata().getContentEncoding() == null && !objectMetadata.containsKey(CODEC);
+   }
+
+   /**
+    * Compresses {@code payload} as it is read. The length of the result is
+    * unknown until it is consumed.
+    */
+   public Payload compress(Payload payload) {
+      InputStream compressed = new ParallelGzipInputStream(payload.getInput(), executor, blockSize, parallelism,
+            buffers);
+      Payload result = Payloads.newInputStreamPayload(compressed);
+      result.getContentMetadata().setContentType(payload.getContentMetadata().getContentType());
+      return result;
+   }
+
+   /**
+    * @return {@code objectMetadata} tagged with the codec.
+    */
+   public static Map<String, String> tag(Map<String, String> objectMetadata) {
+      return ImmutableMap.<String, String> builder() //
+            .putAll(Maps.filterKeys(objectMetadata, not(equalTo(CODEC)))) //
+            .put(CODEC, GZIP).build();
+   }
+
+   /**
+    * @return {@code objectMetadata} without the codec tag.
+    */
+   public static Map<String, String> untag(Map<String, String> objectMetadata) {
+      return ImmutableMap.copyOf(Maps.filterKeys(objectMetadata, not(equalTo(CODEC))));
+   }
+
+   /**
+    * Decompresses {@code payload} as it is read. The length of the result is
+    * unknown.
+    */
+   public static Payload decompress(Payload payload) throws IOException {
+      InputStream in = payload.getInput();
+      InputStream decompressed;
+      try {
+         decompressed = new GZIPInputStream(in);
+      } catch (IOException e) {
+         closeQuietly(in);
+         throw e;
+      }
+      Payload result = Payloads.newInputStreamPayload(decompressed);
+      MutableContentMetadata contentMetadata = result.getContentMetadata();
+      contentMetadata.setContentType(payload.getContentMetadata().getContentType());
+      contentMetadata.setContentDisposition(payload.getContentMetadata().getContentDisposition());
+      return result;
+   }
+}
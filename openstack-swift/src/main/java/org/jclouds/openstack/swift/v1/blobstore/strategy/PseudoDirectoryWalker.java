@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.blobstore.strategy;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.openstack.swift.v1.options.ListContainerOptions.Builder.prefix;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jclouds.blobstore.domain.MutableStorageMetadata;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.domain.StorageType;
+import org.jclouds.blobstore.domain.internal.MutableStorageMetadataImpl;
+import org.jclouds.openstack.swift.v1.blobstore.functions.ToBlobMetadata;
+import org.jclouds.openstack.swift.v1.domain.ObjectList;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.options.ListContainerOptions;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Walks the pseudo-directories of a container, listing each with the
+ * {@code '/'} {@link ListContainerOptions#delimiter delimiter}.
+ * 
+ * Subdirectories are expanded concurrently as they are discovered, by at most
+ * {@link Builder#parallelism} workers on the executor. Workers share a deque of
+ * directories to list, and take the most recently discovered first, so that
+ * the frontier stays small in deep trees. Entries are streamed to the
+ * {@link Walk} through a bounded queue, which stalls workers while the
+ * consumer is behind. Entries of different directories interleave.
+ * 
+ * Directories are reported as {@link StorageType#RELATIVE_PATH} without their
+ * trailing slash, and objects as {@link StorageType#BLOB}.
+ */
+public class PseudoDirectoryWalker {
+
+   public static Builder builder(ObjectApi api, ListeningExecutorService executor) {
+      return new Builder(api, executor);
+   }
+
+   public static class Builder {
+      private final ObjectApi api;
+      private final ListeningExecutorService executor;
+      private int parallelism = 8;
+      private int maxDepth = Integer.MAX_VALUE;
+      private Predicate<? super StorageMetadata> filter = Predicates.alwaysTrue();
+      private Predicate<? super String> expandIf = Predicates.alwaysTrue();
+      private int bufferSize = 1000;
+
+      Builder(ObjectApi api, ListeningExecutorService executor) {
+         this.api = checkNotNull(api, "api");
+         this.executor = checkNotNull(executor, "executor");
+      }
+
+      /**
+       * Maximum number of directories listed concurrently. Defaults to 8.
+       */
+      public Builder parallelism(int parallelism) {
+         checkArgument(parallelism > 0, "parallelism must be positive");
+         this.parallelism = parallelism;
+         return this;
+      }
+
+      /**
+       * Depth of the deepest entries returned, where the entries of the root
+       * are at depth 1. Defaults to unlimited.
+       */
+      public Builder maxDepth(int maxDepth) {
+         checkArgument(maxDepth > 0, "maxDepth must be positive");
+         this.maxDepth = maxDepth;
+         return this;
+      }
+
+      /**
+       * Entries returned; others are still expanded. Defaults to all.
+       */
+      public Builder filter(Predicate<? super StorageMetadata> filter) {
+         this.filter = checkNotNull(filter, "filter");
+         return this;
+      }
+
+      /**
+       * Directories expanded, by name without trailing slash. Defaults to all.
+       */
+      public Builder expandIf(Predicate<? super String> expandIf) {
+         this.expandIf = checkNotNull(expandIf, "expandIf");
+         return this;
+      }
+
+      /**
+       * Entries buffered ahead of the consumer. Defaults to 1000.
+       */
+      public Builder bufferSize(int bufferSize) {
+         checkArgument(bufferSize > 0, "bufferSize must be positive");
+         this.bufferSize = bufferSize;
+         return this;
+      }
+
+      public PseudoDirectoryWalker build() {
+         return new PseudoDirectoryWalker(this);
+      }
+   }
+
+   private final ObjectApi api;
+   private final ListeningExecutorService executor;
+   private final int parallelism;
+   private final int maxDepth;
+   private final Predicate<? super StorageMetadata> filter;
+   private final Predicate<? super String> expandIf;
+   private final int bufferSize;
+
+   private PseudoDirectoryWalker(Builder builder) {
+      this.api = builder.api;
+      this.executor = builder.executor;
+      this.parallelism = builder.parallelism;
+      this.maxDepth = builder.maxDepth;
+      this.filter = builder.filter;
+      this.expandIf = builder.expandIf;
+      this.bufferSize = builder.bufferSize;
+   }
+
+   /**
+    * Starts walking under {@code directory}, or the whole container if empty.
+    * The walk must be {@link Walk#close() closed} if abandoned early.
+    */
+   public Walk walk(String directory) {
+      checkNotNull(directory, "directory");
+      String root = directory.isEmpty() || directory.endsWith("/") ? directory : directory + "/";
+      Walk walk = new Walk();
+      walk.submit(new Directory(root, 0));
+      return walk;
+   }
+
+   private static final class Directory {
+      private final String prefix;
+      private final int depth;
+
+      private Directory(String prefix, int depth) {
+         this.prefix = prefix;
+         this.depth = depth;
+      }
+   }
+
+   /** swift's default {@code container_listing_limit}. */
+   private static final int PAGE_SIZE = 10000;
+
+   /** queued once all directories are listed, or the walk failed. */
+   private static final Object END = new Object();
+
+   /**
+    * The entries found so far, in the order they were listed.
+    */
+   public class Walk extends AbstractIterator<StorageMetadata> implements Closeable {
+      private final BlockingDeque<Directory> directories = new LinkedBlockingDeque<Directory>();
+      private final BlockingQueue<Object> entries = new ArrayBlockingQueue<Object>(bufferSize);
+      private int workers;
+      private int outstanding;
+      private final AtomicBoolean ended = new AtomicBoolean();
+      /** the consumer is gone */
+      private volatile boolean closed;
+      /** no more directories are listed */
+      private volatile boolean stopped;
+      private volatile Throwable failure;
+
+      private Walk() {
+      }
+
+      @Override
+      protected StorageMetadata computeNext() {
+         if (closed) {
+            return endOfData();
+         }
+         Object next;
+         try {
+            next = entries.take();
+         } catch (InterruptedException e) {
+            close();
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+         }
+         if (next == END) {
+            if (failure != null) {
+               throw Throwables.propagate(failure);
+            }
+            return endOfData();
+         }
+         return StorageMetadata.class.cast(next);
+      }
+
+      /**
+       * Stops listing directories. Listings in progress end after their
+       * current page.
+       */
+      @Override
+      public void close() {
+         closed = true;
+         stopped = true;
+         entries.clear();
+      }
+
+      private synchronized void submit(Directory directory) {
+         outstanding++;
+         directories.addLast(directory);
+         while (workers < parallelism && workers < outstanding) {
+            workers++;
+            try {
+               executor.execute(new Worker());
+            } catch (RuntimeException e) {
+               workers--;
+               fail(e);
+               return;
+            }
+         }
+      }
+
+      private synchronized Directory takeOrRetire() {
+         Directory next = directories.pollLast();
+         if (next == null) {
+            workers--;
+         }
+         return next;
+      }
+
+      private void listed() {
+         boolean done;
+         synchronized (this) {
+            done = --outstanding == 0;
+         }
+         if (done && ended.compareAndSet(false, true)) {
+            try {
+               while (!closed && !entries.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                  // the consumer is behind
+               }
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+         }
+      }
+
+      private synchronized void fail(Throwable e) {
+         if (failure == null) {
+            failure = e;
+         }
+         stopped = true;
+         directories.clear();
+         if (ended.compareAndSet(false, true)) {
+            // drop entries to make room, as the consumer must see the failure
+            while (!entries.offer(END)) {
+               entries.poll();
+            }
+         }
+      }
+
+      private void list(Directory directory) {
+         Set<String> markers = Sets.newHashSet();
+         String marker = null;
+         while (!stopped) {
+            ListContainerOptions options = prefix(directory.prefix).delimiter('/').limit(PAGE_SIZE);
+            if (marker != null) {
+               options.marker(marker);
+            }
+            ObjectList page = api.list(options);
+            if (page == null || page.isEmpty()) {
+               return;
+            }
+            ToBlobMetadata toBlobMetadata = new ToBlobMetadata(page.container());
+            for (SwiftObject object : page) {
+               marker = object.name();
+               if (object.name().endsWith("/")) {
+                  String name = object.name().substring(0, object.name().length() - 1);
+                  if (!markers.contains(name)) {
+                     emit(directory(name));
+                  }
+                  if (directory.depth + 1 < maxDepth && expandIf.apply(name)) {
+                     submit(new Directory(object.name(), directory.depth + 1));
+                  }
+               } else {
+                  StorageMetadata entry = toBlobMetadata.apply(object);
+                  if (entry.getType() == StorageType.RELATIVE_PATH) {
+                     // a directory marker object, also rolled up as a subdir
+                     markers.add(entry.getName());
+                  }
+                  emit(entry);
+               }
+            }
+            if (page.size() < PAGE_SIZE) {
+               return;
+            }
+         }
+      }
+
+      private void emit(StorageMetadata entry) {
+         if (!filter.apply(entry)) {
+            return;
+         }
+         try {
+            while (!stopped && !entries.offer(entry, 100, TimeUnit.MILLISECONDS)) {
+               // the consumer is behind
+            }
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // the entry is lost, so the walk must not end normally
+            fail(new InterruptedIOException("interrupted while emitting " + entry.getName()));
+         }
+      }
+
+      private class Worker implements Runnable {
+         @Override
+         public void run() {
+            Directory directory;
+            while ((directory = takeOrRetire()) != null) {
+               try {
+                  list(directory);
+               } catch (Throwable e) {
+                  fail(e);
+               } finally {
+                  listed();
+               }
+            }
+         }
+      }
+   }
+
+   private static StorageMetadata directory(String name) {
+      MutableStorageMetadata directory = new MutableStorageMetadataImpl();
+      directory.setType(StorageType.RELATIVE_PATH);
+      directory.setName(name);
+      return directory;
+   }
+}
@@ -0,0 +1,349 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.blobstore.strategy;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Throwables.propagate;
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+import static java.lang.String.format;
+import static org.jclouds.util.Closeables2.closeQuietly;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.jclouds.io.Payload;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.domain.Segment;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.features.StaticLargeObjectApi;
+import org.jclouds.openstack.swift.v1.io.BufferPool;
+import org.jclouds.openstack.swift.v1.options.ExpiryOptions;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Uploads a stream of any length, including unknown, into a container.
+ * 
+ * The stream is first read into a small buffer. If it ends within it, it is
+ * sent with a single {@link ObjectApi#replace put}, without touching the
+ * {@link BufferPool}. Otherwise, the upload reserves two buffers from the pool
+ * at once and reads on into them. If the stream ends within the first buffer,
+ * it is still a single put. Otherwise, each buffer is uploaded concurrently as
+ * a segment, and the object is written as a {@link StaticLargeObjectApi
+ * static large object} manifest.
+ * 
+ * An upload takes more buffers only when the pool has some free, and
+ * otherwise waits for one of its own segments to be sent and reuses its
+ * buffer. Uploads therefore never wait for the pool while holding buffers,
+ * and any number of them can share a pool of two or more buffers.
+ * 
+ * Segments are named {@code objectName/slo/timestamp/index} and are deleted on
+ * a best-effort basis if the upload fails.
+ */
+public class StaticLargeObjectUploader {
+
+   /** Swift's default {@code max_manifest_segments}. */
+   public static final int MAX_SEGMENTS = 1000;
+
+   /** Swift's default {@code max_file_size}, above which a single put fails. */
+   public static final long MAX_OBJECT_SIZE = 5l * 1024 * 1024 * 1024;
+
+   /** Most bytes read before a stream is known not to be small. */
+   static final int PROBE_SIZE = 64 * 1024;
+
+   private final SwiftApi api;
+   private final String regionId;
+   private final ListeningExecutorService executor;
+   private final BufferPool buffers;
+
+   public StaticLargeObjectUploader(SwiftApi api, String regionId, ListeningExecutorService executor,
+         BufferPool buffers) {
+      this.api = checkNotNull(api, "api");
+      this.regionId = checkNotNull(regionId, "regionId");
+      this.executor = checkNotNull(executor, "executor");
+      this.buffers = checkNotNull(buffers, "buffers");
+      checkArgument(buffers.maxBuffers() >= 2, "uploads need a pool of at least two buffers");
+   }
+
+   /**
+    * @param container
+    *           container to write the object and its segments into.
+    * @param objectName
+    *           corresponds to {@link org.jclouds.openstack.swift.v1.domain.SwiftObject#name()}.
+    * @param payload
+    *           content of the object, whose length may be unknown. Its input is
+    *           closed when this method returns.
+    * @param metadata
+    *           corresponds to {@link org.jclouds.openstack.swift.v1.domain.SwiftObject#metadata()}.
+    * 
+    * @return the etag of the object, or of its manifest if segmented.
+    */
+   public String upload(String container, String objectName, Payload payload, Map<String, String> metadata) {
+      return upload(container, objectName, payload, metadata, new ExpiryOptions());
+   }
+
+   /**
+    * Uploads an object that swift deletes when it expires. Its segments expire
+    * at the same time.
+    * 
+    * @param expiry
+    *           when the object expires.
+    * 
+    * @see #upload(String, String, Payload, Map)
+    */
+   public String upload(String container, String objectName, Payload payload, Map<String, String> metadata,
+         ExpiryOptions expiry) {
+      checkNotNull(container, "container");
+      checkNotNull(objectName, "objectName");
+      checkNotNull(payload, "payload");
+      checkNotNull(metadata, "metadata");
+      // segments are written over time, but must not expire before the manifest
+      expiry = checkNotNull(expiry, "expiry").fixedAt(System.currentTimeMillis() / 1000);
+      ObjectApi objectApi = api.objectApiInRegionForContainer(regionId, container);
+      String contentType = payload.getContentMetadata().getContentType();
+      InputStream in = payload.getInput();
+      try {
+         byte[] probe = new byte[Math.min(PROBE_SIZE, buffers.bufferSize())];
+         int length = fill(in, probe, 0);
+         if (length < probe.length) {
+            return objectApi.replace(objectName, payload(probe, length, contentType), metadata, expiry);
+         }
+         return new Upload(objectApi, container, objectName, contentType, metadata, expiry).run(in, probe);
+      } finally {
+         closeQuietly(in);
+      }
+   }
+
+   /**
+    * The segment buffers of one upload, all of which it releases when done.
+    */
+   private final class Upload {
+      private final ObjectApi objectApi;
+      private final String container;
+      private final String objectName;
+      private final String contentType;
+      private final Map<String, String> metadata;
+      private final ExpiryOptions expiry;
+      private final String prefix;
+      private final List<byte[]> owned = Lists.newArrayList();
+      private final Deque<byte[]> idle = new ArrayDeque<byte[]>();
+      private final Deque<InFlight> inFlight = new ArrayDeque<InFlight>();
+      private final List<ListenableFuture<Segment>> uploads = Lists.newArrayList();
+
+      private Upload(ObjectApi objectApi, String container, String objectName, String contentType,
+            Map<String, String> metadata, ExpiryOptions expiry) {
+         this.objectApi = objectApi;
+         this.container = container;
+         this.objectName = objectName;
+         this.contentType = contentType;
+         this.metadata = metadata;
+         this.expiry = expiry;
+         this.prefix = format("%s/slo/%d/", objectName, System.currentTimeMillis());
+      }
+
+      private String run(InputStream in, byte[] probe) {
+         // two at once, as one is read into while the other is sent
+         owned.addAll(acquire(2));
+         idle.addAll(owned);
+         try {
+            byte[] current = idle.poll();
+            System.arraycopy(probe, 0, current, 0, probe.length);
+            int length = probe.length + fill(in, current, probe.length);
+            while (true) {
+               checkFailures(uploads);
+               if (length < current.length) {
+                  if (uploads.isEmpty()) {
+                     return objectApi.replace(objectName, payload(current, length, contentType), metadata, expiry);
+                  }
+                  uploadSegment(current, length);
+                  break;
+               }
+               byte[] next = nextBuffer();
+               int nextLength = fill(in, next, 0);
+               if (nextLength == 0) {
+                  idle.add(next);
+                  if (uploads.isEmpty()) {
+                     // the stream was exactly one buffer long
+                     return objectApi.replace(objectName, payload(current, length, contentType), metadata, expiry);
+                  }
+                  uploadSegment(current, length);
+                  break;
+               }
+               uploadSegment(current, length);
+               current = next;
+               length = nextLength;
+            }
+            List<Segment> segments = getUnchecked(Futures.allAsList(uploads));
+            return api.staticLargeObjectApiInRegionForContainer(regionId, container).replaceManifest(objectName,
+                  segments, metadata, expiry);
+         } catch (RuntimeException e) {
+            deleteUploadedSegments(objectApi, uploads);
+            throw e;
+         } finally {
+            release();
+         }
+      }
+
+      /**
+       * Reuses the buffer of a segment already sent, else takes a free one
+       * from the pool, else waits for the oldest segment in flight.
+       */
+      private byte[] nextBuffer() {
+         byte[] buffer = idle.poll();
+         if (buffer == null && !inFlight.isEmpty() && inFlight.peek().future.isDone()) {
+            buffer = inFlight.poll().buffer;
+         }
+         if (buffer == null) {
+            buffer = buffers.tryAcquire();
+            if (buffer != null) {
+               owned.add(buffer);
+            }
+         }
+         if (buffer == null) {
+            InFlight oldest = inFlight.poll();
+            getUnchecked(oldest.future);
+            buffer = oldest.buffer;
+         }
+         return buffer;
+      }
+
+      private void uploadSegment(final byte[] buffer, final int length) {
+         int index = uploads.size();
+         checkState(index < MAX_SEGMENTS, "object exceeds %s segments of %s bytes; increase the segment size",
+               MAX_SEGMENTS, buffers.bufferSize());
+         final String segmentName = format("%s%08d", prefix, index);
+         ListenableFuture<Segment> upload = executor.submit(new Callable<Segment>() {
+            @Override
+            public Segment call() {
+               String etag = objectApi.replace(segmentName, payload(buffer, length, null),
+                     ImmutableMap.<String, String> of(), expiry);
+               return Segment.builder().path(format("/%s/%s", container, segmentName)).etag(etag)
+                     .sizeBytes(length).build();
+            }
+         });
+         uploads.add(upload);
+         inFlight.add(new InFlight(upload, buffer));
+      }
+
+      /**
+       * Segments still being sent release their buffer once done, which only
+       * happens here when the upload failed.
+       */
+      private void release() {
+         for (final InFlight pending : inFlight) {
+            owned.remove(pending.buffer);
+            pending.future.addListener(new Runnable() {
+               @Override
+               public void run() {
+                  buffers.release(pending.buffer);
+               }
+            }, sameThreadExecutor());
+         }
+         for (byte[] buffer : owned) {
+            buffers.release(buffer);
+         }
+      }
+   }
+
+   private static final class InFlight {
+      private final ListenableFuture<Segment> future;
+      private final byte[] buffer;
+
+      private InFlight(ListenableFuture<Segment> future, byte[] buffer) {
+         this.future = future;
+         this.buffer = buffer;
+      }
+   }
+
+   /** fails fast when a segment already failed, rather than reading the rest of the stream. */
+   private static void checkFailures(List<ListenableFuture<Segment>> uploads) {
+      for (ListenableFuture<Segment> upload : uploads) {
+         if (upload.isDone()) {
+            getUnchecked(upload);
+         }
+      }
+   }
+
+   private static void deleteUploadedSegments(ObjectApi objectApi, List<ListenableFuture<Segment>> uploads) {
+      List<Segment> uploaded;
+      try {
+         uploaded = Futures.successfulAsList(uploads).get();
+      } catch (Exception e) {
+         return;
+      }
+      for (Segment segment : uploaded) {
+         if (segment == null) {
+            continue;
+         }
+         String path = segment.path();
+         try {
+            objectApi.delete(path.substring(path.indexOf('/', 1) + 1));
+         } catch (RuntimeException ignored) {
+            // best effort; the segments are visible under the object name
+         }
+      }
+   }
+
+   private List<byte[]> acquire(int count) {
+      try {
+         return buffers.acquire(count);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw propagate(e);
+      }
+   }
+
+   private static int fill(InputStream in, byte[] buffer, int offset) {
+      try {
+         return ByteStreams.read(in, buffer, offset, buffer.length - offset);
+      } catch (IOException e) {
+         throw propagate(e);
+      }
+   }
+
+   private static <T> T getUnchecked(ListenableFuture<T> future) {
+      try {
+         return future.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw propagate(e);
+      } catch (ExecutionException e) {
+         throw propagate(e.getCause());
+      }
+   }
+
+   private static Payload payload(byte[] buffer, int length, String contentType) {
+      Payload payload = BufferPool.newPayload(buffer, length);
+      if (contentType != null) {
+         payload.getContentMetadata().setContentType(contentType);
+      }
+      return payload;
+   }
+}
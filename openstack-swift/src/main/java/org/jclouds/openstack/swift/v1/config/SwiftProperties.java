@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.config;
+
+/**
+ * Configuration properties and constants used in openstack Swift connections.
+ */
+public class SwiftProperties {
+
+   /**
+    * Size in bytes of each segment when a stream is uploaded as a static large
+    * object. Defaults to 32MB. Swift rejects segments smaller than 1MB, other
+    * than the last one.
+    */
+   public static final String LARGE_OBJECT_SEGMENT_SIZE = "jclouds.swift.large-object.segment-size";
+
+   /**
+    * Maximum number of segments of a static large object uploaded
+    * concurrently. Defaults to 4.
+    */
+   public static final String LARGE_OBJECT_UPLOAD_THREADS = "jclouds.swift.large-object.upload-threads";
+
+   /**
+    * Comma-separated {@code operation=permits} pairs limiting concurrent calls
+    * per region made by the blobstore, keyed by the {@code @Named} operation
+    * such as {@code GetObject}, or {@code *} for any other operation. Defaults
+    * to empty, which disables the limits.
+    *
+    * @see org.jclouds.openstack.swift.v1.resilience.SwiftBulkhead
+    */
+   public static final String BULKHEAD_LIMITS = "jclouds.swift.bulkhead.limits";
+
+   /**
+    * Milliseconds a call waits for a permit before it is rejected. Defaults to
+    * 30000.
+    */
+   public static final String BULKHEAD_QUEUE_TIMEOUT = "jclouds.swift.bulkhead.queue-timeout";
+
+   /**
+    * Latency in milliseconds above which limits shrink, growing back while
+    * calls are faster. Defaults to 0, which keeps limits fixed.
+    */
+   public static final String BULKHEAD_TARGET_LATENCY = "jclouds.swift.bulkhead.target-latency";
+
+   /**
+    * Attempts made for an idempotent call by the blobstore, including the
+    * first, retrying throttling, server and transport errors with backoff.
+    * Defaults to 0, which disables retries and circuit breakers.
+    *
+    * @see org.jclouds.openstack.swift.v1.resilience.SwiftResilience
+    */
+   public static final String RETRY_MAX_ATTEMPTS = "jclouds.swift.retry.max-attempts";
+
+   /**
+    * Consecutive failures that open the circuit breaker of a region. Defaults
+    * to 5.
+    */
+   public static final String CIRCUIT_BREAKER_FAILURE_THRESHOLD = "jclouds.swift.circuit-breaker.failure-threshold";
+
+   /**
+    * Milliseconds an open circuit breaker fails calls fast before allowing a
+    * trial. Defaults to 30000.
+    */
+   public static final String CIRCUIT_BREAKER_OPEN_DURATION = "jclouds.swift.circuit-breaker.open-duration";
+
+   /**
+    * Size in bytes of the blocks compressed concurrently when putting into a
+    * container that opted into compression. Defaults to 1MB.
+    *
+    * @see org.jclouds.openstack.swift.v1.blobstore.strategy.GzipObjectCodec
+    */
+   public static final String COMPRESSION_BLOCK_SIZE = "jclouds.swift.compression.block-size";
+
+   /**
+    * Maximum number of blocks of one object compressed concurrently. Defaults
+    * to 4.
+    */
+   public static final String COMPRESSION_THREADS = "jclouds.swift.compression.threads";
+
+   /**
+    * Most content hashes remembered per region when putting into containers
+    * that opted into deduplication. Defaults to 100000.
+    *
+    * @see org.jclouds.openstack.swift.v1.blobstore.strategy.ContentAddressedUploader
+    */
+   public static final String DEDUP_INDEX_SIZE = "jclouds.swift.dedup.index-size";
+
+   /**
+    * Milliseconds the blobstore serves a container listing from its cache.
+    * Defaults to 0, which disables the cache.
+    *
+    * @see org.jclouds.openstack.swift.v1.util.ObjectListingCache
+    */
+   public static final String LISTING_CACHE_TTL = "jclouds.swift.listing-cache.ttl";
+
+   /**
+    * Most listings cached. Defaults to 10000.
+    */
+   public static final String LISTING_CACHE_SIZE = "jclouds.swift.listing-cache.size";
+
+   private SwiftProperties() {
+      throw new AssertionError("intentionally unimplemented");
+   }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.domain;
+
+import static com.google.common.base.Objects.equal;
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Date;
+
+import org.jclouds.http.options.GetOptions;
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+
+/**
+ * The outcome of a conditional {@link ObjectApi#getConditionally(String, GetOptions) GetObject} or
+ * {@link ObjectApi#headConditionally(String, GetOptions) GetObjectMetadata} command.
+ * 
+ * Unlike the unconditional commands, a {@code 304 Not Modified} or
+ * {@code 412 Precondition Failed} response is a result, not an error.
+ * 
+ * @see GetOptions#ifETagDoesntMatch(String)
+ * @see GetOptions#ifModifiedSince(Date)
+ * @see GetOptions#ifETagMatches(String)
+ */
+public final class ConditionalObject {
+
+   public static enum Status {
+      /**
+       * The preconditions held, and {@link ConditionalObject#object()} is
+       * present.
+       */
+      MODIFIED,
+      /**
+       * {@code If-None-Match} or {@code If-Modified-Since} did not hold: the
+       * caller's copy is current.
+       */
+      NOT_MODIFIED,
+      /**
+       * {@code If-Match} or {@code If-Unmodified-Since} did not hold.
+       */
+      PRECONDITION_FAILED,
+      /**
+       * The object does not exist.
+       */
+      NOT_FOUND;
+   }
+
+   public static ConditionalObject modified(SwiftObject object) {
+      checkNotNull(object, "object");
+      return new ConditionalObject(Status.MODIFIED, Optional.of(object), Optional.fromNullable(object.etag()),
+            Optional.fromNullable(object.lastModified()));
+   }
+
+   public static ConditionalObject notModified(@Nullable String etag, @Nullable Date lastModified) {
+      return new ConditionalObject(Status.NOT_MODIFIED, Optional.<SwiftObject> absent(), Optional.fromNullable(etag),
+            Optional.fromNullable(lastModified));
+   }
+
+   public static ConditionalObject preconditionFailed() {
+      return new ConditionalObject(Status.PRECONDITION_FAILED, Optional.<SwiftObject> absent(),
+            Optional.<String> absent(), Optional.<Date> absent());
+   }
+
+   public static ConditionalObject notFound() {
+      return new ConditionalObject(Status.NOT_FOUND, Optional.<SwiftObject> absent(), Optional.<String> absent(),
+            Optional.<Date> absent());
+   }
+
+   private final Status status;
+   private final Optional<SwiftObject> object;
+   private final Optional<String> etag;
+   private final Optional<Date> lastModified;
+
+   private ConditionalObject(Status status, Optional<SwiftObject> object, Optional<String> etag,
+         Optional<Date> lastModified) {
+      this.status = status;
+      this.object = object;
+      this.etag = etag;
+      this.lastModified = lastModified;
+   }
+
+   public Status status() {
+      return status;
+   }
+
+   /**
+    * Present only when {@link #status()} is {@link Status#MODIFIED}.
+    */
+   public Optional<SwiftObject> object() {
+      return object;
+   }
+
+   /**
+    * The current etag of the object, when the server returned one. Present on
+    * {@link Status#NOT_MODIFIED} results, as swift repeats it on a
+    * {@code 304}.
+    */
+   public Optional<String> etag() {
+      return etag;
+   }
+
+   /**
+    * The current last modified date of the object, when the server returned
+    * one.
+    */
+   public Optional<Date> lastModified() {
+      return lastModified;
+   }
+
+   public boolean isModified() {
+      return status == Status.MODIFIED;
+   }
+
+   @Override
+   public boolean equals(Object object) {
+      if (this == object) {
+         return true;
+      }
+      if (object instanceof ConditionalObject) {
+         final ConditionalObject that = ConditionalObject.class.cast(object);
+         return equal(status(), that.status()) //
+               && equal(object(), that.object()) //
+               && equal(etag(), that.etag()) //
+               && equal(lastModified(), that.lastModified());
+      } else {
+         return false;
+      }
+   }
+
+   @Override
+   public int hashCode() {
+      return Objects.hashCode(status(), object(), etag(), lastModified());
+   }
+
+   @Override
+   public String toString() {
+      return toStringHelper("").omitNullValues() //
+            .add("status", status()) //
+            .add("object", object().orNull()) //
+            .add("etag", etag().orNull()) //
+            .add("lastModified", lastModified().orNull()).toString();
+   }
+}
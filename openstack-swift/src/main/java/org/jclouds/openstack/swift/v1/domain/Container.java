@@ -188,6 +188,11 @@ public class Container implements Comparable<Container> {
        * @see Container#metadata()
        */
       public Builder metadata(Map<String, String> metadata) {
+         if (metadata instanceof HeaderBackedMetadata) {
+            // already lower-cased, and built lazily
+            this.metadata = metadata;
+            return this;
+         }
          ImmutableMap.Builder<String, String> builder = ImmutableMap.<String, String> builder();
          for (Entry<String, String> entry : checkNotNull(metadata, "metadata").entrySet()) {
             builder.put(entry.getKey().toLowerCase(), entry.getValue());
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.domain;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.google.common.collect.ForwardingMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+
+/**
+ * User metadata backed by the response headers it came from, such as
+ * {@code X-Object-Meta-Color: blue}. Headers are matched case-insensitively on
+ * {@code -Meta-} without copying, and the map, keyed by the lower-cased suffix,
+ * is built on first access. Responses whose metadata is never read therefore
+ * allocate nothing for it.
+ */
+public final class HeaderBackedMetadata extends ForwardingMap<String, String> {
+
+   private static final String META = "-meta-";
+
+   public static HeaderBackedMetadata of(Multimap<String, String> headers) {
+      return new HeaderBackedMetadata(headers);
+   }
+
+   private final Multimap<String, String> headers;
+   private volatile Map<String, String> metadata;
+
+   private HeaderBackedMetadata(Multimap<String, String> headers) {
+      this.headers = checkNotNull(headers, "headers");
+   }
+
+   @Override
+   protected Map<String, String> delegate() {
+      Map<String, String> result = metadata;
+      if (result == null) {
+         // building twice under contention is harmless
+         metadata = result = extract(headers);
+      }
+      return result;
+   }
+
+   /**
+    * Answers without building the map, if it is not built yet.
+    */
+   @Override
+   public boolean isEmpty() {
+      Map<String, String> result = metadata;
+      if (result != null) {
+         return result.isEmpty();
+      }
+      for (String name : headers.keySet()) {
+         if (keyIndex(name) != -1) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static Map<String, String> extract(Multimap<String, String> headers) {
+      Map<String, String> metadata = null;
+      for (Entry<String, String> header : headers.entries()) {
+         int index = keyIndex(header.getKey());
+         if (index != -1) {
+            if (metadata == null) {
+               metadata = Maps.newLinkedHashMap();
+            }
+            metadata.put(header.getKey().substring(index).toLowerCase(), header.getValue());
+         }
+      }
+      return metadata == null ? Collections.<String, String> emptyMap() : Collections.unmodifiableMap(metadata);
+   }
+
+   /**
+    * @return index of the metadata key in {@code name}, or -1 if it is not a
+    *         metadata header.
+    */
+   static int keyIndex(String name) {
+      for (int i = 0, last = name.length() - META.length(); i <= last; i++) {
+         if (name.charAt(i) == '-' && name.regionMatches(true, i, META, 0, META.length())) {
+            return i + META.length();
+         }
+      }
+      return -1;
+   }
+}
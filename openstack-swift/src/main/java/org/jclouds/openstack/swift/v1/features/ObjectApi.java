@@ -37,17 +37,23 @@ import org.jclouds.http.options.GetOptions;
 import org.jclouds.io.Payload;
 import org.jclouds.javax.annotation.Nullable;
 import org.jclouds.openstack.keystone.v2_0.filters.AuthenticateRequest;
+import org.jclouds.openstack.swift.v1.SwiftFallbacks.ConditionalObjectOnNotModifiedOrPreconditionFailed;
 import org.jclouds.openstack.swift.v1.binders.BindMetadataToHeaders.BindObjectMetadataToHeaders;
 import org.jclouds.openstack.swift.v1.binders.BindMetadataToHeaders.BindRemoveObjectMetadataToHeaders;
 import org.jclouds.openstack.swift.v1.binders.SetPayload;
+import org.jclouds.openstack.swift.v1.domain.ConditionalObject;
 import org.jclouds.openstack.swift.v1.domain.ObjectList;
 import org.jclouds.openstack.swift.v1.domain.SwiftObject;
 import org.jclouds.openstack.swift.v1.functions.ETagHeader;
+import org.jclouds.openstack.swift.v1.functions.ParseConditionalObjectFromResponse;
 import org.jclouds.openstack.swift.v1.functions.ParseObjectFromResponse;
 import org.jclouds.openstack.swift.v1.functions.ParseObjectListFromResponse;
+import org.jclouds.openstack.swift.v1.options.ExpiryOptions;
 import org.jclouds.openstack.swift.v1.options.ListContainerOptions;
+import org.jclouds.openstack.swift.v1.options.ObjectHeaderOptions;
 import org.jclouds.rest.annotations.BinderParam;
 import org.jclouds.rest.annotations.Fallback;
+import org.jclouds.rest.annotations.Headers;
 import org.jclouds.rest.annotations.QueryParams;
 import org.jclouds.rest.annotations.RequestFilters;
 import org.jclouds.rest.annotations.ResponseParser;
@@ -97,6 +103,72 @@ public interface ObjectApi {
    String replace(@PathParam("objectName") String objectName, @BinderParam(SetPayload.class) Payload payload,
          @BinderParam(BindObjectMetadataToHeaders.class) Map<String, String> metadata);
 
+   /**
+    * Creates or updates an object, which swift deletes when it expires.
+    * 
+    * @param expiry
+    *           when the object expires.
+    * 
+    * @see #replace(String, Payload, Map)
+    */
+   @Named("CreateOrUpdateObject")
+   @PUT
+   @ResponseParser(ETagHeader.class)
+   @Path("/{objectName}")
+   String replace(@PathParam("objectName") String objectName, @BinderParam(SetPayload.class) Payload payload,
+         @BinderParam(BindObjectMetadataToHeaders.class) Map<String, String> metadata, ExpiryOptions expiry);
+
+   /**
+    * Copies an object server-side, without transferring its content. The
+    * copy gets {@code metadata} instead of the source's user metadata, and
+    * keeps its content type.
+    * 
+    * @param destinationObject
+    *           name of the copy, in this container.
+    * @param sourceContainer
+    *           container of the object to copy, in the same region.
+    * @param sourceObject
+    *           name of the object to copy.
+    * @param metadata
+    *           corresponds to {@link SwiftObject#metadata()} of the copy.
+    * @see <a
+    *      href="http://docs.openstack.org/api/openstack-object-storage/1.0/content/copy-object.html">
+    *      Copy Object API</a>
+    * 
+    * @return {@link SwiftObject#etag()} of the copy, or null if the source
+    *         was not found.
+    */
+   @Named("CopyObject")
+   @PUT
+   @Headers(keys = { "X-Copy-From", "X-Fresh-Metadata" }, values = { "/{sourceContainer}/{sourceObject}", "true" })
+   @ResponseParser(ETagHeader.class)
+   @Fallback(NullOnNotFoundOr404.class)
+   @Path("/{destinationObject}")
+   @Nullable
+   String copy(@PathParam("destinationObject") String destinationObject,
+         @PathParam("sourceContainer") String sourceContainer, @PathParam("sourceObject") String sourceObject,
+         @BinderParam(BindObjectMetadataToHeaders.class) Map<String, String> metadata);
+
+   /**
+    * Copies an object server-side into a copy that swift deletes when it
+    * expires. The source's expiry is never copied.
+    * 
+    * @param expiry
+    *           when the copy expires.
+    * 
+    * @see #copy(String, String, String, Map)
+    */
+   @Named("CopyObject")
+   @PUT
+   @Headers(keys = { "X-Copy-From", "X-Fresh-Metadata" }, values = { "/{sourceContainer}/{sourceObject}", "true" })
+   @ResponseParser(ETagHeader.class)
+   @Fallback(NullOnNotFoundOr404.class)
+   @Path("/{destinationObject}")
+   @Nullable
+   String copy(@PathParam("destinationObject") String destinationObject,
+         @PathParam("sourceContainer") String sourceContainer, @PathParam("sourceObject") String sourceObject,
+         @BinderParam(BindObjectMetadataToHeaders.class) Map<String, String> metadata, ExpiryOptions expiry);
+
    /**
     * Gets the {@link SwiftObject} metadata without its
     * {@link Payload#getInput() body}.
@@ -139,6 +211,52 @@ public interface ObjectApi {
    @Nullable
    SwiftObject get(@PathParam("objectName") String objectName, GetOptions options);
 
+   /**
+    * Gets the {@link SwiftObject} metadata, subject to the preconditions in
+    * {@code options}.
+    * 
+    * @param objectName
+    *           corresponds to {@link SwiftObject#name()}.
+    * @param options
+    *           the preconditions, such as
+    *           {@link GetOptions#ifETagDoesntMatch(String) If-None-Match},
+    *           {@link GetOptions#ifModifiedSince(java.util.Date)
+    *           If-Modified-Since} or {@link GetOptions#ifETagMatches(String)
+    *           If-Match}.
+    * 
+    * @return the Object when the preconditions hold, otherwise why not.
+    * 
+    * @see #head(String)
+    */
+   @Named("GetObjectMetadata")
+   @HEAD
+   @ResponseParser(ParseConditionalObjectFromResponse.class)
+   @Fallback(ConditionalObjectOnNotModifiedOrPreconditionFailed.class)
+   @Path("/{objectName}")
+   ConditionalObject headConditionally(@PathParam("objectName") String objectName, GetOptions options);
+
+   /**
+    * Gets the {@link SwiftObject} including its {@link Payload#getInput() body},
+    * subject to the preconditions in {@code options}. The body is only
+    * transferred when they hold.
+    * 
+    * @param objectName
+    *           corresponds to {@link SwiftObject#name()}.
+    * @param options
+    *           the preconditions, and any other options to control the
+    *           download.
+    * 
+    * @return the Object when the preconditions hold, otherwise why not.
+    * 
+    * @see #get(String, GetOptions)
+    */
+   @Named("GetObject")
+   @GET
+   @ResponseParser(ParseConditionalObjectFromResponse.class)
+   @Fallback(ConditionalObjectOnNotModifiedOrPreconditionFailed.class)
+   @Path("/{objectName}")
+   ConditionalObject getConditionally(@PathParam("objectName") String objectName, GetOptions options);
+
    /**
     * Creates or updates the Object metadata.
     * 
@@ -161,6 +279,72 @@ public interface ObjectApi {
    boolean updateMetadata(@PathParam("objectName") String objectName,
          @BinderParam(BindObjectMetadataToHeaders.class) Map<String, String> metadata);
 
+   /**
+    * Replaces the Object metadata and sets when the Object expires.
+    * 
+    * As the metadata is replaced, pass the current metadata to only change
+    * the expiry.
+    * 
+    * @param objectName
+    *           corresponds to {@link SwiftObject#name()}.
+    * @param metadata
+    *           the Object metadata to create or update.
+    * @param expiry
+    *           when the Object expires, or {@link ExpiryOptions#keepForever()}.
+    * 
+    * @return <code>true</code> if the Object Metadata was successfully created
+    *         or updated, false if not.
+    * 
+    * @see #updateMetadata(String, Map)
+    */
+   @Named("UpdateObjectMetadata")
+   @POST
+   @Fallback(FalseOnNotFoundOr404.class)
+   @Path("/{objectName}")
+   boolean updateMetadata(@PathParam("objectName") String objectName,
+         @BinderParam(BindObjectMetadataToHeaders.class) Map<String, String> metadata, ExpiryOptions expiry);
+
+   /**
+    * Replaces the Object metadata, sending again the other headers a metadata
+    * update would remove.
+    * 
+    * @param objectName
+    *           corresponds to {@link SwiftObject#name()}.
+    * @param metadata
+    *           the Object metadata to create or update.
+    * @param headers
+    *           usually {@link ObjectHeaderOptions#keep} the object as headed.
+    * 
+    * @return <code>true</code> if the Object Metadata was successfully created
+    *         or updated, false if not.
+    * 
+    * @see #updateMetadata(String, Map)
+    */
+   @Named("UpdateObjectMetadata")
+   @POST
+   @Fallback(FalseOnNotFoundOr404.class)
+   @Path("/{objectName}")
+   boolean updateMetadata(@PathParam("objectName") String objectName,
+         @BinderParam(BindObjectMetadataToHeaders.class) Map<String, String> metadata, ObjectHeaderOptions headers);
+
+   /**
+    * Replaces the Object metadata and sets when the Object expires, sending
+    * again the other headers a metadata update would remove.
+    * 
+    * @param headers
+    *           usually {@link ObjectHeaderOptions#keep} the object as headed,
+    *           {@link ObjectHeaderOptions#withoutExpiry() without its expiry}.
+    * 
+    * @see #updateMetadata(String, Map, ExpiryOptions)
+    */
+   @Named("UpdateObjectMetadata")
+   @POST
+   @Fallback(FalseOnNotFoundOr404.class)
+   @Path("/{objectName}")
+   boolean updateMetadata(@PathParam("objectName") String objectName,
+         @BinderParam(BindObjectMetadataToHeaders.class) Map<String, String> metadata, ExpiryOptions expiry,
+         ObjectHeaderOptions headers);
+
    /**
     * Deletes Object metadata.
     * 
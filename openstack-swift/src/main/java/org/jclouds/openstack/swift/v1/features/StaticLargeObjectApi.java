@@ -34,6 +34,7 @@ import org.jclouds.openstack.swift.v1.binders.BindMetadataToHeaders.BindObjectMe
 import org.jclouds.openstack.swift.v1.domain.Segment;
 import org.jclouds.openstack.swift.v1.domain.SwiftObject;
 import org.jclouds.openstack.swift.v1.functions.ETagHeader;
+import org.jclouds.openstack.swift.v1.options.ExpiryOptions;
 import org.jclouds.rest.annotations.BinderParam;
 import org.jclouds.rest.annotations.Fallback;
 import org.jclouds.rest.annotations.QueryParams;
@@ -72,6 +73,25 @@ public interface StaticLargeObjectApi {
          @BinderParam(BindToJsonPayload.class) List<Segment> segments,
          @BinderParam(BindObjectMetadataToHeaders.class) Map<String, String> metadata);
 
+   /**
+    * Creates or updates a static large object's manifest, which swift deletes
+    * when it expires. Its segments are separate objects, so give them the same
+    * expiry.
+    * 
+    * @param expiry
+    *           when the manifest expires.
+    * 
+    * @see #replaceManifest(String, List, Map)
+    */
+   @Named("CreateOrUpdateStaticLargeObjectManifest")
+   @PUT
+   @ResponseParser(ETagHeader.class)
+   @Path("/{objectName}")
+   @QueryParams(keys = "multipart-manifest", values = "put")
+   String replaceManifest(@PathParam("objectName") String objectName,
+         @BinderParam(BindToJsonPayload.class) List<Segment> segments,
+         @BinderParam(BindObjectMetadataToHeaders.class) Map<String, String> metadata, ExpiryOptions expiry);
+
    /**
     * Deletes a static large object, if present, including all of its segments.
     * 
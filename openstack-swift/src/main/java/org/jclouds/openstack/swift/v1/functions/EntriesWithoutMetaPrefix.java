@@ -17,19 +17,20 @@
 package org.jclouds.openstack.swift.v1.functions;
 
 import java.util.Map;
-import java.util.Map.Entry;
+
+import org.jclouds.openstack.swift.v1.domain.HeaderBackedMetadata;
 
 import com.google.common.base.Function;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multimap;
 
 /**
- * Extracts entries whose keys start with {@code .*-Meta-}.
+ * Extracts entries whose keys start with {@code .*-Meta-}, ignoring case.
  * 
  * @param from
  *           a {@link Multimap} containing the prefixed headers.
  * 
- * @return the extracted {@code Metadata} without the prefixed keys.
+ * @return the extracted {@code Metadata} without the prefixed keys, which are
+ *         lower-cased. The map is a view built on first access.
  * 
  * @see {@link SwiftResource#metadata()}
  */
@@ -38,13 +39,6 @@ enum EntriesWithoutMetaPrefix implements Function<Multimap<String, String>, Map<
 
    @Override
    public Map<String, String> apply(Multimap<String, String> arg0) {
-      ImmutableMap.Builder<String, String> metadata = ImmutableMap.builder();
-      for (Entry<String, String> header : arg0.entries()) {
-         int index = header.getKey().indexOf("-Meta-");
-         if (index != -1) {
-            metadata.put(header.getKey().substring(index + 6), header.getValue());
-         }
-      }
-      return metadata.build();
+      return HeaderBackedMetadata.of(arg0);
    }
 }
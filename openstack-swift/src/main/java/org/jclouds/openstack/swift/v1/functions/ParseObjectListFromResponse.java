@@ -45,6 +45,7 @@ public class ParseObjectListFromResponse implements Function<HttpResponse, Objec
       long bytes;
       String content_type;
       Date last_modified;
+      String subdir;
    }
 
    private final ParseJson<List<InternalObject>> json;
@@ -74,6 +75,16 @@ public class ParseObjectListFromResponse implements Function<HttpResponse, Objec
 
       @Override
       public SwiftObject apply(InternalObject input) {
+         if (input.name == null && input.subdir != null) {
+            // a pseudo-directory rolled up by the delimiter, which has no
+            // etag nor date of its own
+            return SwiftObject.builder() //
+                  .uri(URI.create(String.format("%s%s", containerUri, input.subdir))) //
+                  .name(input.subdir) //
+                  .etag("") //
+                  .payload(payload(0, SUBDIR_CONTENT_TYPE)) //
+                  .lastModified(new Date(0)).build();
+         }
          return SwiftObject.builder() //
                .uri(URI.create(String.format("%s%s", containerUri, input.name))) //
                .name(input.name) //
@@ -95,6 +106,12 @@ public class ParseObjectListFromResponse implements Function<HttpResponse, Objec
       return this;
    }
 
+   /**
+    * Content type of the entries listed for {@code subdir}s, when listing with
+    * a {@link org.jclouds.openstack.swift.v1.options.ListContainerOptions#delimiter delimiter}.
+    */
+   public static final String SUBDIR_CONTENT_TYPE = "application/directory";
+
    private static final byte[] NO_CONTENT = new byte[] {};
 
    private static Payload payload(long bytes, String contentType) {
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.io;
+
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndex;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+import org.jclouds.javax.annotation.Nullable;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A bounded pool of equally sized byte arrays.
+ * 
+ * Buffers are allocated lazily, and {@link #acquire()} blocks once
+ * {@code maxBuffers} are in use, which bounds the memory held by concurrent
+ * transfers and slows producers down to the speed of the consumers.
+ * 
+ * Tests can call {@link #trackLeaks()} to find buffers that are never
+ * released.
+ * 
+ * @see SizeClassedBufferPool for short-lived buffers of varying sizes
+ */
+public class BufferPool {
+
+   private final int bufferSize;
+   private final int maxBuffers;
+   private final Semaphore permits;
+   private final Queue<byte[]> free = new ConcurrentLinkedQueue<byte[]>();
+   private final AtomicLong acquires = new AtomicLong();
+   private final AtomicLong allocations = new AtomicLong();
+   private final AtomicLong waits = new AtomicLong();
+   private volatile OutstandingBuffers outstanding;
+
+   public BufferPool(int bufferSize, int maxBuffers) {
+      checkArgument(bufferSize > 0, "bufferSize must be positive");
+      checkArgument(maxBuffers > 0, "maxBuffers must be positive");
+      this.bufferSize = bufferSize;
+      this.maxBuffers = maxBuffers;
+      this.permits = new Semaphore(maxBuffers, true);
+   }
+
+   /**
+    * @return a buffer of {@link #bufferSize()} bytes, which must be passed to
+    *         {@link #release(byte[])} when no longer used.
+    */
+   public byte[] acquire() throws InterruptedException {
+      if (!permits.tryAcquire()) {
+         waits.incrementAndGet();
+         permits.acquire();
+      }
+      return take();
+   }
+
+   /**
+    * Acquires {@code count} buffers at once. Callers that need several
+    * buffers must not wait for them one at a time while holding some, as
+    * concurrent callers could then each hold part of the pool and wait for
+    * one another forever.
+    */
+   public List<byte[]> acquire(int count) throws InterruptedException {
+      checkArgument(count > 0 && count <= maxBuffers, "count must be between 1 and %s", maxBuffers);
+      if (!permits.tryAcquire(count)) {
+         waits.incrementAndGet();
+         permits.acquire(count);
+      }
+      List<byte[]> buffers = Lists.newArrayListWithCapacity(count);
+      for (int i = 0; i < count; i++) {
+         buffers.add(take());
+      }
+      return buffers;
+   }
+
+   /**
+    * @return a buffer as {@link #acquire()}, or null rather than waiting if
+    *         all are in use.
+    */
+   @Nullable
+   public byte[] tryAcquire() {
+      return permits.tryAcquire() ? take() : null;
+   }
+
+   private byte[] take() {
+      acquires.incrementAndGet();
+      byte[] buffer = free.poll();
+      if (buffer == null) {
+         allocations.incrementAndGet();
+         buffer = new byte[bufferSize];
+      }
+      OutstandingBuffers tracked = outstanding;
+      if (tracked != null) {
+         tracked.acquired(buffer);
+      }
+      return buffer;
+   }
+
+   /**
+    * Returns a buffer obtained from {@link #acquire()} to the pool.
+    */
+   public void release(byte[] buffer) {
+      checkArgument(checkNotNull(buffer, "buffer").length == bufferSize, "buffer not from this pool");
+      OutstandingBuffers tracked = outstanding;
+      if (tracked != null) {
+         tracked.released(buffer);
+      }
+      free.offer(buffer);
+      permits.release();
+   }
+
+   /**
+    * Wraps the first {@code length} bytes of {@code buffer} without copying.
+    * The buffer must not be released until the payload is consumed.
+    */
+   public static Payload newPayload(byte[] buffer, int length) {
+      checkPositionIndex(length, buffer.length, "length");
+      if (length == buffer.length) {
+         return Payloads.newByteArrayPayload(buffer);
+      }
+      Payload payload = Payloads.newInputStreamPayload(new ByteArrayInputStream(buffer, 0, length));
+      payload.getContentMetadata().setContentLength((long) length);
+      return payload;
+   }
+
+   public int bufferSize() {
+      return bufferSize;
+   }
+
+   public int maxBuffers() {
+      return maxBuffers;
+   }
+
+   /**
+    * @return number of buffers currently acquired.
+    */
+   public int inUse() {
+      return maxBuffers - permits.availablePermits();
+   }
+
+   /**
+    * @return number of buffers acquired so far.
+    */
+   public long acquireCount() {
+      return acquires.get();
+   }
+
+   /**
+    * @return number of buffers allocated so far, which is at most
+    *         {@link #maxBuffers()} as released buffers are reused.
+    */
+   public long allocationCount() {
+      return allocations.get();
+   }
+
+   /**
+    * @return number of acquires that blocked because all buffers were in use.
+    */
+   public long waitCount() {
+      return waits.get();
+   }
+
+   /**
+    * Remembers where each buffer is acquired, and fails releases of buffers
+    * that are not, until {@link #checkNoLeaks()}. Meant for tests, as it
+    * records a stack trace per acquire.
+    */
+   public BufferPool trackLeaks() {
+      outstanding = new OutstandingBuffers(toString());
+      return this;
+   }
+
+   /**
+    * @throws IllegalStateException
+    *            if a buffer acquired since {@link #trackLeaks()} was not
+    *            released, caused by where it was acquired.
+    */
+   public void checkNoLeaks() {
+      OutstandingBuffers tracked = outstanding;
+      if (tracked != null) {
+         tracked.checkNone();
+      }
+   }
+
+   @Override
+   public String toString() {
+      return toStringHelper("").add("bufferSize", bufferSize).add("maxBuffers", maxBuffers).add("inUse", inUse())
+            .add("acquires", acquireCount()).add("allocations", allocationCount()).add("waits", waitCount())
+            .toString();
+   }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Remembers where each buffer of a pool was acquired until it is released, so
+ * that tests can find buffers that are never returned, or returned twice.
+ */
+final class OutstandingBuffers {
+
+   private final String pool;
+   private final Map<byte[], Throwable> acquired = Collections
+         .synchronizedMap(new IdentityHashMap<byte[], Throwable>());
+
+   OutstandingBuffers(String pool) {
+      this.pool = pool;
+   }
+
+   void acquired(byte[] buffer) {
+      acquired.put(buffer, new Throwable("buffer acquired here"));
+   }
+
+   void released(byte[] buffer) {
+      checkArgument(acquired.remove(buffer) != null, "buffer not acquired from %s, or already released", pool);
+   }
+
+   int count() {
+      return acquired.size();
+   }
+
+   /**
+    * @throws IllegalStateException
+    *            if any buffer is still acquired, caused by where it was.
+    */
+   void checkNone() {
+      synchronized (acquired) {
+         if (!acquired.isEmpty()) {
+            throw new IllegalStateException(String.format("%s buffers of %s were never released", acquired.size(),
+                  pool), acquired.values().iterator().next());
+         }
+      }
+   }
+}
@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Gzips a stream as it is read, compressing blocks of it concurrently.
+ * 
+ * The source is read in blocks of {@code blockSize} bytes, each compressed on
+ * the executor into its own gzip member. Concatenated members are a valid gzip
+ * stream, which {@link java.util.zip.GZIPInputStream} reads back as one. An
+ * empty source becomes a single empty member, so it still reads back. Up to
+ * {@code parallelism} blocks are compressed ahead of the one being read, so
+ * memory stays bounded whatever the length of the source. Blocks are taken
+ * from a {@link SizeClassedBufferPool}, when given one, and returned once
+ * compressed.
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+   private final InputStream source;
+   private final ListeningExecutorService executor;
+   private final int blockSize;
+   private final int parallelism;
+   private final SizeClassedBufferPool buffers;
+   private final Queue<CompressBlock> pending = new ArrayDeque<CompressBlock>();
+   private boolean sourceExhausted;
+   private boolean scheduledAny;
+   private boolean closed;
+   private byte[] current;
+   private int position;
+
+   public ParallelGzipInputStream(InputStream source, ListeningExecutorService executor, int blockSize,
+         int parallelism) {
+      this(source, executor, blockSize, parallelism, null);
+   }
+
+   public ParallelGzipInputStream(InputStream source, ListeningExecutorService executor, int blockSize,
+         int parallelism, @Nullable SizeClassedBufferPool buffers) {
+      checkArgument(blockSize > 0, "blockSize must be positive");
+      checkArgument(parallelism > 0, "parallelism must be positive");
+      this.source = checkNotNull(source, "source");
+      this.executor = checkNotNull(executor, "executor");
+      this.blockSize = blockSize;
+      this.parallelism = parallelism;
+      this.buffers = buffers;
+   }
+
+   @Override
+   public int read() throws IOException {
+      if (!ensureBlock()) {
+         return -1;
+      }
+      return current[position++] & 0xff;
+   }
+
+   @Override
+   public int read(byte[] bytes, int offset, int count) throws IOException {
+      checkPositionIndexes(offset, offset + count, bytes.length);
+      if (count == 0) {
+         return 0;
+      }
+      if (!ensureBlock()) {
+         return -1;
+      }
+      int read = Math.min(count, current.length - position);
+      System.arraycopy(current, position, bytes, offset, read);
+      position += read;
+      return read;
+   }
+
+   @Override
+   public int available() throws IOException {
+      return current == null ? 0 : current.length - position;
+   }
+
+   @Override
+   public void close() throws IOException {
+      if (closed) {
+         return;
+      }
+      closed = true;
+      current = null;
+      for (CompressBlock block : pending) {
+         block.cancel();
+      }
+      pending.clear();
+      source.close();
+   }
+
+   private boolean ensureBlock() throws IOException {
+      if (closed) {
+         throw new IOException("stream closed");
+      }
+      while (current == null || position == current.length) {
+         current = null;
+         schedule();
+         CompressBlock next = pending.poll();
+         if (next == null) {
+            return false;
+         }
+         current = await(next.future);
+         position = 0;
+      }
+      return true;
+   }
+
+   /**
+    * Reads blocks from the source on the caller's thread, as streams are
+    * rarely safe to share, and hands their compression to the executor.
+    */
+   private void schedule() throws IOException {
+      while (pending.size() < parallelism && !sourceExhausted) {
+         byte[] block = buffers != null ? buffers.acquire(blockSize) : new byte[blockSize];
+         boolean submitted = false;
+         try {
+            int length = ByteStreams.read(source, block, 0, blockSize);
+            sourceExhausted = length < blockSize;
+            // an empty source still needs a member to be valid gzip
+            if (length > 0 || !scheduledAny) {
+               scheduledAny = true;
+               CompressBlock task = new CompressBlock(block, length, buffers);
+               task.future = executor.submit(task);
+               pending.add(task);
+               submitted = true;
+            }
+         } finally {
+            if (!submitted && buffers != null) {
+               buffers.release(block);
+            }
+         }
+      }
+   }
+
+   private static byte[] await(ListenableFuture<byte[]> block) throws IOException {
+      try {
+         return block.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException();
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof IOException) {
+            throw IOException.class.cast(e.getCause());
+         }
+         throw new IOException(e.getCause());
+      }
+   }
+
+   /**
+    * The block goes back to the pool exactly once: after it is compressed, or
+    * when cancelled before compression starts.
+    */
+   private static class CompressBlock implements Callable<byte[]> {
+      private final byte[] block;
+      private final int length;
+      private final SizeClassedBufferPool buffers;
+      private final AtomicBoolean claimed = new AtomicBoolean();
+      private ListenableFuture<byte[]> future;
+
+      private CompressBlock(byte[] block, int length, SizeClassedBufferPool buffers) {
+         this.block = block;
+         this.length = length;
+         this.buffers = buffers;
+      }
+
+      @Override
+      public byte[] call() throws IOException {
+         if (!claimed.compareAndSet(false, true)) {
+            return null;
+         }
+         try {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, length / 4));
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            try {
+               gzip.write(block, 0, length);
+            } finally {
+               Closeables.close(gzip, false);
+            }
+            return compressed.toByteArray();
+         } finally {
+            release();
+         }
+      }
+
+      private void cancel() {
+         if (claimed.compareAndSet(false, true)) {
+            release();
+         }
+         future.cancel(false);
+      }
+
+      private void release() {
+         if (buffers != null) {
+            buffers.release(block);
+         }
+      }
+   }
+}
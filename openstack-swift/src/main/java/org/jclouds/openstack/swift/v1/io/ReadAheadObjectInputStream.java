@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+import static org.jclouds.http.options.GetOptions.Builder.range;
+import static org.jclouds.util.Closeables2.closeQuietly;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.resilience.SwiftResilience;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Reads an object sequentially, while the next chunks are fetched in the
+ * background as ranged {@link ObjectApi#get gets}.
+ * 
+ * Each chunk is one buffer of the {@link BufferPool}, and up to
+ * {@code readAhead} chunks are in flight or waiting to be read, so a slow
+ * consumer stalls on its own work rather than on the network. Buffers are
+ * taken by the reading thread, in order, before each fetch is submitted. It
+ * waits for a buffer only when it holds none, and otherwise reads ahead only
+ * as far as the free buffers allow, so streams sharing a pool never wait for
+ * one another's buffers while holding their own. Chunks are
+ * fetched with {@code If-Match} on the etag seen when opening, so all bytes
+ * come from the same version of the object. A chunk whose request or transfer
+ * fails with a retryable error is fetched again, up to {@link #MAX_ATTEMPTS}
+ * times. Once a chunk is lost, every later read fails with the same exception,
+ * so the stream never skips over it.
+ */
+public class ReadAheadObjectInputStream extends InputStream {
+
+   public static final int MAX_ATTEMPTS = 3;
+
+   /**
+    * @param readAhead
+    *           number of chunks to fetch ahead of the one being read, at most
+    *           {@link BufferPool#maxBuffers()}.
+    * @return a stream over the object or null, if not found.
+    */
+   @Nullable
+   public static ReadAheadObjectInputStream open(ObjectApi objectApi, String objectName,
+         ListeningExecutorService executor, BufferPool buffers, int readAhead) {
+      checkNotNull(objectApi, "objectApi");
+      checkNotNull(objectName, "objectName");
+      checkArgument(readAhead > 0, "readAhead must be positive");
+      SwiftObject object = objectApi.head(objectName);
+      if (object == null) {
+         return null;
+      }
+      Long length = object.payload().getContentMetadata().getContentLength();
+      checkArgument(length != null, "content length of %s unknown", objectName);
+      return new ReadAheadObjectInputStream(objectApi, objectName, object.etag(), length, executor, buffers,
+            readAhead);
+   }
+
+   private final ObjectApi objectApi;
+   private final String objectName;
+   private final String etag;
+   private final long length;
+   private final ListeningExecutorService executor;
+   private final BufferPool buffers;
+   private final int readAhead;
+   private final Queue<PendingChunk> pending = new ArrayDeque<PendingChunk>();
+   private volatile boolean closed;
+   private long nextOffset;
+   private Chunk current;
+   private int position;
+   private IOException failure;
+
+   ReadAheadObjectInputStream(ObjectApi objectApi, String objectName, String etag, long length,
+         ListeningExecutorService executor, BufferPool buffers, int readAhead) {
+      this.objectApi = objectApi;
+      this.objectName = objectName;
+      this.etag = etag;
+      this.length = length;
+      this.executor = checkNotNull(executor, "executor");
+      this.buffers = checkNotNull(buffers, "buffers");
+      checkArgument(readAhead > 0 && readAhead <= buffers.maxBuffers(), "readAhead must be between 1 and %s",
+            buffers.maxBuffers());
+      this.readAhead = readAhead;
+   }
+
+   /** total bytes of the object. */
+   public long length() {
+      return length;
+   }
+
+   @Override
+   public int read() throws IOException {
+      if (!ensureChunk()) {
+         return -1;
+      }
+      return current.buffer[position++] & 0xff;
+   }
+
+   @Override
+   public int read(byte[] bytes, int offset, int count) throws IOException {
+      checkPositionIndexes(offset, offset + count, bytes.length);
+      if (count == 0) {
+         return 0;
+      }
+      if (!ensureChunk()) {
+         return -1;
+      }
+      int read = Math.min(count, current.length - position);
+      System.arraycopy(current.buffer, position, bytes, offset, read);
+      position += read;
+      return read;
+   }
+
+   @Override
+   public int available() throws IOException {
+      if (failure != null) {
+         throw failure;
+      }
+      return current == null ? 0 : current.length - position;
+   }
+
+   @Override
+   public void close() {
+      if (closed) {
+         return;
+      }
+      closed = true;
+      releaseCurrent();
+      for (PendingChunk chunk : pending) {
+         releaseWhenDone(chunk);
+      }
+      pending.clear();
+   }
+
+   private boolean ensureChunk() throws IOException {
+      if (closed) {
+         throw new IOException("stream closed");
+      }
+      if (failure != null) {
+         throw failure;
+      }
+      while (current == null || position == current.length) {
+         releaseCurrent();
+         schedule();
+         PendingChunk next = pending.poll();
+         if (next == null) {
+            return false;
+         }
+         current = await(next);
+         position = 0;
+         schedule();
+      }
+      return true;
+   }
+
+   private void schedule() throws IOException {
+      while (pending.size() < readAhead && nextOffset < length) {
+         // wait only while holding no buffer, else read ahead less
+         byte[] buffer = current == null && pending.isEmpty() ? acquire() : buffers.tryAcquire();
+         if (buffer == null) {
+            return;
+         }
+         int chunkLength = (int) Math.min(buffers.bufferSize(), length - nextOffset);
+         ListenableFuture<Chunk> fetch;
+         try {
+            fetch = executor.submit(new FetchChunk(buffer, nextOffset, chunkLength));
+         } catch (RuntimeException e) {
+            buffers.release(buffer);
+            throw e;
+         }
+         pending.add(new PendingChunk(buffer, fetch));
+         nextOffset += chunkLength;
+      }
+   }
+
+   private byte[] acquire() throws IOException {
+      try {
+         return buffers.acquire();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException();
+      }
+   }
+
+   private void releaseCurrent() {
+      if (current != null) {
+         buffers.release(current.buffer);
+         current = null;
+      }
+   }
+
+   /** chunks in flight return their buffers once done. */
+   private void releaseWhenDone(final PendingChunk chunk) {
+      chunk.fetch.addListener(new Runnable() {
+         @Override
+         public void run() {
+            buffers.release(chunk.buffer);
+         }
+      }, sameThreadExecutor());
+   }
+
+   private Chunk await(PendingChunk chunk) throws IOException {
+      try {
+         return chunk.fetch.get();
+      } catch (InterruptedException e) {
+         releaseWhenDone(chunk);
+         Thread.currentThread().interrupt();
+         throw fail(new InterruptedIOException());
+      } catch (ExecutionException e) {
+         buffers.release(chunk.buffer);
+         if (e.getCause() instanceof IOException) {
+            throw fail(IOException.class.cast(e.getCause()));
+         }
+         throw fail(new IOException(e.getCause()));
+      }
+   }
+
+   /** the chunk is lost, so later reads fail rather than skip it. */
+   private IOException fail(IOException cause) {
+      failure = cause;
+      for (PendingChunk chunk : pending) {
+         releaseWhenDone(chunk);
+      }
+      pending.clear();
+      return cause;
+   }
+
+   private static class PendingChunk {
+      private final byte[] buffer;
+      private final ListenableFuture<Chunk> fetch;
+
+      private PendingChunk(byte[] buffer, ListenableFuture<Chunk> fetch) {
+         this.buffer = buffer;
+         this.fetch = fetch;
+      }
+   }
+
+   private static class Chunk {
+      private final byte[] buffer;
+      private final int length;
+
+      private Chunk(byte[] buffer, int length) {
+         this.buffer = buffer;
+         this.length = length;
+      }
+   }
+
+   private class FetchChunk implements Callable<Chunk> {
+      private final byte[] buffer;
+      private final long offset;
+      private final int length;
+
+      private FetchChunk(byte[] buffer, long offset, int length) {
+         this.buffer = buffer;
+         this.offset = offset;
+         this.length = length;
+      }
+
+      /** the buffer stays with the stream, which releases it. */
+      @Override
+      public Chunk call() throws IOException {
+         if (closed) {
+            return null;
+         }
+         fetchInto(buffer);
+         return new Chunk(buffer, length);
+      }
+
+      private void fetchInto(byte[] buffer) throws IOException {
+         Exception lastFailure = null;
+         for (int attempt = 0; attempt < MAX_ATTEMPTS && !closed; attempt++) {
+            SwiftObject object;
+            try {
+               object = objectApi.get(objectName, range(offset, offset + length - 1).ifETagMatches(etag));
+            } catch (RuntimeException e) {
+               // throttling, server or transport error; a changed etag (412) is not retried
+               if (!SwiftResilience.isRetryable(e)) {
+                  throw e;
+               }
+               lastFailure = e;
+               continue;
+            }
+            if (object == null) {
+               throw new IOException(objectName + " was deleted while reading");
+            }
+            InputStream in = object.payload().getInput();
+            try {
+               ByteStreams.readFully(in, buffer, 0, length);
+               return;
+            } catch (IOException e) {
+               // broken or truncated transfer: reconnect for the same range
+               lastFailure = e;
+            } finally {
+               closeQuietly(in);
+            }
+         }
+         if (lastFailure instanceof IOException) {
+            throw IOException.class.cast(lastFailure);
+         }
+         throw lastFailure != null ? new IOException(lastFailure) : new IOException("stream closed");
+      }
+   }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.io;
+
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reuses short-lived byte arrays, such as the buffers of stream copies and
+ * hashing, or blocks being compressed.
+ * 
+ * Sizes are rounded up to a power of two between {@code minSize} and
+ * {@code maxSize}, and each of these classes keeps up to
+ * {@code maxRetainedPerClass} released arrays for reuse. Unlike
+ * {@link BufferPool}, {@link #acquire(int)} never blocks: it allocates when no
+ * array is free, and arrays released beyond the limit, or larger than
+ * {@code maxSize}, are left to the garbage collector.
+ * 
+ * Tests can call {@link #trackLeaks()} to find arrays that are never
+ * released.
+ */
+public class SizeClassedBufferPool {
+
+   private final int minShift;
+   private final int maxRetainedPerClass;
+   private final Queue<byte[]>[] free;
+   private final AtomicInteger[] retained;
+   private final AtomicLong acquires = new AtomicLong();
+   private final AtomicLong allocations = new AtomicLong();
+   private final AtomicLong discards = new AtomicLong();
+   private volatile OutstandingBuffers outstanding;
+
+   /**
+    * @param minSize
+    *           smallest array handed out, a power of two.
+    * @param maxSize
+    *           largest array pooled, a power of two.
+    * @param maxRetainedPerClass
+    *           most free arrays kept per size.
+    */
+   @SuppressWarnings("unchecked")
+   public SizeClassedBufferPool(int minSize, int maxSize, int maxRetainedPerClass) {
+      checkArgument(minSize > 0 && Integer.bitCount(minSize) == 1, "minSize must be a power of two");
+      checkArgument(maxSize >= minSize && Integer.bitCount(maxSize) == 1,
+            "maxSize must be a power of two, at least minSize");
+      checkArgument(maxRetainedPerClass >= 0, "maxRetainedPerClass must be non-negative");
+      this.minShift = Integer.numberOfTrailingZeros(minSize);
+      this.maxRetainedPerClass = maxRetainedPerClass;
+      int classes = Integer.numberOfTrailingZeros(maxSize) - minShift + 1;
+      this.free = new Queue[classes];
+      this.retained = new AtomicInteger[classes];
+      for (int i = 0; i < classes; i++) {
+         free[i] = new ConcurrentLinkedQueue<byte[]>();
+         retained[i] = new AtomicInteger();
+      }
+   }
+
+   /**
+    * @return an array of at least {@code minLength} bytes, which should be
+    *         passed to {@link #release(byte[])} when no longer used.
+    */
+   public byte[] acquire(int minLength) {
+      checkArgument(minLength >= 0, "minLength must be non-negative");
+      acquires.incrementAndGet();
+      int sizeClass = sizeClass(minLength);
+      byte[] buffer = null;
+      if (sizeClass < free.length) {
+         buffer = free[sizeClass].poll();
+         if (buffer != null) {
+            retained[sizeClass].decrementAndGet();
+         }
+      }
+      if (buffer == null) {
+         allocations.incrementAndGet();
+         buffer = new byte[sizeClass < free.length ? 1 << (sizeClass + minShift) : minLength];
+      }
+      OutstandingBuffers tracked = outstanding;
+      if (tracked != null) {
+         tracked.acquired(buffer);
+      }
+      return buffer;
+   }
+
+   /**
+    * Returns an array obtained from {@link #acquire(int)}. The caller must not
+    * use it afterwards.
+    */
+   public void release(byte[] buffer) {
+      checkNotNull(buffer, "buffer");
+      OutstandingBuffers tracked = outstanding;
+      if (tracked != null) {
+         tracked.released(buffer);
+      }
+      int sizeClass = sizeClass(buffer.length);
+      if (sizeClass < free.length && buffer.length == 1 << (sizeClass + minShift)
+            && retained[sizeClass].incrementAndGet() <= maxRetainedPerClass) {
+         free[sizeClass].offer(buffer);
+      } else {
+         if (sizeClass < free.length && buffer.length == 1 << (sizeClass + minShift)) {
+            retained[sizeClass].decrementAndGet();
+         }
+         discards.incrementAndGet();
+      }
+   }
+
+   private int sizeClass(int length) {
+      if (length <= 1 << minShift) {
+         return 0;
+      }
+      int shift = 32 - Integer.numberOfLeadingZeros(length - 1);
+      return shift - minShift;
+   }
+
+   public int minSize() {
+      return 1 << minShift;
+   }
+
+   public int maxSize() {
+      return 1 << (minShift + free.length - 1);
+   }
+
+   /**
+    * @return number of arrays acquired so far.
+    */
+   public long acquireCount() {
+      return acquires.get();
+   }
+
+   /**
+    * @return number of arrays allocated so far, as none of the right size was
+    *         free.
+    */
+   public long allocationCount() {
+      return allocations.get();
+   }
+
+   /**
+    * @return number of released arrays left to the garbage collector.
+    */
+   public long discardCount() {
+      return discards.get();
+   }
+
+   /**
+    * @return bytes held by free arrays.
+    */
+   public long retainedBytes() {
+      long bytes = 0;
+      for (int i = 0; i < free.length; i++) {
+         bytes += (long) retained[i].get() << (i + minShift);
+      }
+      return bytes;
+   }
+
+   /**
+    * @see BufferPool#trackLeaks()
+    */
+   public SizeClassedBufferPool trackLeaks() {
+      outstanding = new OutstandingBuffers(toString());
+      return this;
+   }
+
+   /**
+    * @see BufferPool#checkNoLeaks()
+    */
+   public void checkNoLeaks() {
+      OutstandingBuffers tracked = outstanding;
+      if (tracked != null) {
+         tracked.checkNone();
+      }
+   }
+
+   @Override
+   public String toString() {
+      return toStringHelper("").add("minSize", minSize()).add("maxSize", maxSize())
+            .add("maxRetainedPerClass", maxRetainedPerClass).add("acquires", acquireCount())
+            .add("allocations", allocationCount()).add("discards", discardCount())
+            .add("retainedBytes", retainedBytes()).toString();
+   }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.options;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Collection;
+
+import org.jclouds.http.options.BaseHttpRequestOptions;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+
+/**
+ * When swift <a href=
+ * "http://docs.openstack.org/api/openstack-object-storage/1.0/content/Expiring_Objects-e1e3228.html"
+ * >expires</a> an object, deleting it automatically. No option keeps the
+ * object as it is on a put, and forever on a metadata update.
+ * 
+ * @see ObjectApi#replace(String, org.jclouds.io.Payload, java.util.Map, ExpiryOptions)
+ * @see ObjectApi#updateMetadata(String, java.util.Map, ExpiryOptions)
+ */
+public class ExpiryOptions extends BaseHttpRequestOptions {
+   static final String DELETE_AT = "X-Delete-At";
+   static final String DELETE_AFTER = "X-Delete-After";
+   static final String REMOVE_DELETE_AT = "X-Remove-Delete-At";
+
+   /** the object expires at this unix epoch timestamp, in seconds. */
+   public ExpiryOptions deleteAt(long epochSeconds) {
+      checkArgument(epochSeconds > 0, "deleteAt must be a unix epoch timestamp");
+      clear();
+      headers.put(DELETE_AT, Long.toString(epochSeconds));
+      return this;
+   }
+
+   /** the object expires this many seconds after swift receives the request. */
+   public ExpiryOptions deleteAfter(long seconds) {
+      checkArgument(seconds >= 0, "deleteAfter must be >= 0");
+      clear();
+      headers.put(DELETE_AFTER, Long.toString(seconds));
+      return this;
+   }
+
+   /** the object no longer expires. Only meaningful on a metadata update. */
+   public ExpiryOptions keepForever() {
+      clear();
+      headers.put(REMOVE_DELETE_AT, "1");
+      return this;
+   }
+
+   /**
+    * @return the timestamp the object will expire at, if set with
+    *         {@link #deleteAt}, or null.
+    */
+   public Long getDeleteAt() {
+      return parse(headers.get(DELETE_AT));
+   }
+
+   /**
+    * @return the delay set with {@link #deleteAfter}, or null.
+    */
+   public Long getDeleteAfter() {
+      return parse(headers.get(DELETE_AFTER));
+   }
+
+   public boolean isKeepForever() {
+      return headers.containsKey(REMOVE_DELETE_AT);
+   }
+
+   /**
+    * @return these options, with a {@link #deleteAfter} delay fixed to a
+    *         {@link #deleteAt} timestamp counted from {@code nowSeconds}. Use
+    *         this so that several requests expire their objects together.
+    */
+   public ExpiryOptions fixedAt(long nowSeconds) {
+      Long after = getDeleteAfter();
+      if (after == null) {
+         return this;
+      }
+      return new ExpiryOptions().deleteAt(nowSeconds + after);
+   }
+
+   private void clear() {
+      headers.removeAll(DELETE_AT);
+      headers.removeAll(DELETE_AFTER);
+      headers.removeAll(REMOVE_DELETE_AT);
+   }
+
+   private static Long parse(Collection<String> values) {
+      return values.isEmpty() ? null : Long.valueOf(values.iterator().next());
+   }
+
+   public static class Builder {
+
+      /** @see ExpiryOptions#deleteAt */
+      public static ExpiryOptions deleteAt(long epochSeconds) {
+         ExpiryOptions options = new ExpiryOptions();
+         return options.deleteAt(epochSeconds);
+      }
+
+      /** @see ExpiryOptions#deleteAfter */
+      public static ExpiryOptions deleteAfter(long seconds) {
+         ExpiryOptions options = new ExpiryOptions();
+         return options.deleteAfter(seconds);
+      }
+
+      /** @see ExpiryOptions#keepForever */
+      public static ExpiryOptions keepForever() {
+         ExpiryOptions options = new ExpiryOptions();
+         return options.keepForever();
+      }
+   }
+}
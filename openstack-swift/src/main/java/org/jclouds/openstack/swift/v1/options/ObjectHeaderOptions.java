@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.options;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.net.HttpHeaders.CONTENT_DISPOSITION;
+import static com.google.common.net.HttpHeaders.CONTENT_ENCODING;
+import static org.jclouds.openstack.swift.v1.features.DynamicLargeObjectApi.OBJECT_MANIFEST;
+import static org.jclouds.openstack.swift.v1.options.ExpiryOptions.DELETE_AT;
+
+import java.util.Map.Entry;
+
+import org.jclouds.http.options.BaseHttpRequestOptions;
+import org.jclouds.io.ContentMetadata;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+
+/**
+ * Object headers which, like metadata, swift removes on a metadata update
+ * unless they are sent again: the expiry, the dynamic large object manifest,
+ * and the content encoding and disposition.
+ * 
+ * @see ObjectApi#updateMetadata(String, java.util.Map, ObjectHeaderOptions)
+ */
+public class ObjectHeaderOptions extends BaseHttpRequestOptions {
+
+   /**
+    * sends again the headers {@code object} has, so that a metadata update
+    * keeps them.
+    */
+   public ObjectHeaderOptions keep(SwiftObject object) {
+      checkNotNull(object, "object");
+      for (Entry<String, String> header : object.headers().entries()) {
+         if (header.getKey().equalsIgnoreCase(DELETE_AT)) {
+            put(DELETE_AT, header.getValue());
+         } else if (header.getKey().equalsIgnoreCase(OBJECT_MANIFEST)) {
+            put(OBJECT_MANIFEST, header.getValue());
+         }
+      }
+      // jclouds moves content headers from the response to its payload
+      ContentMetadata content = object.payload().getContentMetadata();
+      put(CONTENT_ENCODING, content.getContentEncoding());
+      put(CONTENT_DISPOSITION, content.getContentDisposition());
+      return this;
+   }
+
+   /**
+    * leaves out the expiry, for updates that set it with {@link ExpiryOptions}.
+    */
+   public ObjectHeaderOptions withoutExpiry() {
+      headers.removeAll(DELETE_AT);
+      return this;
+   }
+
+   private void put(String name, String value) {
+      headers.removeAll(name);
+      if (value != null) {
+         headers.put(name, value);
+      }
+   }
+
+   public static class Builder {
+
+      /** @see ObjectHeaderOptions#keep */
+      public static ObjectHeaderOptions keep(SwiftObject object) {
+         ObjectHeaderOptions options = new ObjectHeaderOptions();
+         return options.keep(object);
+      }
+   }
+}
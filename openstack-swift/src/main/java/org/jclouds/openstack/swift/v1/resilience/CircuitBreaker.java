@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.resilience;
+
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Tracks the health of one region. After {@code failureThreshold} consecutive
+ * failures the breaker opens and rejects calls for {@code openDuration}; it then
+ * lets a single trial call through, closing again if that call succeeds.
+ */
+public final class CircuitBreaker {
+
+   public static enum State {
+      CLOSED, OPEN, HALF_OPEN;
+   }
+
+   private final String region;
+   private final int failureThreshold;
+   private final long openNanos;
+   private final Ticker ticker;
+
+   private State state = State.CLOSED;
+   private int consecutiveFailures;
+   private long openedAt;
+   private boolean trialInFlight;
+
+   private final AtomicLong calls = new AtomicLong();
+   private final AtomicLong failures = new AtomicLong();
+   private final AtomicLong retries = new AtomicLong();
+   private final AtomicLong rejected = new AtomicLong();
+
+   CircuitBreaker(String region, int failureThreshold, long openDuration, TimeUnit unit, Ticker ticker) {
+      checkArgument(failureThreshold > 0, "failureThreshold must be positive");
+      this.region = checkNotNull(region, "region");
+      this.failureThreshold = failureThreshold;
+      this.openNanos = unit.toNanos(openDuration);
+      this.ticker = checkNotNull(ticker, "ticker");
+   }
+
+   /**
+    * @return true if a call may proceed; every permitted call must be followed
+    *         by {@link #onSuccess()} or {@link #onFailure()}.
+    */
+   synchronized boolean tryAcquire() {
+      if (state == State.OPEN && ticker.read() - openedAt >= openNanos) {
+         state = State.HALF_OPEN;
+      }
+      if (state == State.OPEN || (state == State.HALF_OPEN && trialInFlight)) {
+         rejected.incrementAndGet();
+         return false;
+      }
+      trialInFlight = state == State.HALF_OPEN;
+      calls.incrementAndGet();
+      return true;
+   }
+
+   synchronized void onSuccess() {
+      consecutiveFailures = 0;
+      trialInFlight = false;
+      state = State.CLOSED;
+   }
+
+   synchronized void onFailure() {
+      failures.incrementAndGet();
+      trialInFlight = false;
+      if (state == State.HALF_OPEN || ++consecutiveFailures >= failureThreshold) {
+         state = State.OPEN;
+         openedAt = ticker.read();
+      }
+   }
+
+   void onRetry() {
+      retries.incrementAndGet();
+   }
+
+   public String region() {
+      return region;
+   }
+
+   public synchronized State state() {
+      if (state == State.OPEN && ticker.read() - openedAt >= openNanos) {
+         return State.HALF_OPEN;
+      }
+      return state;
+   }
+
+   /** @return true unless the breaker is open and still rejecting calls. */
+   public boolean isAvailable() {
+      return state() != State.OPEN;
+   }
+
+   /** @return attempts that were let through, including retries. */
+   public long calls() {
+      return calls.get();
+   }
+
+   /** @return attempts that failed with a server or transport error. */
+   public long failures() {
+      return failures.get();
+   }
+
+   /** @return attempts that were repeated after a failure. */
+   public long retries() {
+      return retries.get();
+   }
+
+   /** @return attempts that failed fast because the breaker was open. */
+   public long rejected() {
+      return rejected.get();
+   }
+
+   @Override
+   public String toString() {
+      return toStringHelper(this).add("region", region).add("state", state()).add("calls", calls())
+            .add("failures", failures()).add("retries", retries()).add("rejected", rejected()).toString();
+   }
+}
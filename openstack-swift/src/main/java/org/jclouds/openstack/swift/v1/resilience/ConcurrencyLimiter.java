@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.resilience;
+
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Permits for one region and operation class. Callers wait up to a timeout for
+ * a permit. When a target latency is set the limit adapts
+ * additive-increase/multiplicative-decrease: slow or throttled calls shrink it,
+ * calls within target while the limit is in use grow it back towards its
+ * maximum.
+ */
+public final class ConcurrencyLimiter {
+
+   private static final double BACKOFF_RATIO = 0.9;
+
+   private final String name;
+   private final int maxLimit;
+   private final int minLimit;
+   private final long targetLatencyNanos;
+
+   private double limit;
+   private int inFlight;
+   private int queued;
+   private long rejected;
+
+   ConcurrencyLimiter(String name, int maxLimit, int minLimit, long targetLatency, TimeUnit unit) {
+      checkArgument(minLimit > 0 && maxLimit >= minLimit, "expected 0 < minLimit <= maxLimit, was %s, %s",
+            minLimit, maxLimit);
+      this.name = checkNotNull(name, "name");
+      this.maxLimit = maxLimit;
+      this.minLimit = minLimit;
+      this.targetLatencyNanos = unit.toNanos(targetLatency);
+      this.limit = maxLimit;
+   }
+
+   /**
+    * Waits for a permit, which must be released by {@link #release}.
+    *
+    * @throws RejectedExecutionException
+    *            if no permit became available in time.
+    */
+   synchronized void acquire(long timeout, TimeUnit unit) throws InterruptedException {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      queued++;
+      try {
+         while (inFlight >= (int) limit) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+               rejected++;
+               throw new RejectedExecutionException(String.format("no permit for %s within %sms (limit %s)", name,
+                     unit.toMillis(timeout), (int) limit));
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+         }
+      } finally {
+         queued--;
+      }
+      inFlight++;
+   }
+
+   /**
+    * @param latencyNanos
+    *           how long the call held its permit.
+    * @param overloaded
+    *           true if the server throttled or failed the call.
+    */
+   synchronized void release(long latencyNanos, boolean overloaded) {
+      int utilized = inFlight--;
+      if (targetLatencyNanos > 0) {
+         if (overloaded || latencyNanos > targetLatencyNanos) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+         } else if (utilized * 2 >= (int) limit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+         }
+      }
+      notifyAll();
+   }
+
+   /** @return the current number of permits. */
+   public synchronized int limit() {
+      return (int) limit;
+   }
+
+   public synchronized int inFlight() {
+      return inFlight;
+   }
+
+   /** @return callers waiting for a permit. */
+   public synchronized int queued() {
+      return queued;
+   }
+
+   /** @return callers that timed out waiting for a permit. */
+   public synchronized long rejected() {
+      return rejected;
+   }
+
+   @Override
+   public synchronized String toString() {
+      return toStringHelper(this).add("name", name).add("limit", (int) limit).add("maxLimit", maxLimit)
+            .add("inFlight", inFlight).add("queued", queued).add("rejected", rejected).toString();
+   }
+}
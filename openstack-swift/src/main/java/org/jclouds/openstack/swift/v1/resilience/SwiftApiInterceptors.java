@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.resilience;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.propagate;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.inject.Named;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.HEAD;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.rest.annotations.Delegate;
+
+/**
+ * Decorates the feature apis of a {@link SwiftApi}, such as
+ * {@link SwiftApi#objectApiInRegionForContainer}, so that each of their calls
+ * passes through an {@link Interceptor} which knows the region and the
+ * {@link Named operation} being invoked.
+ */
+public final class SwiftApiInterceptors {
+
+   /** region key used when a feature api was obtained with a null region. */
+   public static final String DEFAULT_REGION = "";
+
+   /**
+    * Surrounds one call to a feature api.
+    */
+   public interface Interceptor {
+
+      /**
+       * @param region
+       *           region the feature api was obtained for, or
+       *           {@link #DEFAULT_REGION}.
+       * @param operation
+       *           the call, whose {@link Operation#name()} is its {@link Named}
+       *           value, such as {@code GetObject}.
+       * @param call
+       *           performs the call against the underlying api, and may be
+       *           invoked more than once.
+       */
+      Object intercept(String region, Operation operation, Callable<Object> call) throws Exception;
+   }
+
+   /**
+    * Describes a method of a feature api.
+    */
+   public static final class Operation {
+      private final String name;
+      private final boolean idempotent;
+      private final boolean readOnly;
+      private final String container;
+      private final List<Object> arguments;
+
+      private Operation(String name, boolean idempotent, boolean readOnly, String container, List<Object> arguments) {
+         this.name = name;
+         this.idempotent = idempotent;
+         this.readOnly = readOnly;
+         this.container = container;
+         this.arguments = arguments;
+      }
+
+      /** the {@link Named} value of the method, or its java name if absent. */
+      public String name() {
+         return name;
+      }
+
+      /** true for {@code GET}, {@code HEAD} and {@code DELETE} calls. */
+      public boolean idempotent() {
+         return idempotent;
+      }
+
+      /** true for {@code GET} and {@code HEAD} calls. */
+      public boolean readOnly() {
+         return readOnly;
+      }
+
+      /**
+       * the container a feature api such as
+       * {@link SwiftApi#objectApiInRegionForContainer} was obtained for, or
+       * null for apis scoped to a region only.
+       */
+      @Nullable
+      public String container() {
+         return container;
+      }
+
+      /** the arguments of this call, which may contain nulls. */
+      public List<Object> arguments() {
+         return arguments;
+      }
+
+      static Operation of(Method method) {
+         return of(method, null, null);
+      }
+
+      static Operation of(Method method, @Nullable String container, @Nullable Object[] args) {
+         Named named = method.getAnnotation(Named.class);
+         boolean readOnly = method.isAnnotationPresent(GET.class) || method.isAnnotationPresent(HEAD.class);
+         boolean idempotent = readOnly || method.isAnnotationPresent(DELETE.class);
+         List<Object> arguments = args != null ? Collections.unmodifiableList(Arrays.asList(args)) : Collections
+               .emptyList();
+         return new Operation(named != null ? named.value() : method.getName(), idempotent, readOnly, container,
+               arguments);
+      }
+
+      @Override
+      public String toString() {
+         return name;
+      }
+   }
+
+   /**
+    * @return a {@link SwiftApi} whose feature apis call {@code interceptor}.
+    */
+   public static SwiftApi intercept(SwiftApi api, Interceptor interceptor) {
+      return proxy(SwiftApi.class, new SwiftApiHandler(checkNotNull(api, "api"),
+            checkNotNull(interceptor, "interceptor")));
+   }
+
+   private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+      return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+   }
+
+   private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+      try {
+         return method.invoke(target, args);
+      } catch (InvocationTargetException e) {
+         throw e.getCause();
+      }
+   }
+
+   private static class SwiftApiHandler implements InvocationHandler {
+      private final SwiftApi api;
+      private final Interceptor interceptor;
+
+      private SwiftApiHandler(SwiftApi api, Interceptor interceptor) {
+         this.api = api;
+         this.interceptor = interceptor;
+      }
+
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+         Object result = SwiftApiInterceptors.invoke(api, method, args);
+         if (!method.isAnnotationPresent(Delegate.class) || result == null) {
+            return result;
+         }
+         String region = args != null && args[0] instanceof String ? String.class.cast(args[0]) : DEFAULT_REGION;
+         String container = args != null && args.length > 1 && args[1] instanceof String ? String.class
+               .cast(args[1]) : null;
+         return proxy(method.getReturnType(), new FeatureApiHandler(result, region, container, interceptor));
+      }
+
+      @Override
+      public String toString() {
+         return "intercepted(" + api + ")";
+      }
+   }
+
+   private static class FeatureApiHandler implements InvocationHandler {
+      private final Object featureApi;
+      private final String region;
+      private final String container;
+      private final Interceptor interceptor;
+
+      private FeatureApiHandler(Object featureApi, String region, String container, Interceptor interceptor) {
+         this.featureApi = featureApi;
+         this.region = region;
+         this.container = container;
+         this.interceptor = interceptor;
+      }
+
+      @Override
+      public Object invoke(Object proxy, final Method method, final Object[] args) throws Throwable {
+         if (method.getDeclaringClass() == Object.class) {
+            return SwiftApiInterceptors.invoke(featureApi, method, args);
+         }
+         return interceptor.intercept(region, Operation.of(method, container, args), new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+               try {
+                  return SwiftApiInterceptors.invoke(featureApi, method, args);
+               } catch (Exception e) {
+                  throw e;
+               } catch (Throwable e) {
+                  throw propagate(e);
+               }
+            }
+         });
+      }
+   }
+
+   private SwiftApiInterceptors() {
+      throw new AssertionError("intentionally unimplemented");
+   }
+}
@@ -0,0 +1,334 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.resilience;
+
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.domain.ConditionalObject;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.resilience.SwiftApiInterceptors.Interceptor;
+import org.jclouds.openstack.swift.v1.resilience.SwiftApiInterceptors.Operation;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Limits concurrent Swift calls per region and operation class, so that batch
+ * work such as {@code BulkDelete} or {@code ListObjects} cannot starve
+ * latency-sensitive calls such as {@code GetObject}. Operation classes are the
+ * {@link javax.inject.Named} values of the feature api methods, optionally
+ * grouped with {@link Builder#operationClass}; each class has its own permits
+ * in each region.
+ * <p>
+ * A {@code GetObject} call keeps its permit while the object streams: the
+ * permit is released, and its latency recorded, when the payload is read to
+ * the end or closed. Callers must therefore close payloads they do not read,
+ * which they already must do to free the connection.
+ *
+ * <pre>
+ * SwiftBulkhead bulkhead = SwiftBulkhead.builder()
+ *       .operationClass("batch", "BulkDelete", "ListObjects").limit("batch", 4)
+ *       .limit("GetObject", 64).targetLatency(500, MILLISECONDS).build();
+ * SwiftApi api = bulkhead.wrap(context.getApi());
+ * </pre>
+ */
+public final class SwiftBulkhead implements Interceptor {
+
+   /** limit key applying to operations without their own limit. */
+   public static final String DEFAULT_CLASS = "*";
+
+   /** operation whose permit is held until its object payload is read. */
+   private static final String STREAMING_OPERATION = "GetObject";
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static final class Builder {
+      private final Map<String, Integer> limits = Maps.newLinkedHashMap();
+      private final Map<String, String> operationClasses = Maps.newLinkedHashMap();
+      private int minLimit = 1;
+      private long queueTimeoutMillis = SECONDS.toMillis(30);
+      private long targetLatencyMillis;
+
+      /**
+       * @param operationClass
+       *           an operation name, such as {@code GetObject}, a class defined
+       *           by {@link #operationClass}, or {@link #DEFAULT_CLASS}.
+       */
+      public Builder limit(String operationClass, int maxConcurrent) {
+         checkArgument(maxConcurrent > 0, "maxConcurrent must be positive");
+         limits.put(checkNotNull(operationClass, "operationClass"), maxConcurrent);
+         return this;
+      }
+
+      /**
+       * @see #limits(String)
+       */
+      public Builder limits(Map<String, Integer> limits) {
+         for (Entry<String, Integer> limit : limits.entrySet()) {
+            limit(limit.getKey(), limit.getValue());
+         }
+         return this;
+      }
+
+      /**
+       * @param spec
+       *           comma-separated {@code operationClass=maxConcurrent} pairs,
+       *           such as {@code BulkDelete=2,*=64}.
+       */
+      public Builder limits(String spec) {
+         Map<String, String> parsed = Splitter.on(',').trimResults().omitEmptyStrings().withKeyValueSeparator('=')
+               .split(spec);
+         for (Entry<String, String> limit : parsed.entrySet()) {
+            limit(limit.getKey().trim(), Integer.parseInt(limit.getValue().trim()));
+         }
+         return this;
+      }
+
+      /**
+       * shares one set of permits between {@code operations}.
+       */
+      public Builder operationClass(String name, String... operations) {
+         checkNotNull(name, "name");
+         for (String operation : operations) {
+            operationClasses.put(operation, name);
+         }
+         return this;
+      }
+
+      /** time a call waits for a permit before it is rejected. Defaults to 30s. */
+      public Builder queueTimeout(long duration, TimeUnit unit) {
+         this.queueTimeoutMillis = unit.toMillis(duration);
+         return this;
+      }
+
+      /**
+       * latency above which limits shrink, growing back while calls are
+       * faster. Defaults to 0, which keeps limits fixed.
+       */
+      public Builder targetLatency(long duration, TimeUnit unit) {
+         this.targetLatencyMillis = unit.toMillis(duration);
+         return this;
+      }
+
+      /** lowest limit adaptation may reach. Defaults to 1. */
+      public Builder minLimit(int minLimit) {
+         checkArgument(minLimit > 0, "minLimit must be positive");
+         this.minLimit = minLimit;
+         return this;
+      }
+
+      public SwiftBulkhead build() {
+         return new SwiftBulkhead(this);
+      }
+   }
+
+   private final Map<String, Integer> limits;
+   private final Map<String, String> operationClasses;
+   private final int minLimit;
+   private final long queueTimeoutMillis;
+   private final long targetLatencyMillis;
+   private final ConcurrentMap<String, ConcurrencyLimiter> limiters = Maps.newConcurrentMap();
+
+   private SwiftBulkhead(Builder builder) {
+      this.limits = ImmutableMap.copyOf(builder.limits);
+      this.operationClasses = ImmutableMap.copyOf(builder.operationClasses);
+      this.minLimit = builder.minLimit;
+      this.queueTimeoutMillis = builder.queueTimeoutMillis;
+      this.targetLatencyMillis = builder.targetLatencyMillis;
+   }
+
+   /**
+    * @return {@code api} whose feature api calls take permits from this
+    *         bulkhead, or {@code api} itself when no limits are configured.
+    */
+   public SwiftApi wrap(SwiftApi api) {
+      return limits.isEmpty() ? api : SwiftApiInterceptors.intercept(api, this);
+   }
+
+   /**
+    * @return the limiter used for {@code operation} in {@code region}, or null
+    *         if that operation is unlimited.
+    */
+   public ConcurrencyLimiter limiter(String region, String operation) {
+      String operationClass = operationClasses.containsKey(operation) ? operationClasses.get(operation) : operation;
+      if (!limits.containsKey(operationClass)) {
+         operationClass = DEFAULT_CLASS;
+         if (!limits.containsKey(operationClass)) {
+            return null;
+         }
+      }
+      String key = region + '/' + operationClass;
+      ConcurrencyLimiter limiter = limiters.get(key);
+      if (limiter == null) {
+         int maxLimit = limits.get(operationClass);
+         ConcurrencyLimiter created = new ConcurrencyLimiter(key, maxLimit, Math.min(minLimit, maxLimit),
+               targetLatencyMillis, MILLISECONDS);
+         limiter = limiters.putIfAbsent(key, created);
+         if (limiter == null) {
+            limiter = created;
+         }
+      }
+      return limiter;
+   }
+
+   @Override
+   public Object intercept(String region, Operation operation, Callable<Object> call) throws Exception {
+      ConcurrencyLimiter limiter = limiter(region, operation.name());
+      if (limiter == null) {
+         return call.call();
+      }
+      limiter.acquire(queueTimeoutMillis, MILLISECONDS);
+      Permit permit = new Permit(limiter);
+      Object result;
+      try {
+         result = call.call();
+      } catch (Exception e) {
+         permit.release(SwiftResilience.isRetryable(e));
+         throw e;
+      } catch (Error e) {
+         permit.release(false);
+         throw e;
+      }
+      if (!STREAMING_OPERATION.equals(operation.name())) {
+         permit.release(false);
+         return result;
+      }
+      try {
+         return holdUntilRead(result, permit);
+      } catch (RuntimeException e) {
+         permit.release(false);
+         throw e;
+      }
+   }
+
+   /**
+    * @return {@code result} with its object payload replaced by one releasing
+    *         {@code permit} once read or closed.
+    */
+   private static Object holdUntilRead(Object result, Permit permit) {
+      if (result instanceof SwiftObject) {
+         return holdPayload((SwiftObject) result, permit);
+      }
+      if (result instanceof ConditionalObject && ((ConditionalObject) result).object().isPresent()) {
+         return ConditionalObject.modified(holdPayload(((ConditionalObject) result).object().get(), permit));
+      }
+      permit.release(false);
+      return result;
+   }
+
+   private static SwiftObject holdPayload(SwiftObject object, Permit permit) {
+      Payload payload = object.payload();
+      Payload held = Payloads.newInputStreamPayload(new PermitInputStream(payload.getInput(), permit));
+      held.setContentMetadata(payload.getContentMetadata());
+      return object.toBuilder().payload(held).build();
+   }
+
+   /** releases its limiter once, measuring latency from creation. */
+   private static final class Permit {
+      private final ConcurrencyLimiter limiter;
+      private final long start = System.nanoTime();
+      private final AtomicBoolean released = new AtomicBoolean();
+
+      private Permit(ConcurrencyLimiter limiter) {
+         this.limiter = limiter;
+      }
+
+      private void release(boolean overloaded) {
+         if (released.compareAndSet(false, true)) {
+            limiter.release(System.nanoTime() - start, overloaded);
+         }
+      }
+   }
+
+   /**
+    * releases the permit at the end of the stream, on close, or on a read
+    * failure, whichever comes first.
+    */
+   private static final class PermitInputStream extends FilterInputStream {
+      private final Permit permit;
+
+      private PermitInputStream(InputStream in, Permit permit) {
+         super(in);
+         this.permit = permit;
+      }
+
+      @Override
+      public int read() throws IOException {
+         try {
+            int read = super.read();
+            if (read == -1) {
+               permit.release(false);
+            }
+            return read;
+         } catch (IOException e) {
+            permit.release(false);
+            throw e;
+         }
+      }
+
+      @Override
+      public int read(byte[] buffer, int offset, int length) throws IOException {
+         try {
+            int read = super.read(buffer, offset, length);
+            if (read == -1) {
+               permit.release(false);
+            }
+            return read;
+         } catch (IOException e) {
+            permit.release(false);
+            throw e;
+         }
+      }
+
+      @Override
+      public void close() throws IOException {
+         try {
+            super.close();
+         } finally {
+            permit.release(false);
+         }
+      }
+   }
+
+   @Override
+   public String toString() {
+      return toStringHelper(this).add("limits", limits).add("operationClasses", operationClasses)
+            .add("queueTimeoutMillis", queueTimeoutMillis).add("targetLatencyMillis", targetLatencyMillis)
+            .add("limiters", limiters.values()).toString();
+   }
+}
@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.resilience;
+
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.getCausalChain;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.resilience.SwiftApiInterceptors.Interceptor;
+import org.jclouds.openstack.swift.v1.resilience.SwiftApiInterceptors.Operation;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+
+/**
+ * Retries idempotent Swift calls ({@code GET}, {@code HEAD}, {@code DELETE},
+ * which includes listings) that fail with a throttling, server or transport
+ * error, using exponential backoff with full jitter and honouring
+ * {@code Retry-After}. Each region has a {@link CircuitBreaker}, so that calls
+ * to a failing region fail fast with {@link CircuitBreakerOpenException} and
+ * multi-region readers can pick another region via {@link #availableRegions}.
+ *
+ * <p/>
+ * jclouds still retries server errors below this layer; set
+ * {@link org.jclouds.Constants#PROPERTY_MAX_RETRIES} to {@code 0} to make this
+ * the only retry policy.
+ *
+ * <pre>
+ * SwiftResilience resilience = SwiftResilience.builder().maxAttempts(4).build();
+ * SwiftApi api = resilience.wrap(context.getApi());
+ * </pre>
+ */
+public final class SwiftResilience implements Interceptor {
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static final class Builder {
+      private int maxAttempts = 3;
+      private long baseDelayMillis = 100;
+      private long maxDelayMillis = SECONDS.toMillis(10);
+      private int failureThreshold = 5;
+      private long openMillis = SECONDS.toMillis(30);
+      private Ticker ticker = Ticker.systemTicker();
+      private Sleeper sleeper = Sleeper.THREAD;
+
+      /**
+       * attempts made for an idempotent call, including the first. Defaults to
+       * 3; 0 disables this layer, so that {@link SwiftResilience#wrap} returns
+       * the api itself.
+       */
+      public Builder maxAttempts(int maxAttempts) {
+         checkArgument(maxAttempts >= 0, "maxAttempts must be non-negative");
+         this.maxAttempts = maxAttempts;
+         return this;
+      }
+
+      /** delay bound before the first retry, doubled for each retry. Defaults to 100ms. */
+      public Builder baseDelay(long duration, TimeUnit unit) {
+         this.baseDelayMillis = unit.toMillis(duration);
+         return this;
+      }
+
+      /** upper bound of any delay; a longer {@code Retry-After} is not retried. Defaults to 10s. */
+      public Builder maxDelay(long duration, TimeUnit unit) {
+         this.maxDelayMillis = unit.toMillis(duration);
+         return this;
+      }
+
+      /** consecutive failures that open a region's breaker. Defaults to 5. */
+      public Builder failureThreshold(int failureThreshold) {
+         checkArgument(failureThreshold > 0, "failureThreshold must be positive");
+         this.failureThreshold = failureThreshold;
+         return this;
+      }
+
+      /** time an open breaker rejects calls before allowing a trial. Defaults to 30s. */
+      public Builder openDuration(long duration, TimeUnit unit) {
+         this.openMillis = unit.toMillis(duration);
+         return this;
+      }
+
+      Builder ticker(Ticker ticker) {
+         this.ticker = checkNotNull(ticker, "ticker");
+         return this;
+      }
+
+      Builder sleeper(Sleeper sleeper) {
+         this.sleeper = checkNotNull(sleeper, "sleeper");
+         return this;
+      }
+
+      public SwiftResilience build() {
+         checkArgument(maxDelayMillis >= baseDelayMillis, "maxDelay must not be less than baseDelay");
+         return new SwiftResilience(this);
+      }
+   }
+
+   interface Sleeper {
+      void sleep(long millis) throws InterruptedException;
+
+      Sleeper THREAD = new Sleeper() {
+         @Override
+         public void sleep(long millis) throws InterruptedException {
+            Thread.sleep(millis);
+         }
+      };
+   }
+
+   private final int maxAttempts;
+   private final long baseDelayMillis;
+   private final long maxDelayMillis;
+   private final int failureThreshold;
+   private final long openMillis;
+   private final Ticker ticker;
+   private final Sleeper sleeper;
+   private final Random random = new Random();
+   private final ConcurrentMap<String, CircuitBreaker> breakers = Maps.newConcurrentMap();
+
+   private SwiftResilience(Builder builder) {
+      this.maxAttempts = builder.maxAttempts;
+      this.baseDelayMillis = builder.baseDelayMillis;
+      this.maxDelayMillis = builder.maxDelayMillis;
+      this.failureThreshold = builder.failureThreshold;
+      this.openMillis = builder.openMillis;
+      this.ticker = builder.ticker;
+      this.sleeper = builder.sleeper;
+   }
+
+   /**
+    * @return {@code api} whose feature apis are retried and guarded by this
+    *         instance's circuit breakers, or {@code api} itself when
+    *         {@code maxAttempts} is zero.
+    */
+   public SwiftApi wrap(SwiftApi api) {
+      return maxAttempts == 0 ? api : SwiftApiInterceptors.intercept(api, this);
+   }
+
+   /**
+    * @return the breaker, and counters, of {@code region}.
+    */
+   public CircuitBreaker circuitBreaker(String region) {
+      checkNotNull(region, "region");
+      CircuitBreaker breaker = breakers.get(region);
+      if (breaker == null) {
+         CircuitBreaker created = new CircuitBreaker(region, failureThreshold, openMillis, MILLISECONDS, ticker);
+         breaker = breakers.putIfAbsent(region, created);
+         if (breaker == null) {
+            breaker = created;
+         }
+      }
+      return breaker;
+   }
+
+   /**
+    * @return {@code regions}, in order of preference, without those whose
+    *         breaker is open.
+    */
+   public List<String> availableRegions(Iterable<String> regions) {
+      ImmutableList.Builder<String> available = ImmutableList.builder();
+      for (String region : regions) {
+         if (circuitBreaker(region).isAvailable()) {
+            available.add(region);
+         }
+      }
+      return available.build();
+   }
+
+   @Override
+   public Object intercept(String region, Operation operation, Callable<Object> call) throws Exception {
+      CircuitBreaker breaker = circuitBreaker(region);
+      int attempts = operation.idempotent() ? Math.max(maxAttempts, 1) : 1;
+      for (int attempt = 1;; attempt++) {
+         if (!breaker.tryAcquire()) {
+            throw new CircuitBreakerOpenException(region);
+         }
+         try {
+            Object result = call.call();
+            breaker.onSuccess();
+            return result;
+         } catch (Exception e) {
+            if (!isRetryable(e)) {
+               // the region answered, so it is healthy
+               breaker.onSuccess();
+               throw e;
+            }
+            breaker.onFailure();
+            long delay = attempt < attempts ? delayMillis(attempt, e) : -1;
+            if (delay < 0) {
+               throw e;
+            }
+            breaker.onRetry();
+            sleeper.sleep(delay);
+         }
+      }
+   }
+
+   /**
+    * @return milliseconds to wait before retry number {@code attempt}, or -1 if
+    *         the server asked for a longer wait than {@code maxDelay}.
+    */
+   long delayMillis(int attempt, Exception failure) {
+      long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 30));
+      long jittered = ceiling > 0 ? (long) (random.nextDouble() * ceiling) : 0;
+      Long retryAfter = retryAfterMillis(failure);
+      if (retryAfter == null) {
+         return jittered;
+      }
+      return retryAfter > maxDelayMillis ? -1 : Math.max(retryAfter, jittered);
+   }
+
+   /**
+    * @return true for throttling (429), server errors other than 501 and
+    *         transport failures such as timeouts.
+    */
+   public static boolean isRetryable(Throwable failure) {
+      for (Throwable cause : getCausalChain(failure)) {
+         if (cause instanceof HttpResponseException) {
+            HttpResponse response = HttpResponseException.class.cast(cause).getResponse();
+            if (response != null) {
+               int status = response.getStatusCode();
+               return status == 429 || (status >= 500 && status != 501);
+            }
+         } else if (cause instanceof IOException || cause instanceof TimeoutException) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private static Long retryAfterMillis(Throwable failure) {
+      for (Throwable cause : getCausalChain(failure)) {
+         if (cause instanceof HttpResponseException && HttpResponseException.class.cast(cause).getResponse() != null) {
+            String retryAfter = HttpResponseException.class.cast(cause).getResponse().getFirstHeaderOrNull("Retry-After");
+            Integer seconds = retryAfter != null ? Ints.tryParse(retryAfter.trim()) : null;
+            return seconds != null ? SECONDS.toMillis(seconds) : null;
+         }
+      }
+      return null;
+   }
+
+   @Override
+   public String toString() {
+      return toStringHelper(this).add("maxAttempts", maxAttempts).add("baseDelayMillis", baseDelayMillis)
+            .add("maxDelayMillis", maxDelayMillis).add("failureThreshold", failureThreshold)
+            .add("openMillis", openMillis).add("breakers", breakers.values()).toString();
+   }
+}
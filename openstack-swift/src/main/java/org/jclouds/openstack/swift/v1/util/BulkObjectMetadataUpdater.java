@@ -0,0 +1,518 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.util;
+
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.openstack.swift.v1.options.ListContainerOptions.Builder.prefix;
+import static org.jclouds.openstack.swift.v1.options.ObjectHeaderOptions.Builder.keep;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.swift.v1.domain.ObjectList;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.options.ExpiryOptions;
+import org.jclouds.openstack.swift.v1.options.ListContainerOptions;
+import org.jclouds.openstack.swift.v1.options.ObjectHeaderOptions;
+
+import com.google.common.base.Function;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Applies a metadata mutation to many objects of a container.
+ * 
+ * As a swift object {@code POST} replaces all of its metadata, each object is
+ * {@link ObjectApi#head(String) headed}, the mutation is applied to its current
+ * metadata, and the result is
+ * {@link ObjectApi#updateMetadata(String, Map, ObjectHeaderOptions) posted},
+ * unless unchanged. The post also replaces the expiry, manifest, encoding and
+ * disposition headers, so they are sent again as headed. Objects are
+ * processed on the executor, with at most {@link Builder#parallelism} in
+ * flight and at most {@link Builder#postsPerSecond} posts per second.
+ * 
+ * Progress is reported to a {@link Checkpointer} as the last name before which
+ * every object was processed. Passing it to {@link Builder#resumeAfter} resumes
+ * an interrupted run. As unchanged objects are not posted, processing a few
+ * objects twice is cheap.
+ * 
+ * The same way, {@link #expireByPrefix} sets when many objects
+ * {@link ExpiryOptions expire}, posting each object's current metadata and
+ * headers along with the expiry.
+ */
+public class BulkObjectMetadataUpdater {
+
+   /**
+    * Receives the progress of a run, in order, from one thread at a time.
+    */
+   public static interface Checkpointer {
+      /**
+       * @param lastName
+       *           every object up to and including this one in the run's order
+       *           was processed, successfully or not.
+       */
+      void checkpoint(String lastName);
+   }
+
+   /**
+    * @return a mutation adding or replacing {@code entries}.
+    */
+   public static Function<Map<String, String>, Map<String, String>> put(final Map<String, String> entries) {
+      checkNotNull(entries, "entries");
+      return new Function<Map<String, String>, Map<String, String>>() {
+         @Override
+         public Map<String, String> apply(Map<String, String> current) {
+            Map<String, String> result = Maps.newLinkedHashMap(current);
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+               result.put(entry.getKey().toLowerCase(), entry.getValue());
+            }
+            return result;
+         }
+
+         @Override
+         public String toString() {
+            return "put(" + entries + ")";
+         }
+      };
+   }
+
+   /**
+    * @return a mutation removing {@code keys}.
+    */
+   public static Function<Map<String, String>, Map<String, String>> remove(String... keys) {
+      final ImmutableSet.Builder<String> lowerCased = ImmutableSet.builder();
+      for (String key : keys) {
+         lowerCased.add(key.toLowerCase());
+      }
+      final ImmutableSet<String> toRemove = lowerCased.build();
+      return new Function<Map<String, String>, Map<String, String>>() {
+         @Override
+         public Map<String, String> apply(Map<String, String> current) {
+            Map<String, String> result = Maps.newLinkedHashMap(current);
+            result.keySet().removeAll(toRemove);
+            return result;
+         }
+
+         @Override
+         public String toString() {
+            return "remove(" + toRemove + ")";
+         }
+      };
+   }
+
+   public static Builder builder(ObjectApi api, ListeningExecutorService executor) {
+      return new Builder(api, executor);
+   }
+
+   public static class Builder {
+      private final ObjectApi api;
+      private final ListeningExecutorService executor;
+      private int parallelism = 16;
+      private double postsPerSecond;
+      private int checkpointEvery = 1000;
+      private Checkpointer checkpointer;
+      private String resumeAfter;
+
+      Builder(ObjectApi api, ListeningExecutorService executor) {
+         this.api = checkNotNull(api, "api");
+         this.executor = checkNotNull(executor, "executor");
+      }
+
+      /**
+       * Maximum number of objects processed concurrently. Defaults to 16.
+       */
+      public Builder parallelism(int parallelism) {
+         checkArgument(parallelism > 0, "parallelism must be positive");
+         this.parallelism = parallelism;
+         return this;
+      }
+
+      /**
+       * Maximum rate of posts. Defaults to zero, for no limit.
+       */
+      public Builder postsPerSecond(double postsPerSecond) {
+         checkArgument(postsPerSecond >= 0, "postsPerSecond must be non-negative");
+         this.postsPerSecond = postsPerSecond;
+         return this;
+      }
+
+      /**
+       * Receives progress every {@code every} objects, and at the end of a run.
+       */
+      public Builder checkpointer(Checkpointer checkpointer, int every) {
+         checkArgument(every > 0, "every must be positive");
+         this.checkpointer = checkNotNull(checkpointer, "checkpointer");
+         this.checkpointEvery = every;
+         return this;
+      }
+
+      /**
+       * Skips objects up to and including {@code lastName}, as reported by a
+       * previous run's {@link Checkpointer}.
+       */
+      public Builder resumeAfter(@Nullable String lastName) {
+         this.resumeAfter = lastName;
+         return this;
+      }
+
+      public BulkObjectMetadataUpdater build() {
+         return new BulkObjectMetadataUpdater(this);
+      }
+   }
+
+   /**
+    * The outcome of a run.
+    */
+   public static final class Report {
+      private final long updated;
+      private final long unchanged;
+      private final long notFound;
+      private final SortedMap<String, Exception> failures;
+      private final String lastName;
+
+      private Report(long updated, long unchanged, long notFound, SortedMap<String, Exception> failures,
+            String lastName) {
+         this.updated = updated;
+         this.unchanged = unchanged;
+         this.notFound = notFound;
+         this.failures = failures;
+         this.lastName = lastName;
+      }
+
+      /** Objects whose metadata was posted. */
+      public long updated() {
+         return updated;
+      }
+
+      /** Objects the mutation left as they were. */
+      public long unchanged() {
+         return unchanged;
+      }
+
+      /** Objects deleted before they were processed. */
+      public long notFound() {
+         return notFound;
+      }
+
+      /**
+       * Objects that could not be updated, and why. Their names can be passed
+       * to {@link BulkObjectMetadataUpdater#update(Iterator, Function)} to
+       * retry them.
+       */
+      public SortedMap<String, Exception> failures() {
+         return failures;
+      }
+
+      /** The last name processed, or null if there were none. */
+      @Nullable
+      public String lastName() {
+         return lastName;
+      }
+
+      @Override
+      public String toString() {
+         return toStringHelper("").omitNullValues().add("updated", updated).add("unchanged", unchanged)
+               .add("notFound", notFound).add("failures", failures.size()).add("lastName", lastName).toString();
+      }
+   }
+
+   private final ObjectApi api;
+   private final ListeningExecutorService executor;
+   private final int parallelism;
+   private final RateLimiter rateLimiter;
+   private final int checkpointEvery;
+   private final Checkpointer checkpointer;
+   private final String resumeAfter;
+
+   private BulkObjectMetadataUpdater(Builder builder) {
+      this.api = builder.api;
+      this.executor = builder.executor;
+      this.parallelism = builder.parallelism;
+      this.rateLimiter = builder.postsPerSecond > 0 ? RateLimiter.create(builder.postsPerSecond) : null;
+      this.checkpointEvery = builder.checkpointEvery;
+      this.checkpointer = builder.checkpointer;
+      this.resumeAfter = builder.resumeAfter;
+   }
+
+   /**
+    * Updates every object whose name starts with {@code prefix}, in name order.
+    */
+   public Report updateByPrefix(String prefix, Function<Map<String, String>, Map<String, String>> mutation)
+         throws InterruptedException {
+      return run(new ListingIterator(api, checkNotNull(prefix, "prefix"), resumeAfter), new Mutate(mutation));
+   }
+
+   /**
+    * Updates the objects named by {@code names}, in their order. When resuming,
+    * names are skipped up to and including the one resumed after, so the
+    * order must be the same as in the interrupted run.
+    */
+   public Report update(Iterator<String> names, Function<Map<String, String>, Map<String, String>> mutation)
+         throws InterruptedException {
+      return run(skipResumed(names), new Mutate(mutation));
+   }
+
+   /**
+    * Sets when every object whose name starts with {@code prefix} expires, in
+    * name order, keeping its metadata.
+    * 
+    * Objects that already expire at the {@link ExpiryOptions#deleteAt}
+    * timestamp, or never expire when {@link ExpiryOptions#keepForever}, are
+    * left unchanged. A {@link ExpiryOptions#deleteAfter} delay counts from
+    * each object's post, so objects of a long run expire over time; fix it
+    * with {@link ExpiryOptions#fixedAt} to expire them together.
+    */
+   public Report expireByPrefix(String prefix, ExpiryOptions expiry) throws InterruptedException {
+      return run(new ListingIterator(api, checkNotNull(prefix, "prefix"), resumeAfter), new Expire(expiry));
+   }
+
+   /**
+    * Sets when the objects named by {@code names} expire, in their order,
+    * resuming as {@link #update(Iterator, Function)} does.
+    * 
+    * @see #expireByPrefix(String, ExpiryOptions)
+    */
+   public Report expire(Iterator<String> names, ExpiryOptions expiry) throws InterruptedException {
+      return run(skipResumed(names), new Expire(expiry));
+   }
+
+   private Iterator<String> skipResumed(Iterator<String> names) {
+      checkNotNull(names, "names");
+      if (resumeAfter != null) {
+         while (names.hasNext()) {
+            if (names.next().equals(resumeAfter)) {
+               break;
+            }
+         }
+      }
+      return names;
+   }
+
+   private Report run(Iterator<String> names, final Change change) throws InterruptedException {
+      final Progress progress = new Progress(resumeAfter);
+      final Semaphore inFlight = new Semaphore(parallelism);
+      try {
+         for (long sequence = 0; names.hasNext(); sequence++) {
+            final String name = names.next();
+            final long position = sequence;
+            inFlight.acquire();
+            try {
+               executor.execute(new Runnable() {
+                  @Override
+                  public void run() {
+                     try {
+                        progress.done(position, name, change.apply(name));
+                     } catch (Exception e) {
+                        progress.failed(position, name, e);
+                     } finally {
+                        inFlight.release();
+                     }
+                  }
+               });
+            } catch (RuntimeException e) {
+               inFlight.release();
+               throw e;
+            }
+         }
+      } finally {
+         // wait for the objects in flight, even when interrupted
+         inFlight.acquireUninterruptibly(parallelism);
+      }
+      return progress.finish();
+   }
+
+   private static enum Outcome {
+      UPDATED, UNCHANGED, NOT_FOUND;
+   }
+
+   /**
+    * What a run does to each object.
+    */
+   private static interface Change {
+      Outcome apply(String name);
+   }
+
+   private class Mutate implements Change {
+      private final Function<Map<String, String>, Map<String, String>> mutation;
+
+      private Mutate(Function<Map<String, String>, Map<String, String>> mutation) {
+         this.mutation = checkNotNull(mutation, "mutation");
+      }
+
+      @Override
+      public Outcome apply(String name) {
+         SwiftObject object = api.head(name);
+         if (object == null) {
+            return Outcome.NOT_FOUND;
+         }
+         Map<String, String> current = ImmutableMap.copyOf(object.metadata());
+         Map<String, String> updated = checkNotNull(mutation.apply(current), "mutation result");
+         if (updated.equals(current)) {
+            return Outcome.UNCHANGED;
+         }
+         acquirePost();
+         return api.updateMetadata(name, updated, keep(object)) ? Outcome.UPDATED : Outcome.NOT_FOUND;
+      }
+   }
+
+   private class Expire implements Change {
+      private final ExpiryOptions expiry;
+
+      private Expire(ExpiryOptions expiry) {
+         this.expiry = checkNotNull(expiry, "expiry");
+         checkArgument(expiry.getDeleteAt() != null || expiry.getDeleteAfter() != null || expiry.isKeepForever(),
+               "expiry must be set");
+      }
+
+      @Override
+      public Outcome apply(String name) {
+         SwiftObject object = api.head(name);
+         if (object == null) {
+            return Outcome.NOT_FOUND;
+         }
+         String deleteAt = deleteAt(object);
+         if (expiry.isKeepForever() ? deleteAt == null : String.valueOf(expiry.getDeleteAt()).equals(deleteAt)) {
+            return Outcome.UNCHANGED;
+         }
+         acquirePost();
+         // a post replaces the metadata and other headers, so send them back as they are
+         return api.updateMetadata(name, ImmutableMap.copyOf(object.metadata()), expiry,
+               keep(object).withoutExpiry()) ? Outcome.UPDATED : Outcome.NOT_FOUND;
+      }
+   }
+
+   private void acquirePost() {
+      if (rateLimiter != null) {
+         rateLimiter.acquire();
+      }
+   }
+
+   @Nullable
+   private static String deleteAt(SwiftObject object) {
+      for (Map.Entry<String, String> header : object.headers().entries()) {
+         if (header.getKey().equalsIgnoreCase("X-Delete-At")) {
+            return header.getValue();
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Tracks which objects completed, so that checkpoints only cover a
+    * contiguous run of them.
+    */
+   private class Progress {
+      private final AtomicLong updated = new AtomicLong();
+      private final AtomicLong unchanged = new AtomicLong();
+      private final AtomicLong notFound = new AtomicLong();
+      private final SortedMap<String, Exception> failures = Maps.newTreeMap();
+      private final SortedMap<Long, String> completedOutOfOrder = Maps.newTreeMap();
+      private long next;
+      private String lastName;
+      private int sinceCheckpoint;
+
+      private Progress(String lastName) {
+         this.lastName = lastName;
+      }
+
+      void done(long position, String name, Outcome outcome) {
+         switch (outcome) {
+            case UPDATED:
+               updated.incrementAndGet();
+               break;
+            case UNCHANGED:
+               unchanged.incrementAndGet();
+               break;
+            case NOT_FOUND:
+               notFound.incrementAndGet();
+               break;
+         }
+         completed(position, name);
+      }
+
+      synchronized void failed(long position, String name, Exception e) {
+         failures.put(name, e);
+         completed(position, name);
+      }
+
+      private synchronized void completed(long position, String name) {
+         completedOutOfOrder.put(position, name);
+         while (!completedOutOfOrder.isEmpty() && completedOutOfOrder.firstKey() == next) {
+            lastName = completedOutOfOrder.remove(next);
+            next++;
+            sinceCheckpoint++;
+         }
+         if (checkpointer != null && sinceCheckpoint >= checkpointEvery) {
+            checkpointer.checkpoint(lastName);
+            sinceCheckpoint = 0;
+         }
+      }
+
+      synchronized Report finish() {
+         if (checkpointer != null && sinceCheckpoint > 0) {
+            checkpointer.checkpoint(lastName);
+         }
+         return new Report(updated.get(), unchanged.get(), notFound.get(), ImmutableSortedMap.copyOfSorted(failures),
+               lastName);
+      }
+   }
+
+   /**
+    * Names of the objects under a prefix, one listing page at a time.
+    */
+   private static class ListingIterator extends AbstractIterator<String> {
+      private final ObjectApi api;
+      private final String prefix;
+      private String marker;
+      private Iterator<SwiftObject> page;
+
+      private ListingIterator(ObjectApi api, String prefix, String marker) {
+         this.api = api;
+         this.prefix = prefix;
+         this.marker = marker;
+      }
+
+      @Override
+      protected String computeNext() {
+         while (page == null || !page.hasNext()) {
+            ListContainerOptions options = prefix(prefix);
+            if (marker != null) {
+               options.marker(marker);
+            }
+            ObjectList objects = api.list(options);
+            if (objects == null || objects.isEmpty()) {
+               return endOfData();
+            }
+            page = objects.iterator();
+         }
+         marker = page.next().name();
+         return marker;
+      }
+   }
+}
@@ -0,0 +1,504 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.util;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.io.BaseEncoding.base16;
+import static org.jclouds.openstack.swift.v1.functions.ParseObjectListFromResponse.SUBDIR_CONTENT_TYPE;
+import static org.jclouds.openstack.swift.v1.options.ListContainerOptions.Builder.prefix;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.openstack.swift.v1.domain.ObjectList;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.options.ListContainerOptions;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.UnsignedBytes;
+
+/**
+ * A compact, sorted index of the objects of a container, built from listings.
+ * 
+ * Instead of a {@link SwiftObject} per entry, names are kept as UTF-8 in
+ * blocks of up to 1MB, in the byte order swift lists them in, with a position
+ * and length per entry. MD5 etags take 16 bytes, and sizes and last modified
+ * times are primitive arrays, so an entry costs about 44 bytes plus its name.
+ * An index holds at most {@link #MAX_ENTRIES} entries, as etags share one
+ * array.
+ * 
+ * Pages listed in order, as when {@link #load loading} a container, are
+ * appended in place. Other pages are merged, which copies the index. Readers
+ * may run concurrently with each other, but not with merges.
+ */
+public class CompactObjectIndex {
+
+   private static final int ETAG_LENGTH = 16;
+
+   /** names, which swift limits to 1024 bytes, never span two blocks. */
+   private static final int BLOCK_SHIFT = 20;
+   private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+   private static final long BLOCK_MASK = BLOCK_SIZE - 1;
+
+   /** about 134 million. */
+   public static final int MAX_ENTRIES = Integer.MAX_VALUE / ETAG_LENGTH - 1;
+
+   /**
+    * Lists all objects under {@code prefix} into a new index.
+    */
+   public static CompactObjectIndex load(ObjectApi api, String prefix) {
+      checkNotNull(api, "api");
+      checkNotNull(prefix, "prefix");
+      CompactObjectIndex index = new CompactObjectIndex();
+      String marker = null;
+      while (true) {
+         ListContainerOptions options = prefix(prefix);
+         if (marker != null) {
+            options.marker(marker);
+         }
+         ObjectList page = api.list(options);
+         if (page == null || page.isEmpty()) {
+            return index;
+         }
+         index.merge(page);
+         marker = page.get(page.size() - 1).name();
+      }
+   }
+
+   private final ReadWriteLock lock = new ReentrantReadWriteLock();
+   // only the first block starts small; later ones are allocated whole
+   private byte[][] blocks = { new byte[1024] };
+   private long nameEnd;
+   private long[] starts = new long[16];
+   private int[] lengths = new int[16];
+   private byte[] etags = new byte[16 * ETAG_LENGTH];
+   private long[] sizes = new long[16];
+   private long[] lastModified = new long[16];
+   private int size;
+
+   /**
+    * Adds or replaces the entries of {@code page}. Pseudo-directories listed
+    * with a delimiter are skipped.
+    */
+   public void merge(Iterable<SwiftObject> page) {
+      List<Entry> entries = toEntries(page);
+      if (entries.isEmpty()) {
+         return;
+      }
+      lock.writeLock().lock();
+      try {
+         if (size == 0 || compare(size - 1, entries.get(0).name) < 0) {
+            for (Entry entry : entries) {
+               append(entry);
+            }
+         } else {
+            rebuild(false, null, null, entries);
+         }
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Replaces the entries whose names are after {@code marker} and up to
+    * {@code lastName} with those of {@code page}, as a listing page is
+    * authoritative for that range. Entries absent from the page are removed.
+    * 
+    * @param marker
+    *           the marker the page was listed with, or null for the start.
+    * @param lastName
+    *           the end of the range, or null for the end of the container when
+    *           the page was the last.
+    */
+   public void replaceRange(@Nullable String marker, @Nullable String lastName, Iterable<SwiftObject> page) {
+      List<Entry> entries = toEntries(page);
+      lock.writeLock().lock();
+      try {
+         rebuild(true, marker != null ? marker.getBytes(UTF_8) : null, lastName != null ? lastName.getBytes(UTF_8)
+               : null, entries);
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   public int size() {
+      lock.readLock().lock();
+      try {
+         return size;
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return the position of {@code name}, or {@code -(insertion point) - 1}
+    *         if absent, as in {@link Arrays#binarySearch(int[], int)}.
+    */
+   public int indexOf(String name) {
+      byte[] key = name.getBytes(UTF_8);
+      lock.readLock().lock();
+      try {
+         int from = lowerBound(key);
+         return from < size && compare(from, key) == 0 ? from : -from - 1;
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   public boolean contains(String name) {
+      return indexOf(name) >= 0;
+   }
+
+   /**
+    * @return positions {@code [from, to)} of the names starting with
+    *         {@code prefix}.
+    */
+   public int[] prefixRange(String prefix) {
+      byte[] key = prefix.getBytes(UTF_8);
+      lock.readLock().lock();
+      try {
+         int from = lowerBound(key);
+         int to = from;
+         // names with the prefix are contiguous from its lower bound
+         int high = size;
+         while (to < high) {
+            int middle = (to + high) >>> 1;
+            if (startsWith(middle, key)) {
+               to = middle + 1;
+            } else {
+               high = middle;
+            }
+         }
+         return new int[] { from, to };
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return the names starting with {@code prefix}, in order.
+    */
+   public List<String> names(String prefix) {
+      lock.readLock().lock();
+      try {
+         int[] range = prefixRange(prefix);
+         List<String> result = Lists.newArrayListWithCapacity(range[1] - range[0]);
+         for (int i = range[0]; i < range[1]; i++) {
+            result.add(name(i));
+         }
+         return result;
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return the sum of the sizes of the objects starting with {@code prefix}.
+    */
+   public long bytes(String prefix) {
+      lock.readLock().lock();
+      try {
+         int[] range = prefixRange(prefix);
+         long total = 0;
+         for (int i = range[0]; i < range[1]; i++) {
+            total += sizes[i];
+         }
+         return total;
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   public String name(int index) {
+      lock.readLock().lock();
+      try {
+         checkElementIndex(index, size);
+         return new String(block(starts[index]), offset(starts[index]), lengths[index], UTF_8);
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return the etag in lower-case hex, as {@link SwiftObject#etag()}.
+    */
+   public String etag(int index) {
+      lock.readLock().lock();
+      try {
+         checkElementIndex(index, size);
+         return base16().lowerCase().encode(etags, index * ETAG_LENGTH, ETAG_LENGTH);
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   public long size(int index) {
+      lock.readLock().lock();
+      try {
+         checkElementIndex(index, size);
+         return sizes[index];
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   public Date lastModified(int index) {
+      lock.readLock().lock();
+      try {
+         checkElementIndex(index, size);
+         return new Date(lastModified[index]);
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return bytes retained by the index, excluding object headers.
+    */
+   public long retainedBytes() {
+      lock.readLock().lock();
+      try {
+         long total = 8l * starts.length + 4l * lengths.length + etags.length + 8l * sizes.length + 8l
+               * lastModified.length;
+         for (byte[] block : blocks) {
+            total += block.length;
+         }
+         return total;
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   private static final class Entry {
+      private final byte[] name;
+      private final byte[] etag;
+      private final long size;
+      private final long lastModified;
+
+      private Entry(byte[] name, byte[] etag, long size, long lastModified) {
+         this.name = name;
+         this.etag = etag;
+         this.size = size;
+         this.lastModified = lastModified;
+      }
+   }
+
+   private static List<Entry> toEntries(Iterable<SwiftObject> page) {
+      List<Entry> entries = Lists.newArrayList();
+      for (SwiftObject object : checkNotNull(page, "page")) {
+         if (SUBDIR_CONTENT_TYPE.equals(object.payload().getContentMetadata().getContentType())
+               && object.name().endsWith("/") && object.etag().isEmpty()) {
+            continue;
+         }
+         Long length = object.payload().getContentMetadata().getContentLength();
+         entries.add(new Entry(object.name().getBytes(UTF_8), etag(object.etag()), length != null ? length : 0,
+               object.lastModified().getTime()));
+      }
+      // pages are sorted, unless assembled by the caller
+      boolean sorted = true;
+      for (int i = 1; i < entries.size() && sorted; i++) {
+         sorted = UnsignedBytes.lexicographicalComparator().compare(entries.get(i - 1).name, entries.get(i).name) < 0;
+      }
+      if (!sorted) {
+         Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry left, Entry right) {
+               return UnsignedBytes.lexicographicalComparator().compare(left.name, right.name);
+            }
+         });
+      }
+      return entries;
+   }
+
+   /** etags other than MD5, such as those of manifests, are kept as zeros. */
+   private static byte[] etag(String etag) {
+      if (etag.length() == 2 * ETAG_LENGTH) {
+         try {
+            return base16().lowerCase().decode(etag.toLowerCase());
+         } catch (IllegalArgumentException e) {
+            // not hex
+         }
+      }
+      return new byte[ETAG_LENGTH];
+   }
+
+   private void append(Entry entry) {
+      ensureCapacity(size + 1);
+      put(size, entry);
+      size++;
+   }
+
+   /** writes entry {@code index}, which must be the next one. */
+   private void put(int index, Entry entry) {
+      starts[index] = allocate(entry.name.length);
+      lengths[index] = entry.name.length;
+      System.arraycopy(entry.name, 0, block(starts[index]), offset(starts[index]), entry.name.length);
+      System.arraycopy(entry.etag, 0, etags, index * ETAG_LENGTH, ETAG_LENGTH);
+      sizes[index] = entry.size;
+      lastModified[index] = entry.lastModified;
+   }
+
+   private void ensureCapacity(int entries) {
+      checkState(entries <= MAX_ENTRIES, "index holds at most %s entries", MAX_ENTRIES);
+      if (entries > sizes.length) {
+         int capacity = Math.min(MAX_ENTRIES, Math.max(entries, sizes.length + (sizes.length >> 1)));
+         starts = Arrays.copyOf(starts, capacity);
+         lengths = Arrays.copyOf(lengths, capacity);
+         etags = Arrays.copyOf(etags, capacity * ETAG_LENGTH);
+         sizes = Arrays.copyOf(sizes, capacity);
+         lastModified = Arrays.copyOf(lastModified, capacity);
+      }
+   }
+
+   /**
+    * @return the position of {@code length} new name bytes, in the last block
+    *         or, if they do not fit there, in a new one.
+    */
+   private long allocate(int length) {
+      checkArgument(length <= BLOCK_SIZE, "name of %s bytes is too long", length);
+      long start = nameEnd;
+      if ((start & BLOCK_MASK) + length > BLOCK_SIZE) {
+         start = (start | BLOCK_MASK) + 1;
+      }
+      int block = (int) (start >>> BLOCK_SHIFT);
+      int end = offset(start) + length;
+      if (block == blocks.length) {
+         blocks = Arrays.copyOf(blocks, block + 1);
+         blocks[block] = new byte[BLOCK_SIZE];
+      } else if (end > blocks[block].length) {
+         blocks[block] = Arrays.copyOf(blocks[block], Math.min(BLOCK_SIZE,
+               Math.max(end, blocks[block].length + (blocks[block].length >> 1))));
+      }
+      nameEnd = start + length;
+      return start;
+   }
+
+   private byte[] block(long position) {
+      return blocks[(int) (position >>> BLOCK_SHIFT)];
+   }
+
+   private static int offset(long position) {
+      return (int) (position & BLOCK_MASK);
+   }
+
+   /**
+    * Merges sorted {@code entries} into a copy of the index. When replacing,
+    * existing entries within the range are dropped.
+    */
+   private void rebuild(boolean replace, @Nullable byte[] after, @Nullable byte[] through, List<Entry> entries) {
+      CompactObjectIndex merged = new CompactObjectIndex();
+      merged.ensureCapacity(size + entries.size());
+      int existing = 0;
+      for (Entry entry : entries) {
+         while (existing < size && compare(existing, entry.name) < 0) {
+            if (!replace || !inRange(existing, after, through)) {
+               merged.copy(this, existing);
+            }
+            existing++;
+         }
+         if (existing < size && compare(existing, entry.name) == 0) {
+            existing++;
+         }
+         merged.put(merged.size++, entry);
+      }
+      for (; existing < size; existing++) {
+         if (!replace || !inRange(existing, after, through)) {
+            merged.copy(this, existing);
+         }
+      }
+      blocks = merged.blocks;
+      nameEnd = merged.nameEnd;
+      starts = merged.starts;
+      lengths = merged.lengths;
+      etags = merged.etags;
+      sizes = merged.sizes;
+      lastModified = merged.lastModified;
+      size = merged.size;
+   }
+
+   private boolean inRange(int index, @Nullable byte[] after, @Nullable byte[] through) {
+      return (after == null || compare(index, after) > 0) && (through == null || compare(index, through) <= 0);
+   }
+
+   /** appends entry {@code index} of {@code from}, which must fit. */
+   private void copy(CompactObjectIndex from, int index) {
+      int length = from.lengths[index];
+      starts[size] = allocate(length);
+      lengths[size] = length;
+      System.arraycopy(from.block(from.starts[index]), offset(from.starts[index]), block(starts[size]),
+            offset(starts[size]), length);
+      System.arraycopy(from.etags, index * ETAG_LENGTH, etags, size * ETAG_LENGTH, ETAG_LENGTH);
+      sizes[size] = from.sizes[index];
+      lastModified[size] = from.lastModified[index];
+      size++;
+   }
+
+   /** first position whose name is not less than {@code key}. */
+   private int lowerBound(byte[] key) {
+      int low = 0;
+      int high = size;
+      while (low < high) {
+         int middle = (low + high) >>> 1;
+         if (compare(middle, key) < 0) {
+            low = middle + 1;
+         } else {
+            high = middle;
+         }
+      }
+      return low;
+   }
+
+   /** compares the name at {@code index} with {@code key}, as unsigned bytes. */
+   private int compare(int index, byte[] key) {
+      byte[] names = block(starts[index]);
+      int start = offset(starts[index]);
+      int length = lengths[index];
+      int common = Math.min(length, key.length);
+      for (int i = 0; i < common; i++) {
+         int result = UnsignedBytes.compare(names[start + i], key[i]);
+         if (result != 0) {
+            return result;
+         }
+      }
+      return length - key.length;
+   }
+
+   private boolean startsWith(int index, byte[] prefix) {
+      if (lengths[index] < prefix.length) {
+         return false;
+      }
+      byte[] names = block(starts[index]);
+      int start = offset(starts[index]);
+      for (int i = 0; i < prefix.length; i++) {
+         if (names[start + i] != prefix[i]) {
+            return false;
+         }
+      }
+      return true;
+   }
+}
@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.util;
+
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.domain.Account;
+import org.jclouds.openstack.swift.v1.domain.Container;
+import org.jclouds.openstack.swift.v1.features.ContainerApi;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Collects the {@link Container} stats of every container in an account.
+ * 
+ * Containers are {@link ContainerApi#listAt(String) listed} page by page, and
+ * each is {@link ContainerApi#get(String) headed} on the executor, with at most
+ * {@link Builder#parallelism} requests in flight, so that memory and load stay
+ * bounded however many containers there are.
+ * 
+ * The last {@link Usage} is reused until it is older than
+ * {@link Builder#ttl}. Refreshing it lists all containers again, but only heads
+ * those that are new, or whose listed object count or bytes changed.
+ * 
+ * Instances are thread-safe; refreshes are serialized.
+ */
+public class ContainerUsageAggregator {
+
+   public static Builder builder(SwiftApi api, String regionId, ListeningExecutorService executor) {
+      return new Builder(api, regionId, executor);
+   }
+
+   public static class Builder {
+      private final SwiftApi api;
+      private final String regionId;
+      private final ListeningExecutorService executor;
+      private int parallelism = 8;
+      private long ttlNanos = TimeUnit.MINUTES.toNanos(5);
+      private Ticker ticker = Ticker.systemTicker();
+
+      Builder(SwiftApi api, String regionId, ListeningExecutorService executor) {
+         this.api = checkNotNull(api, "api");
+         this.regionId = checkNotNull(regionId, "regionId");
+         this.executor = checkNotNull(executor, "executor");
+      }
+
+      /**
+       * Maximum number of container heads in flight. Defaults to 8.
+       */
+      public Builder parallelism(int parallelism) {
+         checkArgument(parallelism > 0, "parallelism must be positive");
+         this.parallelism = parallelism;
+         return this;
+      }
+
+      /**
+       * How long {@link ContainerUsageAggregator#usage()} reuses the last
+       * result. Defaults to 5 minutes.
+       */
+      public Builder ttl(long duration, TimeUnit unit) {
+         checkArgument(duration >= 0, "duration must be non-negative");
+         this.ttlNanos = checkNotNull(unit, "unit").toNanos(duration);
+         return this;
+      }
+
+      Builder ticker(Ticker ticker) {
+         this.ticker = checkNotNull(ticker, "ticker");
+         return this;
+      }
+
+      public ContainerUsageAggregator build() {
+         return new ContainerUsageAggregator(this);
+      }
+   }
+
+   /**
+    * A snapshot of the usage of an account.
+    */
+   public static final class Usage {
+      private final Account account;
+      private final SortedMap<String, Container> containers;
+      private final long objectCount;
+      private final long bytesUsed;
+      private final int headCount;
+      private final Set<String> failedHeads;
+      private final Map<String, Container> listed;
+      private final long takenNanos;
+
+      private Usage(Account account, SortedMap<String, Container> containers, int headCount,
+            Set<String> failedHeads, Map<String, Container> listed, long takenNanos) {
+         this.account = account;
+         this.containers = containers;
+         this.listed = listed;
+         long objects = 0;
+         long bytes = 0;
+         for (Container container : containers.values()) {
+            objects += container.objectCount();
+            bytes += container.bytesUsed();
+         }
+         this.objectCount = objects;
+         this.bytesUsed = bytes;
+         this.headCount = headCount;
+         this.failedHeads = failedHeads;
+         this.takenNanos = takenNanos;
+      }
+
+      /**
+       * The account headers, read before the containers were listed.
+       */
+      public Account account() {
+         return account;
+      }
+
+      /**
+       * Containers by name. Those whose head failed keep their listed stats,
+       * without metadata.
+       */
+      public SortedMap<String, Container> containers() {
+         return containers;
+      }
+
+      /** Sum of {@link Container#objectCount()}. */
+      public long objectCount() {
+         return objectCount;
+      }
+
+      /** Sum of {@link Container#bytesUsed()}. */
+      public long bytesUsed() {
+         return bytesUsed;
+      }
+
+      /** Containers headed to build this snapshot. */
+      public int headCount() {
+         return headCount;
+      }
+
+      /** Containers whose head failed, which the next refresh heads again. */
+      public Set<String> failedHeads() {
+         return failedHeads;
+      }
+
+      @Override
+      public String toString() {
+         return toStringHelper("").add("containers", containers.size()).add("objectCount", objectCount)
+               .add("bytesUsed", bytesUsed).add("headCount", headCount).add("failedHeads", failedHeads.size())
+               .toString();
+      }
+   }
+
+   private final SwiftApi api;
+   private final String regionId;
+   private final ListeningExecutorService executor;
+   private final int parallelism;
+   private final long ttlNanos;
+   private final Ticker ticker;
+   private Usage last;
+
+   private ContainerUsageAggregator(Builder builder) {
+      this.api = builder.api;
+      this.regionId = builder.regionId;
+      this.executor = builder.executor;
+      this.parallelism = builder.parallelism;
+      this.ttlNanos = builder.ttlNanos;
+      this.ticker = builder.ticker;
+   }
+
+   /**
+    * Returns the last usage if younger than the ttl, otherwise
+    * {@link #refresh() refreshes} it.
+    */
+   public synchronized Usage usage() throws InterruptedException {
+      if (last != null && ticker.read() - last.takenNanos < ttlNanos) {
+         return last;
+      }
+      return refresh();
+   }
+
+   /**
+    * Lists all containers, heading only those that are new or changed since
+    * the last usage.
+    */
+   public synchronized Usage refresh() throws InterruptedException {
+      last = walk(last);
+      return last;
+   }
+
+   /**
+    * Lists and heads all containers, ignoring the last usage.
+    */
+   public synchronized Usage refreshAll() throws InterruptedException {
+      last = walk(null);
+      return last;
+   }
+
+   private Usage walk(Usage previous) throws InterruptedException {
+      // compared with the previous listing, as heads may be more recent than it
+      Map<String, Container> known = previous != null ? previous.listed : ImmutableMap.<String, Container> of();
+      Set<String> unknown = previous != null ? previous.failedHeads : ImmutableSet.<String> of();
+      long started = ticker.read();
+      final ContainerApi containerApi = api.containerApiInRegion(regionId);
+      Account account = api.accountApiInRegion(regionId).get();
+      final SortedMap<String, Container> containers = new ConcurrentSkipListMap<String, Container>();
+      final Semaphore inFlight = new Semaphore(parallelism);
+      final Set<String> failures = Sets.newConcurrentHashSet();
+      Map<String, Container> listing = Maps.newHashMap();
+      int heads = 0;
+      try {
+         FluentIterable<Container> page = containerApi.listFirstPage();
+         while (!page.isEmpty()) {
+            String marker = null;
+            for (final Container listed : page) {
+               marker = listed.name();
+               listing.put(listed.name(), listed);
+               Container seen = known.get(listed.name());
+               if (seen != null && !unknown.contains(listed.name()) && seen.objectCount() == listed.objectCount()
+                     && seen.bytesUsed() == listed.bytesUsed()) {
+                  Container headed = previous.containers.get(listed.name());
+                  if (headed != null) {
+                     containers.put(listed.name(), headed);
+                     continue;
+                  }
+               }
+               inFlight.acquire();
+               heads++;
+               try {
+                  executor.execute(new Runnable() {
+                     @Override
+                     public void run() {
+                        try {
+                           Container headed = containerApi.get(listed.name());
+                           // absent when deleted since listed
+                           if (headed != null) {
+                              containers.put(listed.name(), headed);
+                           }
+                        } catch (RuntimeException e) {
+                           failures.add(listed.name());
+                           containers.put(listed.name(), listed);
+                        } finally {
+                           inFlight.release();
+                        }
+                     }
+                  });
+               } catch (RuntimeException e) {
+                  inFlight.release();
+                  throw e;
+               }
+            }
+            page = containerApi.listAt(marker);
+         }
+      } finally {
+         // wait for the heads in flight, even when listing failed
+         inFlight.acquireUninterruptibly(parallelism);
+      }
+      return new Usage(account, ImmutableSortedMap.copyOfSorted(containers), heads, ImmutableSet.copyOf(failures),
+            listing, started);
+   }
+}
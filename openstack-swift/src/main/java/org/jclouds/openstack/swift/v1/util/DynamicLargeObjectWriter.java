@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.String.format;
+import static org.jclouds.openstack.swift.v1.features.DynamicLargeObjectApi.OBJECT_MANIFEST;
+import static org.jclouds.openstack.swift.v1.options.ListContainerOptions.Builder.prefix;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.jclouds.io.Payload;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.domain.ObjectList;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.features.DynamicLargeObjectApi;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.io.BufferPool;
+import org.jclouds.openstack.swift.v1.options.ListContainerOptions;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Appends to a {@link DynamicLargeObjectApi dynamic large object} by adding
+ * segments under {@code objectName/dlo/}, so that the object grows without
+ * rewriting its manifest or previous segments.
+ * 
+ * Bytes written are buffered into segments of {@link BufferPool#bufferSize()},
+ * which are uploaded concurrently. Segments are numbered when submitted, so
+ * their order is that of the writes, regardless of which upload finishes first.
+ * {@link #flush()} uploads any partial segment and waits for all segments to be
+ * stored. Until then, readers may observe a later segment before an earlier
+ * one.
+ * 
+ * If a segment fails, the segments after it are deleted, so that the object
+ * never has a gap, and the writer fails every later call. The object then ends
+ * with the last segment stored before the failure.
+ * 
+ * Opening a writer on an existing object continues after its last segment,
+ * and fails if the segments are not numbered consecutively from zero.
+ * Instances are not thread-safe.
+ */
+public class DynamicLargeObjectWriter extends OutputStream {
+
+   /** Swift's default {@code container_listing_limit}. */
+   private static final int PAGE_SIZE = 10000;
+
+   /**
+    * Opens a writer, creating the manifest of {@code objectName} if absent.
+    * 
+    * @throws IllegalStateException
+    *            if {@code objectName} exists and is not a dynamic large object,
+    *            or a segment is missing.
+    */
+   public static DynamicLargeObjectWriter open(SwiftApi api, String regionId, String container, String objectName,
+         ListeningExecutorService executor, BufferPool buffers) {
+      checkNotNull(api, "api");
+      checkNotNull(regionId, "regionId");
+      checkNotNull(container, "container");
+      checkNotNull(objectName, "objectName");
+      ObjectApi objectApi = api.objectApiInRegionForContainer(regionId, container);
+      String segmentPrefix = objectName + "/dlo/";
+      String segmentsPath = container + "/" + segmentPrefix;
+      SwiftObject existing = objectApi.head(objectName);
+      if (existing == null) {
+         api.dynamicLargeObjectApiInRegionForContainer(regionId, container).replaceManifest(objectName,
+               segmentsPath, ImmutableMap.<String, String> of());
+      } else {
+         checkState(existing.headers().containsEntry(OBJECT_MANIFEST, segmentsPath),
+               "%s is not a dynamic large object of %s", objectName, segmentsPath);
+      }
+      return new DynamicLargeObjectWriter(objectApi, segmentPrefix, nextSegment(objectApi, container, segmentPrefix),
+            executor, buffers);
+   }
+
+   private final ObjectApi objectApi;
+   private final String segmentPrefix;
+   private final ListeningExecutorService executor;
+   private final BufferPool buffers;
+   /** segments not known to be stored, in order. */
+   private final List<PendingSegment> pending = Lists.newArrayList();
+   private int nextSegment;
+   private byte[] buffer;
+   private int position;
+   private boolean closed;
+   private IOException failure;
+
+   DynamicLargeObjectWriter(ObjectApi objectApi, String segmentPrefix, int nextSegment,
+         ListeningExecutorService executor, BufferPool buffers) {
+      this.objectApi = checkNotNull(objectApi, "objectApi");
+      this.segmentPrefix = checkNotNull(segmentPrefix, "segmentPrefix");
+      this.nextSegment = nextSegment;
+      this.executor = checkNotNull(executor, "executor");
+      this.buffers = checkNotNull(buffers, "buffers");
+   }
+
+   /**
+    * Appends {@code payload} as a single segment, after any bytes already
+    * written.
+    * 
+    * @return the future etag of the segment.
+    */
+   public ListenableFuture<String> append(final Payload payload) throws IOException {
+      checkNotNull(payload, "payload");
+      checkOpen();
+      submitBuffer();
+      return submit(payload, null);
+   }
+
+   @Override
+   public void write(int b) throws IOException {
+      write(new byte[] { (byte) b }, 0, 1);
+   }
+
+   @Override
+   public void write(byte[] bytes, int offset, int length) throws IOException {
+      checkPositionIndexes(offset, offset + length, bytes.length);
+      checkOpen();
+      while (length > 0) {
+         if (buffer == null) {
+            buffer = acquire();
+            position = 0;
+         }
+         int count = Math.min(length, buffer.length - position);
+         System.arraycopy(bytes, offset, buffer, position, count);
+         position += count;
+         offset += count;
+         length -= count;
+         if (position == buffer.length) {
+            submitBuffer();
+         }
+      }
+   }
+
+   /**
+    * Uploads buffered bytes as a segment, and waits until all segments
+    * appended so far are stored.
+    */
+   @Override
+   public void flush() throws IOException {
+      checkOpen();
+      submitBuffer();
+      awaitPending();
+   }
+
+   @Override
+   public void close() throws IOException {
+      if (closed) {
+         return;
+      }
+      try {
+         flush();
+      } finally {
+         closed = true;
+         if (buffer != null) {
+            buffers.release(buffer);
+            buffer = null;
+         }
+      }
+   }
+
+   /**
+    * @return name of the segment the next write will be stored in.
+    */
+   public String nextSegmentName() {
+      return segmentName(nextSegment);
+   }
+
+   private void submitBuffer() throws IOException {
+      if (buffer == null || position == 0) {
+         return;
+      }
+      byte[] full = buffer;
+      buffer = null;
+      submit(BufferPool.newPayload(full, position), full);
+      position = 0;
+      // surface failures while writing, rather than only on flush
+      for (PendingSegment segment : ImmutableList.copyOf(pending)) {
+         if (segment.etag.isDone()) {
+            await(segment);
+         }
+      }
+      // only from the head, so that every segment after a failure is pending
+      while (!pending.isEmpty() && pending.get(0).etag.isDone()) {
+         pending.remove(0);
+      }
+   }
+
+   private ListenableFuture<String> submit(final Payload payload, final byte[] toRelease) {
+      final int index = nextSegment++;
+      final String segmentName = segmentName(index);
+      ListenableFuture<String> segment;
+      try {
+         segment = executor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+               try {
+                  return objectApi.replace(segmentName, payload, ImmutableMap.<String, String> of());
+               } finally {
+                  if (toRelease != null) {
+                     buffers.release(toRelease);
+                  }
+               }
+            }
+         });
+      } catch (RuntimeException e) {
+         if (toRelease != null) {
+            buffers.release(toRelease);
+         }
+         throw e;
+      }
+      pending.add(new PendingSegment(index, segmentName, segment));
+      return segment;
+   }
+
+   private void awaitPending() throws IOException {
+      while (!pending.isEmpty()) {
+         await(pending.get(0));
+         pending.remove(0);
+      }
+   }
+
+   private void await(PendingSegment segment) throws IOException {
+      try {
+         segment.etag.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException();
+      } catch (ExecutionException e) {
+         throw abort();
+      }
+   }
+
+   /**
+    * Waits for the pending segments, and deletes those stored after the first
+    * that failed, as the object would otherwise serve them after a gap.
+    */
+   private IOException abort() {
+      PendingSegment firstFailed = null;
+      Throwable cause = null;
+      List<PendingSegment> stored = Lists.newArrayList();
+      for (PendingSegment segment : pending) {
+         try {
+            segment.etag.get();
+            stored.add(segment);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            break;
+         } catch (ExecutionException e) {
+            if (firstFailed == null) {
+               firstFailed = segment;
+               cause = e.getCause();
+            }
+         }
+      }
+      pending.clear();
+      for (PendingSegment segment : stored) {
+         if (firstFailed != null && segment.index > firstFailed.index) {
+            try {
+               objectApi.delete(segment.name);
+            } catch (RuntimeException ignored) {
+               // best effort; open refuses the gap left
+            }
+         }
+      }
+      failure = firstFailed != null ? new IOException(format("failed to upload segment %s", firstFailed.name),
+            cause) : new InterruptedIOException("interrupted while waiting for segments");
+      return failure;
+   }
+
+   private byte[] acquire() throws IOException {
+      try {
+         return buffers.acquire();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException();
+      }
+   }
+
+   private void checkOpen() throws IOException {
+      if (failure != null) {
+         throw new IOException("writer failed", failure);
+      }
+      if (closed) {
+         throw new IOException("writer closed");
+      }
+   }
+
+   private String segmentName(int index) {
+      return format("%s%010d", segmentPrefix, index);
+   }
+
+   /**
+    * Lists the existing segments, to continue numbering after the last one.
+    * Names are zero-padded, so the listing is in numeric order, and segment
+    * {@code n} must be the {@code n}th listed.
+    */
+   static int nextSegment(ObjectApi objectApi, String container, String segmentPrefix) {
+      int count = 0;
+      ListContainerOptions options = prefix(segmentPrefix).limit(PAGE_SIZE);
+      while (true) {
+         ObjectList page = objectApi.list(options);
+         checkArgument(page != null, "container %s not found", container);
+         for (SwiftObject segment : page) {
+            checkState(segmentIndex(segment.name(), segmentPrefix) == count,
+                  "segment %s%010d is missing before %s", segmentPrefix, count, segment.name());
+            count++;
+         }
+         if (page.size() < PAGE_SIZE) {
+            return count;
+         }
+         options = prefix(segmentPrefix).marker(page.get(page.size() - 1).name()).limit(PAGE_SIZE);
+      }
+   }
+
+   private static int segmentIndex(String name, String segmentPrefix) {
+      try {
+         return Integer.parseInt(name.substring(segmentPrefix.length()));
+      } catch (NumberFormatException e) {
+         throw new IllegalStateException(format("unexpected segment %s under %s", name, segmentPrefix), e);
+      }
+   }
+
+   private static final class PendingSegment {
+      private final int index;
+      private final String name;
+      private final ListenableFuture<String> etag;
+
+      private PendingSegment(int index, String name, ListenableFuture<String> etag) {
+         this.index = index;
+         this.name = name;
+         this.etag = etag;
+      }
+   }
+}
@@ -0,0 +1,477 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.util;
+
+import static com.google.common.base.Objects.equal;
+import static com.google.common.base.Objects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.domain.ObjectList;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.options.ListContainerOptions;
+import org.jclouds.openstack.swift.v1.resilience.SwiftApiInterceptors;
+import org.jclouds.openstack.swift.v1.resilience.SwiftApiInterceptors.Interceptor;
+import org.jclouds.openstack.swift.v1.resilience.SwiftApiInterceptors.Operation;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Caches the results of {@link ObjectApi#list(ListContainerOptions)} for a
+ * short time, keyed by region, container and every listing option, such as
+ * prefix, delimiter, marker and limit.
+ *
+ * <pre>
+ * ObjectListingCache listings = ObjectListingCache.builder().ttl(5, SECONDS).build();
+ * SwiftApi api = listings.wrap(context.getApi());
+ * </pre>
+ *
+ * Writes made through the wrapped api, such as {@code replace}, {@code copy},
+ * {@code delete} and {@code bulkDelete}, evict the listings which could
+ * contain the object written, when they return or fail. Container writes
+ * evict all listings of the container. Writes by other clients are only seen
+ * once entries expire; {@link Builder#verifyEvery} measures how often that
+ * served stale listings.
+ *
+ * Concurrent misses of the same listing each call swift.
+ */
+public final class ObjectListingCache implements Interceptor {
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static final class Builder {
+      private long ttlNanos;
+      private long maximumSize = 10000;
+      private int verifyEvery;
+      private Ticker ticker = Ticker.systemTicker();
+
+      /**
+       * How long a listing is served from the cache. Defaults to zero, which
+       * disables caching.
+       */
+      public Builder ttl(long duration, TimeUnit unit) {
+         checkArgument(duration >= 0, "duration must be non-negative");
+         this.ttlNanos = checkNotNull(unit, "unit").toNanos(duration);
+         return this;
+      }
+
+      /**
+       * The number of listings kept before the least recently used are
+       * evicted. Defaults to 10,000.
+       */
+      public Builder maximumSize(long maximumSize) {
+         checkArgument(maximumSize > 0, "maximumSize must be positive");
+         this.maximumSize = maximumSize;
+         return this;
+      }
+
+      /**
+       * Lists again on every {@code n}th hit and compares the result with the
+       * cached one, counting differences as {@link #staleCount() stale}.
+       * Defaults to zero, which never verifies.
+       */
+      public Builder verifyEvery(int n) {
+         checkArgument(n >= 0, "n must be non-negative");
+         this.verifyEvery = n;
+         return this;
+      }
+
+      Builder ticker(Ticker ticker) {
+         this.ticker = checkNotNull(ticker, "ticker");
+         return this;
+      }
+
+      public ObjectListingCache build() {
+         return new ObjectListingCache(this);
+      }
+   }
+
+   private static final String LIST_OBJECTS = "ListObjects";
+   private static final String BULK_DELETE = "BulkDelete";
+
+   private final long ttlNanos;
+   private final int verifyEvery;
+   private final Ticker ticker;
+   private final Cache<Key, Entry> entries;
+   private final ConcurrentMap<String, Bucket> buckets = Maps.newConcurrentMap();
+   private final AtomicLong hits = new AtomicLong();
+   private final AtomicLong misses = new AtomicLong();
+   private final AtomicLong hitAgeNanos = new AtomicLong();
+   private final AtomicLong invalidations = new AtomicLong();
+   private final AtomicLong verifications = new AtomicLong();
+   private final AtomicLong stale = new AtomicLong();
+
+   private ObjectListingCache(Builder builder) {
+      this.ttlNanos = builder.ttlNanos;
+      this.verifyEvery = builder.verifyEvery;
+      this.ticker = builder.ticker;
+      this.entries = CacheBuilder.newBuilder() //
+            .maximumSize(builder.maximumSize) //
+            .expireAfterWrite(Math.max(ttlNanos, 1), TimeUnit.NANOSECONDS) //
+            .ticker(ticker) //
+            .removalListener(new RemovalListener<Key, Entry>() {
+               @Override
+               public void onRemoval(RemovalNotification<Key, Entry> notification) {
+                  if (notification.getCause() != RemovalCause.REPLACED) {
+                     Key key = notification.getKey();
+                     Bucket bucket = buckets.get(key.bucket);
+                     if (bucket != null) {
+                        bucket.keys.remove(key);
+                        // an expired entry can be notified after a new one is stored
+                        if (entries.asMap().containsKey(key)) {
+                           bucket.keys.add(key);
+                        }
+                     }
+                  }
+               }
+            }).build();
+   }
+
+   /**
+    * @return {@code api} whose listings are cached, or {@code api} itself when
+    *         the ttl is zero.
+    */
+   public SwiftApi wrap(SwiftApi api) {
+      return ttlNanos == 0 ? api : SwiftApiInterceptors.intercept(api, this);
+   }
+
+   @Override
+   public Object intercept(String region, Operation operation, Callable<Object> call) throws Exception {
+      if (operation.container() != null && LIST_OBJECTS.equals(operation.name())) {
+         return list(region, operation.container(), (ListContainerOptions) operation.arguments().get(0), call);
+      } else if (operation.readOnly()) {
+         return call.call();
+      }
+      try {
+         return call.call();
+      } finally {
+         invalidate(region, operation);
+      }
+   }
+
+   private Object list(String region, String container, ListContainerOptions options, Callable<Object> call)
+         throws Exception {
+      Bucket bucket = bucket(region, container);
+      Key key = new Key(bucket.name, options);
+      Entry entry = entries.getIfPresent(key);
+      if (entry != null) {
+         long hit = hits.incrementAndGet();
+         hitAgeNanos.addAndGet(ticker.read() - entry.storedNanos);
+         if (verifyEvery == 0 || hit % verifyEvery != 0) {
+            return entry.list;
+         }
+         verifications.incrementAndGet();
+         long generation = bucket.generation.get();
+         ObjectList fresh = (ObjectList) call.call();
+         if (!sameListing(entry.list, fresh)) {
+            stale.incrementAndGet();
+         }
+         store(bucket, key, generation, fresh);
+         return fresh;
+      }
+      misses.incrementAndGet();
+      long generation = bucket.generation.get();
+      ObjectList list = (ObjectList) call.call();
+      store(bucket, key, generation, list);
+      return list;
+   }
+
+   private void store(Bucket bucket, Key key, long generation, ObjectList list) {
+      // keys are added after the entry, so a removal notified meanwhile sees it
+      entries.put(key, new Entry(key.query, list, ticker.read()));
+      bucket.keys.add(key);
+      // a write that returned while this was listing may not be in the result
+      if (bucket.generation.get() != generation) {
+         entries.invalidate(key);
+      }
+   }
+
+   private void invalidate(String region, Operation operation) {
+      List<Object> arguments = operation.arguments();
+      Object first = arguments.isEmpty() ? null : arguments.get(0);
+      if (operation.container() != null) {
+         // object apis take the name of the object written first
+         if (first instanceof String) {
+            invalidate(region, operation.container(), (String) first);
+         } else {
+            invalidate(region, operation.container(), null);
+         }
+      } else if (BULK_DELETE.equals(operation.name()) && first instanceof Iterable) {
+         for (Object path : (Iterable<?>) first) {
+            invalidatePath(region, path.toString());
+         }
+      } else if (first instanceof String) {
+         // container apis, and archives extracted into a container
+         invalidate(region, containerOf(first.toString()), null);
+      }
+   }
+
+   private void invalidatePath(String region, String path) {
+      String container = containerOf(path);
+      String trimmed = trimSlash(path);
+      String name = trimmed.length() > container.length() + 1 ? trimmed.substring(container.length() + 1) : null;
+      invalidate(region, container, name);
+   }
+
+   /**
+    * Evicts the listings of {@code container} which could include
+    * {@code objectName}, or all of them if it is null.
+    */
+   private void invalidate(String region, String container, String objectName) {
+      Bucket bucket = buckets.get(bucketName(region, container));
+      if (bucket == null) {
+         return;
+      }
+      bucket.generation.incrementAndGet();
+      for (Iterator<Key> i = bucket.keys.iterator(); i.hasNext();) {
+         Key key = i.next();
+         Entry entry = entries.getIfPresent(key);
+         if (entry == null) {
+            i.remove();
+         } else if (objectName == null || entry.mayInclude(objectName)) {
+            entries.invalidate(key);
+            invalidations.incrementAndGet();
+         }
+      }
+   }
+
+   private Bucket bucket(String region, String container) {
+      String name = bucketName(region, container);
+      Bucket bucket = buckets.get(name);
+      if (bucket == null) {
+         Bucket created = new Bucket(name);
+         bucket = buckets.putIfAbsent(name, created);
+         if (bucket == null) {
+            bucket = created;
+         }
+      }
+      return bucket;
+   }
+
+   private static String bucketName(String region, String container) {
+      return region + '/' + container;
+   }
+
+   private static String containerOf(String path) {
+      String trimmed = trimSlash(path);
+      int slash = trimmed.indexOf('/');
+      return slash == -1 ? trimmed : trimmed.substring(0, slash);
+   }
+
+   private static String trimSlash(String path) {
+      return path.startsWith("/") ? path.substring(1) : path;
+   }
+
+   private static boolean sameListing(ObjectList cached, ObjectList fresh) {
+      if (cached == null || fresh == null) {
+         return cached == fresh;
+      }
+      if (cached.size() != fresh.size()) {
+         return false;
+      }
+      for (int i = 0; i < cached.size(); i++) {
+         SwiftObject a = cached.get(i);
+         SwiftObject b = fresh.get(i);
+         if (!a.name().equals(b.name()) || !equal(a.etag(), b.etag())) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Compares by code point, which is the order swift lists names in.
+    */
+   static int compareNames(String a, String b) {
+      int i = 0;
+      int j = 0;
+      while (i < a.length() && j < b.length()) {
+         int x = a.codePointAt(i);
+         int y = b.codePointAt(j);
+         if (x != y) {
+            return x < y ? -1 : 1;
+         }
+         i += Character.charCount(x);
+         j += Character.charCount(y);
+      }
+      return (a.length() - i) - (b.length() - j);
+   }
+
+   /**
+    * Hits over lookups, or zero before the first lookup.
+    */
+   public double hitRate() {
+      long hitCount = hits.get();
+      long lookups = hitCount + misses.get();
+      return lookups == 0 ? 0 : (double) hitCount / lookups;
+   }
+
+   public long hitCount() {
+      return hits.get();
+   }
+
+   public long missCount() {
+      return misses.get();
+   }
+
+   /**
+    * Average time since the listings served from the cache were listed.
+    */
+   public long averageHitAge(TimeUnit unit) {
+      long hitCount = hits.get();
+      return hitCount == 0 ? 0 : unit.convert(hitAgeNanos.get() / hitCount, TimeUnit.NANOSECONDS);
+   }
+
+   /**
+    * Listings evicted by writes made through the wrapped api.
+    */
+   public long invalidationCount() {
+      return invalidations.get();
+   }
+
+   /**
+    * Hits listed again because of {@link Builder#verifyEvery}.
+    */
+   public long verificationCount() {
+      return verifications.get();
+   }
+
+   /**
+    * Verified hits whose names or etags differed from swift's listing.
+    */
+   public long staleCount() {
+      return stale.get();
+   }
+
+   public long size() {
+      return entries.size();
+   }
+
+   public void invalidateAll() {
+      for (Bucket bucket : buckets.values()) {
+         bucket.generation.incrementAndGet();
+      }
+      entries.invalidateAll();
+   }
+
+   @Override
+   public String toString() {
+      return toStringHelper(this).add("ttlNanos", ttlNanos).add("size", size()).add("hitRate", hitRate())
+            .add("invalidations", invalidationCount()).add("stale", staleCount()).toString();
+   }
+
+   private static final class Bucket {
+      private final String name;
+      private final AtomicLong generation = new AtomicLong();
+      private final Set<Key> keys = Sets.newConcurrentHashSet();
+
+      private Bucket(String name) {
+         this.name = name;
+      }
+   }
+
+   private static final class Key {
+      private final String bucket;
+      private final SortedMap<String, String> query;
+
+      private Key(String bucket, ListContainerOptions options) {
+         this.bucket = bucket;
+         ImmutableSortedMap.Builder<String, String> query = ImmutableSortedMap.naturalOrder();
+         for (Map.Entry<String, String> param : options.buildQueryParameters().entries()) {
+            query.put(param.getKey(), param.getValue());
+         }
+         this.query = query.build();
+      }
+
+      @Override
+      public boolean equals(Object object) {
+         if (this == object) {
+            return true;
+         }
+         if (object instanceof Key) {
+            Key that = (Key) object;
+            return bucket.equals(that.bucket) && query.equals(that.query);
+         }
+         return false;
+      }
+
+      @Override
+      public int hashCode() {
+         return Objects.hashCode(bucket, query);
+      }
+   }
+
+   private static final class Entry {
+      private final ObjectList list;
+      private final long storedNanos;
+      private final String prefix;
+      private final String marker;
+      private final String endMarker;
+      private final String lastName;
+
+      private Entry(SortedMap<String, String> query, ObjectList list, long storedNanos) {
+         this.list = list;
+         this.storedNanos = storedNanos;
+         String path = query.get("path");
+         String prefix = query.get("prefix");
+         this.prefix = prefix != null ? prefix : path != null ? path + "/" : "";
+         this.marker = query.get("marker");
+         this.endMarker = query.get("end_marker");
+         int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : 10000;
+         // names after a full page are on the next one
+         this.lastName = list != null && !list.isEmpty() && list.size() >= limit ? list.get(list.size() - 1)
+               .name() : null;
+      }
+
+      boolean mayInclude(String name) {
+         if (!name.startsWith(prefix)) {
+            return false;
+         }
+         if (marker != null && compareNames(name, marker) <= 0) {
+            return false;
+         }
+         if (endMarker != null && compareNames(name, endMarker) >= 0) {
+            return false;
+         }
+         // the last entry may be a subdir rolling up the name
+         return lastName == null || compareNames(name, lastName) <= 0 || name.startsWith(lastName);
+      }
+   }
+}
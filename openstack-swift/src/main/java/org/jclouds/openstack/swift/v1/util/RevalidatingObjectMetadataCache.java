@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.http.options.GetOptions.Builder.ifETagDoesntMatch;
+import static org.jclouds.http.options.GetOptions.Builder.ifModifiedSince;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.http.options.GetOptions;
+import org.jclouds.openstack.swift.v1.domain.ConditionalObject;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Caches the {@link ObjectApi#head(String) metadata} of objects in a
+ * container, revalidating entries older than {@link Builder#freshFor} with
+ * {@link ObjectApi#headConditionally(String, GetOptions) conditional}
+ * requests. An unchanged object costs a {@code 304} without headers to parse,
+ * and a reader can compare {@link SwiftObject#etag()} with that of its copy
+ * before downloading the object again.
+ * 
+ * Instances are thread-safe. Concurrent lookups of the same stale entry may
+ * each revalidate it.
+ */
+public class RevalidatingObjectMetadataCache {
+
+   public static Builder builder(ObjectApi api) {
+      return new Builder(api);
+   }
+
+   public static class Builder {
+      private final ObjectApi api;
+      private long freshForNanos;
+      private long maximumSize = 10000;
+      private Ticker ticker = Ticker.systemTicker();
+
+      Builder(ObjectApi api) {
+         this.api = checkNotNull(api, "api");
+      }
+
+      /**
+       * How long an entry is returned without revalidating it. Defaults to
+       * zero: every lookup revalidates.
+       */
+      public Builder freshFor(long duration, TimeUnit unit) {
+         checkArgument(duration >= 0, "duration must be non-negative");
+         this.freshForNanos = checkNotNull(unit, "unit").toNanos(duration);
+         return this;
+      }
+
+      /**
+       * The number of objects kept before the least recently used are evicted.
+       * Defaults to 10,000.
+       */
+      public Builder maximumSize(long maximumSize) {
+         checkArgument(maximumSize > 0, "maximumSize must be positive");
+         this.maximumSize = maximumSize;
+         return this;
+      }
+
+      Builder ticker(Ticker ticker) {
+         this.ticker = checkNotNull(ticker, "ticker");
+         return this;
+      }
+
+      public RevalidatingObjectMetadataCache build() {
+         return new RevalidatingObjectMetadataCache(this);
+      }
+   }
+
+   private static final class Entry {
+      private final SwiftObject object;
+      private final long validatedNanos;
+
+      private Entry(SwiftObject object, long validatedNanos) {
+         this.object = object;
+         this.validatedNanos = validatedNanos;
+      }
+   }
+
+   private final ObjectApi api;
+   private final long freshForNanos;
+   private final Ticker ticker;
+   private final Cache<String, Entry> entries;
+   private final AtomicLong hits = new AtomicLong();
+   private final AtomicLong notModified = new AtomicLong();
+   private final AtomicLong loads = new AtomicLong();
+
+   private RevalidatingObjectMetadataCache(Builder builder) {
+      this.api = builder.api;
+      this.freshForNanos = builder.freshForNanos;
+      this.ticker = builder.ticker;
+      this.entries = CacheBuilder.newBuilder().maximumSize(builder.maximumSize).build();
+   }
+
+   /**
+    * Returns the metadata of {@code objectName}, from the cache if fresh or
+    * still valid, or absent if the object does not exist.
+    */
+   public Optional<SwiftObject> get(String objectName) {
+      checkNotNull(objectName, "objectName");
+      Entry entry = entries.getIfPresent(objectName);
+      long now = ticker.read();
+      if (entry != null && now - entry.validatedNanos < freshForNanos) {
+         hits.incrementAndGet();
+         return Optional.of(entry.object);
+      }
+      ConditionalObject result = api.headConditionally(objectName, preconditions(entry));
+      switch (result.status()) {
+         case NOT_MODIFIED:
+            notModified.incrementAndGet();
+            entries.put(objectName, new Entry(entry.object, now));
+            return Optional.of(entry.object);
+         case MODIFIED:
+            loads.incrementAndGet();
+            entries.put(objectName, new Entry(result.object().get(), now));
+            return result.object();
+         default:
+            entries.invalidate(objectName);
+            return Optional.absent();
+      }
+   }
+
+   /**
+    * Returns the cached metadata of {@code objectName}, without revalidating
+    * it.
+    */
+   public Optional<SwiftObject> getIfPresent(String objectName) {
+      Entry entry = entries.getIfPresent(checkNotNull(objectName, "objectName"));
+      return entry != null ? Optional.of(entry.object) : Optional.<SwiftObject> absent();
+   }
+
+   /**
+    * Discards the entry for {@code objectName}, for example after replacing
+    * or deleting the object.
+    */
+   public void invalidate(String objectName) {
+      entries.invalidate(checkNotNull(objectName, "objectName"));
+   }
+
+   public void invalidateAll() {
+      entries.invalidateAll();
+   }
+
+   /**
+    * Lookups answered without a request, as the entry was fresh.
+    */
+   public long hitCount() {
+      return hits.get();
+   }
+
+   /**
+    * Lookups answered by a {@code 304 Not Modified} revalidation.
+    */
+   public long notModifiedCount() {
+      return notModified.get();
+   }
+
+   /**
+    * Lookups that transferred the metadata, as it was absent or had changed.
+    */
+   public long loadCount() {
+      return loads.get();
+   }
+
+   public long size() {
+      return entries.size();
+   }
+
+   private static GetOptions preconditions(Entry entry) {
+      if (entry == null) {
+         return GetOptions.NONE;
+      } else if (entry.object.etag() != null) {
+         return ifETagDoesntMatch(entry.object.etag());
+      } else if (entry.object.lastModified() != null) {
+         return ifModifiedSince(entry.object.lastModified());
+      }
+      return GetOptions.NONE;
+   }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1;
+
+import static org.jclouds.openstack.swift.v1.features.AccountApiMockTest.accountResponse;
+import static org.testng.Assert.assertEquals;
+
+import java.net.URI;
+
+import org.jclouds.openstack.swift.v1.FormPostSigner.Policy;
+import org.jclouds.openstack.v2_0.internal.BaseOpenStackMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+@Test
+public class FormPostSignerMockTest extends BaseOpenStackMockTest<SwiftApi> {
+
+   @Test(expectedExceptions = NullPointerException.class, expectedExceptionsMessageRegExp = "temporaryUrlSigner")
+   public void whenSignerIsNull() {
+      FormPostSigner.usingKeyOf(null);
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "maxFileCount must be positive")
+   public void whenMaxFileCountIsZero() {
+      FormPostSigner.usingKeyOf(new TemporaryUrlSigner(null)).sign("/v1/AUTH_account/container/", "", 1024, 0,
+            1323479485l);
+   }
+
+   public void whenAccountApiHasKey() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(accountResponse().addHeader("X-Account-Meta-Temp-URL-Key", "mykey"));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         String signature = FormPostSigner.checkApiEvery(api.accountApiInRegion("DFW"), 10000)
+               .sign("/v1/AUTH_account/container/uploads/", "https://example.com/done", 104857600, 10, 1323479485l);
+
+         assertEquals(signature, "dbff77d3a821191147a3fc31f6556d87611586c4");
+
+         assertEquals(server.getRequestCount(), 2);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(),
+               "HEAD /v1/MossoCloudFS_5bcf396e-39dd-45ff-93a1-712b9aba90a9/ HTTP/1.1");
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void policySharesKeyWithTemporaryUrlSigner() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(accountResponse().addHeader("X-Account-Meta-Temp-URL-Key", "mykey"));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         TemporaryUrlSigner temporaryUrlSigner = TemporaryUrlSigner.checkApiEvery(api.accountApiInRegion("DFW"),
+               10000);
+         assertEquals(temporaryUrlSigner.sign("GET", "/v1/AUTH_account/container/object", 1323479485l),
+               "d9fc2067e52b06598421664cf6610bfc8fc431f6");
+
+         URI url = URI.create("https://storage101.dfw1.clouddrive.com"
+               + "/v1/MossoCloudFS_5bcf396e-39dd-45ff-93a1-712b9aba90a9/container/uploads/");
+         Policy policy = FormPostSigner.usingKeyOf(temporaryUrlSigner).sign(url, "", 1024, 2, 1323479485l);
+
+         assertEquals(policy.url(), url);
+         assertEquals(policy.signature(), "55ce53abd5b1eb9a7e3e2c8e696644da466d9dfe");
+         assertEquals(policy.expires(), 1323479485l);
+         assertEquals(ImmutableList.copyOf(policy.fields().keySet()),
+               ImmutableList.of("redirect", "max_file_size", "max_file_count", "expires", "signature"));
+         assertEquals(policy.fields().get("max_file_size"), "1024");
+         assertEquals(policy.fields().get("max_file_count"), "2");
+
+         // the key was only looked up once
+         assertEquals(server.getRequestCount(), 2);
+      } finally {
+         server.shutdown();
+      }
+   }
+}
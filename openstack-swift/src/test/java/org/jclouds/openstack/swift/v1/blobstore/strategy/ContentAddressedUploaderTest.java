@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.blobstore.strategy;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.jclouds.openstack.swift.v1.blobstore.options.SwiftPutOptions.Builder.expireAt;
+import static org.jclouds.openstack.swift.v1.blobstore.strategy.ContentAddressedUploader.DEDUP;
+import static org.jclouds.openstack.swift.v1.blobstore.strategy.ContentAddressedUploader.MD5;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.ExecutionException;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.blobstore.RegionScopedBlobStoreContext;
+import org.jclouds.openstack.swift.v1.blobstore.RegionScopedSwiftBlobStore;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.internal.SwiftStandInServer;
+import org.jclouds.util.Strings2;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+
+@Test(singleThreaded = true)
+public class ContentAddressedUploaderTest {
+
+   private static final String CONTENT = Strings.repeat("swifty", 100);
+
+   private SwiftStandInServer server;
+   private RegionScopedBlobStoreContext context;
+   private SwiftApi api;
+   private RegionScopedSwiftBlobStore blobStore;
+
+   @BeforeMethod
+   public void start() throws IOException {
+      server = SwiftStandInServer.builder().build();
+      context = ContextBuilder.newBuilder("openstack-swift").endpoint(server.url())
+            .credentials(SwiftStandInServer.TENANT + ":user", "password")
+            .buildView(RegionScopedBlobStoreContext.class);
+      api = context.unwrapApi(SwiftApi.class);
+      blobStore = (RegionScopedSwiftBlobStore) context.blobStoreInRegion("DFW");
+      blobStore.createContainerInLocation(null, "dedup");
+      api.containerApiInRegion("DFW").updateMetadata("dedup", ImmutableMap.of(DEDUP, MD5));
+      blobStore.createContainerInLocation(null, "plain");
+   }
+
+   @AfterMethod(alwaysRun = true)
+   public void stop() throws IOException {
+      context.close();
+      server.close();
+   }
+
+   public void copiesDuplicateContent() throws Exception {
+      blobStore.putBlob("dedup", blob("first", CONTENT, ImmutableMap.of("shape", "round")));
+      blobStore.putBlob("dedup", blob("second", CONTENT, ImmutableMap.of("color", "blue")));
+
+      assertEquals(blobStore.deduplicator().uploadedCount(), 1);
+      assertEquals(blobStore.deduplicator().deduplicatedCount(), 1);
+      assertEquals(blobStore.deduplicator().deduplicatedBytes(), CONTENT.length());
+
+      SwiftObject second = api.objectApiInRegionForContainer("DFW", "dedup").head("second");
+      assertEquals(second.metadata(), ImmutableMap.of("color", "blue"));
+      assertEquals(second.payload().getContentMetadata().getContentType(), "text/plain");
+      assertEquals(Strings2.toStringAndClose(blobStore.getBlob("dedup", "second").getPayload().openStream()),
+            CONTENT);
+   }
+
+   public void copiesGetTheirOwnExpiry() throws Exception {
+      blobStore.putBlob("dedup", blob("first", CONTENT, ImmutableMap.<String, String> of()));
+      blobStore.putBlob("dedup", blob("second", CONTENT, ImmutableMap.<String, String> of()),
+            expireAt(new Date(1999999999000l)));
+
+      assertEquals(blobStore.deduplicator().deduplicatedCount(), 1);
+      ObjectApi objectApi = api.objectApiInRegionForContainer("DFW", "dedup");
+      assertEquals(getOnlyElement(objectApi.head("second").headers().get("x-delete-at")), "1999999999");
+      assertTrue(objectApi.head("first").headers().get("x-delete-at").isEmpty());
+   }
+
+   public void seedsIndexFromListing() throws Exception {
+      api.objectApiInRegionForContainer("DFW", "dedup").replace("existing", payload(CONTENT),
+            ImmutableMap.<String, String> of());
+
+      blobStore.deduplicator().seed("dedup").get(5, SECONDS);
+      blobStore.putBlob("dedup", blob("duplicate", CONTENT, ImmutableMap.<String, String> of()));
+
+      assertEquals(blobStore.deduplicator().uploadedCount(), 0);
+      assertEquals(blobStore.deduplicator().deduplicatedCount(), 1);
+   }
+
+   public void listsAgainAfterFailedSeeding() throws Exception {
+      api.objectApiInRegionForContainer("DFW", "dedup").replace("existing", payload(CONTENT),
+            ImmutableMap.<String, String> of());
+
+      server.failNext(1, 403);
+      try {
+         blobStore.deduplicator().seed("dedup").get(5, SECONDS);
+         fail("expected the listing to fail");
+      } catch (ExecutionException expected) {
+      }
+      assertEquals(blobStore.deduplicator().seedFailureCount(), 1);
+
+      blobStore.deduplicator().seed("dedup").get(5, SECONDS);
+      blobStore.putBlob("dedup", blob("duplicate", CONTENT, ImmutableMap.<String, String> of()));
+      assertEquals(blobStore.deduplicator().deduplicatedCount(), 1);
+   }
+
+   public void putsWhenIndexedObjectChanged() throws Exception {
+      blobStore.putBlob("dedup", blob("first", CONTENT, ImmutableMap.<String, String> of()));
+      api.objectApiInRegionForContainer("DFW", "dedup").replace("first", payload("changed"),
+            ImmutableMap.<String, String> of());
+
+      blobStore.putBlob("dedup", blob("second", CONTENT, ImmutableMap.<String, String> of()));
+
+      assertEquals(blobStore.deduplicator().staleCount(), 1);
+      assertEquals(blobStore.deduplicator().uploadedCount(), 2);
+      assertEquals(blobStore.deduplicator().deduplicatedCount(), 0);
+      assertEquals(Strings2.toStringAndClose(blobStore.getBlob("dedup", "second").getPayload().openStream()),
+            CONTENT);
+   }
+
+   public void leavesOtherContainersAlone() throws Exception {
+      blobStore.putBlob("plain", blob("first", CONTENT, ImmutableMap.<String, String> of()));
+      blobStore.putBlob("plain", blob("second", CONTENT, ImmutableMap.<String, String> of()));
+
+      assertEquals(blobStore.deduplicator().uploadedCount(), 0);
+      assertEquals(blobStore.deduplicator().deduplicatedCount(), 0);
+   }
+
+   private Blob blob(String name, String content, ImmutableMap<String, String> metadata) {
+      return blobStore.blobBuilder(name).payload(content).contentType("text/plain").userMetadata(metadata).build();
+   }
+
+   private static Payload payload(String content) {
+      Payload payload = Payloads.newStringPayload(content);
+      payload.getContentMetadata().setContentType("text/plain");
+      return payload;
+   }
+}
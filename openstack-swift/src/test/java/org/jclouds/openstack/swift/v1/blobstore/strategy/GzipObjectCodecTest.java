@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.blobstore.strategy;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static org.jclouds.blobstore.options.GetOptions.Builder.range;
+import static org.jclouds.openstack.swift.v1.blobstore.strategy.GzipObjectCodec.CODEC;
+import static org.jclouds.openstack.swift.v1.blobstore.strategy.GzipObjectCodec.GZIP;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.COMPRESSION_BLOCK_SIZE;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.jclouds.http.options.GetOptions;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.blobstore.RegionScopedBlobStoreContext;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.internal.SwiftStandInServer;
+import org.jclouds.util.Strings2;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+@Test(singleThreaded = true)
+public class GzipObjectCodecTest {
+
+   private SwiftStandInServer server;
+   private RegionScopedBlobStoreContext context;
+   private SwiftApi api;
+   private BlobStore blobStore;
+
+   @BeforeMethod
+   public void start() throws IOException {
+      server = SwiftStandInServer.builder().build();
+      Properties overrides = new Properties();
+      // several blocks per object
+      overrides.setProperty(COMPRESSION_BLOCK_SIZE, "64");
+      context = ContextBuilder.newBuilder("openstack-swift").endpoint(server.url())
+            .credentials(SwiftStandInServer.TENANT + ":user", "password").overrides(overrides)
+            .buildView(RegionScopedBlobStoreContext.class);
+      api = context.unwrapApi(SwiftApi.class);
+      blobStore = context.blobStoreInRegion("DFW");
+      blobStore.createContainerInLocation(null, "compressed");
+      api.containerApiInRegion("DFW").updateMetadata("compressed", ImmutableMap.of(CODEC, GZIP));
+      blobStore.createContainerInLocation(null, "plain");
+   }
+
+   @AfterMethod(alwaysRun = true)
+   public void stop() throws IOException {
+      context.close();
+      server.close();
+   }
+
+   public void compressesOnPutAndDecompressesOnGet() throws Exception {
+      String content = Strings.repeat("{\"level\":\"info\",\"message\":\"swifty\"}\n", 50);
+      blobStore.putBlob("compressed", blobStore.blobBuilder("log.json").payload(content)
+            .userMetadata(ImmutableMap.of("color", "blue")).build());
+
+      SwiftObject stored = api.objectApiInRegionForContainer("DFW", "compressed").get("log.json", GetOptions.NONE);
+      assertEquals(stored.metadata(), ImmutableMap.of("color", "blue", CODEC, GZIP));
+      byte[] gzipped = ByteStreams.toByteArray(stored.payload().openStream());
+      assertTrue(gzipped.length < content.length(), "expected compression");
+      assertEquals(new String(ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzipped)))),
+            content);
+
+      Blob blob = blobStore.getBlob("compressed", "log.json");
+      assertEquals(blob.getMetadata().getUserMetadata(), ImmutableMap.of("color", "blue"));
+      assertEquals(Strings2.toStringAndClose(blob.getPayload().openStream()), content);
+   }
+
+   public void storesEmptyBlobs() throws Exception {
+      blobStore.putBlob("compressed", blobStore.blobBuilder("empty.json").payload(new byte[0]).build());
+
+      Blob blob = blobStore.getBlob("compressed", "empty.json");
+      assertEquals(ByteStreams.toByteArray(blob.getPayload().openStream()).length, 0);
+   }
+
+   public void describesCompressedBlobsAsRead() throws Exception {
+      blobStore.putBlob("compressed", blobStore.blobBuilder("log.json").payload(Strings.repeat("swifty", 100))
+            .userMetadata(ImmutableMap.of("color", "blue")).build());
+
+      BlobMetadata metadata = blobStore.blobMetadata("compressed", "log.json");
+      assertEquals(metadata.getUserMetadata(), ImmutableMap.of("color", "blue"));
+      assertNull(metadata.getContentMetadata().getContentLength(), "stored length is the compressed length");
+      assertNull(metadata.getContentMetadata().getContentMD5());
+
+      StorageMetadata listed = getOnlyElement(blobStore.list("compressed", new ListContainerOptions().withDetails()));
+      assertEquals(listed.getUserMetadata(), ImmutableMap.of("color", "blue"));
+      listed = getOnlyElement(blobStore.list("compressed"));
+      assertNull(((BlobMetadata) listed).getContentMetadata().getContentLength());
+   }
+
+   public void rejectsRangesOfCompressedBlobsBeforeGetting() throws Exception {
+      blobStore.putBlob("compressed", blobStore.blobBuilder("log.json").payload("swifty").build());
+      long requests = server.requestCount();
+      try {
+         blobStore.getBlob("compressed", "log.json", range(0, 2));
+         fail("expected ranges of a compressed blob to be rejected");
+      } catch (IllegalArgumentException expected) {
+      }
+      assertEquals(server.requestCount(), requests + 1, "only a head, as the container compresses");
+   }
+
+   public void getsRangesOfPlainBlobsWithoutAHead() throws Exception {
+      blobStore.putBlob("plain", blobStore.blobBuilder("log.json").payload("swifty").build());
+      long requests = server.requestCount();
+      Blob blob = blobStore.getBlob("plain", "log.json", range(0, 2));
+      assertEquals(Strings2.toStringAndClose(blob.getPayload().openStream()), "swi");
+      assertEquals(server.requestCount(), requests + 1, "only the get");
+   }
+
+   public void leavesOtherContainersAlone() throws Exception {
+      blobStore.putBlob("plain", blobStore.blobBuilder("log.json").payload("swifty").build());
+
+      SwiftObject stored = api.objectApiInRegionForContainer("DFW", "plain").head("log.json");
+      assertEquals(stored.metadata(), ImmutableMap.of());
+      assertEquals(Strings2.toStringAndClose(blobStore.getBlob("plain", "log.json").getPayload().openStream()),
+            "swifty");
+   }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.blobstore.strategy;
+
+import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
+import static org.jclouds.io.Payloads.newStringPayload;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.domain.StorageType;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.internal.SwiftStandInServer;
+import org.jclouds.openstack.swift.v1.options.CreateContainerOptions;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+@Test(singleThreaded = true)
+public class PseudoDirectoryWalkerTest {
+
+   private static final Set<String> DIRECTORIES = ImmutableSet.of("a", "a/b", "a/b/c", "d");
+
+   private SwiftStandInServer server;
+   private SwiftApi api;
+   private ObjectApi objectApi;
+   private ListeningExecutorService executor;
+
+   @BeforeMethod
+   public void start() throws IOException {
+      server = SwiftStandInServer.builder().build();
+      api = ContextBuilder.newBuilder("openstack-swift").endpoint(server.url())
+            .credentials(SwiftStandInServer.TENANT + ":user", "password").buildApi(SwiftApi.class);
+      executor = listeningDecorator(Executors.newFixedThreadPool(4));
+      api.containerApiInRegion("DFW").createIfAbsent("myContainer", new CreateContainerOptions());
+      objectApi = api.objectApiInRegionForContainer("DFW", "myContainer");
+      for (String name : ImmutableSet.of("a/1", "a/b/2", "a/b/c/3", "d/4", "top")) {
+         objectApi.replace(name, newStringPayload(name), ImmutableMap.<String, String> of());
+      }
+   }
+
+   @AfterMethod(alwaysRun = true)
+   public void stop() throws IOException {
+      executor.shutdownNow();
+      api.close();
+      server.close();
+   }
+
+   public void walksWholeTree() {
+      PseudoDirectoryWalker walker = PseudoDirectoryWalker.builder(objectApi, executor).parallelism(2).build();
+      assertEquals(names(walker.walk("")),
+            ImmutableSet.of("a", "a/1", "a/b", "a/b/2", "a/b/c", "a/b/c/3", "d", "d/4", "top"));
+   }
+
+   public void walksSubtree() {
+      PseudoDirectoryWalker walker = PseudoDirectoryWalker.builder(objectApi, executor).build();
+      assertEquals(names(walker.walk("a/b")), ImmutableSet.of("a/b/2", "a/b/c", "a/b/c/3"));
+   }
+
+   public void limitsDepth() {
+      PseudoDirectoryWalker walker = PseudoDirectoryWalker.builder(objectApi, executor).maxDepth(2).build();
+      assertEquals(names(walker.walk("")), ImmutableSet.of("a", "a/1", "a/b", "d", "d/4", "top"));
+   }
+
+   public void filtersEntriesAndPrunesDirectories() {
+      PseudoDirectoryWalker walker = PseudoDirectoryWalker.builder(objectApi, executor) //
+            .filter(new Predicate<StorageMetadata>() {
+               @Override
+               public boolean apply(StorageMetadata input) {
+                  return input.getType() == StorageType.BLOB;
+               }
+            }) //
+            .expandIf(Predicates.not(Predicates.equalTo("d"))).build();
+      assertEquals(names(walker.walk("")), ImmutableSet.of("a/1", "a/b/2", "a/b/c/3", "top"));
+   }
+
+   public void closingStopsTheWalk() {
+      PseudoDirectoryWalker.Walk walk = PseudoDirectoryWalker.builder(objectApi, executor).bufferSize(1).build()
+            .walk("");
+      walk.next();
+      walk.close();
+      assertEquals(walk.hasNext(), false);
+   }
+
+   public void interruptedWalkFails() {
+      PseudoDirectoryWalker.Walk walk = PseudoDirectoryWalker.builder(objectApi, executor).parallelism(1)
+            .bufferSize(1).build().walk("");
+      walk.next();
+      // the worker is waiting for room in the buffer
+      executor.shutdownNow();
+      try {
+         while (walk.hasNext()) {
+            walk.next();
+         }
+         fail("expected the walk to fail rather than end early");
+      } catch (RuntimeException expected) {
+      }
+   }
+
+   private static Set<String> names(Iterator<StorageMetadata> walk) {
+      Set<String> names = Sets.newHashSet();
+      while (walk.hasNext()) {
+         StorageMetadata entry = walk.next();
+         assertEquals(entry.getType() == StorageType.RELATIVE_PATH, DIRECTORIES.contains(entry.getName()),
+               entry.toString());
+         names.add(entry.getName());
+      }
+      return names;
+   }
+}
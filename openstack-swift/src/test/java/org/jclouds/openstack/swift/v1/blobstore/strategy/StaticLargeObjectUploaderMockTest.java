@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.blobstore.strategy;
+
+import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.jclouds.io.Payloads.newInputStreamPayload;
+import static org.jclouds.openstack.swift.v1.options.ExpiryOptions.Builder.deleteAfter;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.io.Payload;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.internal.SwiftStandInServer;
+import org.jclouds.openstack.swift.v1.io.BufferPool;
+import org.jclouds.openstack.swift.v1.options.CreateContainerOptions;
+import org.jclouds.openstack.v2_0.internal.BaseOpenStackMockTest;
+import org.jclouds.util.Strings2;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+@Test
+public class StaticLargeObjectUploaderMockTest extends BaseOpenStackMockTest<SwiftApi> {
+
+   static final String CONTAINER_PATH = "/v1/MossoCloudFS_5bcf396e-39dd-45ff-93a1-712b9aba90a9/myContainer";
+
+   public void streamShorterThanSegmentIsSingleObject() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(201).addHeader("ETag", "abcd"));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         BufferPool buffers = new BufferPool(8, 2);
+         StaticLargeObjectUploader uploader = new StaticLargeObjectUploader(api, "DFW", sameThreadExecutor(), buffers);
+         assertEquals(uploader.upload("myContainer", "myObject", stream("swifty"), ImmutableMap.of("MyFoo", "Bar")),
+               "abcd");
+         assertEquals(buffers.acquireCount(), 0, "small streams do not take segment buffers");
+
+         assertEquals(server.getRequestCount(), 2);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         RecordedRequest replace = server.takeRequest();
+         assertEquals(replace.getRequestLine(), "PUT " + CONTAINER_PATH + "/myObject HTTP/1.1");
+         assertEquals(replace.getHeader("x-object-meta-myfoo"), "Bar");
+         assertEquals(new String(replace.getBody()), "swifty");
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void streamLongerThanSegmentIsStaticLargeObject() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(201).addHeader("ETag", "etag0"));
+      server.enqueue(new MockResponse().setResponseCode(201).addHeader("ETag", "etag1"));
+      server.enqueue(new MockResponse().setResponseCode(201).addHeader("ETag", "etag2"));
+      server.enqueue(new MockResponse().setResponseCode(201).addHeader("ETag", "\"manifest\""));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         BufferPool buffers = new BufferPool(4, 2);
+         StaticLargeObjectUploader uploader = new StaticLargeObjectUploader(api, "DFW", sameThreadExecutor(), buffers);
+         assertEquals(uploader.upload("myContainer", "myObject", stream("abcdefghij"), ImmutableMap.of("MyFoo", "Bar")),
+               "manifest");
+         assertEquals(buffers.inUse(), 0);
+
+         assertEquals(server.getRequestCount(), 5);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         String[] bodies = { "abcd", "efgh", "ij" };
+         for (int i = 0; i < bodies.length; i++) {
+            RecordedRequest segment = server.takeRequest();
+            assertTrue(segment.getRequestLine().startsWith("PUT " + CONTAINER_PATH + "/myObject/slo/"),
+                  segment.getRequestLine());
+            assertTrue(segment.getRequestLine().endsWith("/0000000" + i + " HTTP/1.1"), segment.getRequestLine());
+            assertEquals(new String(segment.getBody()), bodies[i]);
+         }
+         RecordedRequest manifest = server.takeRequest();
+         assertEquals(manifest.getRequestLine(), "PUT " + CONTAINER_PATH + "/myObject?multipart-manifest=put HTTP/1.1");
+         assertEquals(manifest.getHeader("x-object-meta-myfoo"), "Bar");
+         String body = new String(manifest.getBody());
+         assertTrue(body.contains("\"etag\":\"etag0\",\"size_bytes\":4"), body);
+         assertTrue(body.contains("\"etag\":\"etag1\",\"size_bytes\":4"), body);
+         assertTrue(body.contains("\"etag\":\"etag2\",\"size_bytes\":2"), body);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void streamOfExactlyOneSegmentIsSingleObject() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(201).addHeader("ETag", "abcd"));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         BufferPool buffers = new BufferPool(4, 2);
+         StaticLargeObjectUploader uploader = new StaticLargeObjectUploader(api, "DFW", sameThreadExecutor(), buffers);
+         assertEquals(uploader.upload("myContainer", "myObject", stream("abcd"), ImmutableMap.<String, String> of()),
+               "abcd");
+         assertEquals(buffers.inUse(), 0);
+
+         assertEquals(server.getRequestCount(), 2);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "PUT " + CONTAINER_PATH + "/myObject HTTP/1.1");
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void segmentsExpireWithManifest() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(201).addHeader("ETag", "etag0"));
+      server.enqueue(new MockResponse().setResponseCode(201).addHeader("ETag", "etag1"));
+      server.enqueue(new MockResponse().setResponseCode(201).addHeader("ETag", "\"manifest\""));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         StaticLargeObjectUploader uploader = new StaticLargeObjectUploader(api, "DFW", sameThreadExecutor(),
+               new BufferPool(4, 2));
+         long now = System.currentTimeMillis() / 1000;
+         uploader.upload("myContainer", "myObject", stream("abcdefgh"), ImmutableMap.<String, String> of(),
+               deleteAfter(60));
+
+         assertEquals(server.getRequestCount(), 4);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         RecordedRequest first = server.takeRequest();
+         assertNull(first.getHeader("X-Delete-After"));
+         long deleteAt = Long.parseLong(first.getHeader("X-Delete-At"));
+         assertTrue(deleteAt >= now + 60 && deleteAt <= now + 61, String.valueOf(deleteAt));
+         assertEquals(server.takeRequest().getHeader("X-Delete-At"), String.valueOf(deleteAt));
+         RecordedRequest manifest = server.takeRequest();
+         assertEquals(manifest.getRequestLine(), "PUT " + CONTAINER_PATH + "/myObject?multipart-manifest=put HTTP/1.1");
+         assertEquals(manifest.getHeader("X-Delete-At"), String.valueOf(deleteAt));
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void failedSegmentDeletesUploadedSegments() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(201).addHeader("ETag", "etag0"));
+      server.enqueue(new MockResponse().setResponseCode(422));
+      server.enqueue(new MockResponse().setResponseCode(204));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         BufferPool buffers = new BufferPool(4, 2);
+         StaticLargeObjectUploader uploader = new StaticLargeObjectUploader(api, "DFW", sameThreadExecutor(), buffers);
+         try {
+            uploader.upload("myContainer", "myObject", stream("abcdefghij"), ImmutableMap.<String, String> of());
+            fail("expected the upload to fail");
+         } catch (HttpResponseException expected) {
+            assertEquals(expected.getResponse().getStatusCode(), 422);
+         }
+         assertEquals(buffers.inUse(), 0);
+
+         assertEquals(server.getRequestCount(), 4);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         RecordedRequest uploaded = server.takeRequest();
+         assertEquals(server.takeRequest().getMethod(), "PUT");
+         RecordedRequest delete = server.takeRequest();
+         assertEquals(delete.getMethod(), "DELETE");
+         assertEquals(delete.getPath(), uploaded.getPath());
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void moreConcurrentUploadsThanBuffers() throws Exception {
+      SwiftStandInServer server = SwiftStandInServer.builder().latency(2, 2, MILLISECONDS).build();
+      SwiftApi api = ContextBuilder.newBuilder("openstack-swift").endpoint(server.url())
+            .credentials(SwiftStandInServer.TENANT + ":user", "password").buildApi(SwiftApi.class);
+      ListeningExecutorService segments = listeningDecorator(newFixedThreadPool(2));
+      ExecutorService callers = newFixedThreadPool(6);
+      try {
+         api.containerApiInRegion("DFW").createIfAbsent("myContainer", new CreateContainerOptions());
+         BufferPool buffers = new BufferPool(4, 3).trackLeaks();
+         final StaticLargeObjectUploader uploader = new StaticLargeObjectUploader(api, "DFW", segments, buffers);
+         List<Future<String>> uploads = Lists.newArrayList();
+         for (int i = 0; i < 6; i++) {
+            final String name = "myObject" + i;
+            uploads.add(callers.submit(new Callable<String>() {
+               @Override
+               public String call() {
+                  return uploader.upload("myContainer", name, stream("abcdefghij"), ImmutableMap.<String, String> of());
+               }
+            }));
+         }
+         for (Future<String> upload : uploads) {
+            upload.get(30, SECONDS);
+         }
+         buffers.checkNoLeaks();
+         assertEquals(buffers.inUse(), 0);
+
+         ObjectApi objectApi = api.objectApiInRegionForContainer("DFW", "myContainer");
+         for (int i = 0; i < 6; i++) {
+            assertEquals(Strings2.toStringAndClose(objectApi.get("myObject" + i).payload().openStream()), "abcdefghij");
+         }
+      } finally {
+         callers.shutdownNow();
+         segments.shutdownNow();
+         api.close();
+         server.close();
+      }
+   }
+
+   private static Payload stream(String content) {
+      return newInputStreamPayload(new ByteArrayInputStream(content.getBytes()));
+   }
+}
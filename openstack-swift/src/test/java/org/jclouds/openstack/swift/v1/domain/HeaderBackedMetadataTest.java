@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.domain;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+
+@Test
+public class HeaderBackedMetadataTest {
+
+   public void matchesPrefixIgnoringCase() {
+      HeaderBackedMetadata metadata = HeaderBackedMetadata.of(ImmutableMultimap.of( //
+            "X-Object-Meta-Color", "blue", //
+            "x-object-meta-shape", "round", //
+            "X-OBJECT-META-Size", "large", //
+            "Content-Type", "text/plain", //
+            "X-Timestamp", "1276350018.83962"));
+
+      assertFalse(metadata.isEmpty());
+      assertEquals(metadata, ImmutableMap.of("color", "blue", "shape", "round", "size", "large"));
+   }
+
+   public void emptyWithoutMetadataHeaders() {
+      HeaderBackedMetadata metadata = HeaderBackedMetadata.of(ImmutableMultimap.of("ETag", "abc", "X-Meta", "no"));
+      assertTrue(metadata.isEmpty());
+      assertEquals(metadata.size(), 0);
+   }
+
+   public void keyIndex() {
+      assertEquals(HeaderBackedMetadata.keyIndex("X-Container-Meta-Foo"), "X-Container-Meta-".length());
+      assertEquals(HeaderBackedMetadata.keyIndex("X-Container-Meta-"), "X-Container-Meta-".length());
+      assertEquals(HeaderBackedMetadata.keyIndex("X-Container-Meta"), -1);
+      assertEquals(HeaderBackedMetadata.keyIndex(""), -1);
+   }
+
+   public void builderKeepsView() {
+      HeaderBackedMetadata metadata = HeaderBackedMetadata.of(ImmutableMultimap.of("X-Account-Meta-Foo", "bar"));
+      Account account = Account.builder().metadata(metadata).build();
+      assertTrue(account.metadata() == metadata);
+      assertEquals(account.metadata(), ImmutableMap.of("foo", "bar"));
+   }
+}
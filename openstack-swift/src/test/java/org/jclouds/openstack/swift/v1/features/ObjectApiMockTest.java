@@ -17,23 +17,39 @@
 package org.jclouds.openstack.swift.v1.features;
 
 import static com.google.common.base.Charsets.US_ASCII;
+import static com.google.common.net.HttpHeaders.IF_MATCH;
+import static com.google.common.net.HttpHeaders.IF_MODIFIED_SINCE;
+import static com.google.common.net.HttpHeaders.IF_NONE_MATCH;
 import static com.google.common.net.HttpHeaders.RANGE;
+import static org.jclouds.http.options.GetOptions.Builder.ifETagDoesntMatch;
+import static org.jclouds.http.options.GetOptions.Builder.ifETagMatches;
+import static org.jclouds.http.options.GetOptions.Builder.ifModifiedSince;
 import static org.jclouds.http.options.GetOptions.Builder.tail;
 import static org.jclouds.io.Payloads.newStringPayload;
+import static org.jclouds.openstack.swift.v1.options.ExpiryOptions.Builder.deleteAfter;
+import static org.jclouds.openstack.swift.v1.options.ExpiryOptions.Builder.deleteAt;
+import static org.jclouds.openstack.swift.v1.options.ExpiryOptions.Builder.keepForever;
 import static org.jclouds.openstack.swift.v1.options.ListContainerOptions.Builder.marker;
+import static org.jclouds.openstack.swift.v1.options.ObjectHeaderOptions.Builder.keep;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 import static org.jclouds.openstack.swift.v1.features.ContainerApiMockTest.*;
 
 import java.net.URI;
+import java.util.Date;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.jclouds.date.internal.SimpleDateFormatDateService;
+import org.jclouds.http.options.GetOptions;
 import org.jclouds.io.Payload;
 import org.jclouds.io.Payloads;
 import org.jclouds.openstack.v2_0.internal.BaseOpenStackMockTest;
 import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.domain.ConditionalObject;
+import org.jclouds.openstack.swift.v1.domain.ConditionalObject.Status;
 import org.jclouds.openstack.swift.v1.domain.ObjectList;
 import org.jclouds.openstack.swift.v1.domain.SwiftObject;
 import org.jclouds.openstack.swift.v1.options.ListContainerOptions;
@@ -123,6 +139,33 @@ public class ObjectApiMockTest extends BaseOpenStackMockTest<SwiftApi> {
       }
    }
 
+   public void listWithDelimiterIncludesSubdirs() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(containerResponse() //
+            .setBody("[{\"subdir\":\"photos/\"},{\"name\":\"readme\",\"hash\":\"4281c348eaf83e70ddce0e07221c3d28\","
+                  + "\"bytes\":14,\"content_type\":\"text/plain\",\"last_modified\":\"2009-02-03T05:26:32.612278\"}]"));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         ObjectList objects = api.objectApiInRegionForContainer("DFW", "myContainer").list(
+               ListContainerOptions.Builder.delimiter('/'));
+         assertEquals(objects.size(), 2);
+         assertEquals(objects.get(0).name(), "photos/");
+         assertEquals(objects.get(0).payload().getContentMetadata().getContentType(), "application/directory");
+         assertEquals(objects.get(1).name(), "readme");
+
+         assertEquals(server.getRequestCount(), 2);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         RecordedRequest list = server.takeRequest();
+         assertTrue(list.getPath().startsWith(
+               "/v1/MossoCloudFS_5bcf396e-39dd-45ff-93a1-712b9aba90a9/myContainer/?format=json&delimiter="),
+               list.getPath());
+      } finally {
+         server.shutdown();
+      }
+   }
+
    public void replace() throws Exception {
       MockWebServer server = mockOpenStackServer();
       server.enqueue(new MockResponse().setBody(accessRackspace));
@@ -150,6 +193,75 @@ public class ObjectApiMockTest extends BaseOpenStackMockTest<SwiftApi> {
       }
    }
 
+   public void replaceWithExpiry() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse() //
+            .setResponseCode(201) //
+            .addHeader("ETag", "d9f5eb4bba4e2f2f046e54611bc8196b"));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         assertEquals(
+               api.objectApiInRegionForContainer("DFW", "myContainer").replace("myObject",
+                     newStringPayload("swifty"), metadata, deleteAfter(3600)), "d9f5eb4bba4e2f2f046e54611bc8196b");
+
+         assertEquals(server.getRequestCount(), 2);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         RecordedRequest replace = server.takeRequest();
+         assertEquals(replace.getHeader("X-Delete-After"), "3600");
+         assertNull(replace.getHeader("X-Delete-At"));
+         assertEquals(new String(replace.getBody()), "swifty");
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void copy() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse() //
+            .setResponseCode(201) //
+            .addHeader("ETag", "d9f5eb4bba4e2f2f046e54611bc8196b"));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         assertEquals(
+               api.objectApiInRegionForContainer("DFW", "myContainer").copy("myCopy", "otherContainer",
+                     "myObject", metadata), "d9f5eb4bba4e2f2f046e54611bc8196b");
+
+         assertEquals(server.getRequestCount(), 2);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         RecordedRequest copy = server.takeRequest();
+         assertEquals(copy.getRequestLine(),
+               "PUT /v1/MossoCloudFS_5bcf396e-39dd-45ff-93a1-712b9aba90a9/myContainer/myCopy HTTP/1.1");
+         assertEquals(copy.getHeader("X-Copy-From"), "/otherContainer/myObject");
+         assertEquals(copy.getHeader("X-Fresh-Metadata"), "true");
+         assertEquals(copy.getBody().length, 0);
+         for (Entry<String, String> entry : metadata.entrySet()) {
+            assertEquals(copy.getHeader("x-object-meta-" + entry.getKey().toLowerCase()), entry.getValue());
+         }
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void copyWhenSourceNotFound() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(404));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         assertNull(api.objectApiInRegionForContainer("DFW", "myContainer").copy("myCopy", "otherContainer",
+               "myObject", ImmutableMap.<String, String> of()));
+
+         assertEquals(server.getRequestCount(), 2);
+      } finally {
+         server.shutdown();
+      }
+   }
+
    /** upper-cases first char, and lower-cases rest!! **/
    public void headKnowingServerMessesWithMetadataKeyCaseFormat() throws Exception {
       MockWebServer server = mockOpenStackServer();
@@ -214,6 +326,161 @@ public class ObjectApiMockTest extends BaseOpenStackMockTest<SwiftApi> {
       }
    }
 
+   public void getConditionallyWhenModified() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(objectResponse());
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         ConditionalObject result = api.objectApiInRegionForContainer("DFW", "myContainer").getConditionally(
+               "myObject", ifETagDoesntMatch("cafebabe"));
+         assertEquals(result.status(), Status.MODIFIED);
+         assertEquals(result.etag().get(), "8a964ee2a5e88be344f36c22562a6486");
+         assertEquals(result.object().get().name(), "myObject");
+         assertEquals(Strings2.toStringAndClose(result.object().get().payload().getInput()), "ABCD");
+
+         assertEquals(server.getRequestCount(), 2);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         RecordedRequest get = server.takeRequest();
+         assertEquals(get.getRequestLine(),
+               "GET /v1/MossoCloudFS_5bcf396e-39dd-45ff-93a1-712b9aba90a9/myContainer/myObject HTTP/1.1");
+         assertEquals(get.getHeader(IF_NONE_MATCH), "\"cafebabe\"");
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void getConditionallyWhenNotModified() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(304) //
+            .addHeader("Last-Modified", "Fri, 12 Jun 2010 13:40:18 GMT") //
+            .addHeader("ETag", "8a964ee2a5e88be344f36c22562a6486"));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         Date since = dates.rfc822DateParse("Fri, 12 Jun 2010 13:40:18 GMT");
+         ConditionalObject result = api.objectApiInRegionForContainer("DFW", "myContainer").getConditionally(
+               "myObject", ifModifiedSince(since));
+         assertEquals(result, ConditionalObject.notModified("8a964ee2a5e88be344f36c22562a6486", since));
+         assertFalse(result.object().isPresent());
+
+         assertEquals(server.getRequestCount(), 2);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         RecordedRequest get = server.takeRequest();
+         assertEquals(get.getHeader(IF_MODIFIED_SINCE), "Fri, 12 Jun 2010 13:40:18 GMT");
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void headConditionallyWhenPreconditionFailed() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(412));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         ConditionalObject result = api.objectApiInRegionForContainer("DFW", "myContainer").headConditionally(
+               "myObject", ifETagMatches("cafebabe"));
+         assertEquals(result, ConditionalObject.preconditionFailed());
+
+         assertEquals(server.getRequestCount(), 2);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         RecordedRequest head = server.takeRequest();
+         assertEquals(head.getRequestLine(),
+               "HEAD /v1/MossoCloudFS_5bcf396e-39dd-45ff-93a1-712b9aba90a9/myContainer/myObject HTTP/1.1");
+         assertEquals(head.getHeader(IF_MATCH), "\"cafebabe\"");
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void headConditionallyWhenNotFound() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(404));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         ConditionalObject result = api.objectApiInRegionForContainer("DFW", "myContainer").headConditionally(
+               "myObject", ifETagDoesntMatch("cafebabe"));
+         assertEquals(result, ConditionalObject.notFound());
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void updateMetadataWithExpiry() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(202));
+      server.enqueue(new MockResponse().setResponseCode(202));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         ObjectApi objectApi = api.objectApiInRegionForContainer("DFW", "myContainer");
+         assertTrue(objectApi.updateMetadata("myObject", metadata, deleteAt(1390000000)));
+         assertTrue(objectApi.updateMetadata("myObject", metadata, keepForever()));
+
+         assertEquals(server.getRequestCount(), 3);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         RecordedRequest expire = server.takeRequest();
+         assertEquals(expire.getRequestLine(),
+               "POST /v1/MossoCloudFS_5bcf396e-39dd-45ff-93a1-712b9aba90a9/myContainer/myObject HTTP/1.1");
+         assertEquals(expire.getHeader("X-Delete-At"), "1390000000");
+         for (Entry<String, String> entry : metadata.entrySet()) {
+            assertEquals(expire.getHeader("x-object-meta-" + entry.getKey().toLowerCase()), entry.getValue());
+         }
+         RecordedRequest keep = server.takeRequest();
+         assertNull(keep.getHeader("X-Delete-At"));
+         assertEquals(keep.getHeader("X-Remove-Delete-At"), "1");
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void updateMetadataKeepingHeaders() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(objectResponse() //
+            .addHeader("X-Delete-At", "1390000000") //
+            .addHeader("X-Object-Manifest", "myContainer/segments/") //
+            .addHeader("Content-Encoding", "gzip") //
+            .addHeader("Content-Disposition", "attachment; filename=myObject.gz"));
+      server.enqueue(new MockResponse().setResponseCode(202));
+      server.enqueue(new MockResponse().setResponseCode(202));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         ObjectApi objectApi = api.objectApiInRegionForContainer("DFW", "myContainer");
+         SwiftObject object = objectApi.get("myObject", GetOptions.NONE);
+         assertTrue(objectApi.updateMetadata("myObject", metadata, keep(object)));
+         assertTrue(objectApi.updateMetadata("myObject", metadata, deleteAt(1400000000),
+               keep(object).withoutExpiry()));
+
+         assertEquals(server.getRequestCount(), 4);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         server.takeRequest();
+         RecordedRequest update = server.takeRequest();
+         assertEquals(update.getRequestLine(),
+               "POST /v1/MossoCloudFS_5bcf396e-39dd-45ff-93a1-712b9aba90a9/myContainer/myObject HTTP/1.1");
+         assertEquals(update.getHeader("X-Delete-At"), "1390000000");
+         assertEquals(update.getHeader("X-Object-Manifest"), "myContainer/segments/");
+         assertEquals(update.getHeader("Content-Encoding"), "gzip");
+         assertEquals(update.getHeader("Content-Disposition"), "attachment; filename=myObject.gz");
+         for (Entry<String, String> entry : metadata.entrySet()) {
+            assertEquals(update.getHeader("x-object-meta-" + entry.getKey().toLowerCase()), entry.getValue());
+         }
+         RecordedRequest expire = server.takeRequest();
+         assertEquals(expire.getHeader("X-Delete-At"), "1400000000");
+         assertEquals(expire.getHeader("X-Object-Manifest"), "myContainer/segments/");
+      } finally {
+         server.shutdown();
+      }
+   }
+
    public void updateMetadata() throws Exception {
       MockWebServer server = mockOpenStackServer();
       server.enqueue(new MockResponse().setBody(accessRackspace));
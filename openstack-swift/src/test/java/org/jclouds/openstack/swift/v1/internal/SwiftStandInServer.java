@@ -0,0 +1,850 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.internal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.io.BaseEncoding.base16;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import org.jclouds.date.internal.SimpleDateFormatDateService;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+/**
+ * A stateful, in-memory stand-in for Swift and its keystone endpoint, so that
+ * load and throughput tests can run offline. It implements accounts,
+ * containers, objects, listings with marker, prefix and delimiter, metadata,
+ * ranged and conditional reads, server-side copy, object expiry, bulk delete,
+ * extract-archive, and static and dynamic large objects. Each region is a
+ * separate account.
+ *
+ * <pre>
+ * SwiftStandInServer server = SwiftStandInServer.builder().regions("DFW", "ORD").latency(5, 2, MILLISECONDS).build();
+ * SwiftApi api = ContextBuilder.newBuilder("openstack-swift").endpoint(server.url())
+ *       .credentials("tenant:user", "password").buildApi(SwiftApi.class);
+ * </pre>
+ */
+public final class SwiftStandInServer implements Closeable {
+
+   public static final String TOKEN = "standin-token";
+   public static final String TENANT = "standin";
+
+   public static Builder builder() {
+      return new Builder();
+   }
+
+   public static final class Builder {
+      private List<String> regions = ImmutableList.of("DFW");
+      private long latencyMillis;
+      private long latencyJitterMillis;
+      private double errorRate;
+      private int errorStatus = 503;
+
+      /** regions in the service catalog, each with its own account. Defaults to DFW. */
+      public Builder regions(String... regions) {
+         checkArgument(regions.length > 0, "at least one region is required");
+         this.regions = ImmutableList.copyOf(regions);
+         return this;
+      }
+
+      /** delay added to each request, plus a uniformly random {@code jitter}. */
+      public Builder latency(long latency, long jitter, TimeUnit unit) {
+         this.latencyMillis = unit.toMillis(latency);
+         this.latencyJitterMillis = unit.toMillis(jitter);
+         return this;
+      }
+
+      /** fraction of storage requests that fail with {@code status}, such as 503. */
+      public Builder errorRate(double errorRate, int status) {
+         checkArgument(errorRate >= 0 && errorRate <= 1, "errorRate must be between 0 and 1");
+         this.errorRate = errorRate;
+         this.errorStatus = status;
+         return this;
+      }
+
+      public SwiftStandInServer build() throws IOException {
+         return new SwiftStandInServer(this);
+      }
+   }
+
+   private static final Gson GSON = new Gson();
+   private static final SimpleDateFormatDateService DATES = new SimpleDateFormatDateService();
+   private static final int DEFAULT_LIMIT = 10000;
+
+   private final MockWebServer server = new MockWebServer();
+   private final List<String> regions;
+   private final long latencyMillis;
+   private final long latencyJitterMillis;
+   private final double errorRate;
+   private final int errorStatus;
+   private final Random random = new Random();
+   private final ConcurrentMap<String, StoredAccount> accounts = Maps.newConcurrentMap();
+   private final AtomicLong requestCount = new AtomicLong();
+   private final AtomicInteger failNext = new AtomicInteger();
+   private volatile int failNextStatus;
+
+   private SwiftStandInServer(Builder builder) throws IOException {
+      this.regions = builder.regions;
+      this.latencyMillis = builder.latencyMillis;
+      this.latencyJitterMillis = builder.latencyJitterMillis;
+      this.errorRate = builder.errorRate;
+      this.errorStatus = builder.errorStatus;
+      for (String region : regions) {
+         accounts.put(account(region), new StoredAccount());
+      }
+      server.setDispatcher(new Dispatcher() {
+         @Override
+         public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            return SwiftStandInServer.this.dispatch(request);
+         }
+      });
+      server.play();
+   }
+
+   /** keystone endpoint to build a context against. */
+   public String url() {
+      return server.getUrl("/").toString();
+   }
+
+   /** storage url of {@code region}. */
+   public URL storageUrl(String region) {
+      return server.getUrl("/v1/" + account(region));
+   }
+
+   /** requests received, including authentication. */
+   public long requestCount() {
+      return requestCount.get();
+   }
+
+   /** fails the next {@code count} storage requests with {@code status}. */
+   public void failNext(int count, int status) {
+      failNextStatus = status;
+      failNext.set(count);
+   }
+
+   @Override
+   public void close() throws IOException {
+      server.shutdown();
+   }
+
+   private static String account(String region) {
+      return "AUTH_" + TENANT + "-" + region;
+   }
+
+   private MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+      requestCount.incrementAndGet();
+      if (latencyMillis > 0 || latencyJitterMillis > 0) {
+         Thread.sleep(latencyMillis + (latencyJitterMillis > 0 ? (long) (random.nextDouble() * latencyJitterMillis) : 0));
+      }
+      String path = request.getPath();
+      String rawQuery = "";
+      int queryIndex = path.indexOf('?');
+      if (queryIndex != -1) {
+         rawQuery = path.substring(queryIndex + 1);
+         path = path.substring(0, queryIndex);
+      }
+      if (request.getMethod().equals("POST") && path.endsWith("/tokens")) {
+         return json(200, access());
+      }
+      if (!TOKEN.equals(request.getHeader("X-Auth-Token"))) {
+         return new MockResponse().setResponseCode(401);
+      }
+      for (int remaining = failNext.get(); remaining > 0; remaining = failNext.get()) {
+         if (failNext.compareAndSet(remaining, remaining - 1)) {
+            return new MockResponse().setResponseCode(failNextStatus);
+         }
+      }
+      if (errorRate > 0 && random.nextDouble() < errorRate) {
+         return new MockResponse().setResponseCode(errorStatus);
+      }
+      List<String> parts = Lists.newArrayList(Splitter.on('/').limit(5).split(decode(path)));
+      // "", "v1", account, container, object
+      if (parts.size() < 3 || !parts.get(1).equals("v1") || !accounts.containsKey(parts.get(2))) {
+         return new MockResponse().setResponseCode(404);
+      }
+      StoredAccount account = accounts.get(parts.get(2));
+      Map<String, String> query = query(rawQuery);
+      String container = parts.size() > 3 && !parts.get(3).isEmpty() ? parts.get(3) : null;
+      String object = parts.size() > 4 && !parts.get(4).isEmpty() ? parts.get(4) : null;
+      try {
+         if (query.containsKey("extract-archive")) {
+            return extractArchive(account, parts.size() > 3 ? parts.get(3) + (object != null ? "/" + object : "")
+                  : "", query.get("extract-archive"), request.getBody());
+         } else if (container == null) {
+            return accountRequest(account, request, query);
+         } else if (object == null) {
+            return containerRequest(account, container, request, query);
+         }
+         return objectRequest(account, container, object, request, query);
+      } catch (RuntimeException e) {
+         return new MockResponse().setResponseCode(500).setBody(String.valueOf(e));
+      }
+   }
+
+   private Map<String, Object> access() {
+      List<Map<String, String>> endpoints = Lists.newArrayList();
+      for (String region : regions) {
+         String url = storageUrl(region).toString();
+         endpoints.add(ImmutableMap.of("region", region, "tenantId", TENANT, "publicURL", url, "internalURL", url));
+      }
+      return ImmutableMap.<String, Object> of("access", ImmutableMap.of( //
+            "token", ImmutableMap.of("id", TOKEN, "expires", "2099-01-01T00:00:00.000Z", //
+                  "tenant", ImmutableMap.of("id", TENANT, "name", TENANT)), //
+            "serviceCatalog", ImmutableList.of(ImmutableMap.of("name", "cloudFiles", "type", "object-store", //
+                  "endpoints", endpoints)), //
+            "user", ImmutableMap.of("id", "standin", "name", "standin", "roles", ImmutableList.of())));
+   }
+
+   // accounts
+
+   private MockResponse accountRequest(StoredAccount account, RecordedRequest request, Map<String, String> query) {
+      String method = request.getMethod();
+      if (method.equals("DELETE") && query.containsKey("bulk-delete")) {
+         return bulkDelete(account, request.getBody());
+      } else if (method.equals("POST")) {
+         account.updateMetadata(request, "x-account-meta-");
+         return new MockResponse().setResponseCode(204);
+      } else if (method.equals("HEAD") || method.equals("GET")) {
+         MockResponse response = new MockResponse().setResponseCode(method.equals("HEAD") ? 204 : 200);
+         long objects = 0;
+         long bytes = 0;
+         List<Map<String, Object>> listing = Lists.newArrayList();
+         String marker = query.get("marker");
+         String prefix = query.get("prefix");
+         int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : DEFAULT_LIMIT;
+         for (Entry<String, StoredContainer> entry : account.containers.entrySet()) {
+            long count = entry.getValue().objectCount();
+            long used = entry.getValue().bytesUsed();
+            objects += count;
+            bytes += used;
+            if ((marker == null || entry.getKey().compareTo(marker) > 0)
+                  && (prefix == null || entry.getKey().startsWith(prefix)) && listing.size() < limit) {
+               listing.add(ImmutableMap.<String, Object> of("name", entry.getKey(), "count", count, "bytes", used));
+            }
+         }
+         response.addHeader("X-Account-Container-Count", account.containers.size());
+         response.addHeader("X-Account-Object-Count", objects);
+         response.addHeader("X-Account-Bytes-Used", bytes);
+         addHeaders(response, account.metadata);
+         return method.equals("HEAD") ? response : withJson(response, listing);
+      }
+      return new MockResponse().setResponseCode(405);
+   }
+
+   private MockResponse bulkDelete(StoredAccount account, byte[] body) {
+      int deleted = 0;
+      int notFound = 0;
+      List<List<String>> errors = Lists.newArrayList();
+      for (String line : Splitter.on('\n').trimResults().omitEmptyStrings().split(new String(body, Charsets.UTF_8))) {
+         List<String> path = Splitter.on('/').omitEmptyStrings().limit(2).splitToList(decode(line));
+         StoredContainer container = account.containers.get(path.get(0));
+         if (container == null) {
+            notFound++;
+         } else if (path.size() == 1) {
+            if (!container.objects.isEmpty()) {
+               errors.add(ImmutableList.of(line, "409 Conflict"));
+            } else if (account.containers.remove(path.get(0)) != null) {
+               deleted++;
+            } else {
+               notFound++;
+            }
+         } else if (container.objects.remove(path.get(1)) != null) {
+            deleted++;
+         } else {
+            notFound++;
+         }
+      }
+      return json(200, ImmutableMap.of("Number Deleted", deleted, "Number Not Found", notFound, //
+            "Response Status", errors.isEmpty() ? "200 OK" : "400 Bad Request", "Errors", errors));
+   }
+
+   private MockResponse extractArchive(StoredAccount account, String path, String format, byte[] body) {
+      int created = 0;
+      List<List<String>> errors = Lists.newArrayList();
+      try {
+         InputStream in = new ByteArrayInputStream(body);
+         if (format.endsWith(".gz")) {
+            in = new GZIPInputStream(in);
+         } else if (!format.equals("tar")) {
+            return new MockResponse().setResponseCode(400).setBody("unsupported archive format " + format);
+         }
+         for (Entry<String, byte[]> entry : untar(in).entrySet()) {
+            String target = path.isEmpty() ? entry.getKey() : path + "/" + entry.getKey();
+            List<String> parts = Splitter.on('/').omitEmptyStrings().limit(2).splitToList(target);
+            if (parts.size() < 2) {
+               errors.add(ImmutableList.of(target, "400 Bad Request"));
+               continue;
+            }
+            StoredContainer container = account.containerOrCreate(parts.get(0));
+            container.objects.put(parts.get(1), StoredObject.create(entry.getValue(), null,
+                  ImmutableMap.<String, String> of(), System.currentTimeMillis()));
+            created++;
+         }
+      } catch (IOException e) {
+         return new MockResponse().setResponseCode(400).setBody("invalid archive: " + e.getMessage());
+      }
+      return json(201, ImmutableMap.of("Number Files Created", created, //
+            "Response Status", errors.isEmpty() ? "201 Created" : "400 Bad Request", "Errors", errors));
+   }
+
+   // containers
+
+   private MockResponse containerRequest(StoredAccount account, String name, RecordedRequest request,
+         Map<String, String> query) {
+      String method = request.getMethod();
+      if (method.equals("PUT")) {
+         boolean existed = account.containers.containsKey(name);
+         account.containerOrCreate(name).updateMetadata(request, "x-container-meta-");
+         return new MockResponse().setResponseCode(existed ? 202 : 201);
+      }
+      StoredContainer container = account.containers.get(name);
+      if (container == null) {
+         return new MockResponse().setResponseCode(404);
+      } else if (method.equals("POST")) {
+         container.updateMetadata(request, "x-container-meta-");
+         return new MockResponse().setResponseCode(204);
+      } else if (method.equals("DELETE")) {
+         if (!container.objects.isEmpty()) {
+            return new MockResponse().setResponseCode(409);
+         }
+         account.containers.remove(name);
+         return new MockResponse().setResponseCode(204);
+      } else if (method.equals("HEAD")) {
+         return containerHeaders(container, new MockResponse().setResponseCode(204));
+      } else if (method.equals("GET")) {
+         return withJson(containerHeaders(container, new MockResponse().setResponseCode(200)),
+               list(container, query));
+      }
+      return new MockResponse().setResponseCode(405);
+   }
+
+   private static MockResponse containerHeaders(StoredContainer container, MockResponse response) {
+      response.addHeader("X-Container-Object-Count", container.objectCount());
+      response.addHeader("X-Container-Bytes-Used", container.bytesUsed());
+      addHeaders(response, container.metadata);
+      return response;
+   }
+
+   private static List<Map<String, Object>> list(StoredContainer container, Map<String, String> query) {
+      String prefix = query.containsKey("path") ? query.get("path") + "/" : query.get("prefix");
+      String delimiter = query.containsKey("path") ? null : query.get("delimiter");
+      String marker = query.get("marker");
+      String endMarker = query.get("end_marker");
+      int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : DEFAULT_LIMIT;
+      NavigableMap<String, StoredObject> view = container.objects;
+      if (marker != null) {
+         view = view.tailMap(marker, false);
+      }
+      if (prefix != null && (marker == null || prefix.compareTo(marker) > 0)) {
+         view = view.tailMap(prefix, true);
+      }
+      if (endMarker != null) {
+         view = view.headMap(endMarker, false);
+      }
+      List<Map<String, Object>> listing = Lists.newArrayList();
+      String lastSubdir = null;
+      long now = System.currentTimeMillis();
+      for (Entry<String, StoredObject> entry : view.entrySet()) {
+         String name = entry.getKey();
+         if (listing.size() >= limit || (prefix != null && !name.startsWith(prefix))) {
+            break;
+         }
+         if (entry.getValue().expired(now)) {
+            continue;
+         }
+         int start = prefix != null ? prefix.length() : 0;
+         int index = delimiter != null ? name.indexOf(delimiter, start) : -1;
+         if (index != -1) {
+            String subdir = name.substring(0, index + delimiter.length());
+            if (!subdir.equals(lastSubdir)) {
+               listing.add(ImmutableMap.<String, Object> of("subdir", subdir));
+               lastSubdir = subdir;
+            }
+            continue;
+         }
+         StoredObject object = entry.getValue();
+         listing.add(ImmutableMap.<String, Object> of("name", name, "hash", object.etag, "bytes", object.length,
+               "content_type", object.contentType, "last_modified", lastModified(object.lastModified)));
+      }
+      return listing;
+   }
+
+   // objects
+
+   private MockResponse objectRequest(StoredAccount account, String containerName, String name,
+         RecordedRequest request, Map<String, String> query) {
+      StoredContainer container = account.containers.get(containerName);
+      if (container == null) {
+         return new MockResponse().setResponseCode(404);
+      }
+      String method = request.getMethod();
+      if (method.equals("PUT")) {
+         return putObject(account, container, name, request, query);
+      }
+      StoredObject object = container.objects.get(name);
+      if (object != null && object.expired(System.currentTimeMillis())) {
+         container.objects.remove(name, object);
+         object = null;
+      }
+      if (object == null) {
+         return new MockResponse().setResponseCode(404);
+      } else if (method.equals("DELETE")) {
+         container.objects.remove(name);
+         if ("delete".equals(query.get("multipart-manifest")) && object.segments != null) {
+            for (Map<String, Object> segment : object.segments) {
+               List<String> path = Splitter.on('/').omitEmptyStrings().limit(2)
+                     .splitToList((String) segment.get("path"));
+               StoredContainer segments = account.containers.get(path.get(0));
+               if (segments != null) {
+                  segments.objects.remove(path.get(1));
+               }
+            }
+         }
+         return new MockResponse().setResponseCode(204);
+      } else if (method.equals("POST")) {
+         container.objects.put(name, object.withHeaders(metadata(request),
+               request.getHeader("Content-Type")));
+         return new MockResponse().setResponseCode(202);
+      } else if (method.equals("GET") || method.equals("HEAD")) {
+         return getObject(account, object, request, method.equals("HEAD"));
+      }
+      return new MockResponse().setResponseCode(405);
+   }
+
+   private MockResponse putObject(StoredAccount account, StoredContainer container, String name,
+         RecordedRequest request, Map<String, String> query) {
+      String copyFrom = request.getHeader("X-Copy-From");
+      StoredObject object;
+      if (copyFrom != null) {
+         List<String> source = Splitter.on('/').omitEmptyStrings().limit(2).splitToList(decode(copyFrom));
+         StoredContainer sourceContainer = account.containers.get(source.get(0));
+         StoredObject sourceObject = sourceContainer != null && source.size() == 2 ? sourceContainer.objects
+               .get(source.get(1)) : null;
+         if (sourceObject == null) {
+            return new MockResponse().setResponseCode(404);
+         }
+         byte[] data = content(account, sourceObject);
+         Map<String, String> headers = "true".equalsIgnoreCase(request.getHeader("X-Fresh-Metadata")) ? Maps
+               .<String, String> newLinkedHashMap() : Maps.newLinkedHashMap(sourceObject.headers);
+         headers.putAll(metadata(request));
+         object = StoredObject.create(data, sourceObject.contentType, headers, System.currentTimeMillis());
+      } else if ("put".equals(query.get("multipart-manifest"))) {
+         Type type = new TypeToken<List<Map<String, Object>>>() {
+         }.getType();
+         List<Map<String, Object>> segments = GSON.fromJson(new String(request.getBody(), Charsets.UTF_8), type);
+         StringBuilder etags = new StringBuilder();
+         long length = 0;
+         for (Map<String, Object> segment : segments) {
+            List<String> path = Splitter.on('/').omitEmptyStrings().limit(2).splitToList((String) segment.get("path"));
+            StoredContainer segmentContainer = account.containers.get(path.get(0));
+            StoredObject stored = segmentContainer != null && path.size() == 2 ? segmentContainer.objects.get(path
+                  .get(1)) : null;
+            if (stored == null || (segment.get("etag") != null && !stored.etag.equals(segment.get("etag")))
+                  || (segment.get("size_bytes") != null
+                  && ((Number) segment.get("size_bytes")).longValue() != stored.length)) {
+               return new MockResponse().setResponseCode(400).setBody("invalid segment " + segment.get("path"));
+            }
+            etags.append(stored.etag);
+            length += stored.length;
+         }
+         object = StoredObject.manifest(md5(etags.toString().getBytes(Charsets.UTF_8)), length, segments,
+               metadata(request), System.currentTimeMillis());
+      } else {
+         byte[] data = request.getBody();
+         String expected = request.getHeader("ETag");
+         object = StoredObject.create(data, request.getHeader("Content-Type"),
+               metadata(request), System.currentTimeMillis());
+         if (expected != null && !expected.equalsIgnoreCase(object.etag)) {
+            return new MockResponse().setResponseCode(422);
+         }
+      }
+      container.objects.put(name, object);
+      return new MockResponse().setResponseCode(201).addHeader("ETag", object.etag);
+   }
+
+   private MockResponse getObject(StoredAccount account, StoredObject object, RecordedRequest request,
+         boolean head) {
+      String etag = object.etag;
+      byte[] data = null;
+      String manifest = object.headers.get("x-object-manifest");
+      if (manifest != null || object.segments != null) {
+         data = content(account, object);
+         if (manifest != null) {
+            etag = "\"" + dynamicEtag(account, manifest) + "\"";
+         }
+      }
+      long length = data != null ? data.length : object.length;
+      String unquoted = etag.replace("\"", "");
+      String ifMatch = request.getHeader("If-Match");
+      if (ifMatch != null && !ifMatch.equals("*") && !ifMatch.replace("\"", "").equals(unquoted)) {
+         return new MockResponse().setResponseCode(412);
+      }
+      String ifNoneMatch = request.getHeader("If-None-Match");
+      if (ifNoneMatch != null && (ifNoneMatch.equals("*") || ifNoneMatch.replace("\"", "").equals(unquoted))) {
+         return objectHeaders(object, etag, new MockResponse().setResponseCode(304));
+      }
+      String ifModifiedSince = request.getHeader("If-Modified-Since");
+      if (ifNoneMatch == null && ifModifiedSince != null
+            && object.lastModified / 1000 <= DATES.rfc822DateParse(ifModifiedSince).getTime() / 1000) {
+         return objectHeaders(object, etag, new MockResponse().setResponseCode(304));
+      }
+      String ifUnmodifiedSince = request.getHeader("If-Unmodified-Since");
+      if (ifUnmodifiedSince != null
+            && object.lastModified / 1000 > DATES.rfc822DateParse(ifUnmodifiedSince).getTime() / 1000) {
+         return new MockResponse().setResponseCode(412);
+      }
+      long first = 0;
+      long last = length - 1;
+      int status = 200;
+      String range = request.getHeader("Range");
+      if (range != null && range.startsWith("bytes=") && !range.contains(",")) {
+         String spec = range.substring("bytes=".length());
+         int dash = spec.indexOf('-');
+         if (dash == 0) {
+            first = Math.max(0, length - Long.parseLong(spec.substring(1)));
+         } else {
+            first = Long.parseLong(spec.substring(0, dash));
+            if (dash < spec.length() - 1) {
+               last = Math.min(last, Long.parseLong(spec.substring(dash + 1)));
+            }
+         }
+         if (first >= length || first > last) {
+            return new MockResponse().setResponseCode(416).addHeader("Content-Range", "bytes */" + length);
+         }
+         status = 206;
+      }
+      MockResponse response = objectHeaders(object, etag, new MockResponse().setResponseCode(status));
+      if (status == 206) {
+         response.addHeader("Content-Range", String.format("bytes %s-%s/%s", first, last, length));
+      }
+      if (head) {
+         return response.setHeader("Content-Length", last - first + 1);
+      }
+      if (data == null) {
+         data = object.data;
+      }
+      return response.setBody(first == 0 && last == data.length - 1 ? data : Arrays.copyOfRange(data, (int) first,
+            (int) last + 1));
+   }
+
+   private static MockResponse objectHeaders(StoredObject object, String etag, MockResponse response) {
+      response.addHeader("ETag", etag);
+      response.addHeader("Last-Modified", DATES.rfc822DateFormat(new Date(object.lastModified)));
+      response.setHeader("Content-Type", object.contentType);
+      if (object.segments != null) {
+         response.addHeader("X-Static-Large-Object", "True");
+      }
+      addHeaders(response, object.headers);
+      return response;
+   }
+
+   /** @return the bytes of {@code object}, joining its segments if it is a manifest. */
+   private byte[] content(StoredAccount account, StoredObject object) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      String manifest = object.headers.get("x-object-manifest");
+      if (object.segments != null) {
+         for (Map<String, Object> segment : object.segments) {
+            List<String> path = Splitter.on('/').omitEmptyStrings().limit(2).splitToList((String) segment.get("path"));
+            StoredContainer container = account.containers.get(path.get(0));
+            StoredObject stored = container != null ? container.objects.get(path.get(1)) : null;
+            checkState(stored != null, "segment %s of static large object was deleted", segment.get("path"));
+            out.write(stored.data, 0, stored.data.length);
+         }
+      } else if (manifest != null) {
+         for (StoredObject segment : dynamicSegments(account, manifest)) {
+            out.write(segment.data, 0, segment.data.length);
+         }
+      } else {
+         return object.data;
+      }
+      return out.toByteArray();
+   }
+
+   private String dynamicEtag(StoredAccount account, String manifest) {
+      StringBuilder etags = new StringBuilder();
+      for (StoredObject segment : dynamicSegments(account, manifest)) {
+         etags.append(segment.etag);
+      }
+      return md5(etags.toString().getBytes(Charsets.UTF_8));
+   }
+
+   private static Iterable<StoredObject> dynamicSegments(StoredAccount account, String manifest) {
+      List<String> path = Splitter.on('/').limit(2).splitToList(decode(manifest));
+      StoredContainer container = account.containers.get(path.get(0));
+      if (container == null) {
+         return ImmutableList.of();
+      }
+      String prefix = path.size() > 1 ? path.get(1) : "";
+      List<StoredObject> segments = Lists.newArrayList();
+      for (Entry<String, StoredObject> entry : container.objects.tailMap(prefix, true).entrySet()) {
+         if (!entry.getKey().startsWith(prefix)) {
+            break;
+         }
+         segments.add(entry.getValue());
+      }
+      return segments;
+   }
+
+   // state
+
+   private static class StoredAccount {
+      final ConcurrentSkipListMap<String, StoredContainer> containers = new ConcurrentSkipListMap<String, StoredContainer>();
+      volatile Map<String, String> metadata = ImmutableMap.of();
+
+      StoredContainer containerOrCreate(String name) {
+         StoredContainer container = containers.get(name);
+         if (container == null) {
+            StoredContainer created = new StoredContainer();
+            container = containers.putIfAbsent(name, created);
+            if (container == null) {
+               container = created;
+            }
+         }
+         return container;
+      }
+
+      synchronized void updateMetadata(RecordedRequest request, String prefix) {
+         metadata = merge(metadata, request, prefix);
+      }
+   }
+
+   private static class StoredContainer {
+      final ConcurrentSkipListMap<String, StoredObject> objects = new ConcurrentSkipListMap<String, StoredObject>();
+      volatile Map<String, String> metadata = ImmutableMap.of();
+
+      long objectCount() {
+         return objects.size();
+      }
+
+      long bytesUsed() {
+         long bytes = 0;
+         for (StoredObject object : objects.values()) {
+            bytes += object.length;
+         }
+         return bytes;
+      }
+
+      synchronized void updateMetadata(RecordedRequest request, String prefix) {
+         metadata = merge(metadata, request, prefix);
+      }
+   }
+
+   /**
+    * Immutable; updates replace the object.
+    */
+   private static class StoredObject {
+      final byte[] data;
+      final long length;
+      final String etag;
+      final String contentType;
+      final long lastModified;
+      final Long deleteAt;
+      /** lowercase user metadata and manifest headers. */
+      final Map<String, String> headers;
+      final List<Map<String, Object>> segments;
+
+      static StoredObject create(byte[] data, String contentType, Map<String, String> headers, long lastModified) {
+         return new StoredObject(data, data.length, md5(data), contentType, headers, null, lastModified);
+      }
+
+      static StoredObject manifest(String etag, long length, List<Map<String, Object>> segments,
+            Map<String, String> headers, long lastModified) {
+         return new StoredObject(new byte[0], length, etag, null, headers, segments, lastModified);
+      }
+
+      private StoredObject(byte[] data, long length, String etag, String contentType, Map<String, String> headers,
+            List<Map<String, Object>> segments, long lastModified) {
+         this.data = data;
+         this.length = length;
+         this.etag = etag;
+         this.contentType = contentType != null ? contentType : "application/octet-stream";
+         this.lastModified = lastModified;
+         this.segments = segments;
+         Map<String, String> copy = Maps.newLinkedHashMap(headers);
+         String deleteAfter = copy.remove("x-delete-after");
+         if (deleteAfter != null) {
+            copy.put("x-delete-at", String.valueOf(System.currentTimeMillis() / 1000 + Long.parseLong(deleteAfter)));
+         }
+         this.deleteAt = copy.containsKey("x-delete-at") ? Long.parseLong(copy.get("x-delete-at")) : null;
+         this.headers = ImmutableMap.copyOf(copy);
+      }
+
+      StoredObject withHeaders(Map<String, String> headers, String newContentType) {
+         return new StoredObject(data, length, etag, newContentType != null ? newContentType : contentType, headers,
+               segments, System.currentTimeMillis());
+      }
+
+      boolean expired(long now) {
+         return deleteAt != null && deleteAt * 1000 <= now;
+      }
+   }
+
+   /**
+    * @return object headers from {@code request}. As in Swift, an object
+    *         {@code POST} replaces all of them: metadata, manifest, expiry,
+    *         encoding and disposition not sent again are removed.
+    */
+   private static Map<String, String> metadata(RecordedRequest request) {
+      Map<String, String> headers = Maps.newLinkedHashMap();
+      for (String line : request.getHeaders()) {
+         int colon = line.indexOf(':');
+         String name = line.substring(0, colon).trim().toLowerCase();
+         String value = line.substring(colon + 1).trim();
+         if (name.startsWith("x-object-meta-") || name.equals("x-object-manifest") || name.equals("x-delete-at")
+               || name.equals("x-delete-after") || name.equals("content-disposition")
+               || name.equals("content-encoding")) {
+            headers.put(name, value);
+         }
+      }
+      return headers;
+   }
+
+   /**
+    * @return {@code metadata} updated with the {@code prefix} headers of
+    *         {@code request}, as Swift does for accounts and containers.
+    */
+   private static Map<String, String> merge(Map<String, String> metadata, RecordedRequest request, String prefix) {
+      Map<String, String> merged = Maps.newLinkedHashMap(metadata);
+      String removePrefix = "x-remove-" + prefix.substring("x-".length());
+      for (String line : request.getHeaders()) {
+         int colon = line.indexOf(':');
+         String name = line.substring(0, colon).trim().toLowerCase();
+         String value = line.substring(colon + 1).trim();
+         if (name.startsWith(prefix) || name.equals("x-container-read") || name.equals("x-container-write")) {
+            merged.put(name, value);
+         } else if (name.startsWith(removePrefix)) {
+            merged.remove(prefix + name.substring(removePrefix.length()));
+         }
+      }
+      return ImmutableMap.copyOf(merged);
+   }
+
+   // helpers
+
+   private static Map<String, byte[]> untar(InputStream in) throws IOException {
+      Map<String, byte[]> entries = Maps.newLinkedHashMap();
+      byte[] header = new byte[512];
+      String longName = null;
+      while (true) {
+         if (ByteStreams.read(in, header, 0, header.length) < header.length || header[0] == 0) {
+            return entries;
+         }
+         String name = longName != null ? longName : field(header, 0, 100);
+         longName = null;
+         if (new String(header, 257, 5, Charsets.US_ASCII).equals("ustar") && header[345] != 0) {
+            name = field(header, 345, 155) + "/" + name;
+         }
+         long size = Long.parseLong(field(header, 124, 12).trim().isEmpty() ? "0" : field(header, 124, 12).trim(), 8);
+         byte[] data = new byte[(int) size];
+         ByteStreams.readFully(in, data);
+         ByteStreams.skipFully(in, (512 - size % 512) % 512);
+         char type = (char) header[156];
+         if (type == 'L') {
+            longName = field(data, 0, data.length);
+         } else if (type == '0' || type == 0) {
+            entries.put(name.replaceFirst("^\\.?/+", ""), data);
+         }
+      }
+   }
+
+   private static String field(byte[] header, int offset, int length) {
+      int end = offset;
+      while (end < offset + length && header[end] != 0) {
+         end++;
+      }
+      return new String(header, offset, end - offset, Charsets.UTF_8);
+   }
+
+   private static void addHeaders(MockResponse response, Map<String, String> headers) {
+      for (Entry<String, String> header : headers.entrySet()) {
+         response.addHeader(header.getKey(), header.getValue());
+      }
+   }
+
+   private static MockResponse json(int status, Object body) {
+      return withJson(new MockResponse().setResponseCode(status), body);
+   }
+
+   private static MockResponse withJson(MockResponse response, Object body) {
+      return response.setHeader("Content-Type", "application/json; charset=utf-8").setBody(GSON.toJson(body));
+   }
+
+   private static String lastModified(long millis) {
+      // swift lists microseconds, without a zone
+      String iso8601 = DATES.iso8601DateFormat(new Date(millis));
+      return iso8601.substring(0, iso8601.length() - 1) + "000";
+   }
+
+   private static String md5(byte[] data) {
+      return base16().lowerCase().encode(Hashing.md5().hashBytes(data).asBytes());
+   }
+
+   private static String decode(String path) {
+      return URI.create("http://standin" + path.replace(" ", "%20")).getPath();
+   }
+
+   private static Map<String, String> query(String rawQuery) {
+      Map<String, String> query = Maps.newLinkedHashMap();
+      for (String pair : Splitter.on('&').omitEmptyStrings().split(rawQuery)) {
+         int equals = pair.indexOf('=');
+         try {
+            query.put(URLDecoder.decode(equals != -1 ? pair.substring(0, equals) : pair, "UTF-8"),
+                  equals != -1 ? URLDecoder.decode(pair.substring(equals + 1), "UTF-8") : "");
+         } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+         }
+      }
+      return query;
+   }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.internal;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static org.jclouds.http.options.GetOptions.Builder.range;
+import static org.jclouds.io.Payloads.newByteArrayPayload;
+import static org.jclouds.io.Payloads.newStringPayload;
+import static org.jclouds.openstack.swift.v1.options.ExpiryOptions.Builder.deleteAt;
+import static org.jclouds.openstack.swift.v1.options.ListContainerOptions.Builder.prefix;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.jboss.shrinkwrap.api.GenericArchive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.StringAsset;
+import org.jboss.shrinkwrap.api.exporter.TarGzExporter;
+import org.jclouds.ContextBuilder;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.domain.BulkDeleteResponse;
+import org.jclouds.openstack.swift.v1.domain.ObjectList;
+import org.jclouds.openstack.swift.v1.domain.Segment;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.options.CreateContainerOptions;
+import org.jclouds.util.Strings2;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+@Test(singleThreaded = true)
+public class SwiftStandInServerTest {
+
+   private SwiftStandInServer server;
+   private SwiftApi api;
+
+   @BeforeMethod
+   public void start() throws IOException {
+      server = SwiftStandInServer.builder().regions("DFW", "ORD").build();
+      api = ContextBuilder.newBuilder("openstack-swift").endpoint(server.url())
+            .credentials(SwiftStandInServer.TENANT + ":user", "password").buildApi(SwiftApi.class);
+      api.containerApiInRegion("DFW").createIfAbsent("myContainer", new CreateContainerOptions());
+   }
+
+   @AfterMethod(alwaysRun = true)
+   public void stop() throws IOException {
+      api.close();
+      server.close();
+   }
+
+   public void objectsAndMetadata() throws Exception {
+      ObjectApi objectApi = api.objectApiInRegionForContainer("DFW", "myContainer");
+      objectApi.replace("myObject", newStringPayload("swifty"), ImmutableMap.of("color", "blue"));
+
+      SwiftObject head = objectApi.head("myObject");
+      assertEquals(head.metadata(), ImmutableMap.of("color", "blue"));
+      assertEquals(head.payload().getContentMetadata().getContentLength(), Long.valueOf(6));
+
+      SwiftObject ranged = objectApi.get("myObject", range(1, 3));
+      assertEquals(Strings2.toStringAndClose(ranged.payload().openStream()), "wif");
+
+      assertEquals(api.containerApiInRegion("DFW").get("myContainer").objectCount(), 1);
+      assertNull(api.objectApiInRegionForContainer("ORD", "myContainer").list(prefix("")), "regions are separate");
+
+      objectApi.delete("myObject");
+      assertNull(objectApi.head("myObject"));
+   }
+
+   public void objectPostReplacesAllHeaders() throws Exception {
+      ObjectApi objectApi = api.objectApiInRegionForContainer("DFW", "myContainer");
+      objectApi.replace("myObject", newStringPayload("swifty"), ImmutableMap.of("color", "blue"),
+            deleteAt(1999999999));
+      assertEquals(getOnlyElement(objectApi.head("myObject").headers().get("x-delete-at")), "1999999999");
+
+      objectApi.updateMetadata("myObject", ImmutableMap.of("size", "small"));
+      SwiftObject head = objectApi.head("myObject");
+      assertEquals(head.metadata(), ImmutableMap.of("size", "small"));
+      assertTrue(head.headers().get("x-delete-at").isEmpty(), "expiry is not kept unless sent again");
+   }
+
+   public void listingWithPrefixDelimiterAndMarker() throws Exception {
+      ObjectApi objectApi = api.objectApiInRegionForContainer("DFW", "myContainer");
+      for (String name : ImmutableList.of("a/1", "a/2", "b/1", "b/2", "c")) {
+         objectApi.replace(name, newStringPayload(name), ImmutableMap.<String, String> of());
+      }
+      ObjectList page = objectApi.list(prefix("b/").marker("b/1"));
+      assertEquals(page.size(), 1);
+      assertEquals(page.get(0).name(), "b/2");
+      assertEquals(objectApi.list(prefix("").limit(2)).size(), 2);
+   }
+
+   public void bulkDeleteAndExtractArchive() throws Exception {
+      GenericArchive files = ShrinkWrap.create(GenericArchive.class, "files.tar.gz");
+      for (int i = 0; i < 3; i++) {
+         files.add(new StringAsset("foo"), "/file" + i);
+      }
+      byte[] tarGz = ByteStreams.toByteArray(files.as(TarGzExporter.class).exportAsInputStream());
+
+      assertEquals(api.bulkApiInRegion("DFW").extractArchive("myContainer", newByteArrayPayload(tarGz), "tar.gz")
+            .created(), 3);
+      assertEquals(api.containerApiInRegion("DFW").get("myContainer").objectCount(), 3);
+
+      BulkDeleteResponse response = api.bulkApiInRegion("DFW").bulkDelete(
+            ImmutableList.of("myContainer/file0", "myContainer/file1", "myContainer/missing"));
+      assertEquals(response.deleted(), 2);
+      assertEquals(response.notFound(), 1);
+   }
+
+   public void staticLargeObjects() throws Exception {
+      ObjectApi objectApi = api.objectApiInRegionForContainer("DFW", "myContainer");
+      String etag1 = objectApi.replace("big/1", newStringPayload("abc"), ImmutableMap.<String, String> of());
+      String etag2 = objectApi.replace("big/2", newStringPayload("def"), ImmutableMap.<String, String> of());
+
+      api.staticLargeObjectApiInRegionForContainer("DFW", "myContainer").replaceManifest("big",
+            ImmutableList.of(Segment.builder().path("myContainer/big/1").etag(etag1).sizeBytes(3).build(),
+                  Segment.builder().path("myContainer/big/2").etag(etag2).sizeBytes(3).build()),
+            ImmutableMap.<String, String> of());
+
+      SwiftObject big = objectApi.get("big", range(2, 4));
+      assertEquals(Strings2.toStringAndClose(big.payload().openStream()), "cde");
+   }
+
+   public void injectsErrors() throws Exception {
+      server.failNext(1, 404);
+      assertNull(api.containerApiInRegion("DFW").get("myContainer"));
+      assertEquals(api.containerApiInRegion("DFW").get("myContainer").name(), "myContainer");
+   }
+}
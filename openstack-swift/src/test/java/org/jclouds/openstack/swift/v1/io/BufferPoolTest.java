@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.io;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+@Test
+public class BufferPoolTest {
+
+   public void reusesReleasedBuffers() throws InterruptedException {
+      BufferPool pool = new BufferPool(1024, 2);
+      byte[] first = pool.acquire();
+      byte[] second = pool.acquire();
+      assertEquals(pool.inUse(), 2);
+      pool.release(first);
+      assertSame(pool.acquire(), first);
+      pool.release(first);
+      pool.release(second);
+
+      assertEquals(pool.inUse(), 0);
+      assertEquals(pool.acquireCount(), 3);
+      assertEquals(pool.allocationCount(), 2);
+      assertEquals(pool.waitCount(), 0);
+   }
+
+   public void acquiresSeveralAtOnceOrNoneWithoutWaiting() throws InterruptedException {
+      BufferPool pool = new BufferPool(1024, 3);
+      List<byte[]> two = pool.acquire(2);
+      assertEquals(two.size(), 2);
+      byte[] third = pool.tryAcquire();
+      assertNotNull(third);
+      assertNull(pool.tryAcquire());
+      pool.release(third);
+      for (byte[] buffer : two) {
+         pool.release(buffer);
+      }
+
+      assertEquals(pool.inUse(), 0);
+      assertEquals(pool.acquireCount(), 3);
+      assertEquals(pool.waitCount(), 0);
+   }
+
+   @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "1 buffers of .* were never released")
+   public void trackLeaksFindsUnreleasedBuffers() throws InterruptedException {
+      BufferPool pool = new BufferPool(1024, 2).trackLeaks();
+      pool.release(pool.acquire());
+      pool.acquire();
+      pool.checkNoLeaks();
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "buffer not acquired from .*, or already released")
+   public void trackLeaksFindsForeignBuffers() throws InterruptedException {
+      BufferPool pool = new BufferPool(1024, 2).trackLeaks();
+      pool.release(new byte[1024]);
+   }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.io;
+
+import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+import org.testng.annotations.Test;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+@Test
+public class ParallelGzipInputStreamTest {
+
+   public void roundTripsAcrossBlocks() throws IOException {
+      byte[] source = new byte[10000];
+      Random random = new Random(0);
+      for (int i = 0; i < source.length; i++) {
+         // compressible, but not trivially
+         source[i] = (byte) ('a' + random.nextInt(4));
+      }
+      ListeningExecutorService executor = listeningDecorator(Executors.newFixedThreadPool(3));
+      try {
+         ParallelGzipInputStream compressed = new ParallelGzipInputStream(new ByteArrayInputStream(source),
+               executor, 1000, 3);
+         byte[] gzipped = ByteStreams.toByteArray(compressed);
+         assertTrue(gzipped.length < source.length, "expected compression");
+         assertEquals(ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzipped))), source);
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   public void returnsPooledBlocks() throws IOException {
+      SizeClassedBufferPool buffers = new SizeClassedBufferPool(1024, 1024, 4).trackLeaks();
+      ListeningExecutorService executor = listeningDecorator(Executors.newFixedThreadPool(3));
+      try {
+         byte[] source = new byte[10000];
+         ParallelGzipInputStream compressed = new ParallelGzipInputStream(new ByteArrayInputStream(source),
+               executor, 1000, 3, buffers);
+         ByteStreams.toByteArray(compressed);
+         compressed.close();
+         buffers.checkNoLeaks();
+         assertTrue(buffers.allocationCount() < buffers.acquireCount(), "expected reuse");
+
+         // abandoned with blocks in flight
+         compressed = new ParallelGzipInputStream(new ByteArrayInputStream(source), executor, 1000, 3, buffers);
+         compressed.read();
+         compressed.close();
+         executor.shutdown();
+         executor.awaitTermination(10, TimeUnit.SECONDS);
+         buffers.checkNoLeaks();
+      } catch (InterruptedException e) {
+         throw new AssertionError(e);
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   public void emptySourceRoundTrips() throws IOException {
+      ParallelGzipInputStream compressed = new ParallelGzipInputStream(new ByteArrayInputStream(new byte[0]),
+            sameThreadExecutor(), 1000, 2);
+      assertEquals(ByteStreams.toByteArray(new GZIPInputStream(compressed)).length, 0);
+   }
+
+   public void closeClosesSource() throws IOException {
+      final AtomicBoolean closed = new AtomicBoolean();
+      ParallelGzipInputStream compressed = new ParallelGzipInputStream(new ByteArrayInputStream(new byte[100]) {
+         @Override
+         public void close() {
+            closed.set(true);
+         }
+      }, sameThreadExecutor(), 10, 2);
+      compressed.read();
+      compressed.close();
+      assertTrue(closed.get());
+   }
+}
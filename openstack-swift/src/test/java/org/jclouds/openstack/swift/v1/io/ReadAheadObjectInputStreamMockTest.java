@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.io;
+
+import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.jclouds.Constants.PROPERTY_MAX_RETRIES;
+import static org.jclouds.io.Payloads.newStringPayload;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.internal.SwiftStandInServer;
+import org.jclouds.openstack.swift.v1.options.CreateContainerOptions;
+import org.jclouds.openstack.v2_0.internal.BaseOpenStackMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+@Test
+public class ReadAheadObjectInputStreamMockTest extends BaseOpenStackMockTest<SwiftApi> {
+
+   static MockResponse head(int length) {
+      return new MockResponse() //
+            .addHeader("Last-Modified", "Fri, 12 Jun 2010 13:40:18 GMT") //
+            .addHeader("ETag", "8a964ee2a5e88be344f36c22562a6486") //
+            .setBody(new byte[length]);
+   }
+
+   static MockResponse chunk(String body) {
+      return new MockResponse().setResponseCode(206) //
+            .addHeader("Last-Modified", "Fri, 12 Jun 2010 13:40:18 GMT") //
+            .addHeader("ETag", "8a964ee2a5e88be344f36c22562a6486") //
+            .setBody(body);
+   }
+
+   public void readsChunksInOrder() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(head(10));
+      server.enqueue(chunk("abcd"));
+      server.enqueue(chunk("efgh"));
+      server.enqueue(chunk("ij"));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         ObjectApi objectApi = api.objectApiInRegionForContainer("DFW", "myContainer");
+         BufferPool buffers = new BufferPool(4, 3);
+         ReadAheadObjectInputStream in = ReadAheadObjectInputStream.open(objectApi, "myObject",
+               sameThreadExecutor(), buffers, 2);
+         assertEquals(in.length(), 10);
+         assertEquals(new String(ByteStreams.toByteArray(in)), "abcdefghij");
+         in.close();
+         assertEquals(buffers.inUse(), 0);
+
+         assertEquals(server.getRequestCount(), 5);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getMethod(), "HEAD");
+         String[] ranges = { "bytes=0-3", "bytes=4-7", "bytes=8-9" };
+         for (String range : ranges) {
+            RecordedRequest get = server.takeRequest();
+            assertEquals(get.getRequestLine(),
+                  "GET /v1/MossoCloudFS_5bcf396e-39dd-45ff-93a1-712b9aba90a9/myContainer/myObject HTTP/1.1");
+            assertEquals(get.getHeader("Range"), range);
+            assertEquals(get.getHeader("If-Match"), "\"8a964ee2a5e88be344f36c22562a6486\"");
+         }
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void refetchesTruncatedChunk() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(head(4));
+      server.enqueue(chunk("ab"));
+      server.enqueue(chunk("abcd"));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         ObjectApi objectApi = api.objectApiInRegionForContainer("DFW", "myContainer");
+         ReadAheadObjectInputStream in = ReadAheadObjectInputStream.open(objectApi, "myObject",
+               sameThreadExecutor(), new BufferPool(4, 2), 1);
+         assertEquals(new String(ByteStreams.toByteArray(in)), "abcd");
+         in.close();
+
+         assertEquals(server.getRequestCount(), 4);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void failedChunkFailsLaterReads() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(head(8));
+      for (int i = 0; i < ReadAheadObjectInputStream.MAX_ATTEMPTS; i++) {
+         server.enqueue(chunk("ab"));
+      }
+      server.enqueue(chunk("efgh"));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         ObjectApi objectApi = api.objectApiInRegionForContainer("DFW", "myContainer");
+         BufferPool buffers = new BufferPool(4, 2);
+         ReadAheadObjectInputStream in = ReadAheadObjectInputStream.open(objectApi, "myObject",
+               sameThreadExecutor(), buffers, 1);
+         IOException failure = null;
+         try {
+            in.read();
+            fail("expected the first chunk to fail");
+         } catch (IOException e) {
+            failure = e;
+         }
+         // the lost chunk is not skipped
+         try {
+            in.read(new byte[4], 0, 4);
+            fail("expected the failure again");
+         } catch (IOException e) {
+            assertSame(e, failure);
+         }
+         try {
+            in.available();
+            fail("expected the failure again");
+         } catch (IOException e) {
+            assertSame(e, failure);
+         }
+         in.close();
+         assertEquals(buffers.inUse(), 0);
+
+         assertEquals(server.getRequestCount(), 2 + ReadAheadObjectInputStream.MAX_ATTEMPTS);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void retriesServerErrorOfChunk() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(head(4));
+      server.enqueue(new MockResponse().setResponseCode(503));
+      server.enqueue(chunk("abcd"));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift", noRetries());
+         ObjectApi objectApi = api.objectApiInRegionForContainer("DFW", "myContainer");
+         ReadAheadObjectInputStream in = ReadAheadObjectInputStream.open(objectApi, "myObject",
+               sameThreadExecutor(), new BufferPool(4, 2), 1);
+         assertEquals(new String(ByteStreams.toByteArray(in)), "abcd");
+         in.close();
+
+         assertEquals(server.getRequestCount(), 4);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void doesNotRetryChangedObject() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(head(4));
+      server.enqueue(new MockResponse().setResponseCode(412));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift", noRetries());
+         ObjectApi objectApi = api.objectApiInRegionForContainer("DFW", "myContainer");
+         ReadAheadObjectInputStream in = ReadAheadObjectInputStream.open(objectApi, "myObject",
+               sameThreadExecutor(), new BufferPool(4, 2), 1);
+         try {
+            in.read();
+            fail("expected 412");
+         } catch (IOException e) {
+            assertEquals(server.getRequestCount(), 3);
+         } finally {
+            in.close();
+         }
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void notFound() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(404));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         ObjectApi objectApi = api.objectApiInRegionForContainer("DFW", "myContainer");
+         assertNull(ReadAheadObjectInputStream.open(objectApi, "myObject", sameThreadExecutor(),
+               new BufferPool(4, 2), 1));
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class)
+   public void rejectsReadAheadBeyondPool() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(head(10));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         ObjectApi objectApi = api.objectApiInRegionForContainer("DFW", "myContainer");
+         ReadAheadObjectInputStream.open(objectApi, "myObject", sameThreadExecutor(), new BufferPool(4, 2), 3);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void streamsShareASmallPool() throws Exception {
+      SwiftStandInServer server = SwiftStandInServer.builder().latency(2, 2, MILLISECONDS).build();
+      SwiftApi api = ContextBuilder.newBuilder("openstack-swift").endpoint(server.url())
+            .credentials(SwiftStandInServer.TENANT + ":user", "password").buildApi(SwiftApi.class);
+      // out of order fetches, as from a busy executor
+      final ListeningExecutorService fetches = listeningDecorator(newFixedThreadPool(8));
+      ExecutorService readers = newFixedThreadPool(4);
+      try {
+         api.containerApiInRegion("DFW").createIfAbsent("myContainer", new CreateContainerOptions());
+         final ObjectApi objectApi = api.objectApiInRegionForContainer("DFW", "myContainer");
+         objectApi.replace("myObject", newStringPayload("abcdefghijklmnopqrstuvwxyz"),
+               ImmutableMap.<String, String> of());
+         final BufferPool buffers = new BufferPool(4, 3);
+         List<Future<String>> reads = Lists.newArrayList();
+         for (int i = 0; i < 4; i++) {
+            reads.add(readers.submit(new Callable<String>() {
+               @Override
+               public String call() throws IOException {
+                  InputStream in = ReadAheadObjectInputStream.open(objectApi, "myObject", fetches, buffers, 3);
+                  try {
+                     return new String(ByteStreams.toByteArray(in));
+                  } finally {
+                     in.close();
+                  }
+               }
+            }));
+         }
+         for (Future<String> read : reads) {
+            assertEquals(read.get(30, SECONDS), "abcdefghijklmnopqrstuvwxyz");
+         }
+         assertEquals(buffers.inUse(), 0);
+      } finally {
+         readers.shutdownNow();
+         fetches.shutdownNow();
+         api.close();
+         server.close();
+      }
+   }
+
+   private static Properties noRetries() {
+      Properties overrides = new Properties();
+      overrides.setProperty(PROPERTY_MAX_RETRIES, "0");
+      return overrides;
+   }
+}
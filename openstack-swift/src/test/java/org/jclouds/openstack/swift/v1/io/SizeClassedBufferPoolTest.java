@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.io;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import org.testng.annotations.Test;
+
+@Test
+public class SizeClassedBufferPoolTest {
+
+   public void roundsUpToSizeClass() {
+      SizeClassedBufferPool pool = new SizeClassedBufferPool(1024, 8192, 2);
+      assertEquals(pool.acquire(0).length, 1024);
+      assertEquals(pool.acquire(1024).length, 1024);
+      assertEquals(pool.acquire(1025).length, 2048);
+      assertEquals(pool.acquire(8192).length, 8192);
+      // larger than the largest class is exact, and never pooled
+      assertEquals(pool.acquire(10000).length, 10000);
+   }
+
+   public void reusesReleasedArrays() {
+      SizeClassedBufferPool pool = new SizeClassedBufferPool(1024, 8192, 2);
+      byte[] buffer = pool.acquire(3000);
+      pool.release(buffer);
+      assertEquals(pool.retainedBytes(), 4096);
+
+      assertSame(pool.acquire(4000), buffer);
+      assertEquals(pool.retainedBytes(), 0);
+      assertEquals(pool.acquireCount(), 2);
+      assertEquals(pool.allocationCount(), 1);
+   }
+
+   public void discardsBeyondRetainedLimit() {
+      SizeClassedBufferPool pool = new SizeClassedBufferPool(1024, 8192, 1);
+      byte[] first = pool.acquire(1024);
+      byte[] second = pool.acquire(1024);
+      assertNotSame(first, second);
+      pool.release(first);
+      pool.release(second);
+      pool.release(new byte[10000]);
+
+      assertEquals(pool.retainedBytes(), 1024);
+      assertEquals(pool.discardCount(), 2);
+   }
+
+   @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "1 buffers of .* were never released")
+   public void trackLeaksFindsUnreleasedArrays() {
+      SizeClassedBufferPool pool = new SizeClassedBufferPool(1024, 8192, 2).trackLeaks();
+      pool.release(pool.acquire(10));
+      pool.acquire(10);
+      pool.checkNoLeaks();
+   }
+
+   @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "buffer not acquired from .*, or already released")
+   public void trackLeaksFindsDoubleReleases() {
+      SizeClassedBufferPool pool = new SizeClassedBufferPool(1024, 8192, 2).trackLeaks();
+      byte[] buffer = pool.acquire(10);
+      pool.release(buffer);
+      pool.release(buffer);
+   }
+}
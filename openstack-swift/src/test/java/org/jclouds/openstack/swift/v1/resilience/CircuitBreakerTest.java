@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.resilience;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.jclouds.openstack.swift.v1.resilience.CircuitBreaker.State;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Ticker;
+
+@Test
+public class CircuitBreakerTest {
+
+   private static class ManualTicker extends Ticker {
+      private long nanos;
+
+      @Override
+      public long read() {
+         return nanos;
+      }
+   }
+
+   public void opensAfterConsecutiveFailuresAndClosesAfterTrial() {
+      ManualTicker ticker = new ManualTicker();
+      CircuitBreaker breaker = new CircuitBreaker("DFW", 2, 30, SECONDS, ticker);
+
+      assertTrue(breaker.tryAcquire());
+      breaker.onFailure();
+      assertTrue(breaker.tryAcquire());
+      breaker.onSuccess();
+      assertTrue(breaker.tryAcquire());
+      breaker.onFailure();
+      assertEquals(breaker.state(), State.CLOSED);
+      assertTrue(breaker.tryAcquire());
+      breaker.onFailure();
+      assertEquals(breaker.state(), State.OPEN);
+      assertFalse(breaker.tryAcquire());
+
+      ticker.nanos = SECONDS.toNanos(30);
+      assertEquals(breaker.state(), State.HALF_OPEN);
+      assertTrue(breaker.tryAcquire());
+      assertFalse(breaker.tryAcquire(), "only one trial call at a time");
+      breaker.onSuccess();
+      assertEquals(breaker.state(), State.CLOSED);
+      assertEquals(breaker.rejected(), 2);
+      assertEquals(breaker.failures(), 3);
+   }
+
+   public void failedTrialReopens() {
+      ManualTicker ticker = new ManualTicker();
+      CircuitBreaker breaker = new CircuitBreaker("DFW", 1, 30, SECONDS, ticker);
+
+      assertTrue(breaker.tryAcquire());
+      breaker.onFailure();
+      ticker.nanos = SECONDS.toNanos(31);
+      assertTrue(breaker.tryAcquire());
+      breaker.onFailure();
+      assertEquals(breaker.state(), State.OPEN);
+      assertFalse(breaker.tryAcquire());
+   }
+}
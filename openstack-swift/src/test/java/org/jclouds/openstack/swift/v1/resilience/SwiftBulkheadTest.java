@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.resilience;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.net.URI;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.jclouds.http.options.GetOptions;
+import org.jclouds.io.Payloads;
+import org.jclouds.openstack.swift.v1.domain.ConditionalObject;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.features.BulkApi;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.resilience.SwiftApiInterceptors.Operation;
+import org.jclouds.util.Strings2;
+import org.testng.annotations.Test;
+
+@Test
+public class SwiftBulkheadTest {
+
+   private final Operation getObject = operation(ObjectApi.class, "get", String.class, GetOptions.class);
+   private final Operation getObjectConditionally = operation(ObjectApi.class, "getConditionally", String.class,
+         GetOptions.class);
+   private final Operation bulkDelete = operation(BulkApi.class, "bulkDelete", Iterable.class);
+
+   public void operationClassesHaveSeparatePermitsPerRegion() throws Exception {
+      final SwiftBulkhead bulkhead = SwiftBulkhead.builder().limits("GetObject=1,BulkDelete=1")
+            .queueTimeout(50, MILLISECONDS).build();
+      final CountDownLatch started = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try {
+         Future<Object> holding = executor.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+               return bulkhead.intercept("DFW", getObject, new Callable<Object>() {
+                  @Override
+                  public Object call() throws Exception {
+                     started.countDown();
+                     release.await();
+                     return "held";
+                  }
+               });
+            }
+         });
+         assertTrue(started.await(5, SECONDS));
+
+         try {
+            bulkhead.intercept("DFW", getObject, returning("queued"));
+            fail("expected the only GetObject permit to be held");
+         } catch (RejectedExecutionException expected) {
+         }
+         assertEquals(bulkhead.intercept("DFW", bulkDelete, returning("other class")), "other class");
+         assertEquals(bulkhead.intercept("ORD", getObject, returning("other region")), "other region");
+
+         release.countDown();
+         assertEquals(holding.get(5, SECONDS), "held");
+         assertEquals(bulkhead.limiter("DFW", "GetObject").rejected(), 1);
+         assertEquals(bulkhead.limiter("DFW", "GetObject").inFlight(), 0);
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   public void getObjectHoldsItsPermitUntilThePayloadIsRead() throws Exception {
+      SwiftBulkhead bulkhead = SwiftBulkhead.builder().limit("GetObject", 1).queueTimeout(0, MILLISECONDS).build();
+      SwiftObject object = (SwiftObject) bulkhead.intercept("DFW", getObject, returning(object("abc")));
+      ConcurrencyLimiter limiter = bulkhead.limiter("DFW", "GetObject");
+      assertEquals(limiter.inFlight(), 1);
+      try {
+         bulkhead.intercept("DFW", getObject, returning(object("queued")));
+         fail("expected the permit to be held while the payload streams");
+      } catch (RejectedExecutionException expected) {
+      }
+
+      assertEquals(Strings2.toStringAndClose(object.payload().getInput()), "abc");
+      assertEquals(limiter.inFlight(), 0);
+
+      // closing without reading releases too, and only once
+      object = (SwiftObject) bulkhead.intercept("DFW", getObject, returning(object("abc")));
+      object.payload().getInput().close();
+      object.payload().getInput().close();
+      assertEquals(limiter.inFlight(), 0);
+   }
+
+   public void conditionalGetHoldsItsPermitOnlyWhenModified() throws Exception {
+      SwiftBulkhead bulkhead = SwiftBulkhead.builder().limit("GetObject", 1).build();
+      ConcurrencyLimiter limiter = bulkhead.limiter("DFW", "GetObject");
+      bulkhead.intercept("DFW", getObjectConditionally, returning(ConditionalObject.notModified("etag", null)));
+      assertEquals(limiter.inFlight(), 0);
+
+      ConditionalObject modified = (ConditionalObject) bulkhead.intercept("DFW", getObjectConditionally,
+            returning(ConditionalObject.modified(object("abc"))));
+      assertEquals(limiter.inFlight(), 1);
+      assertEquals(Strings2.toStringAndClose(modified.object().get().payload().getInput()), "abc");
+      assertEquals(limiter.inFlight(), 0);
+   }
+
+   public void operationClassesShareLimits() {
+      SwiftBulkhead bulkhead = SwiftBulkhead.builder().operationClass("batch", "BulkDelete", "ListObjects")
+            .limit("batch", 2).build();
+      assertTrue(bulkhead.limiter("DFW", "BulkDelete") == bulkhead.limiter("DFW", "ListObjects"));
+      assertNull(bulkhead.limiter("DFW", "GetObject"));
+   }
+
+   public void limitsShrinkWhenSlowAndGrowWhenFast() throws Exception {
+      ConcurrencyLimiter limiter = new ConcurrencyLimiter("DFW/GetObject", 10, 1, 100, MILLISECONDS);
+      for (int i = 0; i < 5; i++) {
+         limiter.acquire(0, MILLISECONDS);
+      }
+      limiter.release(MILLISECONDS.toNanos(500), false);
+      assertEquals(limiter.limit(), 9);
+      limiter.release(MILLISECONDS.toNanos(1), true);
+      assertEquals(limiter.limit(), 8);
+
+      // keep the limit in use, as idle permits are no evidence it can grow
+      limiter.acquire(0, MILLISECONDS);
+      limiter.acquire(0, MILLISECONDS);
+      for (int i = 0; i < 30; i++) {
+         limiter.acquire(0, MILLISECONDS);
+         limiter.release(MILLISECONDS.toNanos(1), false);
+      }
+      assertEquals(limiter.limit(), 10);
+   }
+
+   private static SwiftObject object(String content) {
+      return SwiftObject.builder().name("myObject").uri(URI.create("http://storage/myContainer/myObject"))
+            .etag("etag").lastModified(new Date()).payload(Payloads.newStringPayload(content)).build();
+   }
+
+   private static Callable<Object> returning(final Object value) {
+      return new Callable<Object>() {
+         @Override
+         public Object call() {
+            return value;
+         }
+      };
+   }
+
+   private static Operation operation(Class<?> api, String method, Class<?>... parameterTypes) {
+      try {
+         return Operation.of(api.getMethod(method, parameterTypes));
+      } catch (NoSuchMethodException e) {
+         throw new AssertionError(e);
+      }
+   }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.resilience;
+
+import static org.jclouds.Constants.PROPERTY_MAX_RETRIES;
+import static org.jclouds.io.Payloads.newStringPayload;
+import static org.jclouds.openstack.swift.v1.config.SwiftProperties.RETRY_MAX_ATTEMPTS;
+import static org.jclouds.openstack.swift.v1.features.ObjectApiMockTest.objectResponse;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.blobstore.RegionScopedBlobStoreContext;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.internal.SwiftStandInServer;
+import org.jclouds.openstack.swift.v1.resilience.CircuitBreaker.State;
+import org.jclouds.openstack.v2_0.internal.BaseOpenStackMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+@Test
+public class SwiftResilienceMockTest extends BaseOpenStackMockTest<SwiftApi> {
+
+   private final List<Long> sleeps = Lists.newArrayList();
+
+   private final SwiftResilience.Sleeper recordingSleeper = new SwiftResilience.Sleeper() {
+      @Override
+      public void sleep(long millis) {
+         sleeps.add(millis);
+      }
+   };
+
+   public void retriesIdempotentCallHonouringRetryAfter() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(503).addHeader("Retry-After", "2"));
+      server.enqueue(objectResponse());
+
+      try {
+         sleeps.clear();
+         SwiftResilience resilience = SwiftResilience.builder().sleeper(recordingSleeper).build();
+         SwiftObject object = resilience.wrap(api(server.getUrl("/").toString(), "openstack-swift", noRetries()))
+               .objectApiInRegionForContainer("DFW", "myContainer").head("myObject");
+
+         assertEquals(object.name(), "myObject");
+         assertEquals(sleeps, ImmutableList.of(2000l));
+         assertEquals(resilience.circuitBreaker("DFW").retries(), 1);
+         assertEquals(resilience.circuitBreaker("DFW").state(), State.CLOSED);
+
+         assertEquals(server.getRequestCount(), 3);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         for (int i = 0; i < 2; i++) {
+            assertEquals(server.takeRequest().getRequestLine(),
+                  "HEAD /v1/MossoCloudFS_5bcf396e-39dd-45ff-93a1-712b9aba90a9/myContainer/myObject HTTP/1.1");
+         }
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void doesNotRetryUploads() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(429));
+
+      try {
+         sleeps.clear();
+         SwiftResilience resilience = SwiftResilience.builder().sleeper(recordingSleeper).build();
+         ObjectApi objectApi = resilience.wrap(api(server.getUrl("/").toString(), "openstack-swift", noRetries()))
+               .objectApiInRegionForContainer("DFW", "myContainer");
+         try {
+            objectApi.replace("myObject", newStringPayload("swifty"), ImmutableMap.<String, String> of());
+            fail("expected 429");
+         } catch (HttpResponseException e) {
+            assertEquals(e.getResponse().getStatusCode(), 429);
+         }
+         assertEquals(sleeps, ImmutableList.of());
+         assertEquals(server.getRequestCount(), 2);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void openBreakerFailsFast() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(503));
+      server.enqueue(new MockResponse().setResponseCode(503));
+
+      try {
+         SwiftResilience resilience = SwiftResilience.builder().sleeper(recordingSleeper).maxAttempts(2)
+               .failureThreshold(2).build();
+         ObjectApi objectApi = resilience.wrap(api(server.getUrl("/").toString(), "openstack-swift", noRetries()))
+               .objectApiInRegionForContainer("DFW", "myContainer");
+         try {
+            objectApi.head("myObject");
+            fail("expected 503");
+         } catch (HttpResponseException e) {
+            assertEquals(e.getResponse().getStatusCode(), 503);
+         }
+         try {
+            objectApi.head("myObject");
+            fail("expected open breaker");
+         } catch (CircuitBreakerOpenException e) {
+            assertEquals(e.getRegion(), "DFW");
+         }
+         CircuitBreaker breaker = resilience.circuitBreaker("DFW");
+         assertEquals(breaker.state(), State.OPEN);
+         assertEquals(breaker.failures(), 2);
+         assertEquals(breaker.rejected(), 1);
+         assertEquals(resilience.availableRegions(ImmutableList.of("DFW", "ORD")), ImmutableList.of("ORD"));
+         assertFalse(breaker.isAvailable());
+
+         assertEquals(server.getRequestCount(), 3);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void blobStoreRetriesWhenEnabled() throws Exception {
+      SwiftStandInServer server = SwiftStandInServer.builder().build();
+      Properties overrides = noRetries();
+      overrides.setProperty(RETRY_MAX_ATTEMPTS, "3");
+      RegionScopedBlobStoreContext context = ContextBuilder.newBuilder("openstack-swift").endpoint(server.url())
+            .credentials(SwiftStandInServer.TENANT + ":user", "password").overrides(overrides)
+            .buildView(RegionScopedBlobStoreContext.class);
+      try {
+         BlobStore blobStore = context.blobStoreInRegion("DFW");
+         blobStore.createContainerInLocation(null, "myContainer");
+         blobStore.putBlob("myContainer", blobStore.blobBuilder("myObject").payload("swifty").build());
+         long requests = server.requestCount();
+
+         server.failNext(1, 503);
+         assertEquals(blobStore.blobMetadata("myContainer", "myObject").getName(), "myObject");
+         assertEquals(server.requestCount(), requests + 2);
+         assertEquals(context.availableRegions(), ImmutableList.of("DFW"));
+      } finally {
+         context.close();
+         server.close();
+      }
+   }
+
+   private static Properties noRetries() {
+      Properties overrides = new Properties();
+      overrides.setProperty(PROPERTY_MAX_RETRIES, "0");
+      return overrides;
+   }
+}
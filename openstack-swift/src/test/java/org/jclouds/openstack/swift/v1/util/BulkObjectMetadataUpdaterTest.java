@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.util;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
+import static java.lang.String.format;
+import static org.jclouds.io.Payloads.newStringPayload;
+import static org.jclouds.openstack.swift.v1.options.ExpiryOptions.Builder.deleteAt;
+import static org.jclouds.openstack.swift.v1.options.ExpiryOptions.Builder.keepForever;
+import static org.jclouds.openstack.swift.v1.util.BulkObjectMetadataUpdater.put;
+import static org.jclouds.openstack.swift.v1.util.BulkObjectMetadataUpdater.remove;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.http.options.GetOptions;
+import org.jclouds.io.Payload;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.internal.SwiftStandInServer;
+import org.jclouds.openstack.swift.v1.options.CreateContainerOptions;
+import org.jclouds.openstack.swift.v1.util.BulkObjectMetadataUpdater.Checkpointer;
+import org.jclouds.openstack.swift.v1.util.BulkObjectMetadataUpdater.Report;
+import org.jclouds.util.Strings2;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+@Test(singleThreaded = true)
+public class BulkObjectMetadataUpdaterTest {
+
+   private SwiftStandInServer server;
+   private SwiftApi api;
+   private ObjectApi objectApi;
+   private ListeningExecutorService executor;
+
+   @BeforeMethod
+   public void start() throws IOException {
+      server = SwiftStandInServer.builder().build();
+      api = ContextBuilder.newBuilder("openstack-swift").endpoint(server.url())
+            .credentials(SwiftStandInServer.TENANT + ":user", "password").buildApi(SwiftApi.class);
+      executor = listeningDecorator(Executors.newFixedThreadPool(4));
+      api.containerApiInRegion("DFW").createIfAbsent("myContainer", new CreateContainerOptions());
+      objectApi = api.objectApiInRegionForContainer("DFW", "myContainer");
+      for (int i = 0; i < 10; i++) {
+         objectApi.replace(format("logs/%02d", i), newStringPayload("log"), ImmutableMap.of("color", "blue"));
+      }
+      objectApi.replace("other", newStringPayload("other"), ImmutableMap.of("color", "blue"));
+   }
+
+   @AfterMethod(alwaysRun = true)
+   public void stop() throws IOException {
+      executor.shutdownNow();
+      api.close();
+      server.close();
+   }
+
+   public void updatesPrefixKeepingOtherMetadata() throws Exception {
+      final List<String> checkpoints = Lists.newArrayList();
+      Report report = BulkObjectMetadataUpdater.builder(objectApi, executor) //
+            .parallelism(3) //
+            .postsPerSecond(1000) //
+            .checkpointer(new Checkpointer() {
+               @Override
+               public void checkpoint(String lastName) {
+                  checkpoints.add(lastName);
+               }
+            }, 4).build() //
+            .updateByPrefix("logs/", put(ImmutableMap.of("Retention", "gold")));
+
+      assertEquals(report.updated(), 10);
+      assertEquals(report.failures().size(), 0);
+      assertEquals(report.lastName(), "logs/09");
+      assertEquals(checkpoints, ImmutableList.of("logs/03", "logs/07", "logs/09"));
+      for (int i = 0; i < 10; i++) {
+         assertEquals(objectApi.head(format("logs/%02d", i)).metadata(),
+               ImmutableMap.of("color", "blue", "retention", "gold"));
+      }
+      assertEquals(objectApi.head("other").metadata(), ImmutableMap.of("color", "blue"));
+
+      // running again changes nothing
+      report = BulkObjectMetadataUpdater.builder(objectApi, executor).build() //
+            .updateByPrefix("logs/", put(ImmutableMap.of("Retention", "gold")));
+      assertEquals(report.updated(), 0);
+      assertEquals(report.unchanged(), 10);
+   }
+
+   public void updateKeepsExpiryManifestAndContentHeaders() throws Exception {
+      Payload expiring = newStringPayload("expiring");
+      expiring.getContentMetadata().setContentEncoding("identity");
+      expiring.getContentMetadata().setContentDisposition("attachment; filename=expiring.txt");
+      objectApi.replace("expiring", expiring, ImmutableMap.of("color", "blue"), deleteAt(1999999999));
+      objectApi.replace("segments/0", newStringPayload("abc"), ImmutableMap.<String, String> of());
+      objectApi.replace("segments/1", newStringPayload("def"), ImmutableMap.<String, String> of());
+      api.dynamicLargeObjectApiInRegionForContainer("DFW", "myContainer").replaceManifest("manifest",
+            "myContainer/segments/", ImmutableMap.of("color", "blue"));
+
+      Report report = BulkObjectMetadataUpdater.builder(objectApi, executor).build() //
+            .update(ImmutableList.of("expiring", "manifest").iterator(), put(ImmutableMap.of("Retention", "gold")));
+      assertEquals(report.updated(), 2);
+
+      SwiftObject object = objectApi.head("expiring");
+      assertEquals(object.metadata(), ImmutableMap.of("color", "blue", "retention", "gold"));
+      assertEquals(getOnlyElement(object.headers().get("x-delete-at")), "1999999999");
+      assertEquals(object.payload().getContentMetadata().getContentEncoding(), "identity");
+      assertEquals(object.payload().getContentMetadata().getContentDisposition(), "attachment; filename=expiring.txt");
+
+      SwiftObject manifest = objectApi.get("manifest", GetOptions.NONE);
+      assertEquals(manifest.metadata(), ImmutableMap.of("color", "blue", "retention", "gold"));
+      assertEquals(getOnlyElement(manifest.headers().get("x-object-manifest")), "myContainer/segments/");
+      assertEquals(Strings2.toStringAndClose(manifest.payload().getInput()), "abcdef");
+   }
+
+   public void expiresPrefixKeepingMetadata() throws Exception {
+      Report report = BulkObjectMetadataUpdater.builder(objectApi, executor).parallelism(3).build() //
+            .expireByPrefix("logs/", deleteAt(1999999999));
+
+      assertEquals(report.updated(), 10);
+      for (int i = 0; i < 10; i++) {
+         SwiftObject object = objectApi.head(format("logs/%02d", i));
+         assertEquals(getOnlyElement(object.headers().get("x-delete-at")), "1999999999");
+         assertEquals(object.metadata(), ImmutableMap.of("color", "blue"));
+      }
+      assertTrue(objectApi.head("other").headers().get("x-delete-at").isEmpty());
+
+      // objects already expiring then are not posted again
+      report = BulkObjectMetadataUpdater.builder(objectApi, executor).build() //
+            .expireByPrefix("logs/", deleteAt(1999999999));
+      assertEquals(report.unchanged(), 10);
+
+      report = BulkObjectMetadataUpdater.builder(objectApi, executor).build() //
+            .expire(ImmutableList.of("logs/00", "other").iterator(), keepForever());
+      assertEquals(report.updated(), 1);
+      assertEquals(report.unchanged(), 1);
+      assertTrue(objectApi.head("logs/00").headers().get("x-delete-at").isEmpty());
+      assertEquals(objectApi.head("logs/00").metadata(), ImmutableMap.of("color", "blue"));
+   }
+
+   public void expireKeepsManifestAndContentHeaders() throws Exception {
+      objectApi.replace("segments/0", newStringPayload("abc"), ImmutableMap.<String, String> of());
+      api.dynamicLargeObjectApiInRegionForContainer("DFW", "myContainer").replaceManifest("manifest",
+            "myContainer/segments/", ImmutableMap.of("color", "blue"));
+      Payload encoded = newStringPayload("encoded");
+      encoded.getContentMetadata().setContentEncoding("identity");
+      encoded.getContentMetadata().setContentDisposition("inline");
+      objectApi.replace("encoded", encoded, ImmutableMap.<String, String> of());
+
+      Report report = BulkObjectMetadataUpdater.builder(objectApi, executor).build() //
+            .expire(ImmutableList.of("manifest", "encoded").iterator(), deleteAt(1999999999));
+      assertEquals(report.updated(), 2);
+
+      SwiftObject manifest = objectApi.get("manifest", GetOptions.NONE);
+      assertEquals(getOnlyElement(manifest.headers().get("x-delete-at")), "1999999999");
+      assertEquals(getOnlyElement(manifest.headers().get("x-object-manifest")), "myContainer/segments/");
+      assertEquals(manifest.metadata(), ImmutableMap.of("color", "blue"));
+      assertEquals(Strings2.toStringAndClose(manifest.payload().getInput()), "abc");
+
+      SwiftObject object = objectApi.head("encoded");
+      assertEquals(getOnlyElement(object.headers().get("x-delete-at")), "1999999999");
+      assertEquals(object.payload().getContentMetadata().getContentEncoding(), "identity");
+      assertEquals(object.payload().getContentMetadata().getContentDisposition(), "inline");
+   }
+
+   public void resumesAfterCheckpoint() throws Exception {
+      Report report = BulkObjectMetadataUpdater.builder(objectApi, executor) //
+            .resumeAfter("logs/04").build() //
+            .updateByPrefix("logs/", remove("color"));
+
+      assertEquals(report.updated(), 5);
+      assertEquals(objectApi.head("logs/04").metadata(), ImmutableMap.of("color", "blue"));
+      assertEquals(objectApi.head("logs/05").metadata(), ImmutableMap.of());
+   }
+
+   public void reportsFailuresPerObject() throws Exception {
+      BulkObjectMetadataUpdater updater = BulkObjectMetadataUpdater.builder(objectApi, executor) //
+            .parallelism(1).build();
+      server.failNext(1, 422);
+      Report report = updater.update(ImmutableList.of("logs/00", "missing", "logs/01").iterator(),
+            put(ImmutableMap.of("retention", "gold")));
+
+      assertEquals(report.failures().keySet(), ImmutableSet.of("logs/00"));
+      assertEquals(report.notFound(), 1);
+      assertEquals(report.updated(), 1);
+      assertEquals(report.lastName(), "logs/01");
+   }
+}
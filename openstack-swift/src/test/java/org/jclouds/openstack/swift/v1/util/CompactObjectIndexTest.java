@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.Date;
+import java.util.List;
+
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+@Test
+public class CompactObjectIndexTest {
+
+   public void appendsPagesListedInOrder() {
+      CompactObjectIndex index = new CompactObjectIndex();
+      List<SwiftObject> page = Lists.newArrayList();
+      for (int i = 0; i < 100; i++) {
+         page.add(object(String.format("logs/%03d", i), i));
+      }
+      index.merge(page.subList(0, 50));
+      index.merge(page.subList(50, 100));
+
+      assertEquals(index.size(), 100);
+      assertEquals(index.indexOf("logs/042"), 42);
+      assertEquals(index.name(42), "logs/042");
+      assertEquals(index.size(42), 42);
+      assertEquals(index.etag(42), "4281c348eaf83e70ddce0e07221c3d28");
+      assertEquals(index.lastModified(42), new Date(42000));
+      assertEquals(index.indexOf("logs/0420"), -44);
+   }
+
+   public void answersPrefixRanges() {
+      CompactObjectIndex index = new CompactObjectIndex();
+      index.merge(ImmutableList.of(object("a", 1), object("b/1", 2), object("b/2", 3), object("b0", 4),
+            object("c", 5)));
+
+      int[] range = index.prefixRange("b/");
+      assertEquals(range[0], 1);
+      assertEquals(range[1], 3);
+      assertEquals(index.names("b"), ImmutableList.of("b/1", "b/2", "b0"));
+      assertEquals(index.bytes("b/"), 5);
+      assertEquals(index.names("d"), ImmutableList.of());
+      assertEquals(index.names(""), ImmutableList.of("a", "b/1", "b/2", "b0", "c"));
+   }
+
+   public void mergesPagesOutOfOrder() {
+      CompactObjectIndex index = new CompactObjectIndex();
+      index.merge(ImmutableList.of(object("b", 1), object("d", 2)));
+      index.merge(ImmutableList.of(object("c", 3), object("a", 4), object("d", 5)));
+
+      assertEquals(index.names(""), ImmutableList.of("a", "b", "c", "d"));
+      assertEquals(index.size(index.indexOf("d")), 5);
+   }
+
+   public void replacesRangeRemovingAbsentEntries() {
+      CompactObjectIndex index = new CompactObjectIndex();
+      index.merge(ImmutableList.of(object("a", 1), object("b", 2), object("c", 3), object("d", 4)));
+      // a page listed after marker "a", ending with "c", no longer has "b"
+      index.replaceRange("a", "c", ImmutableList.of(object("c", 30)));
+
+      assertEquals(index.names(""), ImmutableList.of("a", "c", "d"));
+      assertEquals(index.size(index.indexOf("c")), 30);
+      assertFalse(index.contains("b"));
+      assertTrue(index.contains("d"));
+   }
+
+   public void spreadsNamesAcrossBlocks() {
+      CompactObjectIndex index = new CompactObjectIndex();
+      String padding = Strings.repeat("x", 996);
+      List<SwiftObject> page = Lists.newArrayList();
+      // over 2MB of names, none of which may span two blocks
+      for (int i = 0; i < 2100; i += 2) {
+         page.add(object(String.format("%04d", i) + padding, i));
+      }
+      index.merge(page);
+      index.merge(ImmutableList.of(object("1049" + padding, 1049)));
+
+      assertEquals(index.size(), 1051);
+      assertEquals(index.name(1048), "2094" + padding);
+      assertEquals(index.indexOf("1049" + padding), 525);
+      assertEquals(index.indexOf("2098" + padding), 1050);
+      assertEquals(index.names("105").size(), 5);
+      assertTrue(index.retainedBytes() > 2100000);
+   }
+
+   public void sortsNamesAsUnsignedBytes() {
+      CompactObjectIndex index = new CompactObjectIndex();
+      index.merge(ImmutableList.of(object("z", 1), object("\u00e9", 2)));
+      assertEquals(index.names(""), ImmutableList.of("z", "\u00e9"));
+      assertEquals(index.indexOf("\u00e9"), 1);
+   }
+
+   private static SwiftObject object(String name, long size) {
+      Payload payload = Payloads.newByteArrayPayload(new byte[0]);
+      payload.getContentMetadata().setContentLength(size);
+      return SwiftObject.builder() //
+            .name(name) //
+            .uri(URI.create("http://storage/myContainer/" + name)) //
+            .etag("4281c348eaf83e70ddce0e07221c3d28") //
+            .lastModified(new Date(size * 1000)) //
+            .payload(payload).build();
+   }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.util;
+
+import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.jclouds.io.Payloads.newStringPayload;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.internal.SwiftStandInServer;
+import org.jclouds.openstack.swift.v1.options.CreateContainerOptions;
+import org.jclouds.openstack.swift.v1.util.ContainerUsageAggregator.Usage;
+import org.jclouds.openstack.swift.v1.util.RevalidatingObjectMetadataCacheMockTest.FakeTicker;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+@Test(singleThreaded = true)
+public class ContainerUsageAggregatorTest {
+
+   private SwiftStandInServer server;
+   private SwiftApi api;
+   private ListeningExecutorService executor;
+
+   @BeforeMethod
+   public void start() throws IOException {
+      server = SwiftStandInServer.builder().build();
+      api = ContextBuilder.newBuilder("openstack-swift").endpoint(server.url())
+            .credentials(SwiftStandInServer.TENANT + ":user", "password").buildApi(SwiftApi.class);
+      executor = listeningDecorator(Executors.newFixedThreadPool(3));
+      for (int i = 0; i < 5; i++) {
+         String container = "container" + i;
+         api.containerApiInRegion("DFW").createIfAbsent(container, new CreateContainerOptions());
+         for (int j = 0; j <= i; j++) {
+            put(container, "object" + j, "1234");
+         }
+      }
+   }
+
+   @AfterMethod(alwaysRun = true)
+   public void stop() throws IOException {
+      executor.shutdownNow();
+      api.close();
+      server.close();
+   }
+
+   public void headsOnlyChangedContainersOnRefresh() throws Exception {
+      ContainerUsageAggregator aggregator = ContainerUsageAggregator.builder(api, "DFW", executor) //
+            .parallelism(2).build();
+
+      Usage usage = aggregator.refresh();
+      assertEquals(usage.containers().size(), 5);
+      assertEquals(usage.headCount(), 5);
+      assertEquals(usage.objectCount(), 15);
+      assertEquals(usage.bytesUsed(), 60);
+      assertEquals(usage.account().objectCount(), 15);
+
+      put("container3", "another", "12345678");
+      api.containerApiInRegion("DFW").createIfAbsent("container5", new CreateContainerOptions());
+      api.objectApiInRegionForContainer("DFW", "container0").delete("object0");
+      api.containerApiInRegion("DFW").deleteIfEmpty("container0");
+
+      usage = aggregator.refresh();
+      assertEquals(usage.headCount(), 2, "only container3 and container5");
+      assertEquals(usage.containers().keySet().toString(),
+            "[container1, container2, container3, container4, container5]");
+      assertEquals(usage.containers().get("container3").objectCount(), 5);
+      assertEquals(usage.objectCount(), 15);
+      assertEquals(usage.bytesUsed(), 64);
+   }
+
+   public void reusesUsageWithinTtl() throws Exception {
+      FakeTicker ticker = new FakeTicker();
+      ContainerUsageAggregator aggregator = ContainerUsageAggregator.builder(api, "DFW", executor) //
+            .ttl(1, MINUTES) //
+            .ticker(ticker).build();
+
+      Usage usage = aggregator.usage();
+      assertSame(aggregator.usage(), usage);
+      ticker.advance(MINUTES.toNanos(1));
+      Usage refreshed = aggregator.usage();
+      assertNotSame(refreshed, usage);
+      assertEquals(refreshed.headCount(), 0);
+      assertEquals(refreshed.containers(), usage.containers());
+   }
+
+   private void put(String container, String name, String content) {
+      api.objectApiInRegionForContainer("DFW", container).replace(name, newStringPayload(content),
+            ImmutableMap.<String, String> of());
+   }
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.util;
+
+import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static org.jclouds.openstack.swift.v1.features.ContainerApiMockTest.containerResponse;
+import static org.jclouds.openstack.swift.v1.features.ObjectApiMockTest.objectResponse;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.io.BufferPool;
+import org.jclouds.openstack.v2_0.internal.BaseOpenStackMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+@Test
+public class DynamicLargeObjectWriterMockTest extends BaseOpenStackMockTest<SwiftApi> {
+
+   static final String CONTAINER_PATH = "/v1/MossoCloudFS_5bcf396e-39dd-45ff-93a1-712b9aba90a9/myContainer";
+
+   public void createsManifestAndWritesSegments() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(404));
+      server.enqueue(new MockResponse().setResponseCode(201).addHeader("ETag", "manifest"));
+      server.enqueue(containerResponse().setBody("[]"));
+      server.enqueue(new MockResponse().setResponseCode(201).addHeader("ETag", "etag0"));
+      server.enqueue(new MockResponse().setResponseCode(201).addHeader("ETag", "etag1"));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         BufferPool buffers = new BufferPool(4, 2);
+         DynamicLargeObjectWriter writer = DynamicLargeObjectWriter.open(api, "DFW", "myContainer", "myObject",
+               sameThreadExecutor(), buffers);
+         writer.write("abcdef".getBytes());
+         writer.close();
+         assertEquals(buffers.inUse(), 0);
+
+         assertEquals(server.getRequestCount(), 6);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "HEAD " + CONTAINER_PATH + "/myObject HTTP/1.1");
+         RecordedRequest manifest = server.takeRequest();
+         assertEquals(manifest.getRequestLine(), "PUT " + CONTAINER_PATH + "/myObject HTTP/1.1");
+         assertEquals(manifest.getHeader("X-Object-Manifest"), "myContainer/myObject/dlo/");
+         RecordedRequest list = server.takeRequest();
+         assertEquals(list.getMethod(), "GET");
+         assertTrue(list.getPath().startsWith(CONTAINER_PATH + "/?format=json&prefix=myObject"), list.getPath());
+         RecordedRequest first = server.takeRequest();
+         assertEquals(first.getRequestLine(), "PUT " + CONTAINER_PATH + "/myObject/dlo/0000000000 HTTP/1.1");
+         assertEquals(new String(first.getBody()), "abcd");
+         RecordedRequest second = server.takeRequest();
+         assertEquals(second.getRequestLine(), "PUT " + CONTAINER_PATH + "/myObject/dlo/0000000001 HTTP/1.1");
+         assertEquals(new String(second.getBody()), "ef");
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void appendsAfterLastSegment() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(objectResponse().addHeader("X-Object-Manifest", "myContainer/myObject/dlo/"));
+      server.enqueue(containerResponse().setBody(segments("0000000000", "0000000001")));
+      server.enqueue(new MockResponse().setResponseCode(201).addHeader("ETag", "etag2"));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         DynamicLargeObjectWriter writer = DynamicLargeObjectWriter.open(api, "DFW", "myContainer", "myObject",
+               sameThreadExecutor(), new BufferPool(4, 2));
+         assertEquals(writer.nextSegmentName(), "myObject/dlo/0000000002");
+         writer.write("xy".getBytes());
+         writer.close();
+
+         assertEquals(server.getRequestCount(), 4);
+         server.takeRequest();
+         server.takeRequest();
+         server.takeRequest();
+         assertEquals(server.takeRequest().getRequestLine(), "PUT " + CONTAINER_PATH
+               + "/myObject/dlo/0000000002 HTTP/1.1");
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "segment myObject/dlo/0000000001 is missing before myObject/dlo/0000000002")
+   public void refusesMissingSegment() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(objectResponse().addHeader("X-Object-Manifest", "myContainer/myObject/dlo/"));
+      server.enqueue(containerResponse().setBody(segments("0000000000", "0000000002")));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         DynamicLargeObjectWriter.open(api, "DFW", "myContainer", "myObject", sameThreadExecutor(),
+               new BufferPool(4, 2));
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void failedSegmentDeletesLaterSegments() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(new MockResponse().setResponseCode(404));
+      server.enqueue(new MockResponse().setResponseCode(201).addHeader("ETag", "manifest"));
+      server.enqueue(containerResponse().setBody("[]"));
+      server.enqueue(new MockResponse().setResponseCode(422));
+      server.enqueue(new MockResponse().setResponseCode(201).addHeader("ETag", "etag1"));
+      server.enqueue(new MockResponse().setResponseCode(204));
+
+      // one thread sends segment 0, which fails, then segment 1
+      ListeningExecutorService executor = listeningDecorator(newSingleThreadExecutor());
+      final CountDownLatch gate = new CountDownLatch(1);
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         BufferPool buffers = new BufferPool(4, 2);
+         DynamicLargeObjectWriter writer = DynamicLargeObjectWriter.open(api, "DFW", "myContainer", "myObject",
+               executor, buffers);
+         // holds segment 0 back until both are submitted
+         executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+               gate.await();
+               return null;
+            }
+         });
+         writer.write("abcdef".getBytes());
+         gate.countDown();
+         try {
+            writer.close();
+            fail("expected the close to fail");
+         } catch (IOException expected) {
+            assertEquals(expected.getMessage(), "failed to upload segment myObject/dlo/0000000000");
+         }
+         assertEquals(buffers.inUse(), 0);
+
+         assertEquals(server.getRequestCount(), 7);
+         for (int i = 0; i < 4; i++) {
+            server.takeRequest();
+         }
+         assertEquals(server.takeRequest().getRequestLine(), "PUT " + CONTAINER_PATH
+               + "/myObject/dlo/0000000000 HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "PUT " + CONTAINER_PATH
+               + "/myObject/dlo/0000000001 HTTP/1.1");
+         assertEquals(server.takeRequest().getRequestLine(), "DELETE " + CONTAINER_PATH
+               + "/myObject/dlo/0000000001 HTTP/1.1");
+      } finally {
+         executor.shutdownNow();
+         server.shutdown();
+      }
+   }
+
+   @Test(expectedExceptions = IllegalStateException.class)
+   public void refusesRegularObject() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(objectResponse());
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         DynamicLargeObjectWriter.open(api, "DFW", "myContainer", "myObject", sameThreadExecutor(),
+               new BufferPool(4, 2));
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   private static String segments(String... indexes) {
+      StringBuilder json = new StringBuilder("[");
+      for (String index : indexes) {
+         if (json.length() > 1) {
+            json.append(',');
+         }
+         json.append(String.format("{\"name\":\"myObject/dlo/%s\","
+               + "\"hash\":\"4281c348eaf83e70ddce0e07221c3d28\",\"bytes\":4,"
+               + "\"content_type\":\"application/octet-stream\",\"last_modified\":\"2009-02-03T05:26:32.612278\"}",
+               index));
+      }
+      return json.append(']').toString();
+   }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.util;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.jclouds.io.Payloads.newStringPayload;
+import static org.jclouds.openstack.swift.v1.options.ListContainerOptions.Builder.prefix;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.domain.ObjectList;
+import org.jclouds.openstack.swift.v1.features.ObjectApi;
+import org.jclouds.openstack.swift.v1.internal.SwiftStandInServer;
+import org.jclouds.openstack.swift.v1.options.CreateContainerOptions;
+import org.jclouds.openstack.swift.v1.util.RevalidatingObjectMetadataCacheMockTest.FakeTicker;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+@Test(singleThreaded = true)
+public class ObjectListingCacheTest {
+
+   private SwiftStandInServer server;
+   private SwiftApi api;
+   private FakeTicker ticker;
+   private ObjectListingCache cache;
+   private ObjectApi cached;
+
+   @BeforeMethod
+   public void start() throws IOException {
+      server = SwiftStandInServer.builder().build();
+      api = ContextBuilder.newBuilder("openstack-swift").endpoint(server.url())
+            .credentials(SwiftStandInServer.TENANT + ":user", "password").buildApi(SwiftApi.class);
+      api.containerApiInRegion("DFW").createIfAbsent("myContainer", new CreateContainerOptions());
+      put(api, "a/1");
+      put(api, "b/1");
+      ticker = new FakeTicker();
+      cache = ObjectListingCache.builder().ttl(5, SECONDS).ticker(ticker).build();
+      cached = cache.wrap(api).objectApiInRegionForContainer("DFW", "myContainer");
+   }
+
+   @AfterMethod(alwaysRun = true)
+   public void stop() throws IOException {
+      api.close();
+      server.close();
+   }
+
+   public void servesRepeatedListingsFromCache() {
+      ObjectList first = cached.list(prefix("a/"));
+      long requests = server.requestCount();
+
+      assertSame(cached.list(prefix("a/")), first);
+      assertEquals(server.requestCount(), requests);
+      assertEquals(cache.hitCount(), 1);
+      assertEquals(cache.missCount(), 1);
+      assertEquals(cache.hitRate(), 0.5);
+
+      // other options are other listings
+      cached.list(prefix("a/").limit(1));
+      assertEquals(cache.missCount(), 2);
+   }
+
+   public void expiresAfterTtl() {
+      cached.list(prefix("a/"));
+      ticker.advance(SECONDS.toNanos(5));
+      cached.list(prefix("a/"));
+
+      assertEquals(cache.hitCount(), 0);
+      assertEquals(cache.missCount(), 2);
+   }
+
+   public void writesEvictListingsStoredOverExpiredOnes() {
+      cached.list(prefix("a/"));
+      ticker.advance(SECONDS.toNanos(5));
+      cached.list(prefix("a/"));
+
+      put(cache.wrap(api), "a/2");
+
+      assertEquals(names(cached.list(prefix("a/"))), ImmutableList.of("a/1", "a/2"));
+      assertEquals(cache.invalidationCount(), 1);
+   }
+
+   public void writesEvictOnlyAffectedListings() {
+      cached.list(prefix("a/"));
+      cached.list(prefix("b/"));
+
+      put(cache.wrap(api), "a/2");
+
+      assertEquals(names(cached.list(prefix("a/"))), ImmutableList.of("a/1", "a/2"));
+      assertEquals(names(cached.list(prefix("b/"))), ImmutableList.of("b/1"));
+      assertEquals(cache.invalidationCount(), 1);
+      assertEquals(cache.hitCount(), 1);
+   }
+
+   public void deletesThroughAnyApiEvict() {
+      cached.list(prefix("a/"));
+      cached.delete("a/1");
+      assertEquals(names(cached.list(prefix("a/"))), ImmutableList.of());
+
+      cached.list(prefix("b/"));
+      cache.wrap(api).bulkApiInRegion("DFW").bulkDelete(ImmutableList.of("/myContainer/b/1"));
+      assertEquals(names(cached.list(prefix("b/"))), ImmutableList.of());
+
+      assertEquals(cache.hitCount(), 0);
+      assertEquals(cache.invalidationCount(), 2);
+   }
+
+   public void countsStaleListingsWhenVerifying() {
+      cache = ObjectListingCache.builder().ttl(5, SECONDS).verifyEvery(2).ticker(ticker).build();
+      cached = cache.wrap(api).objectApiInRegionForContainer("DFW", "myContainer");
+      cached.list(prefix("a/"));
+
+      // written by another client
+      put(api, "a/2");
+      assertEquals(names(cached.list(prefix("a/"))), ImmutableList.of("a/1"));
+      assertEquals(names(cached.list(prefix("a/"))), ImmutableList.of("a/1", "a/2"));
+
+      assertEquals(cache.verificationCount(), 1);
+      assertEquals(cache.staleCount(), 1);
+      assertTrue(cache.averageHitAge(SECONDS) >= 0);
+   }
+
+   private static void put(SwiftApi api, String name) {
+      api.objectApiInRegionForContainer("DFW", "myContainer").replace(name, newStringPayload(name),
+            ImmutableMap.<String, String> of());
+   }
+
+   private static ImmutableList<String> names(ObjectList list) {
+      ImmutableList.Builder<String> names = ImmutableList.builder();
+      for (int i = 0; i < list.size(); i++) {
+         names.add(list.get(i).name());
+      }
+      return names.build();
+   }
+}
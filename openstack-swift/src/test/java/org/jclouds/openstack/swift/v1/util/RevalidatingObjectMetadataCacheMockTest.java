@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.openstack.swift.v1.util;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.jclouds.openstack.swift.v1.features.ObjectApiMockTest.objectResponse;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.openstack.swift.v1.SwiftApi;
+import org.jclouds.openstack.swift.v1.domain.SwiftObject;
+import org.jclouds.openstack.v2_0.internal.BaseOpenStackMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Ticker;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+@Test
+public class RevalidatingObjectMetadataCacheMockTest extends BaseOpenStackMockTest<SwiftApi> {
+
+   static final String OBJECT_PATH = "/v1/MossoCloudFS_5bcf396e-39dd-45ff-93a1-712b9aba90a9/myContainer/myObject";
+
+   public void revalidatesStaleEntriesWithIfNoneMatch() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(objectResponse());
+      server.enqueue(new MockResponse().setResponseCode(304) //
+            .addHeader("ETag", "8a964ee2a5e88be344f36c22562a6486"));
+      server.enqueue(objectResponse().setHeader("ETag", "cafebabe"));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         FakeTicker ticker = new FakeTicker();
+         RevalidatingObjectMetadataCache cache = RevalidatingObjectMetadataCache
+               .builder(api.objectApiInRegionForContainer("DFW", "myContainer")) //
+               .freshFor(1, MINUTES) //
+               .ticker(ticker).build();
+
+         SwiftObject loaded = cache.get("myObject").get();
+         assertEquals(loaded.etag(), "8a964ee2a5e88be344f36c22562a6486");
+         assertSame(cache.get("myObject").get(), loaded);
+
+         ticker.advance(MINUTES.toNanos(1));
+         assertSame(cache.get("myObject").get(), loaded);
+
+         ticker.advance(MINUTES.toNanos(1));
+         assertEquals(cache.get("myObject").get().etag(), "cafebabe");
+
+         assertEquals(cache.hitCount(), 1);
+         assertEquals(cache.notModifiedCount(), 1);
+         assertEquals(cache.loadCount(), 2);
+
+         assertEquals(server.getRequestCount(), 4);
+         assertEquals(server.takeRequest().getRequestLine(), "POST /tokens HTTP/1.1");
+         assertNull(server.takeRequest().getHeader("If-None-Match"));
+         assertEquals(server.takeRequest().getHeader("If-None-Match"), "\"8a964ee2a5e88be344f36c22562a6486\"");
+         assertEquals(server.takeRequest().getRequestLine(), "HEAD " + OBJECT_PATH + " HTTP/1.1");
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   public void forgetsDeletedObjects() throws Exception {
+      MockWebServer server = mockOpenStackServer();
+      server.enqueue(new MockResponse().setBody(accessRackspace));
+      server.enqueue(objectResponse());
+      server.enqueue(new MockResponse().setResponseCode(404));
+
+      try {
+         SwiftApi api = api(server.getUrl("/").toString(), "openstack-swift");
+         RevalidatingObjectMetadataCache cache = RevalidatingObjectMetadataCache.builder(
+               api.objectApiInRegionForContainer("DFW", "myContainer")).build();
+
+         assertEquals(cache.get("myObject").get().name(), "myObject");
+         assertFalse(cache.get("myObject").isPresent());
+         assertFalse(cache.getIfPresent("myObject").isPresent());
+         assertEquals(cache.size(), 0);
+      } finally {
+         server.shutdown();
+      }
+   }
+
+   static class FakeTicker extends Ticker {
+      private final AtomicLong nanos = new AtomicLong();
+
+      @Override
+      public long read() {
+         return nanos.get();
+      }
+
+      void advance(long delta) {
+         nanos.addAndGet(delta);
+      }
+   }
+}